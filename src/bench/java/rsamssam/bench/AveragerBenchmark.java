@@ -0,0 +1,90 @@
+package rsamssam.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rsamssam.core.Averager;
+import rsamssam.core.Result;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Averaging of results, reported as input results per second. The averaging
+ * factor is the number of days in the query.
+ *
+ * @author Julian Peña.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AveragerBenchmark {
+
+    /**
+     * Results averaged on every invocation.
+     */
+    private static final int RESULTS = 365 * 20;
+
+    private static final int SPS = 100;
+
+    private static final int WINDOW_SIZE = 1024;
+
+    @Param({"1", "7", "365"})
+    public int averaging;
+
+    private Query query;
+
+    private Result result;
+
+    @Setup
+    public void setUp() {
+
+        query = new Query("JULI", "HHZ", "CM", "00");
+        query
+                .setWindowSize(WINDOW_SIZE)
+                .setCutoffFrequency(SPS / 2)
+                .setFrom(0)
+                .setTo(averaging * 86400000L);
+        query.setMetadata(new Metadata(SPS, 0));
+
+        double[] spectra = new double[WINDOW_SIZE];
+        for (int i = 0; i < spectra.length; i++) {
+            spectra[i] = i % 7;
+        }
+
+        result = new Result(1, spectra, null);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RESULTS)
+    public int average() throws InterruptedException {
+
+        Averager averager = new Averager(query, SPS);
+
+        int averaged = 0;
+        for (int i = 0; i < RESULTS; i++) {
+            averager.addResult(result);
+            while (averager.pollResult() != null) {
+                averaged++;
+            }
+        }
+        averager.complete();
+
+        return averaged;
+    }
+
+}
@@ -0,0 +1,87 @@
+package rsamssam.bench;
+
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rsamssam.core.Decompressor;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Query;
+
+/**
+ * Decompression of synthetic Steim2 records, reported as samples per second.
+ *
+ * @author Julian Peña.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DecompressorBenchmark {
+
+    /**
+     * Records decompressed on every invocation (an hour at 100 sps).
+     */
+    private static final int RECORDS = 3600;
+
+    private static final int SAMPLES = RECORDS * SyntheticStream.SAMPLES_PER_RECORD;
+
+    private final DataRecord[] records = new DataRecord[RECORDS];
+
+    private final DataRecord poison = new DataRecord(new DataHeader(-1, 'D', false));
+
+    private Query query;
+
+    @Setup
+    public void setUp() throws IOException, SeedFormatException {
+
+        SyntheticStream stream = new SyntheticStream(100);
+
+        for (int i = 0; i < RECORDS; i++) {
+            records[i] = (DataRecord) DataRecord.read(
+                    stream.getRecord("CM", "JULI", "00", "HHZ", i));
+        }
+
+        query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+        query.setTo(stream.getRecordTime(RECORDS));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double decompress() {
+
+        Decompressor decompressor = new Decompressor(query);
+
+        for (DataRecord dataRecord : records) {
+            decompressor.addDataRecord(dataRecord);
+        }
+        decompressor.addDataRecord(poison);
+
+        double sum = 0;
+        for (double sample = decompressor.getSample(); !Double.isNaN(sample);
+                sample = decompressor.getSample()) {
+            sum += sample;
+        }
+
+        return sum;
+    }
+
+}
@@ -0,0 +1,276 @@
+package rsamssam.bench;
+
+import com.google.gson.GsonBuilder;
+
+import io.vertx.core.Vertx;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import rsamssam.core.RsamSsam;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Query;
+
+/**
+ * End-to-end benchmark, drives RsamSsam.makeGraph from raw miniseed bytes
+ * (generated in-process) to the graph for 1, 30 and 365 days long queries.
+ * <p>
+ * For every run reports wall time, samples per second, peak heap, GC time and
+ * the time spent by every stage. Results are written as JSON.
+ * <p>
+ * Throughput is compared against a baseline (samples per second for every
+ * run), the benchmark fails (exit code 1) when a run is slower than the
+ * baseline by more than the given tolerance. Without a baseline nothing could
+ * be checked, so a missing or empty baseline fails the benchmark (exit code 2)
+ * unless it's being created with --update-baseline. Runs not in the baseline
+ * are reported as unchecked.
+ * <p>
+ * The baseline in src/bench is for the reference scenario (--days 1,30 --sps
+ * 100, the default of the end-to-end execution in the benchmarks profile) and
+ * the machine it was recorded on, it must be updated when either changes.
+ * <p>
+ * Options:
+ * <pre>
+ * --days 1,30,365      query lengths
+ * --sps 50,100,200     sampling rates
+ * --gaps both          with gaps (on), without them (off) or both
+ * --no-plot            skip gnuplot
+ * --baseline file      baseline properties (e2e-baseline.properties)
+ * --tolerance 10       allowed throughput drop (percentage)
+ * --update-baseline    store this run as the new baseline
+ * --output file        JSON results (e2e-result.json)
+ * </pre>
+ *
+ * @author Julian Peña.
+ */
+public class EndToEnd {
+
+    private static final long START = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    /**
+     * Gap pattern used for runs with gaps: 1 out of every 20 records missing.
+     */
+    private static final int GAP_EVERY = 20;
+
+    private static final int GAP_LENGTH = 1;
+
+    public static void main(String[] args) throws Exception {
+
+        Map<String, String> options = parse(args);
+
+        List<Integer> days = toInts(options.getOrDefault("days", "1,30,365"));
+        List<Integer> rates = toInts(options.getOrDefault("sps", "50,100,200"));
+        String gaps = options.getOrDefault("gaps", "both");
+        boolean plot = !options.containsKey("no-plot");
+        Path baselinePath = Path.of(options.getOrDefault("baseline", "e2e-baseline.properties"));
+        double tolerance = Double.parseDouble(options.getOrDefault("tolerance", "10"));
+        Path output = Path.of(options.getOrDefault("output", "e2e-result.json"));
+
+        List<Boolean> gapModes = new ArrayList<>();
+        if (!gaps.equals("on")) {
+            gapModes.add(false);
+        }
+        if (!gaps.equals("off")) {
+            gapModes.add(true);
+        }
+
+        boolean update = options.containsKey("update-baseline");
+
+        Properties baseline = new Properties();
+        if (Files.isReadable(baselinePath)) {
+            try (Reader reader = Files.newBufferedReader(baselinePath)) {
+                baseline.load(reader);
+            }
+        }
+
+        if (baseline.isEmpty() && !update) {
+            System.out.println("ERROR: baseline " + baselinePath.toAbsolutePath()
+                    + " is missing or empty, throughput can't be checked."
+                    + " Run with --update-baseline to create it.");
+            System.exit(2);
+        }
+
+        Vertx vertx = Vertx.vertx();
+
+        List<Map<String, Object>> results = new ArrayList<>();
+        List<String> regressions = new ArrayList<>();
+        List<String> unchecked = new ArrayList<>();
+        Properties current = new Properties();
+
+        try {
+            for (int d : days) {
+                for (int sps : rates) {
+                    for (boolean withGaps : gapModes) {
+
+                        String name = d + "d-" + sps + "sps" + (withGaps ? "-gaps" : "");
+
+                        Map<String, Object> result = run(vertx, name, d, sps,
+                                withGaps, plot);
+                        results.add(result);
+
+                        double throughput = (double) result.get("samplesPerSecond");
+                        current.setProperty(name, Long.toString((long) throughput));
+
+                        String stored = baseline.getProperty(name);
+                        if (stored != null) {
+                            double expected = Double.parseDouble(stored);
+                            double drop = 100 * (expected - throughput) / expected;
+                            result.put("baseline", expected);
+                            result.put("dropPercent", drop);
+                            if (drop > tolerance) {
+                                regressions.add(String.format(
+                                        "%s: %.0f samples/s, %.1f%% below baseline",
+                                        name, throughput, drop));
+                            }
+                        } else {
+                            unchecked.add(name);
+                        }
+
+                        print(result);
+                    }
+                }
+            }
+        } finally {
+            vertx.close();
+        }
+
+        try (Writer writer = Files.newBufferedWriter(output)) {
+            new GsonBuilder().setPrettyPrinting().create().toJson(results, writer);
+        }
+        System.out.println("Results written to " + output.toAbsolutePath());
+
+        if (update) {
+            // runs not made this time keep their previous values
+            baseline.putAll(current);
+            try (Writer writer = Files.newBufferedWriter(baselinePath)) {
+                baseline.store(writer, "End-to-end throughput baseline (samples/s)");
+            }
+            System.out.println("Baseline written to " + baselinePath.toAbsolutePath());
+        } else if (!unchecked.isEmpty()) {
+            unchecked.forEach(u -> System.out.println("WARNING " + u
+                    + ": not in the baseline, throughput not checked"));
+        }
+
+        if (!regressions.isEmpty()) {
+            regressions.forEach(r -> System.out.println("REGRESSION " + r));
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Makes a single graph.
+     *
+     * @return The measurements for this run.
+     */
+    private static Map<String, Object> run(Vertx vertx, String name, int days,
+            int sps, boolean withGaps, boolean plot) throws Exception {
+
+        SyntheticStream stream = new SyntheticStream(sps);
+        if (withGaps) {
+            stream.setGaps(GAP_EVERY, GAP_LENGTH);
+        }
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query
+                .setFrom(START)
+                .setTo(START + days * 86400000L);
+
+        SyntheticSource source = new SyntheticSource(stream);
+        RsamSsam rsamSsam = new RsamSsam(vertx, query, source).setPlotting(plot);
+
+        System.gc();
+        List<MemoryPoolMXBean> heap = new ArrayList<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+                heap.add(pool);
+            }
+        }
+        long gcBefore = getGcTime();
+
+        long start = System.nanoTime();
+        rsamSsam.makeGraph().toCompletionStage().toCompletableFuture().get();
+        long wall = System.nanoTime() - start;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : heap) {
+            peakHeap += pool.getPeakUsage().getUsed();
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("name", name);
+        result.put("days", days);
+        result.put("sps", sps);
+        result.put("gaps", withGaps);
+        result.put("plot", plot);
+        result.put("wallMillis", wall / 1000000);
+        result.put("samples", source.getSamples());
+        result.put("bytes", source.getBytes());
+        result.put("samplesPerSecond", source.getSamples() * 1e9 / wall);
+        result.put("peakHeapMB", peakHeap / (1024 * 1024));
+        result.put("gcMillis", getGcTime() - gcBefore);
+
+        Map<String, Long> stages = new LinkedHashMap<>();
+        rsamSsam.getStageTimes().forEach((stage, nanos) -> stages.put(stage, nanos / 1000000));
+        result.put("stageMillis", stages);
+
+        return result;
+    }
+
+    private static long getGcTime() {
+        long time = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            time += Math.max(0, gc.getCollectionTime());
+        }
+        return time;
+    }
+
+    private static void print(Map<String, Object> result) {
+        System.out.printf("%-18s %8d ms %12.0f samples/s %6d MB heap %6d ms gc %s%n",
+                result.get("name"), result.get("wallMillis"),
+                result.get("samplesPerSecond"), result.get("peakHeapMB"),
+                result.get("gcMillis"), result.get("stageMillis"));
+    }
+
+    /**
+     * Parses "--name value" and "--flag" arguments.
+     */
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                options.put(name, args[++i]);
+            } else {
+                options.put(name, "");
+            }
+        }
+        return options;
+    }
+
+    private static List<Integer> toInts(String csv) {
+        List<Integer> values = new ArrayList<>();
+        for (String value : csv.split(",")) {
+            values.add(Integer.parseInt(value.trim()));
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,65 @@
+package rsamssam.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rsamssam.core.Packager;
+
+/**
+ * Packaging of samples into bins, reported as samples per second. Bins are
+ * taken out as soon as they are complete so the Packager never blocks.
+ *
+ * @author Julian Peña.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PackagerBenchmark {
+
+    /**
+     * Samples added on every invocation.
+     */
+    private static final int SAMPLES = 65536;
+
+    @Param({"256", "1024", "4096", "16384"})
+    public int windowSize;
+
+    private Packager packager;
+
+    @Setup
+    public void setUp() {
+        packager = new Packager(windowSize);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAMPLES)
+    public double[] addSamples() throws InterruptedException {
+
+        double[] last = null;
+
+        for (int i = 0; i < SAMPLES; i++) {
+            packager.addSample(i);
+            if ((i + 1) % windowSize == 0) {
+                last = packager.pollBin();
+            }
+        }
+
+        return last;
+    }
+
+}
@@ -0,0 +1,65 @@
+package rsamssam.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rsamssam.config.Names;
+import rsamssam.core.Processor;
+import rsamssam.core.Result;
+
+/**
+ * Rsam and FFT computation of a single bin.
+ * <p>
+ * The bin is copied before every call since Processor.process modifies it,
+ * the copy is part of the measurement.
+ *
+ * @author Julian Peña.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessorBenchmark {
+
+    @Param({"256", "1024", "4096", "16384"})
+    public int windowSize;
+
+    @Param({Names.WINDOW_HANN, Names.WINDOW_UNIFORM})
+    public String window;
+
+    private Processor processor;
+
+    private double[] bin;
+
+    @Setup
+    public void setUp() {
+
+        processor = new Processor(windowSize, window, windowSize / 2, 1);
+
+        Random random = new Random(0);
+        bin = new double[windowSize];
+        for (int i = 0; i < windowSize; i++) {
+            bin[i] = 1000 * Math.sin(2 * Math.PI * i / 100) + random.nextGaussian();
+        }
+    }
+
+    @Benchmark
+    public Result process() {
+        return processor.process(bin.clone());
+    }
+
+}
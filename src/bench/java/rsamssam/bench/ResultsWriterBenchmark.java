@@ -0,0 +1,99 @@
+package rsamssam.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rsamssam.core.Precision;
+import rsamssam.core.Result;
+import rsamssam.core.ResultsWriter;
+import rsamssam.query.Query;
+
+/**
+ * Writing a month of results (100 sps, 1024 samples window, averaging factor
+ * of 30 and 50 Hz cutoff) to disk with the default precision.
+ *
+ * @author Julian Peña.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultsWriterBenchmark {
+
+    private static final int RESULTS = 30 * 86400 * 100 / 1024 / 30;
+
+    private static final int CUTOFF_WINDOW = 512;
+
+    private static final long TIMESTEP = Math.round(1000d * 30 * 1024 / 100);
+
+    private final Result[] results = new Result[RESULTS];
+
+    private final double[] averageSsam = new double[CUTOFF_WINDOW];
+
+    private Path folder;
+
+    private Query query;
+
+    private Precision precision;
+
+    @Setup
+    public void setUp() throws IOException {
+
+        folder = Files.createTempDirectory("results-writer-benchmark");
+
+        query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+
+        precision = Precision.fromConfig();
+
+        for (int i = 0; i < RESULTS; i++) {
+            double[] spectra = new double[CUTOFF_WINDOW];
+            for (int j = 0; j < CUTOFF_WINDOW; j++) {
+                spectra[j] = Math.pow(10, (i + j) % 9) / 3;
+            }
+            results[i] = new Result(i * 1.37, spectra, new double[]{i % 50, i / 3d});
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var files = Files.walk(folder)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long write() throws IOException {
+
+        ResultsWriter writer = new ResultsWriter(folder, query, 0, TIMESTEP,
+                precision);
+
+        for (Result result : results) {
+            writer.addResult(result);
+        }
+        writer.addAverageSsam(averageSsam);
+        writer.finish();
+
+        return Files.size(folder.resolve(query.getSSAMFileName()));
+    }
+
+}
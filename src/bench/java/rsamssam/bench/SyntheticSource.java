@@ -0,0 +1,94 @@
+package rsamssam.bench;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+
+import io.vertx.core.Future;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * In-process data client, miniseed records are generated from a
+ * SyntheticStream and parsed from their raw bytes (like the network clients
+ * do) on a dedicated thread.
+ *
+ * @author Julian Peña.
+ */
+public class SyntheticSource implements DataClient, DataRecordProvider {
+
+    private final SyntheticStream stream;
+
+    private final BlockingQueue<DataRecord> queue = new ArrayBlockingQueue<>(10000);
+
+    /**
+     * Raw bytes generated so far.
+     */
+    private final AtomicLong bytes = new AtomicLong();
+
+    /**
+     * Samples generated so far.
+     */
+    private final AtomicLong samples = new AtomicLong();
+
+    public SyntheticSource(SyntheticStream stream) {
+        this.stream = stream;
+    }
+
+    @Override
+    public Future<Metadata> download(Query query) {
+
+        long first = stream.getRecordIndex(query.getFrom());
+
+        Thread producer = new Thread(() -> produce(query, first), "synthetic-source");
+        producer.setDaemon(true);
+        producer.start();
+
+        return Future.succeededFuture(new Metadata(stream.getSps(),
+                stream.getRecordTime(first)));
+    }
+
+    private void produce(Query query, long first) {
+        try {
+            for (long record = first; stream.getRecordTime(record) < query.getTo(); record++) {
+                if (stream.isMissing(record)) {
+                    continue;
+                }
+                byte[] raw = stream.getRecord(query.getN(), query.getS(),
+                        query.getL(), query.getC(), record);
+                bytes.addAndGet(raw.length);
+                samples.addAndGet(SyntheticStream.SAMPLES_PER_RECORD);
+                queue.put((DataRecord) DataRecord.read(raw));
+            }
+            queue.put(POISON);
+        } catch (IOException | SeedFormatException | InterruptedException ex) {
+            queue.offer(POISON);
+        }
+    }
+
+    @Override
+    public DataRecord getDataRecord() {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            return POISON;
+        }
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    public long getSamples() {
+        return samples.get();
+    }
+
+}
@@ -10,6 +10,10 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Utility class used to get values from configuration.properties file.
+ * <p>
+ * A JVM system property with the same name as a configuration property takes
+ * precedence over the file (ex. -DfdsnServer=localhost), useful for pointing
+ * the service to local test servers.
  *
  * @author Julian Peña.
  */
@@ -60,6 +64,68 @@ public abstract class Config {
         return getString(Names.DEFAULT_QUERY_TYPE, Defaults.QUERY_TYPE);
     }
 
+    /**
+     * Returns the default format (text or binary) of the rsam, ssam and
+     * average ssam output files.
+     *
+     * @return
+     */
+    public static String getOutputFormat() {
+        String value = getString(Names.OUTPUT_FORMAT, Defaults.OUTPUT_FORMAT);
+        if (!value.equals(Names.OUTPUT_FORMAT_TEXT)
+                && !value.equals(Names.OUTPUT_FORMAT_BINARY)) {
+            LOG.warn("Output format {} is invalid. Using {}", value,
+                    Defaults.OUTPUT_FORMAT);
+            value = Defaults.OUTPUT_FORMAT;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the plotter (gnuplot or java) used for making the graphs.
+     *
+     * @return
+     */
+    public static String getPlotter() {
+        String value = getString(Names.PLOTTER, Defaults.PLOTTER);
+        if (!value.equals(Names.PLOTTER_GNUPLOT)
+                && !value.equals(Names.PLOTTER_JAVA)) {
+            LOG.warn("Plotter {} is invalid. Using {}", value, Defaults.PLOTTER);
+            value = Defaults.PLOTTER;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the averaging mode (days or width) for queries without one.
+     *
+     * @return
+     */
+    public static String getAveraging() {
+        String value = getString(Names.AVERAGING, Defaults.AVERAGING);
+        if (!value.equals(Names.AVERAGING_DAYS)
+                && !value.equals(Names.AVERAGING_WIDTH)) {
+            LOG.warn("Averaging {} is invalid. Using {}", value, Defaults.AVERAGING);
+            value = Defaults.AVERAGING;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the deflate level (0 to 9) for palette (heatmap) png images.
+     *
+     * @return
+     */
+    public static int getPngDeflateLevel() {
+        int value = getInt(Names.PNG_DEFLATE_LEVEL, Defaults.PNG_DEFLATE_LEVEL);
+        if (value < 0 || value > 9) {
+            LOG.warn("png deflate level {} is invalid. Using {}", value,
+                    Defaults.PNG_DEFLATE_LEVEL);
+            value = Defaults.PNG_DEFLATE_LEVEL;
+        }
+        return value;
+    }
+
     /**
      * Default timeout for a service.
      *
@@ -88,6 +154,22 @@ public abstract class Config {
         return value;
     }
 
+    /**
+     * Returns the attempts made to resume an interrupted FDSN or SeedLink
+     * download before giving up, the download is then truncated.
+     *
+     * @return
+     */
+    public static int getDownloadRetries() {
+        int value = getInt(Names.DOWNLOAD_RETRIES, Defaults.DOWNLOAD_RETRIES);
+        if (value < 0) {
+            LOG.warn("Download retries {} is invalid. Using {}", value,
+                    Defaults.DOWNLOAD_RETRIES);
+            value = Defaults.DOWNLOAD_RETRIES;
+        }
+        return value;
+    }
+
     /**
      * Returns the FDSN server configured (if any).
      *
@@ -144,6 +226,122 @@ public abstract class Config {
         return value;
     }
 
+    /**
+     * Is the SeedLink real-time mode enabled?. In real-time mode SeedLink
+     * queries in the queries.json file are fed by a single long lived SeedLink
+     * session instead of downloading the whole day on every replot.
+     *
+     * @return
+     */
+    public static boolean isSeedLinkRealtime() {
+        return getBoolean(Names.SEEDLINK_REALTIME, Defaults.SEEDLINK_REALTIME);
+    }
+
+    /**
+     * Returns the seconds without receiving packets before the real-time
+     * SeedLink session is considered dead and restarted.
+     *
+     * @return
+     */
+    public static int getSeedLinkRealtimeIdleTimeout() {
+        int value = getInt(Names.SEEDLINK_REALTIME_IDLE_TIMEOUT,
+                Defaults.SEEDLINK_REALTIME_IDLE_TIMEOUT);
+        if (value < 1) {
+            LOG.warn("SeedLink real-time idle timeout {} is invalid. Using {}",
+                    value, Defaults.SEEDLINK_REALTIME_IDLE_TIMEOUT);
+            value = Defaults.SEEDLINK_REALTIME_IDLE_TIMEOUT;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many records can wait to be processed before the real-time
+     * SeedLink session is paused.
+     *
+     * @return
+     */
+    public static int getSeedLinkRealtimeHighWatermark() {
+        int value = getInt(Names.SEEDLINK_REALTIME_HIGH_WATERMARK,
+                Defaults.SEEDLINK_REALTIME_HIGH_WATERMARK);
+        if (value < 1) {
+            LOG.warn("SeedLink real-time high watermark {} is invalid. Using {}",
+                    value, Defaults.SEEDLINK_REALTIME_HIGH_WATERMARK);
+            value = Defaults.SEEDLINK_REALTIME_HIGH_WATERMARK;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many records waiting to be processed resume a paused
+     * real-time SeedLink session, it must be below the high watermark.
+     *
+     * @return
+     */
+    public static int getSeedLinkRealtimeLowWatermark() {
+        int value = getInt(Names.SEEDLINK_REALTIME_LOW_WATERMARK,
+                Defaults.SEEDLINK_REALTIME_LOW_WATERMARK);
+        if (value < 0 || value >= getSeedLinkRealtimeHighWatermark()) {
+            int fallback = Math.min(Defaults.SEEDLINK_REALTIME_LOW_WATERMARK,
+                    getSeedLinkRealtimeHighWatermark() / 2);
+            LOG.warn("SeedLink real-time low watermark {} is invalid. Using {}",
+                    value, fallback);
+            value = fallback;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the maximum number of channels downloaded over a single SeedLink
+     * session during periodic runs.
+     *
+     * @return
+     */
+    public static int getSeedLinkSessionSize() {
+        int value = getInt(Names.SEEDLINK_SESSION_SIZE, Defaults.SEEDLINK_SESSION_SIZE);
+        if (value < 1) {
+            LOG.warn("SeedLink session size {} is invalid. Using {}", value,
+                    Defaults.SEEDLINK_SESSION_SIZE);
+            value = Defaults.SEEDLINK_SESSION_SIZE;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many records can wait in the queue of a query before a
+     * multi-station SeedLink session is paused.
+     *
+     * @return
+     */
+    public static int getSeedLinkSessionHighWatermark() {
+        int value = getInt(Names.SEEDLINK_SESSION_HIGH_WATERMARK,
+                Defaults.SEEDLINK_SESSION_HIGH_WATERMARK);
+        if (value < 1) {
+            LOG.warn("SeedLink session high watermark {} is invalid. Using {}",
+                    value, Defaults.SEEDLINK_SESSION_HIGH_WATERMARK);
+            value = Defaults.SEEDLINK_SESSION_HIGH_WATERMARK;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many records waiting in every queue resume a paused
+     * multi-station SeedLink session, it must be below the high watermark.
+     *
+     * @return
+     */
+    public static int getSeedLinkSessionLowWatermark() {
+        int value = getInt(Names.SEEDLINK_SESSION_LOW_WATERMARK,
+                Defaults.SEEDLINK_SESSION_LOW_WATERMARK);
+        if (value < 0 || value >= getSeedLinkSessionHighWatermark()) {
+            int fallback = Math.min(Defaults.SEEDLINK_SESSION_LOW_WATERMARK,
+                    getSeedLinkSessionHighWatermark() / 2);
+            LOG.warn("SeedLink session low watermark {} is invalid. Using {}",
+                    value, fallback);
+            value = fallback;
+        }
+        return value;
+    }
+
     /**
      * Returns the Winston server configured (if any).
      *
@@ -167,6 +365,146 @@ public abstract class Config {
         return value;
     }
 
+    /**
+     * Returns the maximum number of connections kept open to the Winston
+     * server.
+     *
+     * @return
+     */
+    public static int getWinstonConnections() {
+        int value = getInt(Names.WINSTON_CONNECTIONS, Defaults.WINSTON_CONNECTIONS);
+        if (value < 1) {
+            LOG.warn("Winston connections {} is invalid. Using {}", value,
+                    Defaults.WINSTON_CONNECTIONS);
+            value = Defaults.WINSTON_CONNECTIONS;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of long-lived gnuplot processes, 0 means a new
+     * process for every graph.
+     *
+     * @return
+     */
+    public static int getGnuplotPoolSize() {
+        int value = getInt(Names.GNUPLOT_POOL_SIZE, Defaults.GNUPLOT_POOL_SIZE);
+        if (value < 0) {
+            LOG.warn("Gnuplot pool size {} is invalid. Using {}", value,
+                    Defaults.GNUPLOT_POOL_SIZE);
+            value = Defaults.GNUPLOT_POOL_SIZE;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the maximum time (seconds) a gnuplot graph can take.
+     *
+     * @return
+     */
+    public static int getGnuplotTimeout() {
+        int value = getInt(Names.GNUPLOT_TIMEOUT, Defaults.GNUPLOT_TIMEOUT);
+        if (value < 1) {
+            LOG.warn("Gnuplot timeout {} is invalid. Using {}", value,
+                    Defaults.GNUPLOT_TIMEOUT);
+            value = Defaults.GNUPLOT_TIMEOUT;
+        }
+        return value;
+    }
+
+    /**
+     * Returns the root folder of the local SDS archive configured (if any).
+     *
+     * @return The archive path or null if no value was configured.
+     */
+    public static String getSdsArchive() {
+        return Config.getString(Names.SDS_ARCHIVE, null);
+    }
+
+    /**
+     * Returns the disk budget for the raw waveform cache in MB, zero means the
+     * cache is disabled.
+     *
+     * @return
+     */
+    public static int getCacheSize() {
+        int value = getInt(Names.CACHE_SIZE, Defaults.CACHE_SIZE);
+        if (value < 0) {
+            LOG.warn("Cache size {} is invalid. Using {}", value,
+                    Defaults.CACHE_SIZE);
+            value = Defaults.CACHE_SIZE;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how long (seconds) after its end a day is cached as complete,
+     * until then it's kept as a partial day so late data is not lost.
+     *
+     * @return
+     */
+    public static int getCacheLatency() {
+        int value = getInt(Names.CACHE_LATENCY, Defaults.CACHE_LATENCY);
+        if (value < 0) {
+            LOG.warn("Cache latency {} is invalid. Using {}", value,
+                    Defaults.CACHE_LATENCY);
+            value = Defaults.CACHE_LATENCY;
+        }
+        return value;
+    }
+
+    /**
+     * Returns how many query traces (the most recent ones) are kept in memory.
+     *
+     * @return
+     */
+    public static int getTraceBufferSize() {
+        int value = getInt(Names.TRACE_BUFFER_SIZE, Defaults.TRACE_BUFFER_SIZE);
+        if (value < 1) {
+            LOG.warn("Trace buffer size {} is invalid. Using {}", value,
+                    Defaults.TRACE_BUFFER_SIZE);
+            value = Defaults.TRACE_BUFFER_SIZE;
+        }
+        return value;
+    }
+
+    /**
+     * Number of decimals written to the rsam text file.
+     *
+     * @return
+     */
+    public static int getRsamDecimals() {
+        return getDecimals(Names.RSAM_DECIMALS, Defaults.RSAM_DECIMALS);
+    }
+
+    /**
+     * Number of decimals written to the ssam text file.
+     *
+     * @return
+     */
+    public static int getSsamDecimals() {
+        return getDecimals(Names.SSAM_DECIMALS, Defaults.SSAM_DECIMALS);
+    }
+
+    /**
+     * Number of decimals written to the average ssam text file.
+     *
+     * @return
+     */
+    public static int getAverageSsamDecimals() {
+        return getDecimals(Names.AVERAGE_SSAM_DECIMALS,
+                Defaults.AVERAGE_SSAM_DECIMALS);
+    }
+
+    /**
+     * Number of decimals written to the maximum frequencies text file.
+     *
+     * @return
+     */
+    public static int getMaxFreqsDecimals() {
+        return getDecimals(Names.MAX_FREQS_DECIMALS, Defaults.MAX_FREQS_DECIMALS);
+    }
+
     /**
      * Returns the graph width configured.
      *
@@ -251,9 +589,25 @@ public abstract class Config {
         return value;
     }
 
+    /**
+     * Reads a number of decimals, from 0 to 9 or -1 for full precision.
+     *
+     * @param property
+     * @param defaultValue
+     * @return
+     */
+    private static int getDecimals(String property, int defaultValue) {
+        int value = getInt(property, defaultValue);
+        if (value < -1 || value > 9) {
+            LOG.warn("{} {} is invalid. Using {}", property, value, defaultValue);
+            value = defaultValue;
+        }
+        return value;
+    }
+
     private static int getInt(String property, int defaultValue) {
 
-        String stringProperty = Config.PROPERTIES.getProperty(property);
+        String stringProperty = getProperty(property);
         if (stringProperty == null || stringProperty.length() < 1) {
             LOG.warn("Empty or invalid {}, using {}", property, defaultValue);
             return defaultValue;
@@ -267,8 +621,19 @@ public abstract class Config {
         }
     }
 
+    private static boolean getBoolean(String property, boolean defaultValue) {
+
+        String stringProperty = getProperty(property);
+        if (stringProperty == null || stringProperty.isBlank()) {
+            LOG.warn("Empty or invalid {}, using {}", property, defaultValue);
+            return defaultValue;
+        }
+
+        return Boolean.parseBoolean(stringProperty.trim());
+    }
+
     private static String getString(String property, String defaultValue) {
-        String stringProperty = Config.PROPERTIES.getProperty(property);
+        String stringProperty = getProperty(property);
         if (stringProperty == null || stringProperty.length() < 1) {
             LOG.warn("Empty or invalid {}, using {}", property, defaultValue);
             return defaultValue;
@@ -278,4 +643,18 @@ public abstract class Config {
 
     }
 
+    /**
+     * Returns the raw value of a property, system properties first.
+     *
+     * @param property
+     * @return
+     */
+    private static String getProperty(String property) {
+        String value = System.getProperty(property);
+        if (value != null) {
+            return value;
+        }
+        return Config.PROPERTIES.getProperty(property);
+    }
+
 }
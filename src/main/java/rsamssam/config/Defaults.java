@@ -34,6 +34,21 @@ public class Defaults {
      */
     public static final int WINSTON_PORT = 16022;
 
+    /**
+     * Default maximum number of pooled Winston connections.
+     */
+    public static final int WINSTON_CONNECTIONS = 2;
+
+    /**
+     * Default number of long-lived gnuplot processes.
+     */
+    public static final int GNUPLOT_POOL_SIZE = 2;
+
+    /**
+     * Default maximum time (seconds) a gnuplot graph can take.
+     */
+    public static final int GNUPLOT_TIMEOUT = 120;
+
     /**
      * Default winston timeout in seconds.
      */
@@ -44,6 +59,11 @@ public class Defaults {
      */
     public static final int FDSN_TIMEOUT = 120;
 
+    /**
+     * Default attempts to resume an interrupted download.
+     */
+    public static final int DOWNLOAD_RETRIES = 5;
+
     /**
      * Default fdsn server port.
      */
@@ -54,6 +74,70 @@ public class Defaults {
      */
     public static final int SEEDLINK_PORT = 18000;
 
+    /**
+     * Default SeedLink real-time mode (disabled).
+     */
+    public static final boolean SEEDLINK_REALTIME = false;
+
+    /**
+     * Default seconds without packets before the real-time SeedLink session
+     * is considered dead.
+     */
+    public static final int SEEDLINK_REALTIME_IDLE_TIMEOUT = 600;
+
+    /**
+     * Default records waiting to be processed before pausing the real-time
+     * SeedLink session.
+     */
+    public static final int SEEDLINK_REALTIME_HIGH_WATERMARK = 5000;
+
+    /**
+     * Default records waiting to be processed before resuming the real-time
+     * SeedLink session.
+     */
+    public static final int SEEDLINK_REALTIME_LOW_WATERMARK = 1000;
+
+    /**
+     * Default maximum number of channels downloaded per SeedLink session.
+     */
+    public static final int SEEDLINK_SESSION_SIZE = 10;
+
+    /**
+     * Default records waiting in the queue of a query before pausing a
+     * multi-station SeedLink session.
+     */
+    public static final int SEEDLINK_SESSION_HIGH_WATERMARK = 40000;
+
+    /**
+     * Default records waiting in every queue before resuming a multi-station
+     * SeedLink session.
+     */
+    public static final int SEEDLINK_SESSION_LOW_WATERMARK = 10000;
+
+    /**
+     * Default disk budget for the raw waveform cache in MB, disabled.
+     */
+    public static final int CACHE_SIZE = 0;
+
+    /**
+     * Default time (seconds) after its end before a day is cached as complete.
+     */
+    public static final int CACHE_LATENCY = 3600;
+
+    /**
+     * Default number of query traces kept in memory.
+     */
+    public static final int TRACE_BUFFER_SIZE = 100;
+
+    /**
+     * Default number of decimals written to the text output files. Powers are
+     * in dB, 2 decimals are more than enough.
+     */
+    public static final int RSAM_DECIMALS = 2;
+    public static final int SSAM_DECIMALS = 2;
+    public static final int AVERAGE_SSAM_DECIMALS = 2;
+    public static final int MAX_FREQS_DECIMALS = 2;
+
     /**
      * Default web server port.
      */
@@ -79,4 +163,24 @@ public class Defaults {
      * specifically set.
      */
     public static final String QUERY_TYPE = "fdsn";
+
+    /**
+     * Default format for the rsam, ssam and average ssam output files.
+     */
+    public static final String OUTPUT_FORMAT = Names.OUTPUT_FORMAT_TEXT;
+
+    /**
+     * Default plotter, the in-process java renderer.
+     */
+    public static final String PLOTTER = Names.PLOTTER_JAVA;
+
+    /**
+     * Default deflate level for palette (heatmap) png images.
+     */
+    public static final int PNG_DEFLATE_LEVEL = 1;
+
+    /**
+     * Default averaging mode, a factor equal to the number of days.
+     */
+    public static final String AVERAGING = Names.AVERAGING_DAYS;
 }
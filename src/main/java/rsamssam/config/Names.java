@@ -27,6 +27,11 @@ public abstract class Names {
      */
     public static final String WEB_DIRECTORY = OUTPUT_DIR + "/web";
 
+    /**
+     * Folder for cached raw waveform data.
+     */
+    public static final String CACHE_DIR = "cache";
+
     /**
      * Folder with internal web files (html, js, css, etc.).
      */
@@ -82,6 +87,11 @@ public abstract class Names {
      */
     public static final String FDSN_TIMEOUT = "fdsnTimeout";
 
+    /**
+     * Property name for the attempts to resume an interrupted download.
+     */
+    public static final String DOWNLOAD_RETRIES = "downloadRetries";
+
     /**
      * Property name for the SeedLink server.
      */
@@ -92,6 +102,45 @@ public abstract class Names {
      */
     public static final String SEEDLINK_PORT = "seedlinkPort";
 
+    /**
+     * Property name for the SeedLink real-time mode switch.
+     */
+    public static final String SEEDLINK_REALTIME = "seedlinkRealtime";
+
+    /**
+     * Property name for the idle timeout of the real-time SeedLink session.
+     */
+    public static final String SEEDLINK_REALTIME_IDLE_TIMEOUT = "seedlinkRealtimeIdleTimeout";
+
+    /**
+     * Property name for the records waiting to be processed before pausing
+     * the real-time SeedLink session.
+     */
+    public static final String SEEDLINK_REALTIME_HIGH_WATERMARK = "seedlinkRealtimeHighWatermark";
+
+    /**
+     * Property name for the records waiting to be processed before resuming
+     * the real-time SeedLink session.
+     */
+    public static final String SEEDLINK_REALTIME_LOW_WATERMARK = "seedlinkRealtimeLowWatermark";
+
+    /**
+     * Property name for the maximum number of channels per SeedLink session.
+     */
+    public static final String SEEDLINK_SESSION_SIZE = "seedlinkSessionSize";
+
+    /**
+     * Property name for the records waiting in the queue of a query before
+     * pausing a multi-station SeedLink session.
+     */
+    public static final String SEEDLINK_SESSION_HIGH_WATERMARK = "seedlinkSessionHighWatermark";
+
+    /**
+     * Property name for the records waiting in every queue before resuming a
+     * multi-station SeedLink session.
+     */
+    public static final String SEEDLINK_SESSION_LOW_WATERMARK = "seedlinkSessionLowWatermark";
+
     /**
      * Property name for the Winston server.
      */
@@ -102,6 +151,51 @@ public abstract class Names {
      */
     public static final String WINSTON_PORT = "winstonPort";
 
+    /**
+     * Property name for the maximum number of pooled Winston connections.
+     */
+    public static final String WINSTON_CONNECTIONS = "winstonConnections";
+
+    /**
+     * Property name for the number of long-lived gnuplot processes.
+     */
+    public static final String GNUPLOT_POOL_SIZE = "gnuplotPoolSize";
+
+    /**
+     * Property name for the maximum time (seconds) a gnuplot graph can take.
+     */
+    public static final String GNUPLOT_TIMEOUT = "gnuplotTimeout";
+
+    /**
+     * Property name for the root folder of the local SDS archive.
+     */
+    public static final String SDS_ARCHIVE = "sdsArchive";
+
+    /**
+     * Property name for the disk budget (MB) of the raw waveform cache.
+     */
+    public static final String CACHE_SIZE = "cacheSize";
+
+    /**
+     * Property name for the time (seconds) after its end before a day is
+     * cached as complete.
+     */
+    public static final String CACHE_LATENCY = "cacheLatency";
+
+    /**
+     * Property name for the number of query traces kept in memory.
+     */
+    public static final String TRACE_BUFFER_SIZE = "traceBufferSize";
+
+    /**
+     * Property names for the number of decimals written to each text output
+     * file.
+     */
+    public static final String RSAM_DECIMALS = "rsamDecimals";
+    public static final String SSAM_DECIMALS = "ssamDecimals";
+    public static final String AVERAGE_SSAM_DECIMALS = "averageSsamDecimals";
+    public static final String MAX_FREQS_DECIMALS = "maxFreqsDecimals";
+
     /**
      * Name for the configuration option serviceTimeout.
      */
@@ -131,6 +225,16 @@ public abstract class Names {
     public static final String GRAPH_FORMAT = "graphFormat";
     public static final String GRAPH_FORMAT_SVG = "svg";
     public static final String GRAPH_FORMAT_PNG = "png";
+    public static final String OUTPUT_FORMAT = "outputFormat";
+    public static final String OUTPUT_FORMAT_TEXT = "text";
+    public static final String OUTPUT_FORMAT_BINARY = "binary";
+    public static final String PLOTTER = "plotter";
+    public static final String PLOTTER_GNUPLOT = "gnuplot";
+    public static final String PLOTTER_JAVA = "java";
+    public static final String PNG_DEFLATE_LEVEL = "pngDeflateLevel";
+    public static final String AVERAGING = "averaging";
+    public static final String AVERAGING_DAYS = "days";
+    public static final String AVERAGING_WIDTH = "width";
     public static final String GRAPH_WIDTH = "graphWidth";
     public static final String GRAPH_HEIGHT = "graphHeight";
     public static final String WEB_QUERY = "webQuery";
@@ -145,6 +249,9 @@ public abstract class Names {
     public static final String RSAM_FILENAME_SUFIX = "rsam.csv";
     public static final String AVERAGE_SSAM_FILENAME_SUFIX = "average_ssam.csv";
     public static final String MAX_FREQ_FILENAME_SUFIX = "max_freqs.csv";
+    public static final String SSAM_BINARY_FILENAME_SUFIX = "ssam.bin";
+    public static final String RSAM_BINARY_FILENAME_SUFIX = "rsam.bin";
+    public static final String AVERAGE_SSAM_BINARY_FILENAME_SUFIX = "average_ssam.bin";
 
     public static final String GRAPH = "graph";
 
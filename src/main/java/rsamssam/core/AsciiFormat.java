@@ -0,0 +1,162 @@
+package rsamssam.core;
+
+/**
+ * Allocation free formatting of numbers and timestamps as ASCII bytes, used
+ * for the text output files.
+ * <p>
+ * Decimals are written with a fixed number of digits after the point (rounded
+ * half up), which is much faster than the shortest representation written by
+ * Double.toString and gives smaller files. Timestamps are written in UTC as
+ * yyyy-MM-dd HH:mm:ss.SSS, which gnuplot reads with the %Y-%m-%d %H:%M:%S time
+ * format.
+ *
+ * @author Julian Peña.
+ */
+public final class AsciiFormat {
+
+    /**
+     * Maximum number of bytes written by any of the format methods.
+     */
+    public static final int MAX_LENGTH = 32;
+
+    /**
+     * Maximum number of decimals supported.
+     */
+    public static final int MAX_DECIMALS = 9;
+
+    private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L,
+        100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+
+    /**
+     * Values (already scaled) up to this one are formatted, bigger ones are
+     * left to Double.toString.
+     */
+    private static final double MAX_SCALED = 1e17;
+
+    private static final byte[] NAN = {'N', 'a', 'N'};
+
+    private static final byte[] INFINITY = {'I', 'n', 'f', 'i', 'n', 'i', 't', 'y'};
+
+    private static final long MILLIS_PER_DAY = 86400000L;
+
+    private AsciiFormat() {
+    }
+
+    /**
+     * Writes a decimal with the given number of digits after the point.
+     *
+     * @param value
+     * @param decimals From 0 to MAX_DECIMALS.
+     * @param out The destination, at least MAX_LENGTH bytes from pos.
+     * @param pos Where to start writing.
+     * @return The position after the last byte written, or -1 if the value
+     * can't be written with this precision (decimals out of range or a value
+     * too big) and nothing was written.
+     */
+    public static int formatDecimal(double value, int decimals, byte[] out, int pos) {
+
+        if (decimals < 0 || decimals > MAX_DECIMALS) {
+            return -1;
+        }
+
+        if (Double.isNaN(value)) {
+            return put(NAN, out, pos);
+        }
+
+        if (Double.isInfinite(value)) {
+            if (value < 0) {
+                out[pos++] = '-';
+            }
+            return put(INFINITY, out, pos);
+        }
+
+        double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+        if (scaled >= MAX_SCALED) {
+            return -1;
+        }
+
+        long digits = (long) (scaled + 0.5);
+        if (value < 0 && digits != 0) {
+            out[pos++] = '-';
+        }
+
+        long integer = digits / POWERS_OF_TEN[decimals];
+        long fraction = digits % POWERS_OF_TEN[decimals];
+
+        pos = putLong(integer, out, pos);
+        if (decimals > 0) {
+            out[pos++] = '.';
+            pos = putPadded(fraction, decimals, out, pos);
+        }
+
+        return pos;
+    }
+
+    /**
+     * Writes a UTC timestamp as yyyy-MM-dd HH:mm:ss.SSS (23 bytes), years
+     * must be between 0 and 9999.
+     *
+     * @param millis Time since epoch.
+     * @param out The destination, at least MAX_LENGTH bytes from pos.
+     * @param pos Where to start writing.
+     * @return The position after the last byte written.
+     */
+    public static int formatTimestamp(long millis, byte[] out, int pos) {
+
+        long days = Math.floorDiv(millis, MILLIS_PER_DAY);
+        long ofDay = Math.floorMod(millis, MILLIS_PER_DAY);
+
+        // civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        long day = doy - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+
+        pos = putPadded(year, 4, out, pos);
+        out[pos++] = '-';
+        pos = putPadded(month, 2, out, pos);
+        out[pos++] = '-';
+        pos = putPadded(day, 2, out, pos);
+        out[pos++] = ' ';
+        pos = putPadded(ofDay / 3600000, 2, out, pos);
+        out[pos++] = ':';
+        pos = putPadded(ofDay / 60000 % 60, 2, out, pos);
+        out[pos++] = ':';
+        pos = putPadded(ofDay / 1000 % 60, 2, out, pos);
+        out[pos++] = '.';
+        return putPadded(ofDay % 1000, 3, out, pos);
+    }
+
+    private static int put(byte[] bytes, byte[] out, int pos) {
+        System.arraycopy(bytes, 0, out, pos, bytes.length);
+        return pos + bytes.length;
+    }
+
+    /**
+     * Writes a non negative long.
+     */
+    private static int putLong(long value, byte[] out, int pos) {
+        int length = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            length++;
+        }
+        return putPadded(value, length, out, pos);
+    }
+
+    /**
+     * Writes the last digits of a non negative long, left padded with zeros.
+     */
+    private static int putPadded(long value, int digits, byte[] out, int pos) {
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            out[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return pos + digits;
+    }
+
+}
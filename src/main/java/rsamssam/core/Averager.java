@@ -1,19 +1,26 @@
 package rsamssam.core;
 
+import java.util.Arrays;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.events.AveragingRoundEvent;
 import rsamssam.query.Query;
 
 /**
  * The Averager function is to reduce the total amount of results according to a
  * calculated averaging factor.
  * <p>
- * Currently, this averaging factor is just the amount of days processed, so, a
+ * By default, this averaging factor is just the amount of days processed, so, a
  * five day rsam-ssam graph will produce the same amount of results than a
- * single day.
+ * single day (see Query.getAveraging).
+ * <p>
+ * The factor can be fractional, then a round can take just a part of a result
+ * (and the rest of it goes to the next round), so every result is averaged
+ * with the weight of the time it spends in each round.
  * <p>
  * Results should be added to an averager instance, and it will automatically
  * schedule averaging rounds as results come in.
@@ -40,7 +47,13 @@ public class Averager {
     /**
      * How many results are reduced to just one after averaging them?.
      */
-    private final long averagingFactor;
+    private final double averagingFactor;
+
+    /**
+     * Weights below this are ignored, for rounding errors of fractional
+     * averaging factors.
+     */
+    private static final double EPSILON = 1e-9;
 
     /**
      * Incoming queue for results rsam-ssam.
@@ -57,6 +70,28 @@ public class Averager {
      */
     private final double[] averageSsam;
 
+    /**
+     * Weighted sums of the current round.
+     */
+    private double roundRsam;
+
+    private final double[] roundSpectra;
+
+    /**
+     * Weight (results) accumulated in the current round.
+     */
+    private double roundWeight = 0;
+
+    /**
+     * Results in the current round (including partial ones).
+     */
+    private int roundResults = 0;
+
+    /**
+     * Part of the oldest result in the input queue already averaged.
+     */
+    private double headUsed = 0;
+
     /**
      * Are there any resuls pending of averaging?.
      */
@@ -69,17 +104,21 @@ public class Averager {
     private final int cutoffWindow;
 
     /**
-     * Total number of results. This value is only calculated/relevant when the
-     * query only spans over a day or less, in which case we pad with results if
-     * needed to complete the day.
+     * Total number of (averaged) results. This value is only calculated/relevant
+     * when the query only spans over a day or less, in which case we pad with
+     * results if needed to complete the day.
      */
     private int resultsPerDay;
 
     /**
-     * How many results have been retrieved from this averager?. This value is
-     * only relevant for single day queries.
+     * How many averaged results have been made so far?.
      */
-    private int retrieved = 0;
+    private int produced = 0;
+
+    /**
+     * Id of the query being averaged (for profiling events).
+     */
+    private final String queryId;
 
     /**
      * Our logger.
@@ -88,6 +127,7 @@ public class Averager {
 
     public Averager(Query query, int sps) {
 
+        queryId = query.getId();
         windowSize = query.getWindowSize();
         cutoffWindow = query.getCutoffWindowSize().get();
         averagingFactor = query.getAveraging();
@@ -96,83 +136,95 @@ public class Averager {
         input = new LinkedBlockingQueue<>();
         output = new LinkedBlockingQueue<>();
 
+        Metrics.QUEUE_DEPTH.track("averager", input);
+
         averageSsam = new double[cutoffWindow];
+        roundSpectra = new double[cutoffWindow];
 
         LOG.info("{} Averaging factor: {}", query.getId(), averagingFactor);
 
-        if (averagingFactor == 1) {
+        if (query.durationInDays() <= 1) {
             // if the day is not complete, how many results we should pad?
             // no leap seconds support, don't actually matter here ...
-            resultsPerDay = (int) Math.ceil(86400d * sps / windowSize);
-            LOG.info("{} {} bins expected", query.getId(), resultsPerDay);
+            resultsPerDay = (int) Math.ceil(86400d * sps / windowSize
+                    / averagingFactor - EPSILON);
+            LOG.info("{} {} results expected", query.getId(), resultsPerDay);
         }
     }
 
     /**
      * Adds a Result record to the internal queue, if the amount of results in
-     * the queue is equal or greater than the averaging factor then an averaging
-     * round is triggered.
+     * the queue is enough for completing the current round (the averaging
+     * factor) then an averaging round is triggered.
      *
      * @param result
      */
     public void addResult(Result result) {
         
         input.add(result);
-        
-        if (averagingFactor == 1) {
-            // this counter will helps later determine if padding is needed to
-            // complete the single day graph
-            resultsPerDay--;
-        }
 
-        if (input.size() >= averagingFactor) {
+        while (input.size() - headUsed >= averagingFactor - roundWeight - EPSILON) {
             average();
         }
     }
 
     /**
      * Performs a round of averaging and produces a single result from a group
-     * of results.
+     * of results. If there are not enough results for a whole round, the ones
+     * available are kept in the round and no result is produced.
      */
     private void average() {
 
-        double rsam = 0;
-        double[] spectra = new double[cutoffWindow];
+        AveragingRoundEvent event = new AveragingRoundEvent();
+        event.begin();
 
-        int count = 0;                      // well ... a counter
         Result result;                      // current result
 
-        while (count < averagingFactor) {
+        while (averagingFactor - roundWeight > EPSILON) {
 
-            result = input.poll();
+            result = input.peek();
 
             // no more elements
             if (result == null) {
-                break;
+                return;
             }
 
+            // how much of this result goes into this round?
+            double weight = Math.min(1 - headUsed, averagingFactor - roundWeight);
+
             // the processor uses NaN in rsam as a indicator that this bin
             // should be "discarded" as it is probable a data gap.
             if (!Double.isNaN(result.rsam())) {
-                rsam += result.rsam();
+                roundRsam += weight * result.rsam();
             }
 
             // if the bin is to be "discarded", we choose here just to add the
             // unitary array that comes as spectra ... we'll see how this goes
             for (int i = 0; i < cutoffWindow; i++) {
-                spectra[i] += result.spectra()[i];
+                roundSpectra[i] += weight * result.spectra()[i];
+            }
+
+            roundWeight += weight;
+            headUsed += weight;
+
+            if (headUsed == weight) {
+                roundResults++;
             }
 
-            count++;
+            if (1 - headUsed < EPSILON) {
+                input.poll();
+                headUsed = 0;
+            }
         }
 
-        rsam = rsam / averagingFactor;
+        double rsam = roundRsam / averagingFactor;
 
+        double[] spectra = new double[cutoffWindow];
         double[] maxFreq = new double[2];
 
         for (int i = 0; i < cutoffWindow; i++) {
 
-            spectra[i] = spectra[i] / averagingFactor;
+            spectra[i] = roundSpectra[i] / averagingFactor;
             
             averageSsam[i] += spectra[i];
 
@@ -184,6 +236,22 @@ public class Averager {
         }
 
         output.add(new Result(rsam, spectra, maxFreq));
+        produced++;
+
+        int count = roundResults;
+        roundRsam = 0;
+        Arrays.fill(roundSpectra, 0);
+        roundWeight = 0;
+        // a result split between rounds counts in both
+        roundResults = headUsed > 0 ? 1 : 0;
+
+        if (event.shouldCommit()) {
+            event.queryId = queryId;
+            event.results = count;
+            event.averagingFactor = averagingFactor;
+            event.spectraSize = cutoffWindow;
+            event.commit();
+        }
     }
 
     /**
@@ -197,12 +265,23 @@ public class Averager {
      * @throws InterruptedException
      */
     public Result getResult() throws InterruptedException {
-        retrieved++;
         return output.take();
     }
 
     /**
-     * Calculates and returns the average SSAM.
+     * Returns and removes the oldest result from the internal queue, or null
+     * if there are no averaged results yet. This method never blocks.
+     *
+     * @return
+     */
+    public Result pollResult() {
+        return output.poll();
+    }
+
+    /**
+     * Calculates and returns the average SSAM. The returned array is a new
+     * normalized copy, so this method can be called more than once (ex. while
+     * results are still being added).
      *
      * @return
      */
@@ -215,19 +294,21 @@ public class Averager {
                 maxEnergy = averageSsam[i];
             }
         }
+
+        double[] normalized = new double[averageSsam.length];
         
         // now let's normalize the average spectra
         for (int i = 0; i < averageSsam.length; i++) {
             
             // this is the legit average, however ...
-            // averageSsam[i] = averageSsam[i] / maxEnergy;
+            // normalized[i] = averageSsam[i] / maxEnergy;
             
             // doing it this way we accentuate a little bit more the differences
             // fot the human eye
-            averageSsam[i] = Math.pow(50, averageSsam[i] / maxEnergy);
+            normalized[i] = Math.pow(50, averageSsam[i] / maxEnergy);
         }
 
-        return averageSsam;
+        return normalized;
     }
 
     /**
@@ -237,15 +318,7 @@ public class Averager {
      */
     public boolean hasResults() {
 
-        if (resultsPending) {
-            return true;
-        }
-
-        if (averagingFactor == 1 & resultsPerDay > 0) {
-            return true;
-        }
-
-        return !output.isEmpty();
+        return resultsPending || !output.isEmpty();
     }
 
     /**
@@ -257,28 +330,8 @@ public class Averager {
      */
     public void complete() {
 
-        if (averagingFactor > 1) {
-
-            if (input.isEmpty()) {
-                resultsPending = false;
-                return;
-            }
-
-            // do we need to pad to complete the last round of averaging?
-            if (input.size() < averagingFactor) {
-                var r = new Result(Double.NaN, new double[cutoffWindow], null);
-                int padd = (int) averagingFactor - input.size();
-                for (int i = 0; i < padd; i++) {
-                    input.add(r);
-                }
-                average();
-            }
-        }
-
         // only in the case of 1 day queries, we padd to complete 24 hours
-        if (averagingFactor == 1 && resultsPerDay > 0) {
-
-            int pad = resultsPerDay - retrieved;
+        if (produced < resultsPerDay) {
 
             double rsam = Double.NaN;
             double[] ssam = new double[cutoffWindow];
@@ -286,13 +339,27 @@ public class Averager {
 
             Result result = new Result(rsam, ssam, maxFreq);
 
-            // how may result we have to add?
-            LOG.info("Will add {} results to complete the day", resultsPerDay);
-            while (pad > 0) {
+            LOG.info("Will add {} results to complete the day",
+                    resultsPerDay - produced);
+            while (produced < resultsPerDay) {
                 addResult(result);
-                pad--;
             }
+
+        } else if (averagingFactor > 1
+                && (input.size() - headUsed >= EPSILON || roundWeight >= EPSILON)) {
+
+            // pad to complete the last round of averaging
+            var r = new Result(Double.NaN, new double[cutoffWindow], null);
+            while (input.size() - headUsed < averagingFactor - roundWeight - EPSILON) {
+                input.add(r);
+            }
+            average();
         }
+
+        // what is left of the padding is discarded
+        input.clear();
+        headUsed = 0;
+
         resultsPending = false;
     }
 
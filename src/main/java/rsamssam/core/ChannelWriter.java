@@ -0,0 +1,313 @@
+package rsamssam.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Buffered writer on top of a FileChannel, for text and binary files. Only
+ * ASCII text is supported (numbers, timestamps, separators), every char is
+ * written as a single byte. Binary values are written in the native byte
+ * order (as gnuplot expects them).
+ * <p>
+ * Files are written atomically: bytes go to a temporary file in the same
+ * folder, which replaces the file with an atomic move once closed. Readers
+ * (the web server, gnuplot) see either the previous file or the complete new
+ * one, never a half written file. discard drops the temporary file instead.
+ *
+ * @author Julian Peña.
+ */
+public class ChannelWriter implements Closeable {
+
+    /**
+     * Default buffer size.
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer buffer;
+
+    /**
+     * The file being written.
+     */
+    private final Path path;
+
+    /**
+     * Where bytes are written until closed.
+     */
+    private final Path temp;
+
+    private boolean closed = false;
+
+    /**
+     * Opens the given file for writing, the file is replaced once closed.
+     *
+     * @param path
+     * @throws IOException
+     */
+    public ChannelWriter(Path path) throws IOException {
+        this(path, BUFFER_SIZE);
+    }
+
+    public ChannelWriter(Path path, int bufferSize) throws IOException {
+        this.path = path;
+        temp = tempFor(path);
+        channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocate(bufferSize).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Writes the given bytes to a file atomically.
+     *
+     * @param path
+     * @param bytes
+     * @throws IOException
+     */
+    public static void write(Path path, byte[] bytes) throws IOException {
+        try (var writer = new ChannelWriter(path, 0)) {
+            writer.put(bytes);
+        }
+    }
+
+    /**
+     * Creates an empty temporary file for the given one, in the same folder
+     * (so it can be moved atomically). Unlike Files.createTempFile, the file
+     * gets the default permissions, as the file it replaces would.
+     *
+     * @param path
+     * @return
+     * @throws IOException
+     */
+    public static Path tempFor(Path path) throws IOException {
+        Path folder = path.toAbsolutePath().getParent();
+        while (true) {
+            Path temp = folder.resolve("." + path.getFileName() + "-"
+                    + Long.toUnsignedString(ThreadLocalRandom.current().nextLong())
+                    + ".tmp");
+            try {
+                return Files.createFile(temp);
+            } catch (FileAlreadyExistsException ex) {
+                // unlikely, try another name
+            }
+        }
+    }
+
+    /**
+     * Replaces a file with its temporary file, atomically if the file system
+     * supports it.
+     *
+     * @param temp
+     * @param path
+     * @throws IOException
+     */
+    public static void publish(Path temp, Path path) throws IOException {
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Appends a char.
+     *
+     * @param c
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter append(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+        return this;
+    }
+
+    /**
+     * Appends a String.
+     *
+     * @param s
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter append(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a double, formatted as Double.toString does.
+     *
+     * @param value
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter append(double value) throws IOException {
+        return append(Double.toString(value));
+    }
+
+    /**
+     * Appends a double with the given number of decimals, see AsciiFormat.
+     * Negative decimals (or values too big) are formatted as Double.toString
+     * does.
+     *
+     * @param value
+     * @param decimals
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter append(double value, int decimals) throws IOException {
+        reserve();
+        int end = AsciiFormat.formatDecimal(value, decimals, buffer.array(),
+                buffer.arrayOffset() + buffer.position());
+        if (end < 0) {
+            return append(value);
+        }
+        buffer.position(end - buffer.arrayOffset());
+        return this;
+    }
+
+    /**
+     * Appends a UTC timestamp, see AsciiFormat.
+     *
+     * @param millis
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter appendTimestamp(long millis) throws IOException {
+        reserve();
+        int end = AsciiFormat.formatTimestamp(millis, buffer.array(),
+                buffer.arrayOffset() + buffer.position());
+        buffer.position(end - buffer.arrayOffset());
+        return this;
+    }
+
+    /**
+     * Writes a float (4 bytes).
+     *
+     * @param value
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter putFloat(float value) throws IOException {
+        if (buffer.remaining() < Float.BYTES) {
+            flush();
+        }
+        buffer.putFloat(value);
+        return this;
+    }
+
+    /**
+     * Writes a double (8 bytes).
+     *
+     * @param value
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter putDouble(double value) throws IOException {
+        if (buffer.remaining() < Double.BYTES) {
+            flush();
+        }
+        buffer.putDouble(value);
+        return this;
+    }
+
+    /**
+     * Writes the given bytes.
+     *
+     * @param bytes
+     * @return A reference to self.
+     * @throws IOException
+     */
+    public ChannelWriter put(byte[] bytes) throws IOException {
+        if (bytes.length <= buffer.remaining()) {
+            buffer.put(bytes);
+            return this;
+        }
+        flush();
+        ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        return this;
+    }
+
+    /**
+     * Makes room in the buffer for AsciiFormat.
+     *
+     * @throws IOException
+     */
+    private void reserve() throws IOException {
+        if (buffer.remaining() < AsciiFormat.MAX_LENGTH) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the channel.
+     *
+     * @throws IOException
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes and replaces the file with the bytes written. Calling this
+     * method more than once (or after discard) has no effect.
+     *
+     * @throws IOException If writing fails, the file is left untouched.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            flush();
+            channel.close();
+            publish(temp, path);
+        } catch (IOException ex) {
+            channel.close();
+            Files.deleteIfExists(temp);
+            throw ex;
+        }
+    }
+
+    /**
+     * Closes without replacing the file, the bytes written are dropped.
+     * Calling this method once closed has no effect.
+     *
+     * @throws IOException
+     */
+    public void discard() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+}
@@ -15,6 +15,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rsamssam.datasources.SamplesProvider;
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.events.RecordDecodedEvent;
 import rsamssam.query.Query;
 
 /**
@@ -83,6 +85,11 @@ public class Decompressor implements SamplesProvider {
      */
     private int gap;
 
+    /**
+     * Number of data gaps filled so far.
+     */
+    private int gaps = 0;
+
     /**
      * Input queue for DataRecord objects.
      */
@@ -106,6 +113,8 @@ public class Decompressor implements SamplesProvider {
 
         input = new LinkedBlockingDeque<>();
         output = new LinkedBlockingQueue<>();
+
+        Metrics.QUEUE_DEPTH.track("decompressor", input);
     }
 
     /**
@@ -197,6 +206,7 @@ public class Decompressor implements SamplesProvider {
                     nextStart = packetStart;
 
                     // lets fill this gap
+                    gaps++;
                     gap = countSamples(from, packetStart, sps);
                     gap--;
                     if (gap > 1) {
@@ -215,6 +225,7 @@ public class Decompressor implements SamplesProvider {
             } else if (nextStart.before(dataRecord.getStartBtime())) {
 
                 // there is a gap, lets fill it with zeros
+                gaps++;
                 gap = countSamples(nextStart, dataRecord.getStartBtime(), sps);
                 gap--;
                 if (gap > 1) {
@@ -313,13 +324,28 @@ public class Decompressor implements SamplesProvider {
      * or zeros if the DataRecord couldn't be decompressed.
      */
     private double[] decompress(DataRecord dataRecord) {
+
+        RecordDecodedEvent event = new RecordDecodedEvent();
+        event.begin();
+
+        double[] samples;
         try {
-            return dataRecord.decompress().getAsDouble();
+            samples = dataRecord.decompress().getAsDouble();
         } catch (SeedFormatException | CodecException ex) {
             LOG.error("{} Decompression failure", query.getId());
             LOG.error(ex.getMessage());
-            return new double[dataRecord.getHeader().getNumSamples()];
+            samples = new double[dataRecord.getHeader().getNumSamples()];
+            event.failed = true;
+        }
+
+        if (event.shouldCommit()) {
+            event.queryId = query.getId();
+            event.samples = samples.length;
+            event.recordSize = dataRecord.getRecordSize();
+            event.commit();
         }
+
+        return samples;
     }
 
     /**
@@ -348,4 +374,13 @@ public class Decompressor implements SamplesProvider {
         return input.size() < 20000;
     }
 
+    /**
+     * Returns the number of data gaps filled so far (with zeros).
+     *
+     * @return
+     */
+    public int getGaps() {
+        return gaps;
+    }
+
 }
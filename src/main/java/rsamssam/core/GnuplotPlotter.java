@@ -0,0 +1,307 @@
+package rsamssam.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.config.Names;
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.events.GnuplotEvent;
+import rsamssam.query.Query;
+
+/**
+ * This plotter uses Gnuplot for making the rsam-ssam graphs. Gnuplot MUST be
+ * available in the underlaying OS, or, ideally, be packaged along this
+ * application inside a Docker container. Gnuplot 5 or newer should be fine.
+ * <p>
+ * Results are read by gnuplot from the files written by ResultsWriter, so
+ * addResult and addAverageSsam are ignored.
+ * <p>
+ * Graphs are made by the long-lived processes of the GnuplotPool, unless its
+ * size is 0, in which case a new bash + gnuplot process is started for every
+ * graph.
+ *
+ * @author Julian Peña.
+ */
+public class GnuplotPlotter implements Plotter {
+
+    /**
+     * Graph width.
+     */
+    private final int width;
+
+    /**
+     * Graph height.
+     */
+    private final int height;
+
+    /**
+     * This plotter's query.
+     */
+    private final Query query;
+
+    /**
+     * Folder with the result files, where the graphs are written.
+     */
+    private final Path folder;
+
+    /**
+     * Folder with the gnuplot scripts.
+     */
+    private final Path scripts;
+
+    /**
+     * Pool running the graphs, null for a new process per graph.
+     */
+    private final GnuplotPool pool;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("Plotter");
+
+    // Gnuplot commands and parameter names
+    private static final String BASH = "/bin/bash";
+    private static final String BASH_ARG = "-c";
+
+    private static final String GNUPLOT = "gnuplot -e";
+    private static final String GNUPLOT_ARGS = "title ='#title'; "
+            + "plotname='#plotname'; "
+            + "fftWindow='#fftWindow'; "
+            + "cutoff='#cutoff'; "
+            + "averagingFactor='#averagingFactor'; "
+            + "maxPower='#maxPower'; "
+            + "broadbandScale='#broadbandScale'; "
+            + "binary='#binary'; "
+            + "imageWidth='#imageWidth'; imageHeight='#imageHeight'; "
+            + "ssam='#ssam'; average_ssam='#average_ssam'; "
+            + "rsam='#rsam'; maxFreqs='#maxFreqs'; "
+            + "maxFreqsOutput='#maxFreqsOutput'; "
+            + "output='#output'";
+
+    private static final String SCRIPTS_PATH = "../../../../gnuplot_scripts/";
+    private static final String SVG_SCRIPT = "plot_svg";
+    private static final String PNG_SCRIPT = "plot_png";
+
+    /**
+     * Initializes this plotter instance.
+     *
+     * @param query
+     */
+    public GnuplotPlotter(Query query) {
+        this(Path.of(query.getOutputPath()),
+                Path.of(query.getOutputPath()).resolve(SCRIPTS_PATH),
+                Config.getGnuplotPoolSize() > 0 ? GnuplotPool.getInstance() : null,
+                query);
+    }
+
+    /**
+     * Initializes a plotter for the given folders.
+     *
+     * @param folder Folder with the result files, where graphs are written.
+     * @param scripts Folder with the gnuplot scripts.
+     * @param pool Pool running the graphs, null for a new process per graph.
+     * @param query
+     */
+    GnuplotPlotter(Path folder, Path scripts, GnuplotPool pool, Query query) {
+
+        this.query = query;
+        this.folder = folder.toAbsolutePath();
+        this.scripts = scripts.toAbsolutePath().normalize();
+        this.pool = pool;
+
+        if (query.isWebQuery()) {
+            width = query.getGraphWidth();
+            height = query.getGraphHeight();
+        } else {
+            width = Config.getGraphWidth();
+            height = Config.getGraphHeight();
+        }
+    }
+
+    /**
+     * Calls gnuplot in order to create the graph for the given query. This is a
+     * blocking and potentially long method that must be run on a separate
+     * thread.
+     *
+     * @param query A Query object.
+     * @return True if the graph was created, false otherwise.
+     */
+    @Override
+    public Boolean plot(Query query) {
+
+        GnuplotEvent event = new GnuplotEvent();
+        int resultCode = -1;
+
+        // gnuplot writes temporary files, moved over the graphs once done
+        Path output = folder.resolve(query.getGraphFileName());
+        Path maxFreqsOutput = folder.resolve(query.getMaxFreqsGraphFileName());
+        Path outputTemp = null;
+        Path maxFreqsTemp = null;
+
+        try {
+
+            outputTemp = ChannelWriter.tempFor(output);
+            maxFreqsTemp = ChannelWriter.tempFor(maxFreqsOutput);
+            String args = getGnuplotArgs(outputTemp.getFileName().toString(),
+                    maxFreqsTemp.getFileName().toString());
+
+            LOG.info("{} Calling gnuplot ...", query.getId());
+
+            long start = System.nanoTime();
+            event.begin();
+
+            if (pool != null) {
+                resultCode = pool.run(getGnuplotJob(args)) ? 0 : 1;
+            } else {
+                var processBuilder = new ProcessBuilder(BASH, BASH_ARG,
+                        getGnuplotCommand(args));
+                processBuilder.directory(folder.toFile());
+                processBuilder.inheritIO();
+
+                Process gnuplot = processBuilder.start();
+                resultCode = gnuplot.waitFor();
+            }
+
+            event.end();
+            Metrics.GNUPLOT_DURATION.observe(start);
+
+            if (resultCode == 0) {
+                ChannelWriter.publish(outputTemp, output);
+                ChannelWriter.publish(maxFreqsTemp, maxFreqsOutput);
+                LOG.info("{} {} done", query.getId(), query.getGraphFileName());
+            } else {
+                LOG.error("{} Gnuplot exit code: {}", query.getId(), resultCode);
+            }
+
+        } catch (IOException | InterruptedException ex) {
+            LOG.error("{} Failed to create graph with gnuplot", query.getId());
+            LOG.error(ex.getMessage());
+            resultCode = -1;
+        } finally {
+            deleteTemp(outputTemp);
+            deleteTemp(maxFreqsTemp);
+        }
+
+        if (event.shouldCommit()) {
+            event.queryId = query.getId();
+            event.graph = query.getGraphFileName();
+            event.width = width;
+            event.height = height;
+            event.exitCode = resultCode;
+            event.commit();
+        }
+
+        return resultCode == 0;
+    }
+
+    /**
+     * Deletes a temporary graph left behind (not published).
+     *
+     * @param temp
+     */
+    private void deleteTemp(Path temp) {
+        if (temp == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(temp);
+        } catch (IOException ex) {
+            LOG.warn("{} Can't delete {}", query.getId(), temp);
+        }
+    }
+
+    /**
+     * Makes the actual gnuplot command with all it's arguments.
+     *
+     * @param args See getGnuplotArgs.
+     * @return A String with the gnuplot command.
+     */
+    private String getGnuplotCommand(String args) {
+        return GNUPLOT + " \"" + args + "\" '"
+                + scripts.resolve(getScript()).toString().replace("'", "'\\''") + "'";
+    }
+
+    /**
+     * Makes the commands for a pooled gnuplot process: same arguments and
+     * script as getGnuplotCommand, run from the query's output folder.
+     *
+     * @param args See getGnuplotArgs.
+     * @return
+     */
+    private String getGnuplotJob(String args) {
+        return "cd " + quote(folder.toString()) + "\n"
+                + args + "\n"
+                + "load " + quote(scripts.resolve(getScript()).toString());
+    }
+
+    /**
+     * Makes the gnuplot arguments (variables). Almost all argument names are
+     * self explanatory. ssam, average_ssam and rsam are the paths to the files
+     * with the corresponding results, output and maxFreqsOutput are the names
+     * of the files for the resulting graphs.
+     *
+     * @param output
+     * @param maxFreqsOutput
+     * @return
+     */
+    private String getGnuplotArgs(String output, String maxFreqsOutput) {
+
+        String args = GNUPLOT_ARGS
+                .replaceFirst("#output", output)
+                .replaceFirst("#maxFreqsOutput", maxFreqsOutput)
+                .replaceFirst("#plotname", query.getNSCL())
+                .replaceFirst("#imageWidth", width + "")
+                .replaceFirst("#imageHeight", height + "")
+                .replaceFirst("#title", query.getGraphTitle())
+                .replaceFirst("#ssam", query.getSSAMFileName())
+                .replaceFirst("#average_ssam", query.getAverageSSAMFileName())
+                .replaceFirst("#rsam", query.getRSAMFileName())
+                .replaceFirst("#maxFreqs", query.getMaxFreqsFileName())
+                .replaceFirst("#fftWindow", query.getCutoffWindowSize().get() + "")
+                .replaceFirst("#cutoff", query.getCutoffFrequency() + "")
+                .replaceFirst("#averagingFactor", query.getAveraging() + "")
+                .replaceFirst("#maxPower", query.getMaxPower() + "")
+                .replaceFirst("#binary", query.isBinaryOutput() + "");
+
+        // if the station is broadband then activate the log scale for the
+        // average ssam graph. Are 'H' and 'B' prefixes a standard  indicator of
+        // a broadband sensor? ... probably not ... anyway
+        if (query.getC().startsWith("H") || query.getC().startsWith("B")) {
+            args = args.replaceFirst("#broadbandScale", "true");
+        } else {
+            args = args.replaceFirst("#broadbandScale", "false");
+        }
+
+        return args;
+    }
+
+    /**
+     * Returns the script for the query's graph format.
+     *
+     * @return
+     */
+    private String getScript() {
+        return switch (query.getGraphFormat()) {
+            case Names.GRAPH_FORMAT_SVG ->
+                SVG_SCRIPT;
+            default ->
+                PNG_SCRIPT;
+        };
+    }
+
+    /**
+     * Quotes a string for gnuplot (single quotes, doubled inside).
+     *
+     * @param value
+     * @return
+     */
+    private static String quote(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+
+}
@@ -0,0 +1,190 @@
+package rsamssam.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+
+/**
+ * Keeps a small pool of long-lived gnuplot processes, so graphs don't pay for
+ * starting bash and gnuplot every time.
+ * <p>
+ * Jobs are sent to an idle worker through stdin, gnuplot is reset before every
+ * job (reset session with gnuplot 5.2 or newer, see GnuplotWorker for older
+ * versions). Workers are started when needed and checked before being used:
+ * dead workers are replaced and workers idle for a while must answer a ping
+ * first. A worker that crashes or takes too long is killed and replaced by the
+ * next job, and so are old gnuplot workers after an error.
+ *
+ * @author Julian Peña.
+ */
+public class GnuplotPool {
+
+    /**
+     * Workers idle for longer than this (millis) are pinged before being used.
+     */
+    private static final long HEALTH_CHECK_IDLE = 30000;
+
+    /**
+     * Maximum time (millis) for starting a worker or answering a ping.
+     */
+    private static final long PING_TIMEOUT = 5000;
+
+    /**
+     * The pool shared by all gnuplot graphs.
+     */
+    private static GnuplotPool instance;
+
+    /**
+     * Command for starting gnuplot.
+     */
+    private final List<String> command;
+
+    /**
+     * Maximum number of workers.
+     */
+    private final int size;
+
+    /**
+     * Maximum time for a single job, in millis.
+     */
+    private final long timeout;
+
+    /**
+     * Limits the number of concurrent jobs to the number of workers.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Workers waiting for a job.
+     */
+    private final ConcurrentLinkedDeque<GnuplotWorker> idle = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Number of workers started so far.
+     */
+    private final AtomicLong started = new AtomicLong();
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("GnuplotPool");
+
+    /**
+     * Returns the pool, creating it if needed.
+     *
+     * @return
+     */
+    public static synchronized GnuplotPool getInstance() {
+        if (instance == null) {
+            instance = new GnuplotPool(List.of("gnuplot"),
+                    Config.getGnuplotPoolSize(),
+                    Config.getGnuplotTimeout() * 1000L);
+        }
+        return instance;
+    }
+
+    GnuplotPool(List<String> command, int size, long timeout) {
+
+        this.command = command;
+        this.size = size;
+        this.timeout = timeout;
+
+        permits = new Semaphore(size, true);
+
+        LOG.info("Up to {} gnuplot processes", size);
+    }
+
+    /**
+     * Runs the given gnuplot commands on a worker, waiting for one to be
+     * available if needed. This is a blocking and potentially long method.
+     *
+     * @param commands
+     * @return True if gnuplot completed the commands without errors.
+     * @throws InterruptedException
+     */
+    public boolean run(String commands) throws InterruptedException {
+
+        permits.acquire();
+
+        GnuplotWorker worker = null;
+        try {
+
+            worker = getWorker();
+            boolean done = worker.run(commands, timeout);
+
+            if (!worker.isRetired()) {
+                idle.push(worker);
+                worker = null;
+            }
+
+            return done;
+
+        } catch (IOException ex) {
+            LOG.error("gnuplot worker failed, replacing it: {}", ex.getMessage());
+            return false;
+        } finally {
+            if (worker != null) {
+                worker.destroy();
+            }
+            permits.release();
+        }
+    }
+
+    /**
+     * Number of workers started so far (including the ones replaced).
+     *
+     * @return
+     */
+    public long getStarted() {
+        return started.get();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns a healthy idle worker, or a new one.
+     *
+     * @return
+     * @throws IOException If a new worker can't be started.
+     * @throws InterruptedException
+     */
+    private GnuplotWorker getWorker() throws IOException, InterruptedException {
+
+        for (GnuplotWorker worker = idle.poll(); worker != null; worker = idle.poll()) {
+            if (isHealthy(worker)) {
+                return worker;
+            }
+            LOG.warn("Unhealthy gnuplot worker, replacing it");
+            worker.destroy();
+        }
+
+        GnuplotWorker worker = new GnuplotWorker(command);
+        started.incrementAndGet();
+        if (!worker.start(PING_TIMEOUT)) {
+            worker.destroy();
+            throw new IOException("gnuplot is not answering");
+        }
+        if (worker.isLegacy()) {
+            LOG.warn("gnuplot older than {}, workers are replaced after errors",
+                    GnuplotWorker.SESSION_RESET_VERSION);
+        }
+        return worker;
+    }
+
+    private boolean isHealthy(GnuplotWorker worker) throws InterruptedException {
+        if (!worker.isAlive()) {
+            return false;
+        }
+        return worker.idleTime() < HEALTH_CHECK_IDLE || worker.ping(PING_TIMEOUT);
+    }
+
+}
@@ -0,0 +1,266 @@
+package rsamssam.core;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A long-lived gnuplot process reading commands from stdin.
+ * <p>
+ * Every job ends by printing a sentinel line to stdout (with the job number
+ * and GPVAL_ERRNO), the job is done once that line is read back. stdout is
+ * read on a dedicated thread, so waiting for the sentinel can time out.
+ * <p>
+ * gnuplot 5.2 or newer is reset with reset session and reset errors before
+ * every job. Older versions don't have those commands: they get a plain reset
+ * instead, and since GPVAL_ERRNO can't be cleared there, a worker that reports
+ * an error is retired (see isRetired).
+ *
+ * @author Julian Peña.
+ */
+class GnuplotWorker {
+
+    /**
+     * Prefix of the line printed at the end of every job.
+     */
+    static final String SENTINEL = "#rsamssam-done";
+
+    /**
+     * Prefix of the line with GPVAL_VERSION.
+     */
+    static final String VERSION = "#rsamssam-version";
+
+    /**
+     * First version with reset session and reset errors.
+     */
+    static final double SESSION_RESET_VERSION = 5.2;
+
+    /**
+     * Queued instead of a line once stdout is closed (compared by reference).
+     */
+    private static final String EOF = new String("EOF");
+
+    private final Process process;
+
+    private final Writer stdin;
+
+    /**
+     * Lines read from stdout.
+     */
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<>();
+
+    /**
+     * Number of jobs sent so far.
+     */
+    private long jobs = 0;
+
+    /**
+     * When the last job was completed.
+     */
+    private long lastUsed = System.currentTimeMillis();
+
+    /**
+     * Is this gnuplot older than SESSION_RESET_VERSION?.
+     */
+    private boolean legacy = false;
+
+    /**
+     * Did a job fail on a legacy gnuplot?.
+     */
+    private boolean retired = false;
+
+    /**
+     * Starts a new gnuplot process.
+     *
+     * @param command The gnuplot command.
+     * @throws IOException If the process can't be started.
+     */
+    GnuplotWorker(List<String> command) throws IOException {
+
+        process = new ProcessBuilder(command)
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .start();
+
+        stdin = new OutputStreamWriter(process.getOutputStream(),
+                StandardCharsets.UTF_8);
+
+        Thread reader = new Thread(() -> {
+            try (var stdout = new BufferedReader(new InputStreamReader(
+                    process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = stdout.readLine(); line != null;
+                        line = stdout.readLine()) {
+                    lines.add(line);
+                }
+            } catch (IOException ex) {
+                // process gone, reported as EOF
+            }
+            lines.add(EOF);
+        }, "gnuplot-reader-" + process.pid());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    /**
+     * Runs a job and waits until it is done. gnuplot is reset before the job
+     * and the output file is closed after it.
+     *
+     * @param commands gnuplot commands.
+     * @param timeout Maximum time to wait, in milliseconds.
+     * @return True if the job was completed without errors, false if gnuplot
+     * reported an error.
+     * @throws IOException If the process died or didn't finish in time, this
+     * worker can't be used anymore.
+     * @throws InterruptedException
+     */
+    boolean run(String commands, long timeout) throws IOException,
+            InterruptedException {
+        String reset = legacy ? "reset\n" : "reset session\nreset errors\n";
+        boolean done = send(reset + commands + "\nunset output\n", timeout,
+                null) == 0;
+        if (!done && legacy) {
+            retired = true;
+        }
+        return done;
+    }
+
+    /**
+     * Checks that gnuplot is answering and reads its version, which decides
+     * how jobs are reset. Meant to be called once, right after starting.
+     *
+     * @param timeout Maximum time to wait, in milliseconds.
+     * @return False if gnuplot is not answering.
+     * @throws InterruptedException
+     */
+    boolean start(long timeout) throws InterruptedException {
+
+        List<String> output = new ArrayList<>();
+        int errno;
+        try {
+            errno = send("set print \"-\"\nprint \"" + VERSION + " \", GPVAL_VERSION\n",
+                    timeout, output);
+        } catch (IOException ex) {
+            return false;
+        }
+
+        double version = 0;
+        for (String line : output) {
+            if (line.startsWith(VERSION)) {
+                try {
+                    version = Double.parseDouble(line.substring(VERSION.length()).trim());
+                } catch (NumberFormatException ex) {
+                    // unknown, legacy
+                }
+            }
+        }
+
+        legacy = errno != 0 || version < SESSION_RESET_VERSION;
+        return true;
+    }
+
+    /**
+     * Is this gnuplot older than 5.2?.
+     *
+     * @return
+     */
+    boolean isLegacy() {
+        return legacy;
+    }
+
+    /**
+     * Legacy workers can't clear their errors, once a job fails they must be
+     * replaced.
+     *
+     * @return
+     */
+    boolean isRetired() {
+        return retired;
+    }
+
+    /**
+     * Checks that gnuplot is still answering.
+     *
+     * @param timeout Maximum time to wait, in milliseconds.
+     * @return
+     * @throws InterruptedException
+     */
+    boolean ping(long timeout) throws InterruptedException {
+        try {
+            send("", timeout, null);
+            return true;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    boolean isAlive() {
+        return process.isAlive();
+    }
+
+    /**
+     * Milliseconds since the last job was completed.
+     *
+     * @return
+     */
+    long idleTime() {
+        return System.currentTimeMillis() - lastUsed;
+    }
+
+    /**
+     * Kills the process.
+     */
+    void destroy() {
+        process.destroyForcibly();
+    }
+
+    /**
+     * Sends the commands followed by the sentinel and waits for it.
+     *
+     * @param output Where to add the lines printed before the sentinel, if
+     * not null.
+     * @return GPVAL_ERRNO.
+     */
+    private int send(String commands, long timeout, List<String> output)
+            throws IOException, InterruptedException {
+
+        long job = ++jobs;
+        String sentinel = SENTINEL + " " + job + " ";
+
+        stdin.write(commands);
+        stdin.write("set print \"-\"\n");
+        stdin.write("print \"" + SENTINEL + " " + job + "\", GPVAL_ERRNO\n");
+        stdin.write("set print\n");
+        stdin.flush();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (true) {
+            String line = lines.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (line == null) {
+                throw new IOException("gnuplot timed out");
+            }
+            if (line == EOF) {
+                lines.add(EOF);
+                throw new IOException("gnuplot exited");
+            }
+            if (line.startsWith(sentinel)) {
+                lastUsed = System.currentTimeMillis();
+                try {
+                    return Integer.parseInt(line.substring(sentinel.length()).trim());
+                } catch (NumberFormatException ex) {
+                    return -1;
+                }
+            }
+            if (output != null) {
+                output.add(line);
+            }
+        }
+    }
+
+}
@@ -5,6 +5,9 @@ import java.util.concurrent.LinkedBlockingQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.events.BinPackagedEvent;
+
 /**
  * Packager receives samples and "package" them in arrays according to the
  * Query's window parameter.
@@ -39,6 +42,11 @@ public class Packager {
      */
     private final int CAPACITY = 1000;
 
+    /**
+     * Id of the query being packaged (for profiling events).
+     */
+    private String queryId = "";
+
     /**
      * Our logger.
      */
@@ -52,6 +60,19 @@ public class Packager {
         maxIndex = windowSize - 1;
 
         queue = new LinkedBlockingQueue<>(CAPACITY);
+
+        Metrics.QUEUE_DEPTH.track("packager", queue);
+    }
+
+    /**
+     * Sets the id of the query being packaged, used by profiling events.
+     *
+     * @param queryId
+     * @return A reference to self.
+     */
+    public Packager setQueryId(String queryId) {
+        this.queryId = queryId;
+        return this;
     }
 
     /**
@@ -98,9 +119,20 @@ public class Packager {
      * @throws InterruptedException
      */
     private void packageBin() throws InterruptedException {
+
+        BinPackagedEvent event = new BinPackagedEvent();
+        event.begin();
+
         double[] clone = new double[bin.length];
         System.arraycopy(bin, 0, clone, 0, bin.length);
         queue.put(clone);
+
+        if (event.shouldCommit()) {
+            event.queryId = queryId;
+            event.binSize = clone.length;
+            event.queueDepth = queue.size();
+            event.commit();
+        }
     }
 
     /**
@@ -126,4 +158,17 @@ public class Packager {
         }
     }
 
+    /**
+     * Returns an array of samples if there is one ready, null otherwise. This
+     * method never blocks.
+     * <p>
+     * The "poison pill" (an array of length 0) is also returned by this method
+     * once the Packager has been signaled there are no more samples.
+     *
+     * @return An array containing samples or null.
+     */
+    public double[] pollBin() {
+        return queue.poll();
+    }
+
 }
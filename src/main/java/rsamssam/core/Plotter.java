@@ -1,172 +1,90 @@
 package rsamssam.core;
 
-import java.io.File;
-import java.io.IOException;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import rsamssam.config.Config;
 import rsamssam.config.Names;
+import rsamssam.plot.Java2DPlotter;
 import rsamssam.query.Query;
 
 /**
- * This plotter uses Gnuplot for making the rsam-ssam graphs. Gnuplot MUST be
- * available in the underlaying OS, or, ideally, be packaged along this
- * application inside a Docker container. Gnuplot 5 or newer should be fine.
+ * Makes the rsam-ssam and maximum frequencies graphs of a query.
+ * <p>
+ * Results are handed to the plotter as they are written (addResult, then
+ * addAverageSsam once), plot is called once all the result files have been
+ * written. Incremental plotters can keep being used for the same query: more
+ * results are added and plot is called again, only the new results are drawn.
  *
  * @author Julian Peña.
  */
-public class Plotter {
+public interface Plotter {
 
     /**
-     * Graph width.
+     * Adds a single Result.
+     *
+     * @param result
      */
-    private final int width;
+    default void addResult(Result result) {
+    }
 
     /**
-     * Graph height.
+     * Sets the number of results the graphs are made for, results not added
+     * yet are drawn as gaps. Plotters reading the result files ignore this,
+     * those files must be padded instead.
+     *
+     * @param columns
      */
-    private final int height;
+    default void setColumns(int columns) {
+    }
 
     /**
-     * This plotter's query.
+     * Whether more results can be added after plot, for plotting again.
+     *
+     * @return
      */
-    private final Query query;
+    default boolean isIncremental() {
+        return false;
+    }
 
     /**
-     * Our logger.
+     * Whether plot reads the result files (written by ResultsWriter). Plotters
+     * that don't can plot while the files are still being written.
+     *
+     * @return
      */
-    private final Logger LOG = LoggerFactory.getLogger("Plotter");
-
-    // Gnuplot commands and parameter names
-    private static final String BASH = "/bin/bash";
-    private static final String BASH_ARG = "-c";
-
-    private static final String GNUPLOT = "gnuplot -e";
-    private static final String GNUPLOT_ARGS = "\"title ='#title'; "
-            + "plotname='#plotname'; "
-            + "fftWindow='#fftWindow'; "
-            + "cutoff='#cutoff'; "
-            + "averagingFactor='#averagingFactor'; "
-            + "maxPower='#maxPower'; "
-            + "broadbandScale='#broadbandScale'; "
-            + "imageWidth='#imageWidth'; imageHeight='#imageHeight'; "
-            + "ssam='#ssam'; average_ssam='#average_ssam'; "
-            + "rsam='#rsam'; maxFreqs='#maxFreqs'; "
-            + "maxFreqsOutput='#maxFreqsOutput'; "
-            + "output='#output'\"";
-
-    private static final String SCRIPTS_PATH = "../../../../gnuplot_scripts/";
-    private static final String SVG_SCRIPT = "plot_svg";
-    private static final String PNG_SCRIPT = "plot_png";
+    default boolean readsResultFiles() {
+        return true;
+    }
 
     /**
-     * Initializes this plotter instance.
+     * Adds the average ssam. This is a single result, so this method should be
+     * used only once.
      *
-     * @param query
+     * @param averageSsam
      */
-    public Plotter(Query query) {
-
-        this.query = query;
-
-        if (query.isWebQuery()) {
-            width = query.getGraphWidth();
-            height = query.getGraphHeight();
-        } else {
-            width = Config.getGraphWidth();
-            height = Config.getGraphHeight();
-        }
+    default void addAverageSsam(double[] averageSsam) {
     }
 
     /**
-     * Calls gnuplot in order to create the graph for the given query. This is a
-     * blocking and potentially long method that must be run on a separate
-     * thread.
+     * Makes the graphs for the given query. This is a blocking and potentially
+     * long method that must be run on a separate thread.
      *
      * @param query A Query object.
-     * @return True if the graph was created, false otherwise.
+     * @return True if the graphs were created, false otherwise.
      */
-    public Boolean plot(Query query) {
-
-        String command = getGnuplotCommand();
-
-        var processBuilder = new ProcessBuilder(BASH, BASH_ARG, command);
-        processBuilder.directory(new File(query.getOutputPath()));
-        processBuilder.inheritIO();
-
-        try {
-
-            LOG.info("{} Calling gnuplot ...", query.getId());
-
-            Process gnuplot = processBuilder.start();
-            int resultCode = gnuplot.waitFor();
-
-            if (resultCode == 0) {
-                LOG.info("{} {} done", query.getId(), query.getGraphFileName());
-                return true;
-            }
-
-            LOG.error("{} Gnuplot exit code: {}", query.getId(), resultCode);
-
-        } catch (IOException | InterruptedException ex) {
-            LOG.error("{} Failed to create graph with gnuplot", query.getId());
-            LOG.error(ex.getMessage());
-        }
-
-        return false;
-    }
+    Boolean plot(Query query);
 
     /**
-     * Makes the actual gnuplot command with all it's arguments. Almost all
-     * argument names are self explanatory. ssam, average_ssam and rsam are the
-     * paths to the files with the corresponding results, output is the name of
-     * the resulting graph.
-     *
+     * Creates the plotter configured (gnuplot or java) for the given query.
      *
-     * @param query A query object
-     * @return A String with the gnuplot command.
+     * @param query
+     * @return
      */
-    private String getGnuplotCommand() {
-
-        String args = GNUPLOT_ARGS
-                .replaceFirst("#output", query.getGraphFileName())
-                .replaceFirst("#maxFreqsOutput", query.getMaxFreqsGraphFileName())
-                .replaceFirst("#plotname", query.getNSCL())
-                .replaceFirst("#imageWidth", width + "")
-                .replaceFirst("#imageHeight", height + "")
-                .replaceFirst("#title", query.getGraphTitle())
-                .replaceFirst("#ssam", query.getSSAMFileName())
-                .replaceFirst("#average_ssam", query.getAverageSSAMFileName())
-                .replaceFirst("#rsam", query.getRSAMFileName())
-                .replaceFirst("#maxFreqs", query.getMaxFreqsFileName())
-                .replaceFirst("#fftWindow", query.getCutoffWindowSize().get() + "")
-                .replaceFirst("#cutoff", query.getCutoffFrequency() + "")
-                .replaceFirst("#averagingFactor", query.getAveraging() + "")
-                .replaceFirst("#maxPower", query.getMaxPower() + "");
-
-        // if the station is broadband then activate the log scale for the
-        // average ssam graph. Are 'H' and 'B' prefixes a standard  indicator of
-        // a broadband sensor? ... probably not ... anyway
-        if (query.getC().startsWith("H") || query.getC().startsWith("B")) {
-            args = args.replaceFirst("#broadbandScale", "true");
-        } else {
-            args = args.replaceFirst("#broadbandScale", "false");
-        }
-
-        String command = GNUPLOT + " " + args + " ";
-
-        switch (query.getGraphFormat()) {
-            default:
-            case Names.GRAPH_FORMAT_PNG:
-                command += SCRIPTS_PATH + PNG_SCRIPT;
-                break;
-            case Names.GRAPH_FORMAT_SVG:
-                command += SCRIPTS_PATH + SVG_SCRIPT;
-                break;
-        }
-
-        return command;
+    static Plotter forQuery(Query query) {
+        return switch (Config.getPlotter()) {
+            case Names.PLOTTER_GNUPLOT ->
+                new GnuplotPlotter(query);
+            default ->
+                new Java2DPlotter(query);
+        };
     }
 
 }
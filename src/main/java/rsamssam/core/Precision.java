@@ -0,0 +1,28 @@
+package rsamssam.core;
+
+import rsamssam.config.Config;
+
+/**
+ * Number of decimals written to each text output file, from 0 to 9 or -1 for
+ * full precision (Double.toString).
+ *
+ * @author Julian Peña.
+ */
+public record Precision(int rsam, int ssam, int averageSsam, int maxFreqs) {
+
+    /**
+     * Full precision for every file.
+     */
+    public static final Precision FULL = new Precision(-1, -1, -1, -1);
+
+    /**
+     * Returns the precision configured.
+     *
+     * @return
+     */
+    public static Precision fromConfig() {
+        return new Precision(Config.getRsamDecimals(), Config.getSsamDecimals(),
+                Config.getAverageSsamDecimals(), Config.getMaxFreqsDecimals());
+    }
+
+}
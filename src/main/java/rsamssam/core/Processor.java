@@ -9,6 +9,8 @@ import org.apache.commons.math3.transform.TransformType;
 
 import rsamssam.config.Config;
 import rsamssam.config.Names;
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.events.BinProcessedEvent;
 
 /**
  * This class implements the ssam and rsam logic. This class does not perform
@@ -60,6 +62,11 @@ public class Processor {
      */
     private final double responseFactor;
 
+    /**
+     * Id of the query being processed (for profiling events).
+     */
+    private String queryId = "";
+
     /**
      * Creates a processor instance for performing rsam and fft computations
      * over arrays of samples.
@@ -91,6 +98,17 @@ public class Processor {
         setWindowFunction(windowSize, windowName);
     }
 
+    /**
+     * Sets the id of the query being processed, used by profiling events.
+     *
+     * @param queryId
+     * @return A reference to self.
+     */
+    public Processor setQueryId(String queryId) {
+        this.queryId = queryId;
+        return this;
+    }
+
     /**
      * Builds and returns a window of the appropriate size.
      *
@@ -127,14 +145,38 @@ public class Processor {
      */
     public Result process(double[] bin) {
 
+        Metrics.BINS_PROCESSED.inc();
+
+        BinProcessedEvent event = new BinProcessedEvent();
+        event.begin();
+
+        int binSize = bin.length;
+
         removeMedian(bin);
-        
+
+        Result result;
         if (applyFactors(bin)) {
-            return new Result(rsamBin(bin), fftBin(bin), dummyMaxFreq);
+            double rsam = rsamBin(bin);
+            long fftStart = event.isEnabled() ? System.nanoTime() : 0;
+            double[] spectra = fftBin(bin);
+            if (event.isEnabled()) {
+                event.fftDuration = System.nanoTime() - fftStart;
+            }
+            result = new Result(rsam, spectra, dummyMaxFreq);
+        } else {
+            // too many consecutive zeros in the bin. probably a data gap.
+            result = new Result(Double.NaN, unitaryArray, null);
+            event.gap = true;
+        }
+
+        if (event.shouldCommit()) {
+            event.queryId = queryId;
+            event.binSize = binSize;
+            event.spectraSize = result.spectra().length;
+            event.commit();
         }
 
-        // too many consecutive zeros in the bin. probably a data gap.
-        return new Result(Double.NaN, unitaryArray, null);
+        return result;
     }
 
     /**
@@ -0,0 +1,327 @@
+package rsamssam.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.query.Query;
+
+/**
+ * Streaming results writer. Writes the rsam, ssam, average ssam and maximum
+ * frequencies files of a query, results are written to disk as they are added
+ * instead of being kept in memory until the end.
+ * <p>
+ * rsam and maximum frequencies lines are written straight away. The ssam
+ * matrix has one line per frequency and one column per result, so it can't be
+ * written until all the results are known: spectra are spooled to a temporary
+ * binary file (one result after the other) which is then memory mapped and
+ * transposed into the ssam file. Peak heap doesn't depend on the number of
+ * results.
+ * <p>
+ * When the query asks for binary output, rsam, ssam and average ssam are
+ * written as float32 in the layouts gnuplot reads directly:
+ * <pre>
+ * ssam          binary matrix: first row N x0 .. xN-1, then y zy0 .. zyN-1
+ *               for every frequency (x is the result index, y the frequency
+ *               index)
+ * average ssam  binary format="%float32", one value per frequency
+ * rsam          binary format="%float64%float32", time (epoch seconds) and
+ *               rsam for every result
+ * </pre>
+ * Maximum frequencies are always written as text.
+ * <p>
+ * Text files are written with the decimals given by Precision and UTC
+ * timestamps (see AsciiFormat).
+ * <p>
+ * Every file is written atomically (see ChannelWriter), readers never see a
+ * half written file.
+ * <p>
+ * Usage: addResult for every result, addAverageSsam once, then finish. If
+ * something goes wrong, close releases everything and the files that were not
+ * finished are left as they were.
+ *
+ * @author Julian Peña.
+ */
+public class ResultsWriter implements Closeable {
+
+    /**
+     * Start time.
+     */
+    private final long start;
+
+    /**
+     * Time step between rsam-ssam results.
+     */
+    private final long timestep;
+
+    /**
+     * Number of results written so far.
+     */
+    private int entryIndex = 0;
+
+    /**
+     * Write rsam, ssam and average ssam in binary?.
+     */
+    private final boolean binary;
+
+    /**
+     * Decimals for every text file.
+     */
+    private final Precision precision;
+
+    /**
+     * Frequencies per spectra (ssam rows), known after the first result.
+     */
+    private int rows = -1;
+
+    private final Path ssamPath;
+
+    private final Path averageSsamPath;
+
+    private final ChannelWriter rsam;
+
+    private final ChannelWriter maxFreqs;
+
+    /**
+     * Temporary file with the spectra, deleted once closed.
+     */
+    private final FileChannel spool;
+
+    /**
+     * Buffer for writing spectra to the spool.
+     */
+    private ByteBuffer spectraBuffer;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("ResultsWriter");
+
+    /**
+     * Creates a writer for the output folder of the given query, the folder is
+     * created if needed.
+     *
+     * @param query
+     * @param start The start time.
+     * @param timestep The time step between results.
+     * @throws IOException
+     */
+    public ResultsWriter(Query query, long start, long timestep) throws IOException {
+        this(Path.of(query.getOutputPath()), query, start, timestep,
+                Precision.fromConfig());
+    }
+
+    /**
+     * Creates a writer for the given folder, it is created if needed.
+     *
+     * @param folder
+     * @param query
+     * @param start The start time.
+     * @param timestep The time step between results.
+     * @param precision Decimals for the text files.
+     * @throws IOException
+     */
+    public ResultsWriter(Path folder, Query query, long start, long timestep,
+            Precision precision) throws IOException {
+
+        this.start = start;
+        this.timestep = timestep;
+        this.precision = precision;
+
+        binary = query.isBinaryOutput();
+
+        Files.createDirectories(folder);
+
+        ssamPath = folder.resolve(query.getSSAMFileName());
+        averageSsamPath = folder.resolve(query.getAverageSSAMFileName());
+
+        Path spoolPath = Files.createTempFile(folder, ".ssam-", ".spool");
+
+        rsam = new ChannelWriter(folder.resolve(query.getRSAMFileName()));
+        maxFreqs = new ChannelWriter(folder.resolve(query.getMaxFreqsFileName()));
+        spool = FileChannel.open(spoolPath, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Writes a single Result.
+     *
+     * @param result
+     * @throws IOException
+     */
+    public void addResult(Result result) throws IOException {
+
+        long time = start + entryIndex * timestep;
+
+        if (binary) {
+            rsam
+                    .putDouble(time / 1000d)
+                    .putFloat((float) result.rsam());
+        } else {
+            rsam
+                    .appendTimestamp(time)
+                    .append(',')
+                    .append(result.rsam(), precision.rsam())
+                    .append('\n');
+        }
+
+        maxFreqs
+                .appendTimestamp(time)
+                .append(',')
+                .append(result.maxFreq()[0], precision.maxFreqs())
+                .append(',')
+                .append(result.maxFreq()[1], precision.maxFreqs())
+                .append('\n');
+
+        spoolSpectra(result.spectra());
+
+        entryIndex++;
+    }
+
+    /**
+     * Writes the average ssam. This is a single result, so this method should
+     * be used only once.
+     *
+     * @param averageSsam
+     * @throws IOException
+     */
+    public void addAverageSsam(double[] averageSsam) throws IOException {
+        try (var writer = new ChannelWriter(averageSsamPath)) {
+            for (double value : averageSsam) {
+                if (binary) {
+                    writer.putFloat((float) value);
+                } else {
+                    writer.append(value, precision.averageSsam()).append('\n');
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the ssam file and closes all files.
+     *
+     * @throws IOException If there are no results or if writing fails.
+     */
+    public void finish() throws IOException {
+        try {
+            if (entryIndex == 0) {
+                throw new IOException("No results to write");
+            }
+            rsam.close();
+            maxFreqs.close();
+            writeSsam();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Releases all files, the spool is deleted and the files not finished yet
+     * are discarded. Calling this method more than once has no effect.
+     */
+    @Override
+    public void close() {
+        try {
+            rsam.discard();
+            maxFreqs.discard();
+            spool.close();
+        } catch (IOException ex) {
+            LOG.error(ex.getMessage());
+        }
+    }
+
+    /**
+     * Appends a spectra to the spool.
+     *
+     * @param spectra
+     * @throws IOException
+     */
+    private void spoolSpectra(double[] spectra) throws IOException {
+
+        if (rows < 0) {
+            rows = spectra.length;
+            spectraBuffer = ByteBuffer
+                    .allocateDirect(rows * Double.BYTES)
+                    .order(ByteOrder.nativeOrder());
+        } else if (spectra.length != rows) {
+            throw new IOException("Spectra size changed from " + rows
+                    + " to " + spectra.length);
+        }
+
+        spectraBuffer.clear();
+        spectraBuffer.asDoubleBuffer().put(spectra);
+        while (spectraBuffer.hasRemaining()) {
+            spool.write(spectraBuffer);
+        }
+    }
+
+    /**
+     * Transposes the spool into the ssam file, one line (row) per frequency.
+     * The spool is memory mapped in regions of whole results (a single mapping
+     * can't be bigger than 2 GB).
+     *
+     * @throws IOException
+     */
+    private void writeSsam() throws IOException {
+
+        int columns = entryIndex;
+        long columnBytes = (long) rows * Double.BYTES;
+        int columnsPerRegion = (int) Math.max(1, Integer.MAX_VALUE / columnBytes);
+
+        int regions = (columns + columnsPerRegion - 1) / columnsPerRegion;
+        DoubleBuffer[] mapped = new DoubleBuffer[regions];
+        for (int i = 0; i < regions; i++) {
+            long position = i * columnsPerRegion * columnBytes;
+            long size = Math.min(columnsPerRegion, columns - i * columnsPerRegion)
+                    * columnBytes;
+            mapped[i] = spool
+                    .map(FileChannel.MapMode.READ_ONLY, position, size)
+                    .order(ByteOrder.nativeOrder())
+                    .asDoubleBuffer();
+        }
+
+        try (var ssam = new ChannelWriter(ssamPath)) {
+
+            if (binary) {
+                ssam.putFloat(columns);
+                for (int column = 0; column < columns; column++) {
+                    ssam.putFloat(column);
+                }
+            }
+
+            for (int row = 0; row < rows; row++) {
+
+                if (binary) {
+                    ssam.putFloat(row);
+                }
+
+                for (int column = 0; column < columns; column++) {
+                    DoubleBuffer region = mapped[column / columnsPerRegion];
+                    double value = region.get((column % columnsPerRegion) * rows + row);
+                    if (binary) {
+                        ssam.putFloat((float) value);
+                    } else {
+                        if (column > 0) {
+                            ssam.append(' ');
+                        }
+                        ssam.append(value, precision.ssam());
+                    }
+                }
+
+                if (!binary) {
+                    ssam.append('\n');
+                }
+            }
+        }
+    }
+
+}
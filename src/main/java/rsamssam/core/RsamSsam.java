@@ -4,8 +4,12 @@ import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 
+import java.io.IOException;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -15,11 +19,18 @@ import org.slf4j.LoggerFactory;
 import rsamssam.datasources.DataClient;
 import rsamssam.datasources.DataRecordProvider;
 import rsamssam.datasources.SamplesProvider;
+import rsamssam.datasources.cache.CachingDataClient;
+import rsamssam.datasources.cache.WaveformCache;
 import rsamssam.datasources.impl.Dataselect;
+import rsamssam.datasources.impl.SDS;
 import rsamssam.datasources.impl.SeedLink;
 import rsamssam.datasources.impl.Winston;
 import rsamssam.config.Config;
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.Trace;
+import rsamssam.metrics.Traces;
 import rsamssam.query.Query;
+import rsamssam.query.QueryType;
 
 /**
  * This class encapsulates the whole rsam-ssam functionality. Given a query
@@ -70,6 +81,28 @@ public class RsamSsam {
      */
     private final Promise<Boolean> promise;
 
+    /**
+     * Should the graph be plotted once the results are written?.
+     */
+    private boolean plotting = true;
+
+    /**
+     * Makes the graphs, results are handed to it as they are written.
+     */
+    private Plotter plotter;
+
+    /**
+     * Time spent (nanoseconds) by every stage, in the order they finished.
+     * Stages run concurrently, so these times overlap.
+     */
+    private final Map<String, Long> stageTimes
+            = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Execution trace of this query (served on /debug/traces).
+     */
+    private final Trace trace;
+
     /**
      * Our logger.
      */
@@ -92,6 +125,20 @@ public class RsamSsam {
      * @param query The query object with valid SCNL and time ranges.
      */
     public RsamSsam(Vertx vertx, Query query) {
+        this(vertx, query, null);
+    }
+
+    /**
+     * Creates a new RsamSsam instance that gets its data from the given data
+     * client (ex. a client shared by several queries). Note that nothing will
+     * be done until the makeGraph method is called.
+     *
+     * @param vertx A vertx instance (needed by the dataselect client).
+     * @param query The query object with valid SCNL and time ranges.
+     * @param dataClient The data client for the query, if null a new client is
+     * created according to the query type.
+     */
+    public RsamSsam(Vertx vertx, Query query, DataClient dataClient) {
 
         // beware this object will be mutated along the processing chain, since
         // there are query fields unknown at creation time (effective time 
@@ -106,18 +153,90 @@ public class RsamSsam {
                     .toEpochMilli());
         }
 
-        switch (query.getType()) {
+        if (dataClient != null) {
+            this.dataClient = dataClient;
+        } else if (isCacheable(query)) {
+            this.dataClient = new CachingDataClient(vertx,
+                    () -> newDataClient(vertx, query),
+                    WaveformCache.getInstance());
+        } else {
+            this.dataClient = newDataClient(vertx, query);
+        }
+
+        promise = Promise.promise();
+        trace = new Trace(query);
+    }
+
+    /**
+     * Creates a new data client according to the query type.
+     *
+     * @param vertx
+     * @param query
+     * @return
+     */
+    private static DataClient newDataClient(Vertx vertx, Query query) {
+        return switch (query.getType()) {
             case fdsn ->
-                dataClient = new Dataselect(vertx);
+                new Dataselect(vertx);
             case seedlink ->
-                dataClient = new SeedLink(vertx);
+                new SeedLink(vertx);
             case winston ->
-                dataClient = new Winston(vertx);
+                new Winston(vertx);
+            case sds ->
+                new SDS(vertx);
             default ->
                 throw new IllegalArgumentException("Query type invalid");
+        };
+    }
+
+    /**
+     * Should the raw data for the given query go through the waveform cache?.
+     * Only miniseed from network sources is cached.
+     *
+     * @param query
+     * @return
+     */
+    private static boolean isCacheable(Query query) {
+        return WaveformCache.getInstance().isEnabled()
+                && (query.getType() == QueryType.fdsn
+                || query.getType() == QueryType.seedlink);
+    }
+
+    /**
+     * Enables or disables the plotting stage, without plotting the graph is
+     * considered done once the results are written to disk.
+     *
+     * @param plotting
+     * @return A reference to self.
+     */
+    public RsamSsam setPlotting(boolean plotting) {
+        this.plotting = plotting;
+        return this;
+    }
+
+    /**
+     * Returns the time spent (nanoseconds) by every stage that has finished:
+     * download (until the first data arrives), decompress, package, process
+     * (includes averaging), format, write and plot.
+     *
+     * @return
+     */
+    public Map<String, Long> getStageTimes() {
+        synchronized (stageTimes) {
+            return new LinkedHashMap<>(stageTimes);
         }
+    }
 
-        promise = Promise.promise();
+    /**
+     * Records the time spent by a stage, for this instance and for the
+     * pipeline metrics.
+     *
+     * @param stage
+     * @param start When the stage started (System.nanoTime).
+     */
+    private void stageDone(String stage, long start) {
+        stageTimes.put(stage, System.nanoTime() - start);
+        Metrics.STAGE_DURATION.labels(stage).observe(start);
     }
 
     /**
@@ -130,9 +249,26 @@ public class RsamSsam {
      */
     public Future<Boolean> makeGraph() {
 
+        long start = System.nanoTime();
+
+        Metrics.ACTIVE_PIPELINES.inc();
+        promise.future().onComplete(c -> {
+            Metrics.ACTIVE_PIPELINES.dec();
+            Metrics.PIPELINE_DURATION
+                    .labels(c.succeeded() ? "success" : "failure")
+                    .observe(start);
+            trace.finish(c.failed() ? c.cause().getMessage() : null);
+        });
+
+        Traces.getInstance().add(trace);
+        trace.start("download-first-byte");
+        trace.start("download");
+
         dataClient
                 .download(query)
                 .onSuccess(metadata -> {
+                    stageDone("download", start);
+                    trace.end("download-first-byte");
                     // once the query has metadata, we can skip checking for
                     // empty optionals later
                     LOG.info("{} {}", query.getType(), metadata);
@@ -159,12 +295,16 @@ public class RsamSsam {
 
         executor.submit(() -> {
 
+            long start = System.nanoTime();
+            trace.start("decompress");
+
             decompressor = new Decompressor(query);
 
             var dataRecord = ((DataRecordProvider) dataClient).getDataRecord();
 
             if (dataRecord.getHeader().getSequenceNum() == -1) {
                 // no point in going further, there is no data
+                trace.end("download");
                 LOG.info("{} No data for query", query.getId());
                 promise.fail("Server returned no data");
                 return;
@@ -188,6 +328,9 @@ public class RsamSsam {
 
             // we add the poison pill again as a signal to the decompressor
             decompressor.addDataRecord(dataRecord);
+            trace.end("download");
+
+            stageDone("decompress", start);
         });
     }
 
@@ -208,13 +351,18 @@ public class RsamSsam {
 
         executor.submit(() -> {
 
-            packager = new Packager(query.getWindowSize());
+            long start = System.nanoTime();
+            trace.start("package");
+
+            packager = new Packager(query.getWindowSize())
+                    .setQueryId(query.getId());
 
             // at this point we can create our processor since some datarecords 
             // were already received, thus we have now the sps for the query.
             processor = new Processor(query.getWindowSize(), query.getWindow(),
                     query.getCutoffWindowSize().get(),
-                    query.getResponseFactor());
+                    query.getResponseFactor())
+                    .setQueryId(query.getId());
 
             try {
 
@@ -230,16 +378,30 @@ public class RsamSsam {
                 // we start the processing once we begin receving samples
                 processBins();
 
+                long samples = 0;
                 while (!Double.isNaN(sample)) {
                     packager.addSample(sample);
+                    samples++;
                     sample = samplesProvider.getSample();
                 }
 
+                // all the samples were extracted
+                if (query.needsDecompression()) {
+                    trace.end("decompress");
+                    trace.setGaps(decompressor.getGaps());
+                } else {
+                    trace.end("download");
+                }
+                trace.setSamples(samples);
+
                 // we add the poison pill again as a signal to the packager
                 packager.addSample(Double.NaN);
 
                 LOG.info("All samples have been packaged. Poison returned.");
 
+                stageDone("package", start);
+                trace.end("package");
+
             } catch (InterruptedException ex) {
                 LOG.error("Packager thread interrupted {}", query.getId());
                 LOG.error(ex.getMessage());
@@ -262,19 +424,34 @@ public class RsamSsam {
 
         executor.submit(() -> {
 
+            long start = System.nanoTime();
+            trace.start("process");
+
             double[] bin = packager.getBin();   // packaged bin
 
             averager = new Averager(query, query.getMetadata().get().sps());
 
+            long bins = 0;
+            long gapBins = 0;
             while (bin.length > 0) {
-                averager.addResult(processor.process(bin));
+                Result result = processor.process(bin);
+                if (Double.isNaN(result.rsam())) {
+                    gapBins++;
+                }
+                bins++;
+                averager.addResult(result);
                 bin = packager.getBin();
             }
 
             averager.complete();
 
+            trace.setBins(bins, gapBins);
+
             LOG.info("{} Done processing and averaging", query.getId());
 
+            stageDone("process", start);
+            trace.end("process");
+
             // once all the data has been processed and averaged, we can start
             // formatting the results
             formatResults();
@@ -283,11 +460,12 @@ public class RsamSsam {
     }
 
     /**
-     * Formats the results in order to write them to disk. This operation is run
-     * on a dedicated thread.
+     * Formats the results and writes them to disk as they are taken from the
+     * averager (rsam and maximum frequencies, ssam is spooled). This operation
+     * is run on a dedicated thread.
      * <p>
-     * If this operation's thread is interrupted, the promise is failed and no
-     * further processing is made.
+     * If this operation's thread is interrupted or writing fails, the promise
+     * is failed and no further processing is made.
      */
     private void formatResults() {
 
@@ -295,94 +473,140 @@ public class RsamSsam {
 
         executor.submit(() -> {
 
+            long start = System.nanoTime();
+            trace.start("format");
+
             if (!averager.hasResults()) {
                 promise.fail("The query has no data to be processed");
                 return;
             }
 
-            var formatter = new Formatter(query.getMetadata().get().start(),
-                    query.getTimestep().get());
-
-            Result result;
-            while (averager.hasResults()) {
-                try {
-                    result = averager.getResult();
-                    formatter.addResult(result);
-                } catch (InterruptedException ex) {
-                    LOG.error("{}", query.getId(), ex.getMessage());
-                    promise.fail("Failed to process query");
-                    return;
+            ResultsWriter resultsWriter = null;
+            try {
+
+                resultsWriter = new ResultsWriter(query,
+                        query.getMetadata().get().start(),
+                        query.getTimestep().get());
+
+                if (plotting) {
+                    plotter = Plotter.forQuery(query);
+                }
+
+                while (averager.hasResults()) {
+                    Result result = averager.getResult();
+                    resultsWriter.addResult(result);
+                    if (plotter != null) {
+                        plotter.addResult(result);
+                    }
+                }
+
+                double[] averageSsam = averager.getAverageSsam();
+                resultsWriter.addAverageSsam(averageSsam);
+                if (plotter != null) {
+                    plotter.addAverageSsam(averageSsam);
                 }
+
+            } catch (InterruptedException ex) {
+                LOG.error("{} {}", query.getId(), ex.getMessage());
+                resultsWriter.close();
+                promise.fail("Failed to process query");
+                return;
+            } catch (IOException ex) {
+                LOG.error("{} Failed to write files", query.getId());
+                LOG.error(ex.getMessage());
+                if (resultsWriter != null) {
+                    resultsWriter.close();
+                }
+                promise.fail("Failed to write query results to disk");
+                return;
             }
 
-            formatter.addAverageSsam(averager.getAverageSsam());
+            stageDone("format", start);
+            trace.end("format");
 
-            // once the results have been formatted, we can write them to disk
-            writeResults(formatter);
+            // once all the results have been written, the ssam matrix can be
+            // written too
+            writeResults(resultsWriter);
 
         }, "ssam-formatter-" + query.getId());
     }
 
     /**
-     * Writes the formatted results to disk. This operation is run on a
-     * dedicated thread.
+     * Writes the ssam matrix and closes all the result files. This operation is
+     * run on a dedicated thread. If the plotter doesn't read the result files,
+     * the graphs are made at the same time on another thread.
      * <p>
-     * If the operation fails then the promise is failed and no attempt is made
-     * to make a graph.
+     * If the operation fails then the promise is failed and, unless it's
+     * already being made, no attempt is made to make a graph.
      */
-    private void writeResults(Formatter formatter) {
+    private void writeResults(ResultsWriter resultsWriter) {
 
         LOG.info("{} Writing computation results to disk", query.getId());
 
-        FileWriter fileWriter = new FileWriter();
+        Promise<Boolean> written = Promise.promise();
 
         executor.submit(() -> {
 
-            if (!fileWriter.makeOuputFolder(query)) {
-                LOG.error("{} Failed to make output folder", query.getId());
-                promise.fail("Failed to make output folder for query results");
+            long start = System.nanoTime();
+            trace.start("write");
+
+            try {
+                resultsWriter.finish();
+            } catch (IOException ex) {
+                LOG.error("{} Failed to write files", query.getId());
+                LOG.error(ex.getMessage());
+                written.fail("Failed to write query results to disk");
                 return;
             }
 
-            String basePath = query.getOutputPath();
-
-            String rsam = basePath + "/" + query.getRSAMFileName();
-            String ssam = basePath + "/" + query.getSSAMFileName();
-            String avgSsam = basePath + "/" + query.getAverageSSAMFileName();
-            String maxFreqs = basePath + "/" + query.getMaxFreqsFileName();
+            stageDone("write", start);
+            trace.end("write");
 
-            if (fileWriter.write(rsam, formatter.getRsam())
-                    && fileWriter.write(ssam, formatter.getSsam())
-                    && fileWriter.write(avgSsam, formatter.getAverageSsam())
-                    && fileWriter.write(maxFreqs, formatter.getMaxFreqs())) {
-                plot();
-            } else {
-                LOG.error("{} Failed to write files", query.getId());
-                promise.fail("Failed to write query results to disk");
-            }
+            written.complete(true);
 
         }, "ssam-writer-" + query.getId());
+
+        if (!plotting) {
+            written.future().onComplete(promise);
+        } else if (!plotter.readsResultFiles()) {
+            Future.all(written.future(), plot())
+                    .onSuccess(c -> promise.complete(true))
+                    .onFailure(f -> promise.fail(f.getMessage()));
+        } else {
+            written.future()
+                    .compose(w -> plot())
+                    .onComplete(promise);
+        }
     }
 
     /**
-     * Calls the gnuplot wrapper. If the graph is successfully created then the
-     * promise is completed.
+     * Calls the plotter on a dedicated thread.
      * <p>
-     * Once this method is completed this RsamSsam instance has fulfilled it's
-     * purpose and can be discarded.
+     * Once the query's promise is completed this RsamSsam instance has
+     * fulfilled it's purpose and can be discarded.
+     *
+     * @return A Future that succeeds if the graph is successfully created, it
+     * fails otherwise.
      */
-    private void plot() {
+    private Future<Boolean> plot() {
+
+        Promise<Boolean> plotted = Promise.promise();
 
         executor.submit(() -> {
 
-            Plotter plotter = new Plotter(query);
+            long start = System.nanoTime();
+            trace.start("plot");
 
             if (plotter.plot(query)) {
-                promise.complete(true);
+                stageDone("plot", start);
+                trace.end("plot");
+                plotted.complete(true);
             } else {
-                promise.fail("Failed to make graph");
+                plotted.fail("Failed to make graph");
             }
         }, "ssam-plotter-" + query.getId());
+
+        return plotted.future();
     }
 
 }
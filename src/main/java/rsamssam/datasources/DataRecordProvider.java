@@ -23,4 +23,38 @@ public interface DataRecordProvider {
      * @return
      */
     public DataRecord getDataRecord();
+
+    /**
+     * Did the data end cleanly?. A download that gave up (ex. too many failed
+     * attempts to resume it) is truncated, the data after the last DataRecord
+     * returned is missing. Only meaningful once POISON has been returned, local
+     * sources are always complete.
+     *
+     * @return True if all the data was provided, false if it was truncated.
+     */
+    default boolean isComplete() {
+        return true;
+    }
+
+    /**
+     * Returns the NSCL of the given DataRecord, in the same format used by
+     * Query objects (see Query.getNSCL).
+     *
+     * @param dataRecord
+     * @return
+     */
+    public static String getNSCL(DataRecord dataRecord) {
+
+        DataHeader header = dataRecord.getHeader();
+
+        String NSCL = header.getNetworkCode().trim()
+                + "_" + header.getStationIdentifier().trim()
+                + "_" + header.getChannelIdentifier().trim();
+
+        String L = header.getLocationIdentifier().trim();
+        if (!L.isBlank()) {
+            NSCL += "_" + L;
+        }
+        return NSCL;
+    }
 }
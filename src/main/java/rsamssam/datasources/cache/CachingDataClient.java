@@ -0,0 +1,706 @@
+package rsamssam.datasources.cache;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * A DataClient that keeps the raw data downloaded by other (network) clients
+ * in a WaveformCache.
+ * <p>
+ * The query time range is split in days. Complete past days found in the cache
+ * are read from disk, the rest of the range is downloaded by new network
+ * clients (one per contiguous missing segment). Complete past days downloaded
+ * are then added to the cache. A day is only complete once the configured
+ * latency has passed since its end, so late data is not lost. Nothing from a
+ * truncated download (see DataRecordProvider.isComplete) is cached, the days
+ * are downloaded again by the next query.
+ * <p>
+ * Days still open (ex. today) are kept as partial days. A partial day is read
+ * from disk and only the interval after its last sample is downloaded (ex.
+ * the last minute), the new data is then appended to the partial day. A
+ * partial day is only promoted once the download of its remainder ends
+ * cleanly.
+ * <p>
+ * Gaps before the last sample of a partial day are never downloaded again,
+ * data reaching the server late for them is missed by the cache (but not by
+ * queries with the cache disabled). Appending keeps the day in order, filling
+ * a gap would mean rewriting the whole day.
+ * <p>
+ * The segments are read lazily, in order, as a single stream of DataRecords.
+ * Nothing is read ahead of the consumer, so the network clients keep their own
+ * flow control. A worker thread is only used to find the first DataRecord, the
+ * rest is pulled from the thread calling getDataRecord.
+ *
+ * @author Julian Peña.
+ */
+public class CachingDataClient implements DataClient, DataRecordProvider {
+
+    /**
+     * Milliseconds in a day.
+     */
+    private static final long DAY = 86400000;
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Creates the network clients for the missing segments.
+     */
+    private final Supplier<DataClient> factory;
+
+    /**
+     * Where the days are kept.
+     */
+    private final WaveformCache cache;
+
+    /**
+     * How long (millis) after its end a day is considered complete.
+     */
+    private final long latency;
+
+    /**
+     * Query object.
+     */
+    private Query query;
+
+    /**
+     * The segments of the query.
+     */
+    private List<Segment> segments;
+
+    /**
+     * Index of the next segment to open.
+     */
+    private int nextSegment = 0;
+
+    /**
+     * Reader of the current segment, null if none is open.
+     */
+    private Reader reader;
+
+    /**
+     * The first DataRecord, read while looking for the metadata.
+     */
+    private DataRecord first;
+
+    /**
+     * Is the stream over?.
+     */
+    private boolean finished = false;
+
+    /**
+     * Was any of the downloads truncated?.
+     */
+    private volatile boolean truncated = false;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("CachingDataClient");
+
+    /**
+     * Where the data of a segment comes from.
+     */
+    private enum Source {
+        /**
+         * A complete day in the cache.
+         */
+        CACHE,
+        /**
+         * A partial day in the cache plus what is missing after it.
+         */
+        PARTIAL,
+        /**
+         * Not in the cache at all.
+         */
+        NETWORK;
+    }
+
+    /**
+     * A piece of the query time range.
+     *
+     * @param from Start of the segment (millis).
+     * @param to End of the segment (millis).
+     * @param source Where the data for this segment comes from.
+     */
+    private record Segment(long from, long to, Source source) {
+
+    }
+
+    /**
+     * Creates a caching client, days are complete once the configured cache
+     * latency has passed.
+     *
+     * @param vertx A vertx instance, the first DataRecord is looked for in
+     * one of its worker threads.
+     * @param factory Creates a new network client (one per segment), the
+     * clients must be DataRecordProviders.
+     * @param cache
+     */
+    public CachingDataClient(Vertx vertx, Supplier<DataClient> factory,
+            WaveformCache cache) {
+        this(vertx, factory, cache, Config.getCacheLatency() * 1000L);
+    }
+
+    /**
+     * Creates a caching client.
+     *
+     * @param vertx A vertx instance, the first DataRecord is looked for in
+     * one of its worker threads.
+     * @param factory Creates a new network client (one per segment), the
+     * clients must be DataRecordProviders.
+     * @param cache
+     * @param latency How long (millis) after its end a day is considered
+     * complete.
+     */
+    public CachingDataClient(Vertx vertx, Supplier<DataClient> factory,
+            WaveformCache cache, long latency) {
+        this.vertx = vertx;
+        this.factory = factory;
+        this.cache = cache;
+        this.latency = latency;
+    }
+
+    @Override
+    public Future<Metadata> download(Query query) {
+
+        if (!query.isValid()) {
+            LOG.info("{} Query is not valid: {}", query.getId(), query);
+            return Future.failedFuture("Query is invalid");
+        }
+
+        this.query = query;
+
+        segments = getSegments();
+
+        return vertx
+                .executeBlocking(this::next, false)
+                .compose(dataRecord -> {
+                    if (dataRecord == null) {
+                        return Future.failedFuture("No data for query");
+                    }
+                    first = dataRecord;
+                    return Future.succeededFuture(getMetadata(dataRecord));
+                });
+    }
+
+    /**
+     * Splits the query in segments, a segment for each cached (complete or
+     * partial) day and a segment for every contiguous range not in the cache.
+     *
+     * @return
+     */
+    private List<Segment> getSegments() {
+
+        List<Segment> segments = new ArrayList<>();
+
+        long from = query.getFrom();
+        long missingFrom = -1;
+
+        while (from < query.getTo()) {
+
+            long dayStart = from - Math.floorMod(from, DAY);
+            long to = Math.min(dayStart + DAY, query.getTo());
+
+            Source source = Source.NETWORK;
+            if (isCacheable(dayStart, from, to)
+                    && cache.contains(query.getNSCL(), getDate(dayStart))) {
+                source = Source.CACHE;
+            } else if (from == dayStart
+                    && cache.containsPartial(query.getNSCL(), getDate(dayStart))) {
+                source = Source.PARTIAL;
+            }
+
+            if (source != Source.NETWORK) {
+                if (missingFrom >= 0) {
+                    segments.add(new Segment(missingFrom, from, Source.NETWORK));
+                    missingFrom = -1;
+                }
+                segments.add(new Segment(from, to, source));
+            } else if (missingFrom < 0) {
+                missingFrom = from;
+            }
+
+            from = to;
+        }
+
+        if (missingFrom >= 0) {
+            segments.add(new Segment(missingFrom, query.getTo(), Source.NETWORK));
+        }
+
+        return segments;
+    }
+
+    /**
+     * Is the given piece of a day a complete past day?. A day is complete
+     * once the latency has passed since its end, until then late data could
+     * still arrive.
+     *
+     * @param dayStart
+     * @param from
+     * @param to
+     * @return
+     */
+    private boolean isCacheable(long dayStart, long from, long to) {
+        return from == dayStart && to == dayStart + DAY
+                && to + latency <= System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the next DataRecord overlapping the query, opening the segments
+     * as needed.
+     * <p>
+     * IMPORTANT: This method blocks.
+     *
+     * @return The DataRecord or null if there are no more DataRecords.
+     */
+    private DataRecord next() {
+
+        while (true) {
+
+            if (reader == null) {
+                if (nextSegment == segments.size()) {
+                    return null;
+                }
+                reader = open(segments.get(nextSegment++));
+                continue;
+            }
+
+            DataRecord dataRecord = reader.next();
+            if (dataRecord == null) {
+                reader = reader.finish();
+            } else if (overlaps(dataRecord, query.getFrom(), query.getTo())) {
+                return dataRecord;
+            }
+        }
+    }
+
+    /**
+     * Returns a reader for the given segment.
+     *
+     * @param segment
+     * @return The reader or null if the segment can't be read.
+     */
+    private Reader open(Segment segment) {
+
+        LocalDate day = getDate(segment.from());
+
+        try {
+            switch (segment.source()) {
+                case CACHE -> {
+                    LOG.info("{} Reading {} from cache", query.getId(), day);
+                    return new CachedReader(cache.open(query.getNSCL(), day),
+                            null);
+                }
+                case PARTIAL -> {
+                    LOG.info("{} Reading partial {} from cache", query.getId(),
+                            day);
+                    return new CachedReader(cache.openPartial(query.getNSCL(),
+                            day), segment);
+                }
+            }
+        } catch (IOException ex) {
+            LOG.error("{} Failed to read {} from cache", query.getId(), day);
+            LOG.error(ex.getMessage());
+            return null;
+        }
+
+        return download(segment, segment.from(), getDays(segment), null);
+    }
+
+    /**
+     * Starts the download of a segment with a new network client, the
+     * downloaded data is added to the given days.
+     * <p>
+     * IMPORTANT: This method blocks until the download starts.
+     *
+     * @param segment
+     * @param after DataRecords starting before this time (millis) are already
+     * available and thus dropped.
+     * @param days
+     * @param partial The partial day to promote once the download is over,
+     * if it's complete by then.
+     * @return The reader or null if there is no data for the segment.
+     */
+    private Reader download(Segment segment, long after, List<Day> days,
+            Segment partial) {
+
+        Query segmentQuery = query.copy();
+        segmentQuery.setFrom(segment.from()).setTo(segment.to());
+
+        LOG.info("{} Downloading {}", query.getId(), segmentQuery);
+
+        DataClient client = factory.get();
+
+        try {
+            client.download(segmentQuery)
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get();
+        } catch (InterruptedException | ExecutionException ex) {
+            LOG.info("{} No data for segment", query.getId());
+            for (Day day : days) {
+                day.writer.abort();
+            }
+            return null;
+        }
+
+        return new NetworkReader((DataRecordProvider) client, after, days,
+                partial);
+    }
+
+    /**
+     * Returns writers for the days inside the given segment. Complete past
+     * days are written as complete days, open days starting at midnight are
+     * written as partial days.
+     *
+     * @param segment
+     * @return
+     */
+    private List<Day> getDays(Segment segment) {
+
+        List<Day> days = new ArrayList<>();
+
+        long dayStart = segment.from() - Math.floorMod(segment.from(), DAY);
+
+        for (; dayStart < segment.to(); dayStart += DAY) {
+            long from = Math.max(dayStart, segment.from());
+            long to = Math.min(dayStart + DAY, segment.to());
+            try {
+                if (isCacheable(dayStart, from, to)) {
+                    days.add(new Day(dayStart,
+                            cache.write(query.getNSCL(), getDate(dayStart))));
+                } else if (from == dayStart) {
+                    days.add(new Day(dayStart,
+                            cache.append(query.getNSCL(), getDate(dayStart))));
+                }
+            } catch (IOException ex) {
+                LOG.error("{} Failed to cache day", query.getId());
+                LOG.error(ex.getMessage());
+            }
+        }
+
+        return days;
+    }
+
+    /**
+     * Does the given DataRecord overlap the given time range?.
+     *
+     * @param dataRecord
+     * @param from
+     * @param to
+     * @return
+     */
+    private static boolean overlaps(DataRecord dataRecord, long from, long to) {
+        return getEnd(dataRecord) >= from && getStart(dataRecord) < to;
+    }
+
+    /**
+     * Returns the time (millis) of the first sample in the given DataRecord.
+     *
+     * @param dataRecord
+     * @return
+     */
+    private static long getStart(DataRecord dataRecord) {
+        return dataRecord.getStartBtime().toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the time (millis) of the last sample in the given DataRecord.
+     *
+     * @param dataRecord
+     * @return
+     */
+    private static long getEnd(DataRecord dataRecord) {
+        return dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the UTC date for the given time.
+     *
+     * @param epochmillis
+     * @return
+     */
+    private static LocalDate getDate(long epochmillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(epochmillis),
+                ZoneOffset.UTC);
+    }
+
+    /**
+     * Returns the oldest Datarecord available. This method can potentially
+     * block for a long time (reading from disk or waiting for the network), so
+     * it should be called from a dedicated thread. Once there is no more data
+     * then a poison pill is returned.
+     *
+     * @return
+     */
+    @Override
+    public DataRecord getDataRecord() {
+
+        if (first != null) {
+            DataRecord dataRecord = first;
+            first = null;
+            return dataRecord;
+        }
+
+        if (finished) {
+            return POISON;
+        }
+
+        DataRecord dataRecord = next();
+        if (dataRecord == null) {
+            finished = true;
+            if (truncated) {
+                LOG.warn("{} Download truncated", query.getId());
+            } else {
+                LOG.info("{} Download completed", query.getId());
+            }
+            return POISON;
+        }
+
+        return dataRecord;
+    }
+
+    @Override
+    public boolean isComplete() {
+        return !truncated;
+    }
+
+    /**
+     * Reads the DataRecords of a segment.
+     */
+    private interface Reader {
+
+        /**
+         * Returns the next DataRecord of the segment.
+         * <p>
+         * IMPORTANT: This method blocks.
+         *
+         * @return The DataRecord or null if the segment is over.
+         */
+        DataRecord next();
+
+        /**
+         * Releases this reader once the segment is over.
+         *
+         * @return A reader for what is still missing in the segment (if
+         * any), null otherwise.
+         */
+        Reader finish();
+    }
+
+    /**
+     * Reads a complete or partial day from the cache.
+     */
+    private class CachedReader implements Reader {
+
+        /**
+         * The day file.
+         */
+        private final WaveformCache.DayReader dayReader;
+
+        /**
+         * The segment of a partial day, null for complete days.
+         */
+        private final Segment partial;
+
+        /**
+         * Time (millis) of the last sample read.
+         */
+        private long covered;
+
+        private CachedReader(WaveformCache.DayReader dayReader, Segment partial) {
+            this.dayReader = dayReader;
+            this.partial = partial;
+            covered = partial == null ? 0 : partial.from() - 1;
+        }
+
+        @Override
+        public DataRecord next() {
+            try {
+                DataRecord dataRecord = dayReader.next();
+                if (dataRecord != null) {
+                    covered = Math.max(covered, getEnd(dataRecord));
+                }
+                return dataRecord;
+            } catch (IOException | SeedFormatException ex) {
+                LOG.error("{} Failed to read from cache", query.getId());
+                LOG.error(ex.getMessage());
+                return null;
+            }
+        }
+
+        /**
+         * Downloads what is missing after the last sample of a partial day,
+         * the new data is appended to the partial day. If the day is over (and
+         * nothing is missing) then it becomes a complete day.
+         *
+         * @return
+         */
+        @Override
+        public Reader finish() {
+
+            dayReader.close();
+
+            if (partial == null) {
+                return null;
+            }
+
+            if (covered + 1 < partial.to()) {
+
+                List<Day> days = new ArrayList<>();
+                try {
+                    days.add(new Day(partial.from(),
+                            cache.append(query.getNSCL(), getDate(partial.from()))));
+                } catch (IOException ex) {
+                    LOG.error("{} Failed to cache day", query.getId());
+                    LOG.error(ex.getMessage());
+                }
+
+                // without the remainder the day can't be promoted, it could
+                // be a network failure and not the end of the data
+                return download(new Segment(covered + 1, partial.to(),
+                        Source.NETWORK), covered + 1, days, partial);
+            }
+
+            promote(partial);
+            return null;
+        }
+    }
+
+    /**
+     * Reads a segment from a network client, the DataRecords are added to the
+     * days being cached.
+     */
+    private class NetworkReader implements Reader {
+
+        /**
+         * The network client.
+         */
+        private final DataRecordProvider client;
+
+        /**
+         * DataRecords starting before this time (millis) are dropped.
+         */
+        private final long after;
+
+        /**
+         * Days being cached.
+         */
+        private final List<Day> days;
+
+        /**
+         * Partial day to promote once the download is over, if any.
+         */
+        private final Segment partial;
+
+        private NetworkReader(DataRecordProvider client, long after,
+                List<Day> days, Segment partial) {
+            this.client = client;
+            this.after = after;
+            this.days = days;
+            this.partial = partial;
+        }
+
+        @Override
+        public DataRecord next() {
+
+            DataRecord dataRecord = client.getDataRecord();
+            while (dataRecord.getHeader().getSequenceNum() != -1) {
+                if (getStart(dataRecord) >= after) {
+                    for (Day day : days) {
+                        day.add(dataRecord);
+                    }
+                    return dataRecord;
+                }
+                dataRecord = client.getDataRecord();
+            }
+
+            return null;
+        }
+
+        /**
+         * Caches the days downloaded, unless the download was truncated.
+         *
+         * @return
+         */
+        @Override
+        public Reader finish() {
+
+            if (!client.isComplete()) {
+                LOG.warn("{} Download truncated, nothing cached", query.getId());
+                truncated = true;
+                for (Day day : days) {
+                    day.writer.abort();
+                }
+                return null;
+            }
+
+            for (Day day : days) {
+                day.writer.commit();
+            }
+
+            if (partial != null) {
+                promote(partial);
+            }
+
+            return null;
+        }
+    }
+
+    /**
+     * Turns the partial day of the given segment into a complete day if the
+     * day is over.
+     *
+     * @param segment
+     */
+    private void promote(Segment segment) {
+        if (isCacheable(segment.from(), segment.from(), segment.to())) {
+            cache.promote(query.getNSCL(), getDate(segment.from()));
+        }
+    }
+
+    /**
+     * A day being written to the cache.
+     *
+     * @param start Start of the day (millis).
+     * @param writer
+     */
+    private record Day(long start, WaveformCache.DayWriter writer) {
+
+        /**
+         * Writes the DataRecord if it overlaps this day.
+         *
+         * @param dataRecord
+         */
+        private void add(DataRecord dataRecord) {
+            if (overlaps(dataRecord, start, start + DAY)) {
+                writer.add(dataRecord);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,570 @@
+package rsamssam.datasources.cache;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.config.Names;
+
+/**
+ * On disk store of raw miniseed data, one gzip compressed file per channel
+ * (NSCL) and day: cache/NSCL/yyyy-MM-dd.mseed.gz
+ * <p>
+ * Days still open (ex. today) are kept as partial days, the data in a partial
+ * day begins at midnight and new data is appended as it gets downloaded. Once
+ * the day is over and complete, the partial day is promoted to a complete
+ * day. Appends to (and promotions of) the same partial day are serialized, an
+ * append only adds the DataRecords starting after the current end of the day,
+ * so concurrent queries downloading the same interval don't duplicate it.
+ * <p>
+ * The total size of the cache is kept under the configured budget by evicting
+ * the least recently used days, the modification time of a day file is updated
+ * every time it is read.
+ *
+ * @author Julian Peña.
+ */
+public class WaveformCache {
+
+    /**
+     * The cache shared by all queries.
+     */
+    private static WaveformCache instance;
+
+    /**
+     * Root folder of this cache.
+     */
+    private final Path root;
+
+    /**
+     * Disk budget in bytes.
+     */
+    private final long budget;
+
+    /**
+     * Locks for the partial days, a partial day uses the lock at the index
+     * given by the hash of its path.
+     */
+    private final Object[] locks = new Object[64];
+
+    /**
+     * Our logger.
+     */
+    private static final Logger LOG = LoggerFactory.getLogger("WaveformCache");
+
+    /**
+     * Returns the cache in the default folder with the configured budget,
+     * creating it if needed.
+     *
+     * @return
+     */
+    public static synchronized WaveformCache getInstance() {
+        if (instance == null) {
+            instance = new WaveformCache(Path.of(Names.CACHE_DIR),
+                    Config.getCacheSize() * 1024L * 1024L);
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a cache in the given folder.
+     *
+     * @param root The cache folder.
+     * @param budget Disk budget in bytes.
+     */
+    public WaveformCache(Path root, long budget) {
+        this.root = root;
+        this.budget = budget;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Is the cache enabled?.
+     *
+     * @return
+     */
+    public boolean isEnabled() {
+        return budget > 0;
+    }
+
+    /**
+     * Is the given day of the given channel in the cache?.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     */
+    public boolean contains(String NSCL, LocalDate day) {
+        return Files.isReadable(getPath(NSCL, day));
+    }
+
+    /**
+     * Is there a partial day for the given channel in the cache?.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     */
+    public boolean containsPartial(String NSCL, LocalDate day) {
+        return Files.isReadable(getPartialPath(NSCL, day));
+    }
+
+    /**
+     * Opens a day from the cache, its DataRecords are then pulled one at a
+     * time.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     * @throws IOException
+     */
+    public DayReader open(String NSCL, LocalDate day) throws IOException {
+        return new DayReader(getPath(NSCL, day));
+    }
+
+    /**
+     * Opens a partial day from the cache, its DataRecords are then pulled one
+     * at a time.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     * @throws IOException
+     */
+    public DayReader openPartial(String NSCL, LocalDate day) throws IOException {
+        return new DayReader(getPartialPath(NSCL, day));
+    }
+
+    /**
+     * Returns a writer for the given day. Nothing is visible in the cache
+     * until the writer is committed.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     * @throws IOException
+     */
+    public DayWriter write(String NSCL, LocalDate day) throws IOException {
+        return new DayWriter(getPath(NSCL, day), null);
+    }
+
+    /**
+     * Returns a writer that appends to the partial day (creating it if
+     * needed). Nothing is visible in the cache until the writer is committed.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     * @throws IOException
+     */
+    public DayWriter append(String NSCL, LocalDate day) throws IOException {
+        return new DayWriter(getPartialPath(NSCL, day), getPath(NSCL, day));
+    }
+
+    /**
+     * Turns a partial day into a complete day.
+     *
+     * @param NSCL
+     * @param day
+     */
+    public void promote(String NSCL, LocalDate day) {
+
+        Path partial = getPartialPath(NSCL, day);
+
+        synchronized (getLock(partial)) {
+            if (!Files.exists(partial)) {
+                return;
+            }
+            try {
+                Files.move(partial, getPath(NSCL, day),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                LOG.info("{} {} is now complete", NSCL, day);
+            } catch (IOException ex) {
+                LOG.error("Failed to promote {} {}", NSCL, day);
+                LOG.error(ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Deletes the least recently used days until the cache is under budget.
+     */
+    public synchronized void evict() {
+
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.walk(root)) {
+            stream
+                    .filter(p -> p.toString().endsWith(".mseed.gz"))
+                    .forEach(files::add);
+        } catch (IOException ex) {
+            LOG.error("Failed to list cache files");
+            LOG.error(ex.getMessage());
+            return;
+        }
+
+        long size = 0;
+        for (Path file : files) {
+            size += sizeOf(file);
+        }
+
+        if (size <= budget) {
+            return;
+        }
+
+        files.sort(Comparator.comparingLong(WaveformCache::lastModified));
+
+        for (Path file : files) {
+            if (size <= budget) {
+                break;
+            }
+            long fileSize = sizeOf(file);
+            try {
+                Files.deleteIfExists(file);
+                size -= fileSize;
+                LOG.info("Evicted {}", file);
+            } catch (IOException ex) {
+                LOG.error("Failed to evict {}", file);
+            }
+        }
+    }
+
+    /**
+     * Returns the path of the given day file.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     */
+    private Path getPath(String NSCL, LocalDate day) {
+        return root.resolve(NSCL).resolve(day + ".mseed.gz");
+    }
+
+    /**
+     * Returns the path of the given partial day file.
+     *
+     * @param NSCL
+     * @param day
+     * @return
+     */
+    private Path getPartialPath(String NSCL, LocalDate day) {
+        return root.resolve(NSCL).resolve(day + ".partial.mseed.gz");
+    }
+
+    /**
+     * Returns the lock of the given partial day.
+     *
+     * @param partial
+     * @return
+     */
+    private Object getLock(Path partial) {
+        return locks[Math.floorMod(partial.hashCode(), locks.length)];
+    }
+
+    /**
+     * Returns the time (millis) of the last sample in the given day file.
+     *
+     * @param path
+     * @return The time or Long.MIN_VALUE if the day has no DataRecords.
+     * @throws IOException
+     */
+    private static long getEnd(Path path) throws IOException {
+
+        long end = Long.MIN_VALUE;
+
+        try (DayReader reader = new DayReader(path)) {
+            DataRecord dataRecord;
+            while ((dataRecord = reader.next()) != null) {
+                end = Math.max(end, getEnd(dataRecord));
+            }
+        } catch (SeedFormatException ex) {
+            throw new IOException(ex);
+        }
+
+        return end;
+    }
+
+    private static long getStart(DataRecord dataRecord) {
+        return dataRecord.getStartBtime().toInstant().toEpochMilli();
+    }
+
+    private static long getEnd(DataRecord dataRecord) {
+        return dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads a single day file, one DataRecord at a time.
+     * <p>
+     * IMPORTANT: Reading blocks while reading from disk.
+     */
+    public static class DayReader implements AutoCloseable {
+
+        /**
+         * Compressed input.
+         */
+        private final DataInputStream input;
+
+        private DayReader(Path path) throws IOException {
+            try {
+                Files.setLastModifiedTime(path,
+                        FileTime.fromMillis(System.currentTimeMillis()));
+            } catch (IOException ex) {
+                LOG.warn("Failed to touch {}", path);
+            }
+            input = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(Files.newInputStream(path))));
+        }
+
+        /**
+         * Returns the next DataRecord in the day.
+         *
+         * @return The DataRecord or null if there are no more DataRecords.
+         * @throws IOException
+         * @throws SeedFormatException
+         */
+        public DataRecord next() throws IOException, SeedFormatException {
+            while (true) {
+                SeedRecord record;
+                try {
+                    record = SeedRecord.read(input);
+                } catch (EOFException ex) {
+                    return null;
+                }
+                if (record instanceof DataRecord dataRecord) {
+                    return dataRecord;
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                input.close();
+            } catch (IOException ex) {
+            }
+        }
+    }
+
+    /**
+     * Writes a single day to a temporary file, the file is moved to its final
+     * place once committed. When appending, the day file and the new data are
+     * first merged in another temporary file, so readers never see a half
+     * written day.
+     * <p>
+     * Appending works since a sequence of gzip members is a valid gzip file.
+     */
+    public class DayWriter {
+
+        /**
+         * Final path of the day file.
+         */
+        private final Path path;
+
+        /**
+         * Path of the complete day when appending to a partial day, null
+         * otherwise.
+         */
+        private final Path complete;
+
+        /**
+         * Did the partial day exist when the writer was created?.
+         */
+        private final boolean existed;
+
+        /**
+         * Temporary file being written.
+         */
+        private final Path temp;
+
+        /**
+         * Compressed output.
+         */
+        private final DataOutputStream output;
+
+        /**
+         * How many DataRecords were written?.
+         */
+        private int count = 0;
+
+        private DayWriter(Path path, Path complete) throws IOException {
+            this.path = path;
+            this.complete = complete;
+            existed = Files.exists(path);
+            Files.createDirectories(path.getParent());
+            temp = Files.createTempFile(path.getParent(), "day", ".tmp");
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(temp))));
+        }
+
+        /**
+         * Adds a DataRecord to this day.
+         *
+         * @param dataRecord
+         * @return False if the DataRecord could not be written.
+         */
+        public boolean add(DataRecord dataRecord) {
+            try {
+                dataRecord.write(output);
+                count++;
+                return true;
+            } catch (IOException ex) {
+                LOG.error("Failed to write {}", temp);
+                LOG.error(ex.getMessage());
+                return false;
+            }
+        }
+
+        /**
+         * Makes this day available in the cache, a day without DataRecords is
+         * discarded.
+         */
+        public void commit() {
+
+            try {
+                output.close();
+                if (count == 0) {
+                    Files.deleteIfExists(temp);
+                    return;
+                }
+                if (complete != null) {
+                    synchronized (getLock(path)) {
+                        merge();
+                    }
+                } else {
+                    Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                    LOG.info("Cached {} ({} records)", path, count);
+                }
+            } catch (IOException ex) {
+                LOG.error("Failed to commit {}", path);
+                LOG.error(ex.getMessage());
+                abort();
+                return;
+            }
+
+            evict();
+        }
+
+        /**
+         * Replaces the partial day with the partial day followed by the new
+         * DataRecords starting after its current end. Other writers may have
+         * appended the same interval since this writer was created.
+         * <p>
+         * IMPORTANT: The lock of the partial day must be held.
+         *
+         * @throws IOException
+         */
+        private void merge() throws IOException {
+
+            boolean exists = Files.exists(path);
+
+            // promoted or evicted meanwhile, the new data alone is not a day
+            // starting at midnight
+            if (existed && !exists || !exists && Files.exists(complete)) {
+                LOG.info("{} is gone, not appending", path);
+                Files.delete(temp);
+                return;
+            }
+
+            long end = exists ? getEnd(path) : Long.MIN_VALUE;
+
+            Path merged = Files.createTempFile(path.getParent(), "day", ".tmp");
+
+            int appended = 0;
+            try {
+                try (OutputStream output = Files.newOutputStream(merged)) {
+                    if (exists) {
+                        Files.copy(path, output);
+                    }
+                    DataOutputStream member = new DataOutputStream(
+                            new BufferedOutputStream(new GZIPOutputStream(output)));
+                    try (DayReader reader = new DayReader(temp)) {
+                        DataRecord dataRecord;
+                        while ((dataRecord = reader.next()) != null) {
+                            if (getStart(dataRecord) > end) {
+                                dataRecord.write(member);
+                                appended++;
+                            }
+                        }
+                    }
+                    member.close();
+                }
+                if (appended > 0) {
+                    Files.move(merged, path, StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.delete(merged);
+                }
+            } catch (SeedFormatException ex) {
+                Files.deleteIfExists(merged);
+                throw new IOException(ex);
+            } catch (IOException ex) {
+                Files.deleteIfExists(merged);
+                throw ex;
+            }
+
+            Files.delete(temp);
+            LOG.info("Cached {} ({} records appended)", path, appended);
+        }
+
+        /**
+         * Discards this day.
+         */
+        public void abort() {
+            try {
+                output.close();
+            } catch (IOException ex) {
+            }
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ex) {
+                LOG.error("Failed to delete {}", temp);
+            }
+        }
+    }
+
+}
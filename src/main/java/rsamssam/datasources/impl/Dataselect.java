@@ -18,6 +18,7 @@ import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -25,12 +26,18 @@ import org.slf4j.LoggerFactory;
 import rsamssam.config.Config;
 import rsamssam.datasources.DataClient;
 import rsamssam.datasources.DataRecordProvider;
+import rsamssam.metrics.Metrics;
 import rsamssam.query.Metadata;
 import rsamssam.query.Query;
 
 /**
  * FDSN Dataselect client. Instances of this class should be used for a single
  * query.
+ * <p>
+ * If the connection is lost in the middle of a download, the download is
+ * resumed (with backoff) from the end of the last DataRecord received. Records
+ * overlapping what was already received are dropped. If the download can't be
+ * resumed, the data is truncated (see isComplete).
  *
  * @author Julian Peña.
  */
@@ -81,6 +88,43 @@ public class Dataselect implements DataClient, DataRecordProvider {
      */
     private boolean gotData = false;
 
+    /**
+     * Completed with the metadata of the first DataRecord received.
+     */
+    private final Promise<Metadata> promise;
+
+    /**
+     * Time (millis) of the last sample received so far.
+     */
+    private long lastSample = Long.MIN_VALUE;
+
+    /**
+     * How many times in a row we have tried to resume the download.
+     */
+    private int retries = 0;
+
+    /**
+     * Maximum number of attempts to resume an interrupted download.
+     */
+    private final int maxRetries;
+
+    /**
+     * Set once the server has told us there is no (more) data.
+     */
+    private boolean noMoreData = false;
+
+    /**
+     * Set once the download ended cleanly (not truncated).
+     */
+    private volatile boolean complete = false;
+
+    /**
+     * Download metrics.
+     */
+    private final LongAdder downloadedBytes = Metrics.DOWNLOAD_BYTES.labels("fdsn");
+
+    private final LongAdder downloadedRecords = Metrics.DOWNLOAD_RECORDS.labels("fdsn");
+
     /**
      * Our logger.
      */
@@ -98,10 +142,12 @@ public class Dataselect implements DataClient, DataRecordProvider {
         this.vertx = vertx;
 
         queue = new LinkedBlockingQueue();
+        promise = Promise.promise();
 
         SERVER = Config.getFdsnServer();
         PORT = Config.getFdsnServerPort();
         DATASELECT_URL = Config.getFdsnDataselectURL();
+        maxRetries = Config.getDownloadRetries();
 
         if (SERVER == null || DATASELECT_URL == null) {
             LOG.warn("Bad FDSN configuration, all FDSN queries will fail!");
@@ -134,34 +180,96 @@ public class Dataselect implements DataClient, DataRecordProvider {
 
         this.query = query;
 
-        Optional<String> optionalURL = getRequestURL();
+        Optional<String> optionalURL = getRequestURL(query.getFrom() - MARGIN_TIME);
         if (optionalURL.isEmpty()) {
             return Future.failedFuture("Failed to query FDSN server");
         }
 
-        Promise<Metadata> promise = Promise.promise();
+        request(optionalURL.get());
 
-        String url = optionalURL.get();
+        return promise.future();
+    }
+
+    /**
+     * Makes a request and starts receiving its data.
+     *
+     * @param url
+     */
+    private void request(String url) {
         getRequest(url)
                 .compose(this::doRequest)
                 .compose(this::onResponse)
-                .compose(this::receiveData)
-                .onSuccess(metadata -> promise.complete(metadata))
+                .onSuccess(this::receiveData)
                 .onFailure(f -> {
+                    if (gotData) {
+                        resume();
+                        return;
+                    }
                     LOG.info("{} Download failed", query.getId());
                     promise.fail("Failed to make query");
                 });
+    }
 
-        return promise.future();
+    /**
+     * Resumes an interrupted download from the last sample received, waiting
+     * a bit longer on every attempt. If there is no more data the download is
+     * completed, if too many attempts were made it's truncated.
+     */
+    private void resume() {
+
+        if (noMoreData || retries >= maxRetries) {
+            finish(noMoreData);
+            return;
+        }
+
+        long delay = 1000L << retries;
+        retries++;
+
+        LOG.info("{} Resuming download in {} ms (attempt {})", query.getId(),
+                delay, retries);
+
+        vertx.setTimer(delay, t -> {
+            long start = Math.max(lastSample + 1, query.getFrom() - MARGIN_TIME);
+            Optional<String> url = getRequestURL(start);
+            if (url.isEmpty()) {
+                finish(false);
+                return;
+            }
+            request(url.get());
+        });
+    }
+
+    /**
+     * Signals the consumers that there is no more data.
+     *
+     * @param complete Did the server send all the data?, false if the download
+     * gave up.
+     */
+    private void finish(boolean complete) {
+        if (!gotData) {
+            LOG.info("{} Download failed", query.getId());
+            promise.tryFail("Failed to make query");
+            return;
+        }
+        if (complete) {
+            LOG.info("{} Download completed", query.getId());
+        } else {
+            LOG.warn("{} Download truncated after {} attempts to resume it",
+                    query.getId(), retries);
+        }
+        this.complete = complete;
+        // poison pill injection
+        queue.add(POISON);
     }
 
     /**
      * Assembles the FDSN Dataselect query URL.
      *
+     * @param start Start time of the request (millis).
      * @return A optional that can contain a Dataselect query if all parameters
      * are valid.
      */
-    private Optional<String> getRequestURL() {
+    private Optional<String> getRequestURL(long start) {
 
         if (SERVER == null) {
             LOG.error("No FDSN server has been configured");
@@ -187,7 +295,7 @@ public class Dataselect implements DataClient, DataRecordProvider {
 
         stringBuilder
                 .append("&start=")
-                .append(formatTime(query.getFrom() - MARGIN_TIME))
+                .append(formatTime(start))
                 .append("&end=")
                 .append(formatTime(query.getTo() + MARGIN_TIME));
 
@@ -266,14 +374,15 @@ public class Dataselect implements DataClient, DataRecordProvider {
         switch (statusCode) {
 
             case 200:
-                receiveData(response).onSuccess(s -> promise.complete());
                 promise.complete(response);
                 break;
 
             case 204:
             case 404:
                 LOG.info("{} No data received", query.getId());
+                noMoreData = true;
                 promise.fail("No data returned for this query");
+                break;
 
             default:
                 LOG.warn("The server responded with {}", statusCode);
@@ -296,17 +405,18 @@ public class Dataselect implements DataClient, DataRecordProvider {
      *
      * @param response The vertx HTTP response object resulting from the
      * request.
-     * @return A future that will eventually succeed once the download has
-     * ended.
      */
-    private Future<Metadata> receiveData(HttpClientResponse response) {
+    private void receiveData(HttpClientResponse response) {
 
-        Promise<Metadata> promise = Promise.promise();
+        // exception and end could both be reported for the same response
+        boolean[] ended = {false};
 
         parser = RecordParser.newFixed(512, response);
         parser
                 .handler(buffer -> {
 
+                    downloadedBytes.add(buffer.length());
+
                     DataRecord dataRecord;
                     try {
                         dataRecord = (DataRecord) DataRecord.read(buffer.getBytes());
@@ -316,6 +426,8 @@ public class Dataselect implements DataClient, DataRecordProvider {
                         return;
                     }
 
+                    downloadedRecords.increment();
+
                     if (!gotData) {
                         gotData = true;
                         promise.complete(getMetadata(dataRecord));
@@ -328,6 +440,14 @@ public class Dataselect implements DataClient, DataRecordProvider {
                         return;
                     }
 
+                    // already received before the download was resumed
+                    long start = dataRecord.getStartBtime().toInstant().toEpochMilli();
+                    if (start <= lastSample) {
+                        return;
+                    }
+                    lastSample = dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+                    retries = 0;
+
                     queue.add(dataRecord);
 
                     // TODO make this configurable?
@@ -340,15 +460,18 @@ public class Dataselect implements DataClient, DataRecordProvider {
                     // what's going on here?
                     LOG.info("{} Unexpected exception", query.getId());
                     LOG.info(e.getMessage());
-                    LOG.info("Will try to continue ...");
+                    if (!ended[0]) {
+                        ended[0] = true;
+                        LOG.info("Will try to resume ...");
+                        resume();
+                    }
                 })
                 .endHandler(e -> {
-                    // poison pill injection
-                    queue.add(POISON);
-                    LOG.info("{} Download completed", query.getId());
+                    if (!ended[0]) {
+                        ended[0] = true;
+                        finish(true);
+                    }
                 });
-
-        return promise.future();
     }
 
     /**
@@ -389,4 +512,9 @@ public class Dataselect implements DataClient, DataRecordProvider {
         }
     }
 
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
 }
@@ -0,0 +1,311 @@
+package rsamssam.datasources.impl;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Reads miniseed data from a local SeisComP SDS archive. Instances of this
+ * class should be used for a single query.
+ * <p>
+ * Day files are memory mapped and DataRecords are parsed straight from the
+ * mapped pages, the files are never read into the heap as a whole.
+ *
+ * @author Julian Peña.
+ */
+public class SDS implements DataClient, DataRecordProvider {
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Root folder of the SDS archive.
+     */
+    private final String archive;
+
+    /**
+     * Query object.
+     */
+    private Query query;
+
+    /**
+     * Maximum number of DataRecords waiting to be consumed. The reader blocks
+     * once the queue is full.
+     */
+    private static final int CAPACITY = 10000;
+
+    /**
+     * Queue for the DataRecords read.
+     */
+    private final LinkedBlockingQueue<DataRecord> queue;
+
+    /**
+     * Simple flag that indicates if at least one packet was read.
+     */
+    private boolean gotData = false;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("SDS");
+
+    /**
+     * Initializes this client using the configured SDS archive.
+     *
+     * @param vertx A vertx instance, files are read on its worker threads.
+     */
+    public SDS(Vertx vertx) {
+        this(vertx, Config.getSdsArchive());
+    }
+
+    /**
+     * Initializes this client using the given SDS archive.
+     *
+     * @param vertx A vertx instance, files are read on its worker threads.
+     * @param archive The root folder of the SDS archive.
+     */
+    public SDS(Vertx vertx, String archive) {
+        this.vertx = vertx;
+        this.archive = archive;
+        queue = new LinkedBlockingQueue<>(CAPACITY);
+    }
+
+    /**
+     * Starts reading the day files covering the query.
+     *
+     * @param query
+     * @return A Future that will eventually succeed once the first DataRecord
+     * for the query has been read. The rest of the files are read
+     * asynchronously.
+     */
+    @Override
+    public Future<Metadata> download(Query query) {
+
+        if (archive == null || archive.isBlank()) {
+            return Future.failedFuture("No SDS archive configured");
+        }
+
+        if (!query.isValid()) {
+            LOG.info("{} Query is not valid: {}", query.getId(), query);
+            return Future.failedFuture("Query is invalid");
+        }
+
+        this.query = query;
+
+        List<Path> files = getFiles();
+        if (files.isEmpty()) {
+            LOG.info("{} No day files in archive", query.getId());
+            return Future.failedFuture("No data in archive");
+        }
+
+        Promise<Metadata> promise = Promise.promise();
+
+        vertx
+                .executeBlocking(() -> read(files, promise), false)
+                .onComplete(c -> {
+                    if (gotData) {
+                        put(POISON);
+                        LOG.info("{} Reading completed", query.getId());
+                    } else {
+                        LOG.info("{} No data for query in archive", query.getId());
+                        promise.tryFail("No data in archive");
+                    }
+                });
+
+        return promise.future();
+    }
+
+    /**
+     * Returns the day files covering the query that exist in the archive. The
+     * day before the query is included since its last records could spill
+     * into the first day of the query.
+     *
+     * @return
+     */
+    private List<Path> getFiles() {
+
+        LocalDate first = getDate(query.getFrom()).minusDays(1);
+        LocalDate last = getDate(query.getTo() - 1);
+
+        List<Path> files = new ArrayList<>();
+
+        for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1)) {
+            Path path = getPath(day);
+            if (Files.isReadable(path)) {
+                files.add(path);
+            }
+        }
+
+        return files;
+    }
+
+    /**
+     * Returns the path for the given day file in the SDS archive.
+     * <p>
+     * YEAR/NET/STA/CHAN.D/NET.STA.LOC.CHAN.D.YEAR.DOY
+     *
+     * @param day
+     * @return
+     */
+    private Path getPath(LocalDate day) {
+
+        String year = Integer.toString(day.getYear());
+        String L = query.getL() == null ? "" : query.getL();
+
+        String file = String.join(".", query.getN(), query.getS(), L,
+                query.getC(), "D", year,
+                String.format("%03d", day.getDayOfYear()));
+
+        return Path.of(archive, year, query.getN(), query.getS(),
+                query.getC() + ".D", file);
+    }
+
+    /**
+     * Reads all the given files, DataRecords overlapping the query are put in
+     * the queue.
+     * <p>
+     * IMPORTANT: This method blocks, it must be run on a worker thread.
+     *
+     * @param files
+     * @param promise Completed with the metadata of the first DataRecord.
+     * @return True if at least one DataRecord was read.
+     */
+    private Boolean read(List<Path> files, Promise<Metadata> promise) {
+
+        for (Path file : files) {
+
+            LOG.info("{} Reading {}", query.getId(), file);
+
+            try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+                MappedByteBuffer mapped = channel
+                        .map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+                ByteBuf bytebuf = Unpooled.wrappedBuffer(mapped);
+                var input = new DataInputStream(new ByteBufInputStream(bytebuf));
+
+                while (bytebuf.isReadable()) {
+                    SeedRecord record = SeedRecord.read(input);
+                    if (record instanceof DataRecord dataRecord
+                            && !add(dataRecord, promise)) {
+                        LOG.warn("{} Nobody is consuming, aborting", query.getId());
+                        return gotData;
+                    }
+                }
+
+            } catch (IOException | SeedFormatException ex) {
+                LOG.error("{} Failed to read {}", query.getId(), file);
+                LOG.error(ex.getMessage());
+            }
+        }
+
+        return gotData;
+    }
+
+    /**
+     * Adds a DataRecord to the queue, if it overlaps the query time range. This
+     * method blocks if the queue is full.
+     *
+     * @param dataRecord
+     * @param promise
+     * @return False if the DataRecord could not be queued.
+     */
+    private boolean add(DataRecord dataRecord, Promise<Metadata> promise) {
+
+        long start = dataRecord.getStartBtime().toInstant().toEpochMilli();
+        long end = dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+
+        if (end < query.getFrom() || start >= query.getTo()) {
+            return true;
+        }
+
+        if (!gotData) {
+            gotData = true;
+            promise.complete(getMetadata(dataRecord));
+        }
+
+        return put(dataRecord);
+    }
+
+    /**
+     * Puts a DataRecord in the queue, waiting for space if needed. If there is
+     * no space after the service timeout, the consumer is assumed to be gone.
+     *
+     * @param dataRecord
+     * @return False if the DataRecord could not be queued.
+     */
+    private boolean put(DataRecord dataRecord) {
+        try {
+            return queue.offer(dataRecord, Config.getTimeout(), TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            LOG.error("{} Interrupted while reading archive", query.getId());
+            LOG.error(ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the UTC date for the given time.
+     *
+     * @param epochmillis
+     * @return
+     */
+    private static LocalDate getDate(long epochmillis) {
+        return LocalDate.ofInstant(Instant.ofEpochMilli(epochmillis),
+                ZoneOffset.UTC);
+    }
+
+    /**
+     * Returns the oldest Datarecord read. This method can potentially block for
+     * a long time, so it should be called from a dedicated thread. Once there
+     * is no more data then a poison pill is returned (DataRecord object with a
+     * sequence number set to -1).
+     *
+     * @return
+     */
+    @Override
+    public DataRecord getDataRecord() {
+        try {
+            return queue.take();
+        } catch (InterruptedException ex) {
+            LOG.error("{} Failed to get datarecord", query.getId());
+            LOG.error(ex.getMessage());
+            return POISON;
+        }
+    }
+
+}
@@ -8,6 +8,7 @@ import io.vertx.core.Vertx;
 
 import java.time.Instant;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,10 +17,18 @@ import rsamssam.config.Config;
 import rsamssam.datasources.DataClient;
 import rsamssam.datasources.DataRecordProvider;
 import rsamssam.datasources.impl.seedlink.SeedLinkClient;
+import rsamssam.metrics.Metrics;
 import rsamssam.query.Metadata;
 import rsamssam.query.Query;
 
 /**
+ * SeedLink client for a single query.
+ * <p>
+ * If the connection is lost in the middle of a download, a new session is
+ * started (with backoff) from the end of the last DataRecord received. Records
+ * overlapping what was already received are dropped. A connection closed once
+ * the data has reached the end of the query is a complete download. If the
+ * session can't be resumed, the data is truncated (see isComplete).
  *
  * @author Julian Peña.
  */
@@ -31,9 +40,39 @@ public class SeedLink implements DataClient, DataRecordProvider {
     private final Vertx vertx;
 
     /**
-     * Our actual SeedLink client.
+     * Our actual SeedLink client (a new one for every session).
      */
-    private final SeedLinkClient seedLinkClient;
+    private SeedLinkClient seedLinkClient;
+
+    /**
+     * Query object.
+     */
+    private Query query;
+
+    /**
+     * Completed with the metadata of the first DataRecord received.
+     */
+    private final Promise<Metadata> promise;
+
+    /**
+     * Time (millis) of the last sample received so far.
+     */
+    private long lastSample = Long.MIN_VALUE;
+
+    /**
+     * Time (millis) of the sample expected after the last one received.
+     */
+    private long nextSample = Long.MIN_VALUE;
+
+    /**
+     * How many times in a row we have tried to resume the download.
+     */
+    private int retries = 0;
+
+    /**
+     * Maximum number of attempts to resume an interrupted download.
+     */
+    private final int maxRetries;
 
     /**
      * Queue for downloaded data records.
@@ -45,11 +84,23 @@ public class SeedLink implements DataClient, DataRecordProvider {
      */
     private boolean gotResults = false;
 
+    /**
+     * Set once the download ended cleanly (not truncated).
+     */
+    private volatile boolean complete = false;
+
     /**
      * Internal timer to keep track of timeouts.
      */
     private Long timer = null;
 
+    /**
+     * Download metrics.
+     */
+    private final LongAdder downloadedBytes = Metrics.DOWNLOAD_BYTES.labels("seedlink");
+
+    private final LongAdder downloadedRecords = Metrics.DOWNLOAD_RECORDS.labels("seedlink");
+
     /**
      * Our logger.
      */
@@ -59,53 +110,121 @@ public class SeedLink implements DataClient, DataRecordProvider {
 
         this.vertx = vertx;
 
-        seedLinkClient = new SeedLinkClient(vertx,
-                Config.getSeedLinkServer(),
-                Config.getSeedLinkServerPort());
-
         queue = new LinkedBlockingQueue();
+        promise = Promise.promise();
+        maxRetries = Config.getDownloadRetries();
     }
 
     @Override
     public Future<Metadata> download(Query query) {
 
-        Promise<Metadata> promise = Promise.promise();
+        this.query = query;
+
+        session(query.getFrom());
+
+        return promise.future();
+    }
+
+    /**
+     * Starts a SeedLink session requesting data from the given time on.
+     *
+     * @param from
+     */
+    private void session(long from) {
+
+        SeedLinkClient client = new SeedLinkClient(vertx,
+                Config.getSeedLinkServer(),
+                Config.getSeedLinkServerPort());
+        seedLinkClient = client;
 
-        seedLinkClient
+        Future<?> download = client
                 .connect()
-                .compose(c -> seedLinkClient.doHello())
-                .compose(c -> seedLinkClient.doStation(query.getS() + " " + query.getN()))
-                .compose(c -> seedLinkClient.doSelect(query.getL() + query.getC() + ".D"))
+                .compose(c -> client.doHello())
+                .compose(c -> client.doStation(query.getS() + " " + query.getN()))
+                .compose(c -> client.doSelect(query.getL() + query.getC() + ".D"))
                 .compose(c -> {
                     if (fetchOrTime(query)) {
-                        return seedLinkClient.doFetch(0, query.getFrom());
+                        return client.doFetch(0, from);
                     }
-                    return seedLinkClient.doTime(query.getFrom(), query.getTo());
+                    return client.doTime(from, query.getTo());
 
                 })
-                .compose(c -> seedLinkClient.doEnd())
-                .compose(c -> {
-                    return seedLinkClient
-                            .getDatarecords(5, datarecord -> {
-                                if (!gotResults) {
-                                    gotResults = true;
-                                    promise.complete(getMetadata(datarecord));
-                                }
-                                add(datarecord);
-                            });
-                })
-                .onSuccess(s -> LOG.info("{} Download completed", query.getId()))
-                .onComplete(c -> {
-                    // it could happen that a download get aborted mid time
-                    if (gotResults) {
-                        queue.add(POISON);
-                    } else {
-                        LOG.info("Failed to download data over seedlink");
-                        promise.tryFail("Failed to connect to server");
-                    }
-                });
+                .compose(c -> client.doEnd())
+                .compose(c -> client.getDatarecords(5, this::onDataRecord));
 
-        return promise.future();
+        download.onComplete(c -> {
+            client.close();
+            // it could happen that a download get aborted mid time
+            boolean ended = c.succeeded() || nextSample >= query.getTo();
+            if (!ended && gotResults && retries < maxRetries) {
+                resume();
+            } else {
+                finish(ended);
+            }
+        });
+    }
+
+    /**
+     * Starts a new session from the last sample received, waiting a bit longer
+     * on every attempt.
+     */
+    private void resume() {
+
+        long delay = 1000L << retries;
+        retries++;
+
+        LOG.info("{} Resuming download in {} ms (attempt {})", query.getId(),
+                delay, retries);
+
+        vertx.setTimer(delay, t -> session(lastSample + 1));
+    }
+
+    /**
+     * Signals the consumers that there is no more data.
+     *
+     * @param complete Did the session end after all the data?, false if the
+     * download gave up.
+     */
+    private void finish(boolean complete) {
+        if (gotResults) {
+            if (complete) {
+                LOG.info("{} Download completed", query.getId());
+            } else {
+                LOG.warn("{} Download truncated after {} attempts to resume it",
+                        query.getId(), retries);
+            }
+            this.complete = complete;
+            queue.add(POISON);
+        } else {
+            LOG.info("Failed to download data over seedlink");
+            promise.tryFail("Failed to connect to server");
+        }
+    }
+
+    /**
+     * Handles an incoming DataRecord, records already received before the
+     * download was resumed are dropped.
+     *
+     * @param dataRecord
+     */
+    private void onDataRecord(DataRecord dataRecord) {
+
+        downloadedBytes.add(dataRecord.getRecordSize());
+        downloadedRecords.increment();
+
+        long start = dataRecord.getStartBtime().toInstant().toEpochMilli();
+        if (start <= lastSample) {
+            return;
+        }
+        lastSample = dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+        nextSample = lastSample + Math.round(1000 / dataRecord.getSampleRate());
+        retries = 0;
+
+        if (!gotResults) {
+            gotResults = true;
+            promise.complete(getMetadata(dataRecord));
+        }
+        add(dataRecord);
     }
 
     @Override
@@ -119,6 +238,11 @@ public class SeedLink implements DataClient, DataRecordProvider {
         }
     }
 
+    @Override
+    public boolean isComplete() {
+        return complete;
+    }
+
     /**
      * Determines what SeedLink command must be used for the given Query. If the
      * end time of a Query is in the future, then FETCH must be used (it
@@ -0,0 +1,556 @@
+package rsamssam.datasources.impl;
+
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.impl.seedlink.SeedLinkClient;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Downloads the data for several SeedLink queries over a single multi-station
+ * SeedLink session.
+ * <p>
+ * Queries are added to the session (see add) before it starts, every query
+ * gets its own DataClient which is then given to RsamSsam as usual. The
+ * session starts once the first of these clients is asked to download,
+ * incoming DataRecords are demultiplexed by their NSCL into the queue of every
+ * query interested in them.
+ * <p>
+ * All channels of a session are downloaded at the same time, the number of
+ * queries per session should be kept small (see Config.getSeedLinkSessionSize)
+ * since the data waits in memory until each query gets processed.
+ * <p>
+ * The queues of all queries are bounded by shared watermarks (see
+ * Config.getSeedLinkSessionHighWatermark). The socket is paused once the queue
+ * of a query being processed goes over the high watermark, and resumed once
+ * all queues are below the low watermark. Queries are processed one after the
+ * other, so the queue of a query not being processed yet can't be drained;
+ * such a queue is detached instead, it stops receiving DataRecords and the
+ * rest of its query is downloaded later (on its own SeedLink session) once the
+ * queue runs out.
+ *
+ * @author Julian Peña.
+ */
+public class SeedLinkSession {
+
+    /**
+     * Seconds without receiving packets before the session is considered
+     * dead, nothing is read while the socket is paused so it must outlast a
+     * pause.
+     */
+    private static final int IDLE_TIMEOUT = 60;
+
+    /**
+     * Marks the end of a detached queue.
+     */
+    private static final DataRecord DETACHED = new DataRecord(new DataHeader(-2, 'D', false));
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Our actual SeedLink client.
+     */
+    private final SeedLinkClient seedLinkClient;
+
+    /**
+     * DataRecords waiting in a queue before pausing the socket.
+     */
+    private final int highWatermark;
+
+    /**
+     * DataRecords waiting in every queue before resuming the socket.
+     */
+    private final int lowWatermark;
+
+    /**
+     * Clients for every query in this session, by NSCL.
+     */
+    private final Map<String, List<Channel>> channels = new LinkedHashMap<>();
+
+    /**
+     * Has this session been started already?.
+     */
+    private boolean started = false;
+
+    /**
+     * Is the socket paused because of backpressure?.
+     */
+    private volatile boolean paused = false;
+
+    /**
+     * Is a check for resuming the socket already scheduled?.
+     */
+    private volatile boolean checking = false;
+
+    /**
+     * Context where the socket is handled.
+     */
+    private Context context;
+
+    /**
+     * Is the session over?.
+     */
+    private boolean finished = false;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("SeedLinkSession");
+
+    public SeedLinkSession(Vertx vertx) {
+        this.vertx = vertx;
+        highWatermark = Config.getSeedLinkSessionHighWatermark();
+        lowWatermark = Config.getSeedLinkSessionLowWatermark();
+        seedLinkClient = new SeedLinkClient(vertx,
+                Config.getSeedLinkServer(),
+                Config.getSeedLinkServerPort(),
+                IDLE_TIMEOUT);
+    }
+
+    /**
+     * Adds a query to this session. Queries can't be added once the session
+     * has started.
+     *
+     * @param query
+     * @return The DataClient that will provide the DataRecords for the query.
+     */
+    public synchronized DataClient add(Query query) {
+
+        if (started) {
+            throw new IllegalStateException("Session already started");
+        }
+
+        Channel channel = new Channel(query);
+        channels
+                .computeIfAbsent(query.getNSCL(), k -> new ArrayList<>())
+                .add(channel);
+
+        return channel;
+    }
+
+    /**
+     * How many queries are part of this session?.
+     *
+     * @return
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (List<Channel> list : channels.values()) {
+            size += list.size();
+        }
+        return size;
+    }
+
+    /**
+     * Starts the session (only once), selecting every station and channel.
+     */
+    private synchronized void start() {
+
+        if (started) {
+            return;
+        }
+        started = true;
+
+        // queries grouped by station
+        Map<String, List<Query>> stations = new LinkedHashMap<>();
+        for (List<Channel> list : channels.values()) {
+            for (Channel channel : list) {
+                Query query = channel.query;
+                stations
+                        .computeIfAbsent(query.getS() + " " + query.getN(),
+                                k -> new ArrayList<>())
+                        .add(query);
+            }
+        }
+
+        LOG.info("Starting session for {} stations, {} queries",
+                stations.size(), size());
+
+        Future chain = seedLinkClient
+                .connect()
+                .compose(c -> seedLinkClient.doHello());
+
+        for (var station : stations.entrySet()) {
+            chain = chain.compose(c -> select(station.getKey(),
+                    station.getValue()));
+        }
+
+        chain
+                .compose(c -> seedLinkClient.doEnd())
+                .compose(c -> seedLinkClient.getDatarecords(5, this::add))
+                .onSuccess(s -> LOG.info("Session completed"))
+                .onComplete(c -> {
+                    finished = true;
+                    seedLinkClient.close();
+                    for (List<Channel> list : channels.values()) {
+                        for (Channel channel : list) {
+                            channel.complete();
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Selects a station and the channels of its queries. The time window
+     * requested covers all the queries for the station. A station that could
+     * not be selected does not abort the session.
+     *
+     * @param station The "S N" station selector.
+     * @param queries
+     * @return
+     */
+    private Future select(String station, List<Query> queries) {
+
+        List<String> selectors = new ArrayList<>();
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+
+        for (Query query : queries) {
+            String selector = query.getL() + query.getC() + ".D";
+            if (!selectors.contains(selector)) {
+                selectors.add(selector);
+            }
+            from = Math.min(from, query.getFrom());
+            to = Math.max(to, query.getTo());
+        }
+
+        long begin = from;
+        long end = to;
+
+        return seedLinkClient
+                .doMultiStation(station, selectors, () -> {
+                    // see SeedLink.fetchOrTime
+                    if (Instant.now().isBefore(Instant.ofEpochMilli(end))) {
+                        return seedLinkClient.doFetch(0, begin);
+                    }
+                    return seedLinkClient.doTime(begin, end);
+                })
+                .recover(f -> {
+                    LOG.warn("Station {} could not be selected", station);
+                    return Future.succeededFuture();
+                });
+    }
+
+    /**
+     * Routes a DataRecord to the queries interested in its channel.
+     *
+     * @param dataRecord
+     */
+    private void add(DataRecord dataRecord) {
+
+        List<Channel> list = channels.get(DataRecordProvider.getNSCL(dataRecord));
+        if (list == null) {
+            return;
+        }
+
+        boolean full = false;
+        for (Channel channel : list) {
+            if (channel.add(dataRecord) <= highWatermark) {
+                continue;
+            }
+            if (channel.active) {
+                full = true;
+            } else {
+                channel.detach();
+            }
+        }
+
+        if (full && !paused) {
+            context = vertx.getOrCreateContext();
+            paused = true;
+            seedLinkClient.pause();
+            watchdog();
+        }
+    }
+
+    /**
+     * Checks every second if the socket can be resumed, in case the queues
+     * are drained without notice (ex. detached queues).
+     */
+    private void watchdog() {
+        vertx.setTimer(1000, t -> {
+            if (paused && !finished && !tryResume()) {
+                watchdog();
+            }
+        });
+    }
+
+    /**
+     * Schedules a check for resuming the socket, called once a queue being
+     * processed goes below the low watermark.
+     */
+    private void onDrained() {
+        if (paused && !checking) {
+            checking = true;
+            context.runOnContext(v -> {
+                checking = false;
+                tryResume();
+            });
+        }
+    }
+
+    /**
+     * Resumes the socket if every query has caught up. Queues not being
+     * processed are detached so they don't hold the session.
+     *
+     * @return True if the socket is not paused anymore.
+     */
+    private boolean tryResume() {
+
+        if (!paused || finished) {
+            return true;
+        }
+
+        for (List<Channel> list : channels.values()) {
+            for (Channel channel : list) {
+                if (!channel.active && !channel.detached
+                        && channel.queue.size() >= lowWatermark) {
+                    channel.detach();
+                }
+            }
+        }
+
+        if (!isDrained()) {
+            return false;
+        }
+
+        paused = false;
+        seedLinkClient.resume();
+        return true;
+    }
+
+    /**
+     * Are all the attached queues below the low watermark?.
+     *
+     * @return
+     */
+    private boolean isDrained() {
+        for (List<Channel> list : channels.values()) {
+            for (Channel channel : list) {
+                if (!channel.detached && channel.queue.size() >= lowWatermark) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The DataClient for a single query of this session.
+     */
+    private class Channel implements DataClient, DataRecordProvider {
+
+        /**
+         * The query served by this client.
+         */
+        private final Query query;
+
+        /**
+         * Queue for downloaded data records.
+         */
+        private final LinkedBlockingQueue<DataRecord> queue;
+
+        /**
+         * Completed with the metadata of the first DataRecord.
+         */
+        private final Promise<Metadata> promise;
+
+        /**
+         * Have we receive at least one DataRecord from which to extract
+         * metadata?.
+         */
+        private boolean gotResults = false;
+
+        /**
+         * Is the query being processed (its download was requested)?.
+         */
+        private volatile boolean active = false;
+
+        /**
+         * Has the queue been detached from the session?.
+         */
+        private boolean detached = false;
+
+        /**
+         * Time (millis) of the last sample queued.
+         */
+        private volatile long lastSample = Long.MIN_VALUE;
+
+        /**
+         * Provides the rest of the query once a detached queue runs out.
+         */
+        private DataRecordProvider rest;
+
+        private Channel(Query query) {
+            this.query = query;
+            queue = new LinkedBlockingQueue<>();
+            promise = Promise.promise();
+        }
+
+        @Override
+        public Future<Metadata> download(Query query) {
+            active = true;
+            start();
+            return promise.future();
+        }
+
+        @Override
+        public DataRecord getDataRecord() {
+
+            if (rest != null) {
+                return getRest();
+            }
+
+            DataRecord dataRecord;
+            try {
+                dataRecord = queue.take();
+            } catch (InterruptedException ex) {
+                LOG.error("SeedLink thread was interrupted, aborting download");
+                LOG.error(ex.getMessage());
+                return POISON;
+            }
+
+            if (dataRecord == DETACHED) {
+                rest = downloadRest();
+                return getRest();
+            }
+
+            if (queue.size() < lowWatermark) {
+                onDrained();
+            }
+
+            return dataRecord;
+        }
+
+        /**
+         * Returns the next DataRecord of the rest of the query, DataRecords
+         * already queued are dropped.
+         *
+         * @return
+         */
+        private DataRecord getRest() {
+            DataRecord dataRecord = rest.getDataRecord();
+            while (dataRecord.getHeader().getSequenceNum() != -1
+                    && dataRecord.getStartBtime().toInstant().toEpochMilli()
+                    <= lastSample) {
+                dataRecord = rest.getDataRecord();
+            }
+            return dataRecord;
+        }
+
+        /**
+         * Downloads what is missing after the last sample queued on a new
+         * SeedLink session.
+         * <p>
+         * IMPORTANT: This method blocks until the download starts.
+         *
+         * @return
+         */
+        private DataRecordProvider downloadRest() {
+
+            if (lastSample + 1 >= query.getTo()) {
+                return () -> POISON;
+            }
+
+            Query restQuery = query.copy();
+            restQuery.setFrom(lastSample + 1).setTo(query.getTo());
+
+            LOG.info("{} Downloading the rest of the query", query.getId());
+
+            SeedLink seedLink = new SeedLink(vertx);
+            try {
+                seedLink.download(restQuery)
+                        .toCompletionStage()
+                        .toCompletableFuture()
+                        .get();
+            } catch (InterruptedException | ExecutionException ex) {
+                LOG.info("{} No more data received over seedlink", query.getId());
+                return () -> POISON;
+            }
+
+            return seedLink;
+        }
+
+        /**
+         * Stops queueing DataRecords, the rest of the query will be
+         * downloaded once the queue runs out.
+         */
+        private void detach() {
+            if (detached) {
+                return;
+            }
+            detached = true;
+            queue.add(DETACHED);
+            LOG.info("{} Queue detached from the session", query.getId());
+        }
+
+        /**
+         * Adds a DataRecord to the queue, if it overlaps the query's time
+         * range.
+         *
+         * @param dataRecord
+         * @return The number of DataRecords waiting in the queue.
+         */
+        private int add(DataRecord dataRecord) {
+
+            if (detached) {
+                return 0;
+            }
+
+            long start = dataRecord.getStartBtime().toInstant().toEpochMilli();
+            long end = dataRecord.getLastSampleBtime().toInstant().toEpochMilli();
+
+            if (end < query.getFrom() || start >= query.getTo()) {
+                return queue.size();
+            }
+
+            if (!gotResults) {
+                gotResults = true;
+                promise.complete(getMetadata(dataRecord));
+            }
+            lastSample = Math.max(lastSample, end);
+            queue.add(dataRecord);
+            return queue.size();
+        }
+
+        /**
+         * Signals the end of the session.
+         */
+        private void complete() {
+            if (detached) {
+                return;
+            }
+            if (gotResults) {
+                LOG.info("{} Download completed", query.getId());
+                queue.add(POISON);
+            } else {
+                LOG.info("{} No data received over seedlink", query.getId());
+                promise.tryFail("No data received");
+            }
+        }
+    }
+
+}
@@ -4,10 +4,6 @@ import io.vertx.core.Future;
 import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.net.NetClient;
-import io.vertx.core.net.NetClientOptions;
-import io.vertx.core.net.NetSocket;
-import io.vertx.core.parsetools.RecordParser;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
@@ -15,13 +11,17 @@ import java.time.Duration;
 import java.time.temporal.ChronoUnit;
 import java.util.Locale;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import rsamssam.config.Config;
 import rsamssam.datasources.DataClient;
 import rsamssam.datasources.SamplesProvider;
+import rsamssam.datasources.impl.winston.ResponseHandler;
+import rsamssam.datasources.impl.winston.SamplesParser;
+import rsamssam.datasources.impl.winston.WinstonPool;
+import rsamssam.metrics.Metrics;
 import rsamssam.query.Metadata;
 import rsamssam.query.Query;
 
@@ -37,17 +37,44 @@ public class Winston implements DataClient, SamplesProvider {
     private final Vertx vertx;
 
     /**
-     * TCP Client.
+     * Queue for downloaded samples. Samples are queued in chunks.
      */
-    private NetClient client;
+    private final LinkedBlockingQueue<double[]> queue;
 
     /**
-     * Queue for downloaded samples.
+     * Poison chunk, it signals there are no more samples.
      */
-    private final LinkedBlockingQueue<Double> queue;
+    private static final double[] POISON_CHUNK = new double[0];
 
     /**
-     * req-id Winston response.
+     * Chunk of samples currently being consumed.
+     */
+    private double[] chunk;
+
+    /**
+     * Position of the next sample to be consumed in the current chunk.
+     */
+    private int chunkIndex;
+
+    /**
+     * Should the rest of the response be ignored? (invalid header).
+     */
+    private boolean discard = false;
+
+    /**
+     * Header token being received.
+     */
+    private final StringBuilder headerToken = new StringBuilder();
+
+    /**
+     * Download metrics. Winston has no records, samples are counted instead.
+     */
+    private final LongAdder downloadedBytes = Metrics.DOWNLOAD_BYTES.labels("winston");
+
+    private final LongAdder downloadedSamples = Metrics.DOWNLOAD_SAMPLES.labels("winston");
+
+    /**
+     * req-id of our Winston request.
      */
     private String requestId;
 
@@ -121,53 +148,15 @@ public class Winston implements DataClient, SamplesProvider {
 
         this.from = query.getFrom();
 
-        Promise<Metadata> promise = Promise.promise();
-
-        String winston = Config.getWinstonServer();
-        int port = Config.getWinstonServerPort();
-
         int timeout = (int) (getTimeout(query.getFrom(), query.getTo()));
 
         LOG.info("we will give {}s to Winston to start sending data", timeout);
 
-        connect(winston, port, timeout)
-                .compose(socket -> doRequest(query, socket))
-                .onSuccess(metadata -> promise.complete(metadata))
+        return doRequest(query, timeout)
                 .onFailure(f -> {
                     LOG.error("Failed to query winston");
                     LOG.error(f.getMessage());
-                    promise.fail("Failed to query winston");
                 });
-
-        return promise.future();
-    }
-
-    /**
-     * Creates a TCP connection to the Winston server.
-     *
-     * @return A future object that will contain the NetSocket object for the
-     * connection.
-     */
-    private Future<NetSocket> connect(String server, int port, int timeout) {
-
-        Promise<NetSocket> promise = Promise.promise();
-
-        NetClientOptions options = new NetClientOptions();
-        options
-                .setConnectTimeout(2000)
-                .setIdleTimeout(timeout);
-
-        client = vertx.createNetClient(options);
-        client
-                .connect(port, server)
-                .onSuccess(socket -> promise.complete(socket))
-                .onFailure(f -> {
-                    LOG.error("Failed to connect to Winston");
-                    LOG.error(f.getMessage());
-                    promise.fail("Failed to connect to winston server");
-                });
-
-        return promise.future();
     }
 
     /**
@@ -191,184 +180,239 @@ public class Winston implements DataClient, SamplesProvider {
     }
 
     /**
-     * Creates a Winston request.
+     * Returns the Winston command for the given location code.
+     *
+     * @param L
+     * @return
+     */
+    private String getCommand(String L) {
+        if (L != null && L.trim().length() > 0) {
+            return "GETSCNL";
+        }
+        return "GETSCN";
+    }
+
+    /**
+     * Creates the arguments of a Winston request (everything after the
+     * request id).
      *
-     * @param query The query object
-     * @return A vertx Buffer with the Winston request.
+     * @return A String with the Winston request arguments.
      */
-    private Buffer getRequest(String N, String S, String C, String L,
+    private String getArguments(String N, String S, String C, String L,
             long from, long to) {
 
         NumberFormat numberFormat = NumberFormat.getNumberInstance(Locale.US);
         DecimalFormat decimalFormat = (DecimalFormat) numberFormat;
         decimalFormat.applyPattern("#0.000000");
 
-        // not sure if we have to craft a request id, since we are using this
-        // connection only for this query.
-        String command;
-        if (L != null && L.trim().length() > 0) {
-            command = "GETSCNL: 1 ";
-        } else {
-            command = "GETSCN: 1 ";
-        }
-
-        Buffer request = Buffer.buffer().appendString(command)
-                .appendString(S).appendString(" ")
-                .appendString(C).appendString(" ")
-                .appendString(N).appendString(" ");
+        StringBuilder arguments = new StringBuilder()
+                .append(S).append(" ")
+                .append(C).append(" ")
+                .append(N).append(" ");
 
         if (L != null && L.trim().length() > 0) {
-            request.appendString(L).appendString(" ");
+            arguments.append(L).append(" ");
         }
 
-        request
-                .appendString(decimalFormat.format((from - 1000) / 1000))
-                .appendString(" ")
-                .appendString(decimalFormat.format(to / 1000))
-                .appendString(" 0\n");          // 0 is the fill value for gaps
+        arguments
+                .append(decimalFormat.format((from - 1000) / 1000))
+                .append(" ")
+                .append(decimalFormat.format(to / 1000))
+                .append(" 0");                  // 0 is the fill value for gaps
 
-        return request;
+        return arguments.toString();
     }
 
     /**
-     * Sends a request to the Winston server for the given query.
+     * Sends a request to the Winston server for the given query. The request
+     * goes over one of the pooled Winston connections.
      *
      * @param query A query object.
-     * @param socket A Winston TCP Connection NetSocket.
-     * @return A future object that will contain an ArrayList with the raw
-     * response sent by the Winston Server. This raw response contains some
-     * metadata in the first part.
+     * @param timeout Seconds we will wait for Winston to send something.
+     * @return A future object that will contain the metadata of the response,
+     * it will fail if no samples were sent.
      */
-    private Future<Metadata> doRequest(Query query, NetSocket socket) {
+    private Future<Metadata> doRequest(Query query, int timeout) {
 
         Promise<Metadata> promise = Promise.promise();
 
-        RecordParser parser = RecordParser.newDelimited(" ", sample -> {
+        SamplesParser parser = new SamplesParser(chunk -> {
+            downloadedSamples.add(chunk.length);
+            queue.add(chunk);
+        });
 
-            if (sps == -1) {
+        ResponseHandler handler = new ResponseHandler() {
 
-                if (requestId == null) {
-                    requestId = sample.toString();
-                    return;
-                } else if (pin == null) {
-                    pin = sample.toString();
-                    return;
-                } else if (S == null) {
-                    S = sample.toString();
-                    return;
-                } else if (C == null) {
-                    C = sample.toString();
-                    return;
-                } else if (N == null) {
-                    N = sample.toString();
-                    return;
-                } else if (L == null) {
-                    L = sample.toString();
-                    return;
-                } else if (dataType == null) {
-                    dataType = sample.toString();
-                    return;
-                } else if (startTime == null) {
-                    startTime = sample.toString();
-                    return;
-                }
+            @Override
+            public void handle(Buffer buffer) {
 
-                LOG.info("Metadata {} {} {}{}{}{} {} {}",
-                        requestId, pin, S, C, N, L, dataType, startTime);
+                downloadedBytes.add(buffer.length());
 
-                try {
-                    sps = (int) Float.parseFloat(sample.toString());
-                } catch (NumberFormatException ex) {
-                    LOG.error("sps is not a number: {}", sample.toString());
-                    LOG.error("Aborting download");
-                    promise.fail("Invalid sps value " + sample.toString());
-                    socket.close();
+                if (discard) {
                     return;
                 }
 
-                // Winston start-time comes in seconds with an arbitrary 
-                // fractions of a second. We only support timestamps in millis.
-                double startTimeMillis = Double.parseDouble(startTime) * 1000;
-
-                if (withinTolerance(startTime)) {
-                    // we can use the original 'from' value
-                    promise.complete(new Metadata(sps, from));
-                    return;
+                int offset = 0;
+                if (sps == -1) {
+                    offset = parseHeader(buffer, promise);
+                    if (offset < 0) {
+                        // the header is not complete yet
+                        return;
+                    }
                 }
 
-                promise.complete(new Metadata(sps, (long) startTimeMillis));
+                parser.parse(buffer, offset);
+            }
+
+            @Override
+            public void end() {
 
-                LOG.info("Start time is not within tolerance");
+                parser.end();
+                queue.add(POISON_CHUNK);
 
-                padding = true;
-                gap = countSamples(from, (long) startTimeMillis, sps);
+                // it looks like sometimes Winston don't send any data
+                // we will try to fail the promise, if the promise was
+                // alreadycompleted then nothing will happen
+                promise.tryFail("Winston didn't send any samples");
 
-                return;
+                LOG.info("{} Download completed", query.getId());
             }
+        };
+
+        String command = getCommand(query.getL());
+        String arguments = getArguments(query.getN(), query.getS(),
+                query.getC(), query.getL(), query.getFrom(), query.getTo());
+
+        WinstonPool
+                .getInstance(vertx)
+                .send(command, arguments, timeout, handler)
+                .onSuccess(id -> {
+                    requestId = id;
+                    LOG.info("{} Request is {}: {} {}", query.getId(),
+                            command, id, arguments);
+                })
+                .onFailure(f -> promise.tryFail("Failed to connect to winston"));
 
-            queue.add(Double.valueOf(sample.toString()));
-        });
+        return promise.future();
+    }
 
-        socket
-                .exceptionHandler(t -> {
-                    LOG.error("Unexpected exception");
-                    LOG.error(t.getMessage());
-                })
-                .handler(buffer -> {
-                    if (buffer.getByte(buffer.length() - 1) != '\n') {
-                        parser.handle(buffer);
-                    } else {
-                        socket.close();
-                    }
-                })
-                .endHandler(e -> {
+    /**
+     * Parses the Winston response header (the metadata that comes before the
+     * samples). Header tokens can be split across buffers.
+     *
+     * @param buffer The incoming buffer.
+     * @param promise The download promise, completed once the header is fully
+     * parsed.
+     * @return The position of the first sample in the buffer, or -1 if the
+     * header is not complete yet (or invalid).
+     */
+    private int parseHeader(Buffer buffer, Promise<Metadata> promise) {
 
-                    queue.add(POISON);
+        for (int i = 0; i < buffer.length(); i++) {
 
-                    // it looks like sometimes Winston don't send any data
-                    // we will try to fail the promise, if the promise was
-                    // alreadycompleted then nothing will happen
-                    promise.tryFail("Winston didn't send any samples");
+            byte b = buffer.getByte(i);
 
-                    LOG.info("{} Download completed", query.getId());
-                });
+            if (b != ' ' && b != '\n') {
+                headerToken.append((char) b);
+                continue;
+            }
 
-        Buffer request = getRequest(query.getN(), query.getS(), query.getC(),
-                query.getL(), query.getFrom(), query.getTo());
-        LOG.info("{} Request is {}", query.getId(), request.toString().trim());
-        socket.write(request);
+            if (headerToken.length() == 0) {
+                continue;
+            }
 
-        return promise.future();
+            String token = headerToken.toString();
+            headerToken.setLength(0);
+
+            if (pin == null) {
+                pin = token;
+            } else if (S == null) {
+                S = token;
+            } else if (C == null) {
+                C = token;
+            } else if (N == null) {
+                N = token;
+            } else if (L == null) {
+                L = token;
+            } else if (dataType == null) {
+                dataType = token;
+            } else if (startTime == null) {
+                startTime = token;
+            } else {
+                return onHeader(token, promise) ? i + 1 : -1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Called once all the header tokens have been received. Completes the
+     * download promise with the response metadata.
+     *
+     * @param spsToken The sampling rate token (the last one in the header).
+     * @param promise The download promise.
+     * @return True if the header is valid, false otherwise.
+     */
+    private boolean onHeader(String spsToken, Promise<Metadata> promise) {
+
+        LOG.info("Metadata {} {} {}{}{}{} {} {}",
+                requestId, pin, S, C, N, L, dataType, startTime);
+
+        try {
+            sps = (int) Float.parseFloat(spsToken);
+        } catch (NumberFormatException ex) {
+            LOG.error("sps is not a number: {}", spsToken);
+            LOG.error("Aborting download");
+            promise.fail("Invalid sps value " + spsToken);
+            discard = true;
+            return false;
+        }
+
+        // Winston start-time comes in seconds with an arbitrary 
+        // fractions of a second. We only support timestamps in millis.
+        double startTimeMillis = Double.parseDouble(startTime) * 1000;
+
+        if (withinTolerance(startTime)) {
+            // we can use the original 'from' value
+            promise.complete(new Metadata(sps, from));
+            return true;
+        }
+
+        promise.complete(new Metadata(sps, (long) startTimeMillis));
+
+        LOG.info("Start time is not within tolerance");
+
+        padding = true;
+        gap = countSamples(from, (long) startTimeMillis, sps);
+
+        return true;
     }
 
     @Override
     public double getSample() {
 
-        if (padding) {
-            if (gap < 0) {
-                LOG.info("Will discard {} samples", gap * -1);
-                while (gap < 0) {
-                    try {
-                        queue.take();
+        try {
+
+            if (padding) {
+                if (gap < 0) {
+                    LOG.info("Will discard {} samples", gap * -1);
+                    while (gap < 0) {
+                        nextSample();
                         gap++;
-                    } catch (InterruptedException ex) {
-                        LOG.error("Winston thread interrupted, aborting");
-                        LOG.error(ex.getMessage());
-                        return POISON;
                     }
-                }
-                padding = false;
-            } else {
-                gap--;
-                if (gap < 1) {
                     padding = false;
+                } else {
+                    gap--;
+                    if (gap < 1) {
+                        padding = false;
+                    }
+                    return 0;
                 }
-                return 0;
             }
-        }
 
-        try {
-            return queue.take();
+            return nextSample();
+
         } catch (InterruptedException ex) {
             LOG.error("Winston thread interrupted, aborting download");
             LOG.error(ex.getMessage());
@@ -376,6 +420,28 @@ public class Winston implements DataClient, SamplesProvider {
         }
     }
 
+    /**
+     * Returns the next downloaded sample, taking a new chunk from the queue if
+     * the current one has been consumed.
+     *
+     * @return The next sample or POISON if there are no more samples.
+     * @throws InterruptedException
+     */
+    private double nextSample() throws InterruptedException {
+
+        while (chunk != POISON_CHUNK
+                && (chunk == null || chunkIndex >= chunk.length)) {
+            chunk = queue.take();
+            chunkIndex = 0;
+        }
+
+        if (chunk == POISON_CHUNK) {
+            return POISON;
+        }
+
+        return chunk[chunkIndex++];
+    }
+
     /**
      * Given two times and a sample rate, calculates how many samples are there.
      *
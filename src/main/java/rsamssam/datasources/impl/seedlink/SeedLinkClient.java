@@ -13,10 +13,12 @@ import io.vertx.core.net.NetClientOptions;
 import io.vertx.core.net.NetSocket;
 import io.vertx.core.parsetools.RecordParser;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.util.Optional;
+import java.util.List;
+import java.util.function.Supplier;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,6 +26,10 @@ import org.slf4j.LoggerFactory;
 /**
  *
  * Incomplete implementation of a SeedLink client.
+ * <p>
+ * Both uni-station and multi-station modes are supported, in multi-station
+ * mode several stations are selected (see doMultiStation) before the END
+ * command and packets for all of them arrive over the same connection.
  *
  * @author Julian Peña.
  */
@@ -49,6 +55,11 @@ public class SeedLinkClient {
      */
     private final int port;
 
+    /**
+     * Seconds without receiving anything before the connection is closed.
+     */
+    private final int idleTimeout;
+
     private enum ConnectionState {
         TCP_DOWN, TCP_UP, HANDSHAKING, IDLE,
         WAITING_MODIFIER_RESPONSE, STREAMING;
@@ -65,9 +76,24 @@ public class SeedLinkClient {
     private final Logger LOG = LoggerFactory.getLogger("SeedLinkClient");
 
     public SeedLinkClient(Vertx vertx, String server, int port) {
+        this(vertx, server, port, 5);
+    }
+
+    /**
+     * Creates a SeedLink client with a custom idle timeout. Long lived
+     * (real-time) sessions need a longer timeout than the default 5 seconds.
+     *
+     * @param vertx
+     * @param server
+     * @param port
+     * @param idleTimeout Seconds without receiving anything before the
+     * connection is closed.
+     */
+    public SeedLinkClient(Vertx vertx, String server, int port, int idleTimeout) {
         this.vertx = vertx;
         this.server = server;
         this.port = port;
+        this.idleTimeout = idleTimeout;
     }
 
     /**
@@ -93,13 +119,14 @@ public class SeedLinkClient {
         options
                 .setConnectTimeout(5000)
                 .setReconnectAttempts(0)
-                .setIdleTimeout(5);
+                .setIdleTimeout(idleTimeout);
 
         vertx
                 .createNetClient(options)
                 .connect(port, server)
                 .onSuccess(result -> {
                     socket = result;
+                    socket.closeHandler(c -> state = ConnectionState.TCP_DOWN);
                     state = ConnectionState.TCP_UP;
                     LOG.info("Connected");
                     promise.complete();
@@ -152,6 +179,34 @@ public class SeedLinkClient {
         return doSelector(Command.SELECT, selector);
     }
 
+    /**
+     * Selects a station in multi-station mode. The STATION command is sent
+     * first, then a SELECT command for every selector and finally the data
+     * command (DATA, TIME or FETCH) for the station. Selectors rejected by the
+     * server are skipped.
+     * <p>
+     * This method can be called once per station before the END command.
+     *
+     * @param station The station selector ("STA NET").
+     * @param selectors The stream selectors ("LLCCC.T") for the station.
+     * @param dataCommand Sends the data command for this station, called once
+     * all selectors have been sent.
+     * @return A future that will succeed if the station and its data command
+     * were accepted, it will fail otherwise.
+     */
+    public Future doMultiStation(String station, List<String> selectors,
+            Supplier<Future> dataCommand) {
+
+        Future chain = doStation(station);
+
+        for (String selector : selectors) {
+            chain = chain.compose(c -> doSelect(selector)
+                    .recover(f -> Future.succeededFuture()));
+        }
+
+        return chain.compose(c -> dataCommand.get());
+    }
+
     private Future doSelector(String command, String selector) {
 
         if (state != ConnectionState.IDLE) {
@@ -238,6 +293,44 @@ public class SeedLinkClient {
                 .onFailure(f -> LOG.error("Failed to send FETCH command"));
     }
 
+    /**
+     * Sends a DATA commmand to the SeedLink server. In multi-station mode this
+     * command is used to resume the station selected by the last STATION
+     * command from the given sequence number.
+     *
+     * @param sequence The optional sequence number (hexadecimal) of the last
+     * packet received, can be null.
+     * @param begin The optional begin date-time, can be null.
+     * @return A Future that will eventually tell if the command was accepted or
+     * not by the server.
+     */
+    public Future doData(String sequence, Long begin) {
+
+        if (state != ConnectionState.IDLE) {
+            LOG.error("Can't send DATA, connection is not IDLE");
+            return Future.failedFuture("Connection is not IDLE");
+        }
+
+        String command = Command.DATA;
+
+        if (sequence != null) {
+            command += " " + sequence;
+            if (begin != null) {
+                command += " " + formatDateTime(begin);
+            }
+        }
+
+        LOG.info(command);
+
+        return send(command)
+                .compose(c -> {
+                    state = ConnectionState.WAITING_MODIFIER_RESPONSE;
+                    return expectOK(1);
+                })
+                .onComplete(c -> state = ConnectionState.IDLE)
+                .onFailure(f -> LOG.error("Failed to send DATA command"));
+    }
+
     /**
      * Sends an END command to the SeedLink server.
      *
@@ -272,42 +365,94 @@ public class SeedLinkClient {
      * to process, or fail in case of timeout or another unexpected error.
      */
     public Future getDatarecords(int timeout, Handler<DataRecord> handler) {
+        return getPackets(timeout, packet -> packet
+                .getMiniseed()
+                .ifPresent(datarecord -> handler.handle(datarecord)));
+    }
+
+    /**
+     * Process the incoming seedlink packets and reports them in the given
+     * handler. Useful when the sequence numbers are needed (ex. for resuming a
+     * session).
+     *
+     * @param timeout The maximum time we will wait without receiving packets
+     * before aborting the streaming state.
+     * @param handler A handler where to report back the incoming SeedLink
+     * packets.
+     * @return A Future that will succeed once there is no more seedlink packets
+     * to process (END received), or fail in case of timeout, connection loss,
+     * ERROR from the server or another unexpected error. Bytes between packets
+     * are skipped.
+     */
+    public Future getPackets(int timeout, Handler<SeedLinkPacket> handler) {
 
         Promise promise = Promise.promise();
 
-        ByteBuf bytebuf = Unpooled.buffer(5200);
+        // bytes of a packet split across network buffers (if any)
+        ByteBuf partial = Unpooled.buffer(SeedLinkPacket.SIZE);
 
         socket
                 .handler(buffer -> {
 
-                    bytebuf.writeBytes(buffer.getBytes());
+                    // no copy here, just a view of the network buffer
+                    ByteBuf bytebuf = buffer.getByteBuf();
 
-                    while (bytebuf.writerIndex() >= 520) {
+                    int skipped = 0;
 
-                        parseSeedLinkPacket(bytebuf.readBytes(520))
-                                .ifPresent(datarecord -> handler.handle(datarecord));
+                    // first complete the packet left by the previous buffer
+                    while (partial.isReadable()) {
 
-                        bytebuf.discardReadBytes();
-                    }
+                        int missing = SeedLinkPacket.SIZE - partial.readableBytes();
+                        partial.writeBytes(bytebuf,
+                                Math.min(missing, bytebuf.readableBytes()));
 
-                    if (bytebuf.getByte(0) == 'S') {
-                        return;
-                    }
+                        skipped += SeedLinkPacket.resync(partial);
+                        partial.discardReadBytes();
+
+                        if (checkEnd(partial, promise)) {
+                            return;
+                        }
+
+                        if (partial.readableBytes() < SeedLinkPacket.SIZE) {
+                            if (!bytebuf.isReadable()) {
+                                logSkipped(skipped);
+                                return;
+                            }
+                            continue;
+                        }
 
-                    if (bytebuf.writerIndex() != 3) {
-                        return;
+                        SeedLinkPacket.of(partial)
+                                .ifPresent(packet -> handler.handle(packet));
+                        partial.clear();
                     }
 
-                    // stream end
-                    if (bytebuf.getByte(0) == 'E' && bytebuf.getByte(1) == 'N'
-                            && bytebuf.getByte(2) == 'D') {
-                        promise.complete();
+                    // whole packets are parsed in place, anything between
+                    // them is skipped
+                    while (true) {
+
+                        skipped += SeedLinkPacket.resync(bytebuf);
+
+                        if (checkEnd(bytebuf, promise)) {
+                            return;
+                        }
+
+                        if (bytebuf.readableBytes() < SeedLinkPacket.SIZE) {
+                            break;
+                        }
+
+                        SeedLinkPacket.of(bytebuf.readSlice(SeedLinkPacket.SIZE))
+                                .ifPresent(packet -> handler.handle(packet));
                     }
+
+                    // only the trailing bytes are kept (and copied)
+                    partial.writeBytes(bytebuf);
+                    logSkipped(skipped);
                 })
                 .closeHandler(c -> {
                     state = ConnectionState.TCP_DOWN;
                     LOG.info("Socket closed");
-                    promise.tryComplete();
+                    // closed before END, the stream was interrupted
+                    promise.tryFail("Connection lost");
                 });
 
         return promise.future();
@@ -396,24 +541,47 @@ public class SeedLinkClient {
     }
 
     /**
-     * Attempts to parse a SeedLinkPacket and extract the DataRecord object
-     * within it.
+     * Checks if the stream ends at the reader index of the given ByteBuf, END
+     * completes the given promise and ERROR fails it.
      *
-     * @param bytebuf A ByteBuf that MUST have EXACTLY 520 bytes.
-     * @return A Optional than can contain a DataRecord object if successfully
-     * parsed.
+     * @param bytebuf
+     * @param promise
+     * @return True if the stream ended, false otherwise.
      */
-    private Optional<DataRecord> parseSeedLinkPacket(ByteBuf bytebuf) {
+    private boolean checkEnd(ByteBuf bytebuf, Promise promise) {
+
+        int i = bytebuf.readerIndex();
 
-        byte[] bytes = new byte[520];
-        bytebuf.readBytes(bytes);
+        // packets start with S, most of the time this is all it takes
+        if (!bytebuf.isReadable() || bytebuf.getByte(i) != 'E') {
+            return false;
+        }
+
+        if (bytebuf.readableBytes() >= 3
+                && bytebuf.getByte(i + 1) == 'N' && bytebuf.getByte(i + 2) == 'D') {
+            promise.tryComplete();
+            return true;
+        }
 
-        Optional<SeedLinkPacket> optional = SeedLinkPacket.of(bytes);
-        if (optional.isEmpty()) {
-            return Optional.empty();
+        if (bytebuf.readableBytes() >= 5 && bytebuf.toString(i, 5,
+                StandardCharsets.US_ASCII).equals("ERROR")) {
+            LOG.error("Server error while streaming");
+            promise.tryFail("ERROR");
+            return true;
         }
 
-        return optional.get().getMiniseed();
+        return false;
+    }
+
+    /**
+     * Logs the bytes skipped while looking for packets, if any.
+     *
+     * @param skipped
+     */
+    private void logSkipped(int skipped) {
+        if (skipped > 0) {
+            LOG.warn("Skipped {} bytes between SeedLink packets", skipped);
+        }
     }
 
     /**
@@ -429,6 +597,17 @@ public class SeedLinkClient {
                 .format(Instant.ofEpochMilli(time));
     }
 
+    /**
+     * Closes the underlying socket (if any). The close is reported to the
+     * handlers waiting for packets as the end of the stream.
+     */
+    public void close() {
+        if (socket != null && state != ConnectionState.TCP_DOWN) {
+            LOG.info("Closing");
+            socket.close();
+        }
+    }
+
     /**
      * Signals the underlying socket to pause the reading of data.
      */
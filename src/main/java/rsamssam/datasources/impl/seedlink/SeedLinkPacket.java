@@ -3,64 +3,82 @@ package rsamssam.datasources.impl.seedlink;
 import edu.sc.seis.seisFile.mseed.DataRecord;
 import edu.sc.seis.seisFile.mseed.SeedFormatException;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
 import io.vertx.core.buffer.Buffer;
 
+import java.io.DataInputStream;
 import java.io.IOException;
-import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
 import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A SeedLink packet, an 8 bytes header ("SL" plus the sequence number)
+ * followed by a 512 bytes miniseed record.
+ * <p>
+ * Packets are just a view over the bytes they were parsed from, nothing is
+ * copied. Packets parsed from a network buffer (see SeedLinkClient.getPackets)
+ * are only valid while being handled, bytes() must be used to keep a copy.
  *
  * @author Julian Peña.
  */
 public class SeedLinkPacket {
 
     /**
-     * The SeedLink packet header (8 bytes).
+     * Size of a SeedLink packet.
+     */
+    public static final int SIZE = 520;
+
+    /**
+     * Size of the SeedLink packet header.
      */
-    private final String header;
+    private static final int HEADER_SIZE = 8;
 
     /**
-     * The SeedLink packet payload (512 bytes).
+     * What can be found where a packet starts in a stream of packets, a
+     * packet header or the END/ERROR line closing the stream.
      */
-    private final byte[] payload;
+    private static final byte[][] TOKENS = {
+        "SL".getBytes(StandardCharsets.US_ASCII),
+        "END".getBytes(StandardCharsets.US_ASCII),
+        "ERROR".getBytes(StandardCharsets.US_ASCII)};
 
     /**
-     * INFO commands can have responses panning multiple miniseed records. This
-     * flag indicates there are more packets coming.
+     * The whole packet (520 bytes).
      */
-    private final boolean isLastOne;
+    private final ByteBuf packet;
 
     /**
      * Our logger.
      */
     private static final Logger LOG = LoggerFactory.getLogger("SeedLinkPacket");
 
-    private SeedLinkPacket(String header, byte[] payload, boolean isLastOne) {
-        this.header = header;
-        this.payload = payload;
-        this.isLastOne = isLastOne;
+    private SeedLinkPacket(ByteBuf packet) {
+        this.packet = packet;
     }
 
     /**
-     * Returns this SeedLinkPacket as a byte array.
+     * Returns a copy of this SeedLinkPacket as a byte array.
      *
      * @return
      */
     public byte[] bytes() {
-        return buffer().getBytes();
+        return ByteBufUtil.getBytes(packet);
     }
 
     /**
-     * Returns this SeedLinkPacket as a vertx buffer.
+     * Returns a copy of this SeedLinkPacket as a vertx buffer.
      *
      * @return
      */
     public Buffer buffer() {
-        return Buffer.buffer(header.getBytes()).appendBytes(payload);
+        return Buffer.buffer(bytes());
     }
 
     /**
@@ -71,31 +89,79 @@ public class SeedLinkPacket {
      * successfully parsed, empty otherwise.
      */
     public static Optional<SeedLinkPacket> of(byte[] bytes) {
+        return of(Unpooled.wrappedBuffer(bytes));
+    }
+
+    /**
+     * Parses a SeedLink packet from the readable bytes of the given ByteBuf.
+     * The bytes are not copied, the packet keeps a reference to them.
+     *
+     * @param bytebuf
+     * @return A optional that can contain a SeedLink packet object if
+     * successfully parsed, empty otherwise.
+     */
+    public static Optional<SeedLinkPacket> of(ByteBuf bytebuf) {
 
         // Packet size must be 2 + 6 + 512 = 520 bytes ... right?
-        if (bytes.length != 520) {
+        if (bytebuf.readableBytes() != SIZE) {
             return Optional.empty();
         }
 
         // first two bytes must be SL
-        if (bytes[0] != 'S' || bytes[1] != 'L') {
+        int i = bytebuf.readerIndex();
+        if (bytebuf.getByte(i) != 'S' || bytebuf.getByte(i + 1) != 'L') {
             return Optional.empty();
         }
 
-        String h = new String(Arrays.copyOfRange(bytes, 0, 8));
+        return Optional.of(new SeedLinkPacket(bytebuf));
+    }
+
+    /**
+     * Skips the readable bytes of the given ByteBuf until the next packet
+     * header ("SL") or END/ERROR line. Trailing bytes that could be the
+     * beginning of one of them are kept, the next network buffer may complete
+     * them.
+     *
+     * @param bytebuf
+     * @return The number of bytes skipped.
+     */
+    public static int resync(ByteBuf bytebuf) {
+
+        int start = bytebuf.readerIndex();
+        int end = bytebuf.writerIndex();
 
-        /**
-         * if the last byte in the header is * it means there are more INFO
-         * response packets coming.
-         */
-        boolean expectMore = false;
-        if (h.charAt(7) == '*') {
-            expectMore = true;
+        int i = start;
+        while (i < end && !isToken(bytebuf, i, end)) {
+            i++;
         }
 
-        byte[] p = Arrays.copyOfRange(bytes, 8, 520);
+        bytebuf.readerIndex(i);
+        return i - start;
+    }
 
-        return Optional.of(new SeedLinkPacket(h, p, expectMore));
+    /**
+     * Is there a token (or the beginning of one if the bytes end) at the given
+     * index?.
+     *
+     * @param bytebuf
+     * @param index
+     * @param end
+     * @return
+     */
+    private static boolean isToken(ByteBuf bytebuf, int index, int end) {
+
+        for (byte[] token : TOKENS) {
+            int j = 0;
+            while (j < token.length && index + j < end
+                    && bytebuf.getByte(index + j) == token[j]) {
+                j++;
+            }
+            if (j == token.length || index + j == end) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -104,27 +170,35 @@ public class SeedLinkPacket {
      * @return
      */
     public String getSequenceNumber() {
-        return header.substring(2);
+        return packet.toString(packet.readerIndex() + 2, HEADER_SIZE - 2,
+                StandardCharsets.US_ASCII);
     }
 
     /**
      * Return true if more INFO packet responses are expected, false otherwise.
+     * <p>
+     * If the last byte in the header is * it means there are more INFO
+     * response packets coming.
      *
      * @return
      */
     public boolean expectMore() {
-        return isLastOne;
+        return packet.getByte(packet.readerIndex() + HEADER_SIZE - 1) == '*';
     }
 
     /**
      * Tries to parse the payload in this SeedLink packet as a miniseed record
-     * object.
+     * object. The payload is read in place.
      *
      * @return
      */
     public Optional<DataRecord> getMiniseed() {
-        try {
-            return Optional.of((DataRecord) DataRecord.read(payload));
+
+        ByteBuf payload = packet.slice(packet.readerIndex() + HEADER_SIZE,
+                SIZE - HEADER_SIZE);
+
+        try (var input = new DataInputStream(new ByteBufInputStream(payload))) {
+            return Optional.of((DataRecord) DataRecord.read(input));
         } catch (SeedFormatException | IOException ex) {
             LOG.error("Failed to parse payload as a miniseed record");
             LOG.error(ex.getMessage());
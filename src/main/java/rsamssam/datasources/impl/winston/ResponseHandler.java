@@ -0,0 +1,26 @@
+package rsamssam.datasources.impl.winston;
+
+import io.vertx.core.buffer.Buffer;
+
+/**
+ * Receives the response to a single Winston request. Responses are routed to
+ * their handler using the request id echoed by the Winston server.
+ *
+ * @author Julian Peña.
+ */
+public interface ResponseHandler {
+
+    /**
+     * Called for every piece of the response as it comes in. The request id is
+     * not included, the first piece starts right after it.
+     *
+     * @param buffer A piece of the response.
+     */
+    public void handle(Buffer buffer);
+
+    /**
+     * Called once, when the response is complete or when the connection was
+     * lost before the response was complete.
+     */
+    public void end();
+}
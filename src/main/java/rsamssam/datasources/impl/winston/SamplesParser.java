@@ -0,0 +1,281 @@
+package rsamssam.datasources.impl.winston;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+
+import java.util.Arrays;
+
+/**
+ * Parses the ASCII samples sent by Winston servers (space delimited integers or
+ * decimals, with an optional exponent as in 1.5E-3) directly from the incoming
+ * bytes.
+ * <p>
+ * Samples are reported in chunks (primitive arrays) through the given handler,
+ * no intermediate String or boxed values are created. Tokens split across
+ * buffer boundaries are supported since the parsing state is kept between
+ * calls.
+ * <p>
+ * Instances of this class are NOT thread safe, they are meant to be fed from a
+ * single socket handler.
+ *
+ * @author Julian Peña.
+ */
+public class SamplesParser {
+
+    /**
+     * Default number of samples per chunk.
+     */
+    public static final int CHUNK_SIZE = 4096;
+
+    /**
+     * Maximum number of significant digits we keep in the mantissa (a long can
+     * safely hold 18 decimal digits).
+     */
+    private static final int MAX_DIGITS = 18;
+
+    /**
+     * Powers of ten lookup table.
+     */
+    private static final double[] POWERS_OF_TEN = new double[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    /**
+     * Where to report full chunks of samples.
+     */
+    private final Handler<double[]> handler;
+
+    /**
+     * Size of the chunks reported to the handler.
+     */
+    private final int chunkSize;
+
+    /**
+     * Chunk currently being filled.
+     */
+    private double[] chunk;
+
+    /**
+     * Position of the next sample in the current chunk.
+     */
+    private int index;
+
+    /**
+     * Are we in the middle of a token?.
+     */
+    private boolean inToken = false;
+
+    /**
+     * Is the current token negative?.
+     */
+    private boolean negative;
+
+    /**
+     * Are we past the decimal point of the current token?.
+     */
+    private boolean fraction;
+
+    /**
+     * Significant digits of the current token.
+     */
+    private long mantissa;
+
+    /**
+     * How many significant digits are in the mantissa.
+     */
+    private int digits;
+
+    /**
+     * How many of the mantissa digits are decimals.
+     */
+    private int decimals;
+
+    /**
+     * Integer digits that didn't fit in the mantissa (very unlikely).
+     */
+    private int exponent;
+
+    /**
+     * Are we in the exponent part (after 'e' or 'E') of the current token?.
+     */
+    private boolean inExponent;
+
+    /**
+     * Have the exponent sign or digits been read yet?.
+     */
+    private boolean exponentStarted;
+
+    private boolean exponentNegative;
+
+    /**
+     * Value of the exponent part, capped (doubles don't go that far anyway).
+     */
+    private int exponentValue;
+
+    /**
+     * Cap for exponentValue.
+     */
+    private static final int MAX_EXPONENT = 9999;
+
+    /**
+     * Creates a parser that reports chunks of CHUNK_SIZE samples.
+     *
+     * @param handler Where to report the chunks of samples.
+     */
+    public SamplesParser(Handler<double[]> handler) {
+        this(handler, CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a parser.
+     *
+     * @param handler Where to report the chunks of samples.
+     * @param chunkSize How many samples per chunk.
+     */
+    public SamplesParser(Handler<double[]> handler, int chunkSize) {
+        this.handler = handler;
+        this.chunkSize = chunkSize;
+        chunk = new double[chunkSize];
+    }
+
+    /**
+     * Parses all the bytes in the given buffer.
+     *
+     * @param buffer
+     */
+    public void parse(Buffer buffer) {
+        parse(buffer, 0);
+    }
+
+    /**
+     * Parses the bytes in the given buffer starting at the given offset. An
+     * incomplete token at the end of the buffer is kept until more bytes are
+     * parsed or the end method is called.
+     *
+     * @param buffer
+     * @param offset Position of the first byte to be parsed.
+     */
+    public void parse(Buffer buffer, int offset) {
+
+        int length = buffer.length();
+
+        for (int i = offset; i < length; i++) {
+
+            byte b = buffer.getByte(i);
+
+            if (b >= '0' && b <= '9') {
+                if (inExponent) {
+                    exponentStarted = true;
+                    exponentValue = Math.min(MAX_EXPONENT, exponentValue * 10 + b - '0');
+                } else {
+                    addDigit(b - '0');
+                }
+            } else if (b == '.' && !inExponent) {
+                inToken = true;
+                fraction = true;
+            } else if ((b == 'e' || b == 'E') && inToken && !inExponent) {
+                inExponent = true;
+            } else if (b == '-' && !inToken) {
+                inToken = true;
+                negative = true;
+            } else if (b == '-' && inExponent && !exponentStarted) {
+                exponentStarted = true;
+                exponentNegative = true;
+            } else if (b == '+' && !inToken) {
+                inToken = true;
+            } else if (b == '+' && inExponent && !exponentStarted) {
+                exponentStarted = true;
+            } else {
+                // anything else is a delimiter (spaces, new lines, etc.)
+                endToken();
+            }
+        }
+    }
+
+    /**
+     * Signals this parser there are no more bytes coming. Any pending token is
+     * parsed and the last (possibly incomplete) chunk is reported.
+     */
+    public void end() {
+        endToken();
+        if (index > 0) {
+            handler.handle(Arrays.copyOf(chunk, index));
+            chunk = new double[chunkSize];
+            index = 0;
+        }
+    }
+
+    /**
+     * Adds a digit to the current token.
+     *
+     * @param digit
+     */
+    private void addDigit(int digit) {
+
+        inToken = true;
+
+        if (digits < MAX_DIGITS && decimals < MAX_DIGITS) {
+            mantissa = mantissa * 10 + digit;
+            if (mantissa > 0) {
+                digits++;
+            }
+            if (fraction) {
+                decimals++;
+            }
+        } else if (!fraction) {
+            // precision is lost here, but the order of magnitude is kept
+            exponent++;
+        }
+    }
+
+    /**
+     * Finishes the current token (if any) and adds its value to the chunk.
+     */
+    private void endToken() {
+
+        if (!inToken) {
+            return;
+        }
+
+        double value = mantissa;
+        if (decimals > 0) {
+            value /= POWERS_OF_TEN[decimals];
+        }
+        int scale = exponent + (exponentNegative ? -exponentValue : exponentValue);
+        if (scale > 0) {
+            value *= scale <= MAX_DIGITS ? POWERS_OF_TEN[scale] : Math.pow(10, scale);
+        } else if (scale < 0) {
+            value /= -scale <= MAX_DIGITS ? POWERS_OF_TEN[-scale] : Math.pow(10, -scale);
+        }
+        if (negative) {
+            value = -value;
+        }
+
+        chunk[index] = value;
+        index++;
+
+        if (index == chunkSize) {
+            handler.handle(chunk);
+            chunk = new double[chunkSize];
+            index = 0;
+        }
+
+        inToken = false;
+        negative = false;
+        fraction = false;
+        mantissa = 0;
+        digits = 0;
+        decimals = 0;
+        exponent = 0;
+        inExponent = false;
+        exponentStarted = false;
+        exponentNegative = false;
+        exponentValue = 0;
+    }
+
+}
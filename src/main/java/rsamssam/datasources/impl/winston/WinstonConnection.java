@@ -0,0 +1,275 @@
+package rsamssam.datasources.impl.winston;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetSocket;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single TCP connection to a Winston server that can carry several requests
+ * at the same time.
+ * <p>
+ * Each response begins with the request id that was sent along the request,
+ * this id is used to route the response to the right ResponseHandler. A
+ * response ends with a new line.
+ *
+ * @author Julian Peña.
+ */
+class WinstonConnection {
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Our tcp socket.
+     */
+    private final NetSocket socket;
+
+    /**
+     * Requests sent and not yet answered, by request id.
+     */
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+
+    /**
+     * Request whose response is currently coming in.
+     */
+    private Pending current;
+
+    /**
+     * Request id being received.
+     */
+    private final StringBuilder requestId = new StringBuilder();
+
+    /**
+     * Last time (millis) we received anything from the server.
+     */
+    private long lastActivity;
+
+    /**
+     * Timer used to check for stalled responses.
+     */
+    private final long watchdog;
+
+    /**
+     * Is this connection still usable?.
+     */
+    private boolean open = true;
+
+    /**
+     * Placeholder for responses nobody is waiting for anymore (timed out).
+     */
+    private static final Pending DISCARD = new Pending(new ResponseHandler() {
+        @Override
+        public void handle(Buffer buffer) {
+        }
+
+        @Override
+        public void end() {
+        }
+    }, 0);
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("WinstonConnection");
+
+    /**
+     * A request waiting for its response.
+     */
+    private record Pending(ResponseHandler handler, int timeout) {
+
+    }
+
+    WinstonConnection(Vertx vertx, NetSocket socket, Runnable onClose) {
+
+        this.vertx = vertx;
+        this.socket = socket;
+
+        lastActivity = System.currentTimeMillis();
+
+        watchdog = vertx.setPeriodic(1000, t -> checkStalled());
+
+        socket
+                .handler(this::route)
+                .exceptionHandler(t -> {
+                    LOG.error("Unexpected exception");
+                    LOG.error(t.getMessage());
+                })
+                .closeHandler(c -> {
+                    LOG.info("Winston connection closed");
+                    open = false;
+                    vertx.cancelTimer(watchdog);
+                    endAll();
+                    onClose.run();
+                });
+    }
+
+    /**
+     * Sends a request over this connection.
+     *
+     * @param id The request id included in the request.
+     * @param request The complete request.
+     * @param timeout Maximum time in seconds without receiving anything from
+     * the server while this request is waiting.
+     * @param handler Where to route the response.
+     */
+    void send(String id, Buffer request, int timeout, ResponseHandler handler) {
+
+        if (pending.isEmpty() && current == null) {
+            lastActivity = System.currentTimeMillis();
+        }
+
+        pending.put(id, new Pending(handler, timeout));
+
+        socket
+                .write(request)
+                .onFailure(f -> {
+                    LOG.error("Failed to send request {}", id);
+                    LOG.error(f.getMessage());
+                    socket.close();
+                });
+    }
+
+    /**
+     * How many requests are waiting for (or receiving) their responses.
+     *
+     * @return
+     */
+    int load() {
+        return pending.size() + (current == null ? 0 : 1);
+    }
+
+    /**
+     * Is this connection still usable?.
+     *
+     * @return
+     */
+    boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Routes the incoming bytes to the handler of the response they belong to.
+     *
+     * @param buffer
+     */
+    private void route(Buffer buffer) {
+
+        lastActivity = System.currentTimeMillis();
+
+        int length = buffer.length();
+        int i = 0;
+
+        while (i < length) {
+
+            if (current == null) {
+
+                byte b = buffer.getByte(i);
+                i++;
+
+                if (b != ' ' && b != '\n') {
+                    requestId.append((char) b);
+                    continue;
+                }
+
+                if (requestId.length() == 0) {
+                    continue;
+                }
+
+                String id = requestId.toString();
+                requestId.setLength(0);
+
+                current = pending.remove(id);
+                if (current == null) {
+                    LOG.warn("Discarding response for unknown request {}", id);
+                    current = DISCARD;
+                }
+
+                if (b == '\n') {
+                    // a response with nothing but the request id
+                    finishCurrent();
+                }
+
+                continue;
+            }
+
+            int end = indexOf(buffer, (byte) '\n', i);
+
+            if (end < 0) {
+                current.handler().handle(buffer.slice(i, length));
+                i = length;
+            } else {
+                current.handler().handle(buffer.slice(i, end + 1));
+                finishCurrent();
+                i = end + 1;
+            }
+        }
+    }
+
+    /**
+     * Signals the end of the current response.
+     */
+    private void finishCurrent() {
+        Pending finished = current;
+        current = null;
+        finished.handler().end();
+    }
+
+    /**
+     * Closes this connection if there are requests waiting and the server has
+     * been quiet for too long.
+     */
+    private void checkStalled() {
+
+        if (load() == 0) {
+            return;
+        }
+
+        int timeout = current == null ? 0 : current.timeout();
+        for (Pending p : pending.values()) {
+            timeout = Math.max(timeout, p.timeout());
+        }
+
+        if (System.currentTimeMillis() - lastActivity > timeout * 1000L) {
+            LOG.warn("Winston server stalled for {}s, closing connection", timeout);
+            socket.close();
+        }
+    }
+
+    /**
+     * Ends all the current and pending responses, used when the connection is
+     * lost.
+     */
+    private void endAll() {
+
+        if (current != null) {
+            finishCurrent();
+        }
+
+        for (Pending p : pending.values()) {
+            p.handler().end();
+        }
+        pending.clear();
+    }
+
+    /**
+     * Returns the position of the first occurrence of the given byte in the
+     * buffer, starting at from, or -1 if not present.
+     */
+    private static int indexOf(Buffer buffer, byte b, int from) {
+        for (int i = from; i < buffer.length(); i++) {
+            if (buffer.getByte(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,226 @@
+package rsamssam.datasources.impl.winston;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+
+/**
+ * Keeps a small pool of warm TCP connections to the configured Winston server.
+ * <p>
+ * Requests are spread over the pooled connections, several requests can be
+ * waiting on the same connection since responses are routed back using the
+ * request id echoed by Winston.
+ * <p>
+ * All the work is done on a single vertx context, so this class is safe to be
+ * used from any thread.
+ *
+ * @author Julian Peña.
+ */
+public class WinstonPool {
+
+    /**
+     * The pool shared by all Winston queries.
+     */
+    private static WinstonPool instance;
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Context where all connections are handled.
+     */
+    private final Context context;
+
+    /**
+     * Our TCP client, shared by all connections.
+     */
+    private final NetClient client;
+
+    /**
+     * Winston server address.
+     */
+    private final String server;
+
+    /**
+     * Winston server port.
+     */
+    private final int port;
+
+    /**
+     * Maximum number of connections.
+     */
+    private final int size;
+
+    /**
+     * Open connections.
+     */
+    private final List<WinstonConnection> connections = new ArrayList<>();
+
+    /**
+     * Connections being established.
+     */
+    private final List<Future<WinstonConnection>> connecting = new ArrayList<>();
+
+    /**
+     * Request id generator.
+     */
+    private long nextId = 1;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("WinstonPool");
+
+    /**
+     * Returns the pool for the configured Winston server, creating it if
+     * needed.
+     *
+     * @param vertx
+     * @return
+     */
+    public static synchronized WinstonPool getInstance(Vertx vertx) {
+        if (instance == null) {
+            instance = new WinstonPool(vertx, Config.getWinstonServer(),
+                    Config.getWinstonServerPort(),
+                    Config.getWinstonConnections());
+        }
+        return instance;
+    }
+
+    private WinstonPool(Vertx vertx, String server, int port, int size) {
+
+        this.vertx = vertx;
+        this.server = server;
+        this.port = port;
+        this.size = size;
+
+        context = vertx.getOrCreateContext();
+
+        NetClientOptions options = new NetClientOptions();
+        options
+                .setConnectTimeout(2000)
+                .setTcpKeepAlive(true);
+
+        client = vertx.createNetClient(options);
+
+        LOG.info("Up to {} connections to {}:{}", size, server, port);
+    }
+
+    /**
+     * Sends a request to the Winston server. A request id is generated and
+     * inserted right after the command.
+     *
+     * @param command The Winston command (GETSCNL, GETSCN, etc).
+     * @param arguments The command arguments (everything after the request
+     * id).
+     * @param timeout Maximum time in seconds we are willing to wait for the
+     * server to send something.
+     * @param handler Where to route the response.
+     * @return A Future that will succeed once the request has been sent, the
+     * response will be reported to the handler. The future will fail if no
+     * connection could be made, in which case the handler is never called.
+     */
+    public Future<String> send(String command, String arguments, int timeout,
+            ResponseHandler handler) {
+
+        Promise<String> promise = Promise.promise();
+
+        context.runOnContext(v -> {
+            String id = Long.toString(nextId++);
+            Buffer request = Buffer.buffer()
+                    .appendString(command).appendString(": ")
+                    .appendString(id).appendString(" ")
+                    .appendString(arguments).appendString("\n");
+            getConnection()
+                    .onSuccess(connection -> {
+                        connection.send(id, request, timeout, handler);
+                        promise.complete(id);
+                    })
+                    .onFailure(f -> promise.fail(f));
+        });
+
+        return promise.future();
+    }
+
+    /**
+     * Returns the least loaded connection. A new connection is made if all
+     * connections are busy and the pool is not full yet.
+     *
+     * @return
+     */
+    private Future<WinstonConnection> getConnection() {
+
+        WinstonConnection idlest = null;
+        for (WinstonConnection connection : connections) {
+            if (!connection.isOpen()) {
+                continue;
+            }
+            if (idlest == null || connection.load() < idlest.load()) {
+                idlest = connection;
+            }
+        }
+
+        if (idlest != null && idlest.load() == 0) {
+            return Future.succeededFuture(idlest);
+        }
+
+        if (connections.size() + connecting.size() < size) {
+            return connect();
+        }
+
+        if (idlest != null) {
+            return Future.succeededFuture(idlest);
+        }
+
+        // the pool is full but no connection is ready yet
+        return connecting.get(0);
+    }
+
+    /**
+     * Makes a new connection and adds it to the pool.
+     *
+     * @return
+     */
+    private Future<WinstonConnection> connect() {
+
+        if (server == null || server.isBlank()) {
+            return Future.failedFuture("No Winston server configured");
+        }
+
+        LOG.info("Connecting to {}:{}", server, port);
+
+        Future<WinstonConnection> future = client
+                .connect(port, server)
+                .map(socket -> {
+                    WinstonConnection[] connection = {null};
+                    connection[0] = new WinstonConnection(vertx, socket,
+                            () -> connections.remove(connection[0]));
+                    connections.add(connection[0]);
+                    return connection[0];
+                });
+
+        connecting.add(future);
+
+        return future
+                .onComplete(c -> connecting.remove(future))
+                .onFailure(f -> {
+                    LOG.error("Failed to connect to Winston");
+                    LOG.error(f.getMessage());
+                });
+    }
+
+}
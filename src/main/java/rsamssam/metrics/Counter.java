@@ -0,0 +1,47 @@
+package rsamssam.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing counter. Rates (bytes per second, bins per
+ * second, etc.) are derived from counters by Prometheus.
+ *
+ * @author Julian Peña.
+ */
+public class Counter extends Metric<LongAdder> {
+
+    public Counter(String name, String help, String label) {
+        super(name, help, label, v -> new LongAdder());
+    }
+
+    public Counter(String name, String help) {
+        this(name, help, null);
+    }
+
+    /**
+     * Increments the counter of a metric without labels.
+     */
+    public void inc() {
+        unlabeled().increment();
+    }
+
+    /**
+     * Adds the given amount to the counter of a metric without labels.
+     *
+     * @param amount
+     */
+    public void add(long amount) {
+        unlabeled().add(amount);
+    }
+
+    @Override
+    protected String getType() {
+        return "counter";
+    }
+
+    @Override
+    protected void writeSamples(StringBuilder text) {
+        children.forEach((value, adder) -> writeSample(text, name, value, adder.sum()));
+    }
+
+}
@@ -0,0 +1,38 @@
+package rsamssam.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A value that goes up and down (ex. active pipelines).
+ *
+ * @author Julian Peña.
+ */
+public class Gauge extends Metric<AtomicLong> {
+
+    public Gauge(String name, String help, String label) {
+        super(name, help, label, v -> new AtomicLong());
+    }
+
+    public Gauge(String name, String help) {
+        this(name, help, null);
+    }
+
+    public void inc() {
+        unlabeled().incrementAndGet();
+    }
+
+    public void dec() {
+        unlabeled().decrementAndGet();
+    }
+
+    @Override
+    protected String getType() {
+        return "gauge";
+    }
+
+    @Override
+    protected void writeSamples(StringBuilder text) {
+        children.forEach((value, gauge) -> writeSample(text, name, value, gauge.get()));
+    }
+
+}
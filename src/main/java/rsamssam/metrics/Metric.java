@@ -0,0 +1,132 @@
+package rsamssam.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Base class for all metrics. A metric has a name, a help text and,
+ * optionally, a single label; every value of the label has its own child
+ * (the actual value holder).
+ *
+ * @author Julian Peña.
+ *
+ * @param <T> Type of the children.
+ */
+public abstract class Metric<T> {
+
+    /**
+     * Metric name, as exposed to Prometheus.
+     */
+    protected final String name;
+
+    /**
+     * Description of the metric.
+     */
+    protected final String help;
+
+    /**
+     * Label name, null if the metric has no labels.
+     */
+    protected final String label;
+
+    /**
+     * Children by label value.
+     */
+    protected final Map<String, T> children = new ConcurrentHashMap<>();
+
+    /**
+     * Creates new children.
+     */
+    private final Function<String, T> factory;
+
+    protected Metric(String name, String help, String label,
+            Function<String, T> factory) {
+        this.name = name;
+        this.help = help;
+        this.label = label;
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the child for the given label value, it is created if needed.
+     * Callers on hot paths should keep a reference to the child instead of
+     * calling this method every time.
+     *
+     * @param value Label value.
+     * @return
+     */
+    public T labels(String value) {
+        return children.computeIfAbsent(value, factory);
+    }
+
+    /**
+     * Returns the child of a metric without labels.
+     *
+     * @return
+     */
+    protected T unlabeled() {
+        return labels("");
+    }
+
+    /**
+     * Prometheus type (counter, gauge, summary).
+     *
+     * @return
+     */
+    protected abstract String getType();
+
+    /**
+     * Writes the samples of all the children in Prometheus text format.
+     *
+     * @param text
+     */
+    protected abstract void writeSamples(StringBuilder text);
+
+    /**
+     * Writes the metric (help, type and samples) in Prometheus text format.
+     *
+     * @param text
+     */
+    void write(StringBuilder text) {
+        text
+                .append("# HELP ").append(name).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(name).append(' ').append(getType()).append('\n');
+        writeSamples(text);
+    }
+
+    /**
+     * Writes a single sample line.
+     *
+     * @param text
+     * @param sample Sample name.
+     * @param labelValue Label value (ignored if the metric has no labels).
+     * @param value
+     */
+    protected void writeSample(StringBuilder text, String sample,
+            String labelValue, double value) {
+
+        text.append(sample);
+        if (label != null) {
+            text
+                    .append('{').append(label).append("=\"")
+                    .append(escape(labelValue)).append("\"}");
+        }
+        text.append(' ');
+
+        if (value == Math.rint(value) && !Double.isInfinite(value)) {
+            text.append((long) value);
+        } else {
+            text.append(value);
+        }
+        text.append('\n');
+    }
+
+    private static String escape(String value) {
+        return value
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n");
+    }
+
+}
@@ -0,0 +1,109 @@
+package rsamssam.metrics;
+
+import java.util.List;
+
+/**
+ * All the pipeline metrics, exposed in Prometheus text format on the /metrics
+ * route of the web server.
+ * <p>
+ * Rates (bytes per second, records per second, bins per second) are not
+ * computed here, Prometheus derives them from the counters (rate function).
+ *
+ * @author Julian Peña.
+ */
+public abstract class Metrics {
+
+    /**
+     * Content type of the Prometheus text format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * Raw bytes downloaded, by data source (fdsn, seedlink, winston).
+     */
+    public static final Counter DOWNLOAD_BYTES = new Counter(
+            "rsamssam_download_bytes_total",
+            "Raw bytes downloaded from the data sources", "source");
+
+    /**
+     * Miniseed records downloaded, by data source.
+     */
+    public static final Counter DOWNLOAD_RECORDS = new Counter(
+            "rsamssam_download_records_total",
+            "Miniseed records downloaded from the data sources", "source");
+
+    /**
+     * Samples downloaded from sources without records (Winston).
+     */
+    public static final Counter DOWNLOAD_SAMPLES = new Counter(
+            "rsamssam_download_samples_total",
+            "Samples downloaded from data sources without records", "source");
+
+    /**
+     * Elements waiting in the pipeline queues, by stage (decompressor,
+     * packager, averager).
+     */
+    public static final QueueDepth QUEUE_DEPTH = new QueueDepth(
+            "rsamssam_queue_depth",
+            "Elements waiting in the input queue of a stage", "stage");
+
+    /**
+     * Bins processed (rsam and FFT).
+     */
+    public static final Counter BINS_PROCESSED = new Counter(
+            "rsamssam_bins_processed_total",
+            "Bins processed (rsam and ssam)");
+
+    /**
+     * Time spent by every stage of the pipeline.
+     */
+    public static final Timer STAGE_DURATION = new Timer(
+            "rsamssam_stage_duration_seconds",
+            "Time spent by a pipeline stage", "stage");
+
+    /**
+     * Gnuplot wall time.
+     */
+    public static final Timer GNUPLOT_DURATION = new Timer(
+            "rsamssam_gnuplot_duration_seconds",
+            "Gnuplot wall time");
+
+    /**
+     * Pipelines (RsamSsam instances) currently making a graph.
+     */
+    public static final Gauge ACTIVE_PIPELINES = new Gauge(
+            "rsamssam_pipelines_active",
+            "Pipelines currently making a graph");
+
+    /**
+     * End-to-end latency of the pipelines, by result (success, failure).
+     */
+    public static final Timer PIPELINE_DURATION = new Timer(
+            "rsamssam_pipeline_duration_seconds",
+            "End-to-end time to make a graph", "result");
+
+    private static final List<Metric<?>> METRICS = List.of(
+            DOWNLOAD_BYTES,
+            DOWNLOAD_RECORDS,
+            DOWNLOAD_SAMPLES,
+            QUEUE_DEPTH,
+            BINS_PROCESSED,
+            STAGE_DURATION,
+            GNUPLOT_DURATION,
+            ACTIVE_PIPELINES,
+            PIPELINE_DURATION);
+
+    /**
+     * Returns all the metrics in Prometheus text format.
+     *
+     * @return
+     */
+    public static String scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        for (Metric<?> metric : METRICS) {
+            metric.write(text);
+        }
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,54 @@
+package rsamssam.metrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A gauge with the total amount of elements in the tracked queues.
+ * <p>
+ * Queues are sized when the metrics are scraped, so tracking a queue costs
+ * nothing while the pipeline is running. Queues are weakly referenced, once a
+ * pipeline is done and its queues are garbage collected they are no longer
+ * tracked.
+ *
+ * @author Julian Peña.
+ */
+public class QueueDepth extends Metric<Set<Collection<?>>> {
+
+    public QueueDepth(String name, String help, String label) {
+        super(name, help, label,
+                v -> Collections.synchronizedSet(
+                        Collections.newSetFromMap(new WeakHashMap<>())));
+    }
+
+    /**
+     * Starts tracking a queue.
+     *
+     * @param labelValue
+     * @param queue
+     */
+    public void track(String labelValue, Collection<?> queue) {
+        labels(labelValue).add(queue);
+    }
+
+    @Override
+    protected String getType() {
+        return "gauge";
+    }
+
+    @Override
+    protected void writeSamples(StringBuilder text) {
+        children.forEach((value, queues) -> {
+            long depth = 0;
+            synchronized (queues) {
+                for (Collection<?> queue : queues) {
+                    depth += queue.size();
+                }
+            }
+            writeSample(text, name, value, depth);
+        });
+    }
+
+}
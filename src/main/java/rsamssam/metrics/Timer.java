@@ -0,0 +1,80 @@
+package rsamssam.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Durations, exposed as a Prometheus summary (count and sum, in seconds) plus
+ * the longest duration seen.
+ *
+ * @author Julian Peña.
+ */
+public class Timer extends Metric<Timer.Child> {
+
+    public Timer(String name, String help, String label) {
+        super(name, help, label, v -> new Child());
+    }
+
+    public Timer(String name, String help) {
+        this(name, help, null);
+    }
+
+    /**
+     * Records a duration for a metric without labels.
+     *
+     * @param start When the timed operation started (System.nanoTime).
+     */
+    public void observe(long start) {
+        unlabeled().observe(start);
+    }
+
+    @Override
+    protected String getType() {
+        return "summary";
+    }
+
+    @Override
+    protected void writeSamples(StringBuilder text) {
+        children.forEach((value, child) -> {
+            writeSample(text, name + "_count", value, child.count.sum());
+            writeSample(text, name + "_sum", value, child.nanos.sum() / 1e9);
+        });
+    }
+
+    @Override
+    void write(StringBuilder text) {
+        super.write(text);
+        text
+                .append("# HELP ").append(name).append("_max Longest ")
+                .append(help.substring(0, 1).toLowerCase())
+                .append(help.substring(1)).append('\n')
+                .append("# TYPE ").append(name).append("_max gauge\n");
+        children.forEach((value, child) -> writeSample(text, name + "_max",
+                value, child.max.get() / 1e9));
+    }
+
+    /**
+     * Durations for a single label value.
+     */
+    public static class Child {
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder nanos = new LongAdder();
+
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Records a duration.
+         *
+         * @param start When the timed operation started (System.nanoTime).
+         */
+        public void observe(long start) {
+            long elapsed = System.nanoTime() - start;
+            count.increment();
+            nanos.add(elapsed);
+            max.accumulate(elapsed);
+        }
+    }
+
+}
@@ -0,0 +1,210 @@
+package rsamssam.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import rsamssam.query.Query;
+
+/**
+ * Execution trace of a single query: start and end timestamps of every stage
+ * of the pipeline plus counts of samples, gaps and bins. Traces tell which
+ * stage was the bottleneck for a specific query (the wave server,
+ * decompression, the FFT, gnuplot, etc.).
+ * <p>
+ * Stages run concurrently, so their time ranges overlap. Stages are:
+ * <pre>
+ * download-first-byte  from the query start until the first data arrives
+ * download             from the query start until all the data arrived
+ * decompress           until all the samples were decompressed (miniseed)
+ * package              until all the samples were packaged in bins
+ * process              until all the bins were processed and averaged
+ * format, write, plot
+ * </pre>
+ *
+ * @author Julian Peña.
+ */
+public class Trace {
+
+    private final String id;
+
+    private final String channel;
+
+    private final String type;
+
+    private final long from;
+
+    private final long to;
+
+    /**
+     * When the query started (epoch millis).
+     */
+    private final long started;
+
+    /**
+     * When the query finished (epoch millis), zero if still running.
+     */
+    private long finished = 0;
+
+    /**
+     * running, success or failure.
+     */
+    private String result = "running";
+
+    private String error;
+
+    private final List<Stage> stages = new ArrayList<>();
+
+    private long samples = 0;
+
+    private long gaps = 0;
+
+    private long bins = 0;
+
+    /**
+     * Bins considered data gaps (too many zeros).
+     */
+    private long gapBins = 0;
+
+    public Trace(Query query) {
+        id = query.getId();
+        channel = query.getNSCL();
+        type = String.valueOf(query.getType());
+        from = query.getFrom();
+        to = query.getTo();
+        started = System.currentTimeMillis();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Marks the start of a stage.
+     *
+     * @param name
+     */
+    public synchronized void start(String name) {
+        stages.add(new Stage(name, System.currentTimeMillis()));
+    }
+
+    /**
+     * Marks the end of a stage. A stage that was never started is considered
+     * to have started along with the query.
+     *
+     * @param name
+     */
+    public synchronized void end(String name) {
+        Stage stage = getStage(name);
+        if (stage == null) {
+            stage = new Stage(name, started);
+            stages.add(stage);
+        }
+        stage.end = System.currentTimeMillis();
+    }
+
+    public synchronized void setSamples(long samples) {
+        this.samples = samples;
+    }
+
+    public synchronized void setGaps(long gaps) {
+        this.gaps = gaps;
+    }
+
+    public synchronized void setBins(long bins, long gapBins) {
+        this.bins = bins;
+        this.gapBins = gapBins;
+    }
+
+    /**
+     * Marks the end of the query.
+     *
+     * @param error The failure message, null if the query succeeded.
+     */
+    public synchronized void finish(String error) {
+        finished = System.currentTimeMillis();
+        result = error == null ? "success" : "failure";
+        this.error = error;
+    }
+
+    /**
+     * Returns a JSON representation of this trace (timestamps in ISO-8601,
+     * durations in milliseconds).
+     *
+     * @return
+     */
+    public synchronized JsonObject toJson() {
+
+        JsonObject json = new JsonObject();
+        json.addProperty("id", id);
+        json.addProperty("channel", channel);
+        json.addProperty("type", type);
+        json.addProperty("from", format(from));
+        json.addProperty("to", format(to));
+        json.addProperty("result", result);
+        if (error != null) {
+            json.addProperty("error", error);
+        }
+        json.addProperty("started", format(started));
+        if (finished > 0) {
+            json.addProperty("finished", format(finished));
+            json.addProperty("durationMillis", finished - started);
+        }
+
+        JsonArray stagesJson = new JsonArray();
+        for (Stage stage : stages) {
+            JsonObject stageJson = new JsonObject();
+            stageJson.addProperty("name", stage.name);
+            stageJson.addProperty("start", format(stage.start));
+            if (stage.end > 0) {
+                stageJson.addProperty("end", format(stage.end));
+                stageJson.addProperty("durationMillis", stage.end - stage.start);
+            }
+            stagesJson.add(stageJson);
+        }
+        json.add("stages", stagesJson);
+
+        JsonObject counts = new JsonObject();
+        counts.addProperty("samples", samples);
+        counts.addProperty("gaps", gaps);
+        counts.addProperty("bins", bins);
+        counts.addProperty("gapBins", gapBins);
+        json.add("counts", counts);
+
+        return json;
+    }
+
+    private Stage getStage(String name) {
+        for (Stage stage : stages) {
+            if (stage.name.equals(name)) {
+                return stage;
+            }
+        }
+        return null;
+    }
+
+    private static String format(long millis) {
+        return Instant.ofEpochMilli(millis).toString();
+    }
+
+    /**
+     * Time range of a stage (epoch millis), end is zero while running.
+     */
+    private static class Stage {
+
+        private final String name;
+
+        private final long start;
+
+        private long end = 0;
+
+        private Stage(String name, long start) {
+            this.name = name;
+            this.start = start;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package rsamssam.metrics;
+
+import com.google.gson.JsonArray;
+
+import rsamssam.config.Config;
+
+/**
+ * Bounded ring buffer with the traces of the most recent queries, once full the
+ * oldest trace is overwritten. Running queries are included.
+ *
+ * @author Julian Peña.
+ */
+public class Traces {
+
+    /**
+     * The buffer shared by all queries.
+     */
+    private static Traces instance;
+
+    private final Trace[] buffer;
+
+    /**
+     * Next position to write.
+     */
+    private int next = 0;
+
+    /**
+     * Returns the buffer with the configured size, creating it if needed.
+     *
+     * @return
+     */
+    public static synchronized Traces getInstance() {
+        if (instance == null) {
+            instance = new Traces(Config.getTraceBufferSize());
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a buffer for the given amount of traces.
+     *
+     * @param size
+     */
+    public Traces(int size) {
+        buffer = new Trace[size];
+    }
+
+    /**
+     * Adds a trace, overwriting the oldest one if the buffer is full.
+     *
+     * @param trace
+     */
+    public synchronized void add(Trace trace) {
+        buffer[next] = trace;
+        next = (next + 1) % buffer.length;
+    }
+
+    /**
+     * Returns the traces as a JSON array, most recent first.
+     *
+     * @param id If not null, only the traces for this query id are returned.
+     * @return
+     */
+    public JsonArray toJson(String id) {
+
+        Trace[] traces;
+        int last;
+        synchronized (this) {
+            traces = buffer.clone();
+            last = next;
+        }
+
+        JsonArray json = new JsonArray();
+        for (int i = 1; i <= traces.length; i++) {
+            Trace trace = traces[Math.floorMod(last - i, traces.length)];
+            if (trace != null && (id == null || id.equals(trace.getId()))) {
+                json.add(trace.toJson());
+            }
+        }
+        return json;
+    }
+
+}
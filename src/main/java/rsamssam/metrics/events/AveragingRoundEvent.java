@@ -0,0 +1,37 @@
+package rsamssam.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for an averaging round of the Averager. Disabled by default (see
+ * conf/rsamssam.jfc).
+ *
+ * @author Julian Peña.
+ */
+@Name("rsamssam.AveragingRound")
+@Label("Averaging Round")
+@Description("A group of results averaged into a single one")
+@Category({"RSAM-SSAM", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public class AveragingRoundEvent extends jdk.jfr.Event {
+
+    @Label("Query Id")
+    public String queryId;
+
+    @Label("Results")
+    @Description("Results averaged in this round")
+    public int results;
+
+    @Label("Averaging Factor")
+    public double averagingFactor;
+
+    @Label("Spectra Size")
+    public int spectraSize;
+
+}
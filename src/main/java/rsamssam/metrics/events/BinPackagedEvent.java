@@ -0,0 +1,37 @@
+package rsamssam.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a bin handed by the Packager to the processing stage. The
+ * duration includes the time spent waiting for room in the bins queue, which
+ * shows when the processing stage is the bottleneck. Disabled by default (see
+ * conf/rsamssam.jfc).
+ *
+ * @author Julian Peña.
+ */
+@Name("rsamssam.BinPackaged")
+@Label("Bin Packaged")
+@Description("A bin of samples queued for processing")
+@Category({"RSAM-SSAM", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public class BinPackagedEvent extends jdk.jfr.Event {
+
+    @Label("Query Id")
+    public String queryId;
+
+    @Label("Bin Size")
+    @Description("Samples in the bin")
+    public int binSize;
+
+    @Label("Queue Depth")
+    @Description("Bins waiting to be processed, after this one was queued")
+    public int queueDepth;
+
+}
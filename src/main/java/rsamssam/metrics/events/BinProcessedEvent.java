@@ -0,0 +1,44 @@
+package rsamssam.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a bin processed (rsam and FFT) by the Processor. Disabled by
+ * default (see conf/rsamssam.jfc).
+ *
+ * @author Julian Peña.
+ */
+@Name("rsamssam.BinProcessed")
+@Label("Bin Processed")
+@Description("rsam and ssam computed for a bin")
+@Category({"RSAM-SSAM", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public class BinProcessedEvent extends jdk.jfr.Event {
+
+    @Label("Query Id")
+    public String queryId;
+
+    @Label("Bin Size")
+    @Description("Samples in the bin")
+    public int binSize;
+
+    @Label("Spectra Size")
+    @Description("Frequencies kept (up to the cutoff frequency)")
+    public int spectraSize;
+
+    @Label("Gap")
+    @Description("The bin had too many zeros and was considered a data gap")
+    public boolean gap;
+
+    @Label("FFT Duration")
+    @Timespan(Timespan.NANOSECONDS)
+    public long fftDuration;
+
+}
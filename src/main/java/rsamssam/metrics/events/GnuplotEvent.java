@@ -0,0 +1,40 @@
+package rsamssam.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a gnuplot invocation of the GnuplotPlotter. Disabled by
+ * default (see conf/rsamssam.jfc).
+ *
+ * @author Julian Peña.
+ */
+@Name("rsamssam.Gnuplot")
+@Label("Gnuplot")
+@Description("Gnuplot invoked to make a graph")
+@Category({"RSAM-SSAM", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public class GnuplotEvent extends jdk.jfr.Event {
+
+    @Label("Query Id")
+    public String queryId;
+
+    @Label("Graph")
+    public String graph;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Exit Code")
+    @Description("Gnuplot exit code, -1 if gnuplot couldn't be run")
+    public int exitCode;
+
+}
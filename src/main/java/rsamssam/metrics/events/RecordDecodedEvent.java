@@ -0,0 +1,39 @@
+package rsamssam.metrics.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for a miniseed DataRecord decoded by the Decompressor. Disabled by
+ * default (see conf/rsamssam.jfc).
+ *
+ * @author Julian Peña.
+ */
+@Name("rsamssam.RecordDecoded")
+@Label("Record Decoded")
+@Description("A miniseed DataRecord decoded into raw samples")
+@Category({"RSAM-SSAM", "Pipeline"})
+@Enabled(false)
+@StackTrace(false)
+public class RecordDecodedEvent extends jdk.jfr.Event {
+
+    @Label("Query Id")
+    public String queryId;
+
+    @Label("Samples")
+    public int samples;
+
+    @Label("Record Size")
+    @DataAmount
+    public int recordSize;
+
+    @Label("Failed")
+    @Description("The record couldn't be decoded and was replaced with zeros")
+    public boolean failed;
+
+}
@@ -17,10 +17,15 @@ import java.time.temporal.ChronoUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import rsamssam.config.Config;
 import rsamssam.config.Names;
 import rsamssam.core.RsamSsam;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.impl.SeedLinkSession;
 import rsamssam.query.Query;
 import rsamssam.query.QueryDeserializer;
+import rsamssam.query.QueryType;
+import rsamssam.realtime.SeedLinkStreamer;
 
 /**
  * Generates rsam-ssam graphs for all queries in the queries.json file.
@@ -102,14 +107,37 @@ public class PeriodicGrapher {
 
                     long from = yesterday.toInstant(ZoneOffset.UTC).toEpochMilli();
                     long to = now.toInstant(ZoneOffset.UTC).toEpochMilli();
-                    
+
+                    // seedlink queries share sessions, a few channels each
+                    SeedLinkSession session = null;
+
                     for (Query query : queries) {
 
+                        // real-time queries are already up to date
+                        if (isRealtime(query)) {
+                            SeedLinkStreamer streamer = SeedLinkStreamer
+                                    .getInstance(vertx);
+                            streamer.subscribe(query);
+                            chainFuture = chainFuture
+                                    .compose(onSuccess -> streamer.render(query),
+                                            onFailure -> streamer.render(query));
+                            continue;
+                        }
+
                         if (delay > 0) {
                             query.setFrom(from).setTo(to);
                         }
 
-                        RsamSsam rsamSsam = new RsamSsam(vertx, query);
+                        DataClient dataClient = null;
+                        if (query.getType() == QueryType.seedlink) {
+                            if (session == null || session.size()
+                                    >= Config.getSeedLinkSessionSize()) {
+                                session = new SeedLinkSession(vertx);
+                            }
+                            dataClient = session.add(query);
+                        }
+
+                        RsamSsam rsamSsam = new RsamSsam(vertx, query, dataClient);
 
                         // in either case we try to continue with the next query
                         chainFuture = chainFuture
@@ -129,6 +157,17 @@ public class PeriodicGrapher {
                 .onFailure(f -> LOG.error("Failed to create some/all graphs"));
     }
 
+    /**
+     * Should the given query be served by the real-time SeedLink streamer?.
+     *
+     * @param query
+     * @return
+     */
+    private boolean isRealtime(Query query) {
+        return Config.isSeedLinkRealtime()
+                && query.getType() == QueryType.seedlink;
+    }
+
     /**
      * Parses the queries.json file and returns and array of queries.
      *
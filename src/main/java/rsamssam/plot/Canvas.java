@@ -0,0 +1,78 @@
+package rsamssam.plot;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Minimal drawing surface used by Java2DPlotter, so the same drawing code
+ * makes both png and svg graphs. Coordinates are pixels, with the origin on the
+ * top left corner.
+ *
+ * @author Julian Peña.
+ */
+interface Canvas {
+
+    /**
+     * Text alignment, relative to the x coordinate.
+     */
+    enum Anchor {
+        START, MIDDLE, END
+    }
+
+    void fillRect(double x, double y, double width, double height, Color color);
+
+    void drawRect(double x, double y, double width, double height, Color color);
+
+    void line(double x1, double y1, double x2, double y2, Color color, float width);
+
+    /**
+     * Draws a line through the points from index from (inclusive) to index to
+     * (exclusive).
+     */
+    void polyline(double[] xs, double[] ys, int from, int to, Color color,
+            float width);
+
+    /**
+     * Fills a circle, color is used with the given opacity (0 to 1).
+     */
+    void fillCircle(double x, double y, double radius, Color color, float opacity);
+
+    /**
+     * Draws a text, the y coordinate is the baseline. Vertical texts are
+     * rotated 90 degrees counterclockwise around (x, y).
+     */
+    void text(String text, double x, double y, Anchor anchor, float size,
+            boolean vertical);
+
+    /**
+     * Draws an image scaled to the given rectangle, without interpolation.
+     */
+    void image(BufferedImage image, double x, double y, double width, double height);
+
+    /**
+     * Draws a palette (see Palette) image scaled to the given rectangle,
+     * without interpolation.
+     *
+     * @param pixels Palette indexes, row after row from the top.
+     */
+    void indexedImage(byte[] pixels, int pixelsWidth, int pixelsHeight, double x,
+            double y, double width, double height);
+
+    /**
+     * Restricts drawing to the given rectangle, until resetClip.
+     */
+    void clip(double x, double y, double width, double height);
+
+    void resetClip();
+
+    /**
+     * Writes the graph to the given file.
+     *
+     * @param path
+     * @throws IOException
+     */
+    void write(Path path) throws IOException;
+
+}
@@ -0,0 +1,161 @@
+package rsamssam.plot;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+/**
+ * The ssam heatmap as palette levels, one column per result and one row per
+ * frequency. Spectra are mapped to levels (see Palette) as they are added, a
+ * byte per value.
+ * <p>
+ * The heatmap can be rasterized to any size (nearest result and frequency for
+ * every pixel) as palette indexes, which can be drawn as an indexed
+ * BufferedImage or encoded straight to png with IndexedPng.
+ *
+ * @author Julian Peña.
+ */
+public class Heatmap {
+
+    /**
+     * Power for the top color.
+     */
+    private final double maxPower;
+
+    /**
+     * Frequencies per spectra, known after the first one.
+     */
+    private int rows = -1;
+
+    private int columns = 0;
+
+    /**
+     * Levels of every spectra, one after the other.
+     */
+    private byte[] levels = new byte[0];
+
+    public Heatmap(double maxPower) {
+        this.maxPower = maxPower;
+    }
+
+    /**
+     * Adds a spectra as a new column.
+     *
+     * @param spectra
+     */
+    public void add(double[] spectra) {
+
+        if (rows < 0) {
+            rows = spectra.length;
+        }
+
+        if ((columns + 1) * rows > levels.length) {
+            levels = Arrays.copyOf(levels, Math.max(rows, 2 * levels.length));
+        }
+
+        int offset = columns * rows;
+        int n = Math.min(rows, spectra.length);
+        for (int row = 0; row < n; row++) {
+            levels[offset + row] = (byte) Palette.level(spectra[row], maxPower);
+        }
+
+        columns++;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return Math.max(rows, 0);
+    }
+
+    /**
+     * Returns the heatmap scaled to the given size, as palette indexes row
+     * after row from the top (highest frequency).
+     *
+     * @param width
+     * @param height
+     * @return
+     */
+    public byte[] rasterize(int width, int height) {
+        byte[] pixels = new byte[width * height];
+        rasterize(pixels, width, height, columns, 0, width);
+        return pixels;
+    }
+
+    /**
+     * Paints some pixel columns of a raster made by scaling totalColumns
+     * columns to the given size, the rest of the raster is left untouched.
+     * Columns not added yet are painted as level 0. Used for updating a raster
+     * as new columns are added.
+     *
+     * @param pixels Palette indexes, row after row from the top.
+     * @param width
+     * @param height
+     * @param totalColumns Columns of the whole raster.
+     * @param fromX First pixel column to paint.
+     * @param toX Pixel column after the last one to paint.
+     */
+    public void rasterize(byte[] pixels, int width, int height, int totalColumns,
+            int fromX, int toX) {
+
+        if (columns == 0) {
+            for (int y = 0; y < height; y++) {
+                Arrays.fill(pixels, y * width + fromX, y * width + toX, (byte) 0);
+            }
+            return;
+        }
+
+        int[] sourceRows = new int[height];
+        for (int y = 0; y < height; y++) {
+            sourceRows[y] = (int) ((long) (height - 1 - y) * rows / height);
+        }
+
+        for (int x = fromX; x < toX; x++) {
+            int column = (int) ((long) x * totalColumns / width);
+            if (column >= columns) {
+                for (int y = 0; y < height; y++) {
+                    pixels[y * width + x] = 0;
+                }
+                continue;
+            }
+            int offset = column * rows;
+            for (int y = 0; y < height; y++) {
+                pixels[y * width + x] = levels[offset + sourceRows[y]];
+            }
+        }
+    }
+
+    /**
+     * Returns the given palette indexes as an indexed image, the pixels are
+     * not copied.
+     *
+     * @param pixels
+     * @param width
+     * @param height
+     * @return
+     */
+    public static BufferedImage toImage(byte[] pixels, int width, int height) {
+        WritableRaster raster = Raster.createInterleavedRaster(
+                new DataBufferByte(pixels, width * height), width, height,
+                width, 1, new int[]{0}, null);
+        return new BufferedImage(Palette.colorModel(), raster, false, null);
+    }
+
+    /**
+     * Encodes the given palette indexes as png.
+     *
+     * @param pixels
+     * @param width
+     * @param height
+     * @param level Deflate level.
+     * @return
+     */
+    public static byte[] toPng(byte[] pixels, int width, int height, int level) {
+        return IndexedPng.encode(pixels, width, height, Palette.rgbs(), level);
+    }
+
+}
@@ -0,0 +1,102 @@
+package rsamssam.plot;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Encodes 8 bit palette images (one byte per pixel, palette indexes) as png,
+ * without going through BufferedImage nor ImageIO.
+ * <p>
+ * Rows are not filtered (filter type 0), for palette images filtering rarely
+ * helps and the heatmap has long runs of the same index which deflate handles
+ * well even at low levels.
+ *
+ * @author Julian Peña.
+ */
+public final class IndexedPng {
+
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r',
+        '\n', 0x1a, '\n'};
+
+    private IndexedPng() {
+    }
+
+    /**
+     * Encodes the given pixels.
+     *
+     * @param pixels Palette indexes, row after row from the top.
+     * @param width
+     * @param height
+     * @param palette RGB colors, at most 256.
+     * @param level Deflate level, 0 to 9.
+     * @return The png file.
+     */
+    public static byte[] encode(byte[] pixels, int width, int height,
+            int[] palette, int level) {
+
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels");
+        }
+
+        // each row starts with its filter type
+        byte[] raw = new byte[(width + 1) * height];
+        for (int y = 0; y < height; y++) {
+            System.arraycopy(pixels, y * width, raw, y * (width + 1) + 1, width);
+        }
+
+        Deflater deflater = new Deflater(level);
+        deflater.setInput(raw);
+        deflater.finish();
+
+        ByteArrayOutputStream idat = new ByteArrayOutputStream(raw.length / 4 + 64);
+        byte[] chunk = new byte[32 * 1024];
+        while (!deflater.finished()) {
+            idat.write(chunk, 0, deflater.deflate(chunk));
+        }
+        deflater.end();
+
+        ByteBuffer ihdr = ByteBuffer.allocate(13)
+                .putInt(width)
+                .putInt(height)
+                .put((byte) 8) // bit depth
+                .put((byte) 3) // palette
+                .put((byte) 0) // deflate
+                .put((byte) 0) // filtering
+                .put((byte) 0); // no interlace
+
+        byte[] plte = new byte[palette.length * 3];
+        for (int i = 0; i < palette.length; i++) {
+            plte[3 * i] = (byte) (palette[i] >> 16);
+            plte[3 * i + 1] = (byte) (palette[i] >> 8);
+            plte[3 * i + 2] = (byte) palette[i];
+        }
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream(idat.size() + 1024);
+        png.writeBytes(SIGNATURE);
+        writeChunk(png, "IHDR", ihdr.array());
+        writeChunk(png, "PLTE", plte);
+        writeChunk(png, "IDAT", idat.toByteArray());
+        writeChunk(png, "IEND", new byte[0]);
+
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(ByteArrayOutputStream png, String type,
+            byte[] data) {
+
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+
+        png.writeBytes(ByteBuffer.allocate(4).putInt(data.length).array());
+        png.writeBytes(typeBytes);
+        png.writeBytes(data);
+        png.writeBytes(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
+
+}
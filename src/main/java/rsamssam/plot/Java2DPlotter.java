@@ -0,0 +1,585 @@
+package rsamssam.plot;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.config.Names;
+import rsamssam.core.Plotter;
+import rsamssam.core.Result;
+import rsamssam.query.Query;
+
+/**
+ * In-process plotter, draws the same graphs as the gnuplot scripts (ssam
+ * heatmap, average ssam, rsam and maximum frequencies) from the results handed
+ * to it, no process is created and no intermediate file is read. png graphs
+ * are drawn with Java2D and written through ImageIO, svg graphs are written
+ * directly. Both graphs are made at the same time, the maximum frequencies one
+ * on the common pool.
+ * <p>
+ * Spectra are kept as a Heatmap (a byte per value), so a year long graph needs
+ * just a few MB, and the heatmap is drawn as a palette image.
+ * <p>
+ * This plotter is incremental: results can keep being added after plot and the
+ * next plot only paints the heatmap columns and the rsam points for the new
+ * results, the rest of the heatmap raster and of the rsam line is kept from
+ * the previous plot. With setColumns the time axis stays fixed (a whole day
+ * for instance) as results are added.
+ *
+ * @author Julian Peña.
+ */
+public class Java2DPlotter implements Plotter {
+
+    /**
+     * rsam range, log scale.
+     */
+    private static final double RSAM_MIN = 1;
+
+    private static final double RSAM_MAX = 300000;
+
+    /**
+     * Maximum number of ticks on time axes.
+     */
+    private static final int MAX_TIME_TICKS = 8;
+
+    /**
+     * Candidate steps for time axes, in seconds.
+     */
+    private static final long[] TIME_STEPS = {60, 300, 600, 1800, 3600, 7200,
+        10800, 21600, 43200, 86400, 2 * 86400, 7 * 86400, 14 * 86400,
+        30 * 86400, 61 * 86400, 91 * 86400, 182 * 86400, 365 * 86400};
+
+    private static final float FONT_SIZE = 12;
+
+    private static final float TITLE_SIZE = 14;
+
+    private static final Color GRID = new Color(0xa0a0a0);
+
+    private static final Color MAX_FREQS = new Color(0x0000ff);
+
+    /**
+     * Graph width.
+     */
+    private final int width;
+
+    /**
+     * Graph height.
+     */
+    private final int height;
+
+    /**
+     * Where the graphs are written.
+     */
+    private final Path folder;
+
+    /**
+     * Number of results added.
+     */
+    private int count = 0;
+
+    /**
+     * Columns of the graphs, results not added yet are drawn as gaps. 0 means
+     * as many columns as results.
+     */
+    private int columns = 0;
+
+    private final Heatmap heatmap;
+
+    /**
+     * Heatmap raster from the previous plot.
+     */
+    private byte[] raster;
+
+    private int rasterWidth;
+
+    private int rasterHeight;
+
+    /**
+     * Columns of the graphs when the raster was made.
+     */
+    private int rasterColumns;
+
+    /**
+     * Results already painted on the raster.
+     */
+    private int rasterPainted;
+
+    /**
+     * rsam line points from the previous plots, a NaN x breaks the line.
+     */
+    private double[] rsamXs = new double[1024];
+
+    private double[] rsamYs = new double[1024];
+
+    /**
+     * Results already converted to rsam line points.
+     */
+    private int rsamPainted = 0;
+
+    /**
+     * End of the time axis for the rsam line points.
+     */
+    private double rsamTo = Double.NaN;
+
+    private float[] rsam = new float[1024];
+
+    private float[] maxFreqHz = new float[1024];
+
+    private float[] maxFreqPower = new float[1024];
+
+    private double[] averageSsam = new double[0];
+
+    private final double maxPower;
+
+    /**
+     * Deflate level for palette images in svg graphs.
+     */
+    private final int deflateLevel;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("Java2DPlotter");
+
+    /**
+     * Creates a plotter writing to the output folder of the given query.
+     *
+     * @param query
+     */
+    public Java2DPlotter(Query query) {
+        this(Path.of(query.getOutputPath()), query);
+    }
+
+    /**
+     * Creates a plotter writing to the given folder.
+     *
+     * @param folder
+     * @param query
+     */
+    public Java2DPlotter(Path folder, Query query) {
+
+        this.folder = folder;
+
+        if (query.isWebQuery()) {
+            width = query.getGraphWidth();
+            height = query.getGraphHeight();
+        } else {
+            width = Config.getGraphWidth();
+            height = Config.getGraphHeight();
+        }
+
+        maxPower = query.getMaxPower();
+        deflateLevel = Config.getPngDeflateLevel();
+        heatmap = new Heatmap(maxPower);
+    }
+
+    @Override
+    public void addResult(Result result) {
+
+        heatmap.add(result.spectra());
+
+        if (count == rsam.length) {
+            int capacity = 2 * count;
+            rsam = Arrays.copyOf(rsam, capacity);
+            maxFreqHz = Arrays.copyOf(maxFreqHz, capacity);
+            maxFreqPower = Arrays.copyOf(maxFreqPower, capacity);
+        }
+        rsam[count] = (float) result.rsam();
+        maxFreqHz[count] = (float) result.maxFreq()[0];
+        maxFreqPower[count] = (float) result.maxFreq()[1];
+
+        count++;
+    }
+
+    @Override
+    public void setColumns(int columns) {
+        this.columns = columns;
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return true;
+    }
+
+    @Override
+    public boolean readsResultFiles() {
+        return false;
+    }
+
+    @Override
+    public void addAverageSsam(double[] averageSsam) {
+        this.averageSsam = averageSsam.clone();
+    }
+
+    @Override
+    public Boolean plot(Query query) {
+
+        if (count == 0) {
+            LOG.error("{} No results to plot", query.getId());
+            return false;
+        }
+
+        boolean svg = query.getGraphFormat().equals(Names.GRAPH_FORMAT_SVG);
+
+        long start = query.getMetadata().get().start();
+        long timestep = query.getTimestep().get();
+        double from = start;
+        int total = Math.max(count, columns);
+        double to = total > 1 ? start + (total - 1) * timestep : start + timestep;
+
+        CompletableFuture<Void> maxFreqsDone = null;
+        try {
+
+            Files.createDirectories(folder);
+
+            // the maximum frequencies graph is made on another thread meanwhile
+            int maxFreqsHeight = height / 2;
+            maxFreqsDone = CompletableFuture.runAsync(() -> {
+                Canvas maxFreqs = newCanvas(svg, width, maxFreqsHeight);
+                drawMaxFreqs(maxFreqs, query, maxFreqsHeight, from, to, timestep);
+                try {
+                    maxFreqs.write(folder.resolve(query.getMaxFreqsGraphFileName()));
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+
+            Canvas canvas = newCanvas(svg, width, height);
+            drawSsam(canvas, total);
+            drawAverageSsam(canvas, query);
+            drawRsam(canvas, from, to, timestep);
+            canvas.text(query.getGraphTitle(), width / 2d, 0.035 * height,
+                    Canvas.Anchor.MIDDLE, TITLE_SIZE, false);
+            canvas.write(folder.resolve(query.getGraphFileName()));
+
+            maxFreqsDone.join();
+
+        } catch (IOException | CompletionException ex) {
+            LOG.error("{} Failed to create graph", query.getId());
+            LOG.error(ex.getMessage());
+            return false;
+        } finally {
+            // results can't be added while the other thread is drawing
+            if (maxFreqsDone != null) {
+                maxFreqsDone.exceptionally(ex -> null).join();
+            }
+        }
+
+        LOG.info("{} {} done", query.getId(), query.getGraphFileName());
+
+        return true;
+    }
+
+    private Canvas newCanvas(boolean svg, int width, int height) {
+        return svg ? new SvgCanvas(width, height, deflateLevel)
+                : new PngCanvas(width, height);
+    }
+
+    /**
+     * Draws the ssam heatmap and its color box.
+     */
+    private void drawSsam(Canvas canvas, int total) {
+
+        double left = 0.20 * width;
+        double right = 0.85 * width;
+        double top = 0.05 * height;
+        double bottom = 0.70 * height;
+
+        // at most one column and one row per pixel
+        updateRaster(total, Math.max(1, Math.min(total, (int) (right - left))),
+                Math.max(1, Math.min(heatmap.getRows(), (int) (bottom - top))));
+        canvas.indexedImage(raster, rasterWidth, rasterHeight, left, top,
+                right - left, bottom - top);
+        canvas.drawRect(left, top, right - left, bottom - top, Color.BLACK);
+
+        // color box
+        double boxLeft = right + 0.015 * width;
+        double boxWidth = 0.02 * width;
+        byte[] box = new byte[Palette.LEVELS];
+        for (int level = 0; level < Palette.LEVELS; level++) {
+            box[Palette.LEVELS - 1 - level] = (byte) level;
+        }
+        canvas.indexedImage(box, 1, Palette.LEVELS, boxLeft, top, boxWidth,
+                bottom - top);
+        canvas.drawRect(boxLeft, top, boxWidth, bottom - top, Color.BLACK);
+
+        double step = getStep(maxPower, 6);
+        for (double power = 0; power <= maxPower + step / 1000; power += step) {
+            double y = bottom - power / maxPower * (bottom - top);
+            canvas.line(boxLeft + boxWidth - 4, y, boxLeft + boxWidth, y,
+                    Color.BLACK, 1);
+            canvas.text(format(power), boxLeft + boxWidth + 4, y + FONT_SIZE / 3,
+                    Canvas.Anchor.START, FONT_SIZE, false);
+        }
+        canvas.text("20log(nm/s)", boxLeft + boxWidth + 45, (top + bottom) / 2,
+                Canvas.Anchor.MIDDLE, FONT_SIZE, true);
+    }
+
+    /**
+     * Paints the results added since the previous plot on the heatmap raster,
+     * the whole raster is painted again if its size changed.
+     */
+    private void updateRaster(int total, int width, int height) {
+
+        if (raster == null || width != rasterWidth || height != rasterHeight
+                || total != rasterColumns) {
+            raster = new byte[width * height];
+            rasterWidth = width;
+            rasterHeight = height;
+            rasterColumns = total;
+            rasterPainted = 0;
+        }
+
+        int added = heatmap.getColumns();
+        if (added > rasterPainted) {
+            // first pixel column showing each result
+            int fromX = (int) (((long) rasterPainted * width + total - 1) / total);
+            int toX = (int) Math.min(width, ((long) added * width + total - 1) / total);
+            heatmap.rasterize(raster, width, height, total, fromX, toX);
+            rasterPainted = added;
+        }
+    }
+
+    /**
+     * Draws the average ssam, with the frequency axis. Power grows to the
+     * left, in log scale for broadband stations.
+     */
+    private void drawAverageSsam(Canvas canvas, Query query) {
+
+        double left = 0.10 * width;
+        double right = 0.20 * width;
+        double top = 0.05 * height;
+        double bottom = 0.70 * height;
+
+        // same guess as the gnuplot plotter
+        boolean log = query.getC().startsWith("H") || query.getC().startsWith("B");
+
+        int fftWindow = query.getCutoffWindowSize().get();
+        double cutoff = query.getCutoffFrequency();
+
+        // frequency axis, a label every 5 ticks
+        double tick = fftWindow / 25d;
+        for (int i = 0; i <= 25; i++) {
+            double y = bottom - i * tick / fftWindow * (bottom - top);
+            boolean major = i % 5 == 0;
+            canvas.line(left, y, left + (major ? 6 : 3), y, Color.BLACK, 1);
+            if (major) {
+                if (i > 0 && i < 25) {
+                    canvas.line(left, y, right, y, GRID, 0.5f);
+                }
+                canvas.text(format(i * cutoff / 25), left - 4, y + FONT_SIZE / 3,
+                        Canvas.Anchor.END, FONT_SIZE, false);
+            }
+        }
+        canvas.text("Frequency  (Hz)", left - 40, (top + bottom) / 2,
+                Canvas.Anchor.MIDDLE, FONT_SIZE, true);
+
+        int n = averageSsam.length;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : averageSsam) {
+            if (Double.isFinite(value) && (!log || value > 0)) {
+                double v = log ? Math.log10(value) : value;
+                min = Math.min(min, v);
+                max = Math.max(max, v);
+            }
+        }
+
+        if (min <= max) {
+
+            if (min == max) {
+                min -= 1;
+                max += 1;
+            }
+
+            double[] xs = new double[n];
+            double[] ys = new double[n];
+            int points = 0;
+
+            canvas.clip(left, top, right - left, bottom - top);
+            for (int i = 0; i < n; i++) {
+                double value = averageSsam[i];
+                if (!Double.isFinite(value) || (log && value <= 0)) {
+                    canvas.polyline(xs, ys, 0, points, Color.BLACK, 1.5f);
+                    points = 0;
+                    continue;
+                }
+                double v = log ? Math.log10(value) : value;
+                xs[points] = right - (v - min) / (max - min) * (right - left);
+                ys[points] = bottom - (double) i / fftWindow * (bottom - top);
+                points++;
+            }
+            canvas.polyline(xs, ys, 0, points, Color.BLACK, 1.5f);
+            canvas.resetClip();
+        }
+
+        canvas.drawRect(left, top, right - left, bottom - top, Color.BLACK);
+    }
+
+    /**
+     * Draws the rsam, log scale.
+     */
+    private void drawRsam(Canvas canvas, double from, double to, long timestep) {
+
+        double left = 0.20 * width;
+        double right = 0.85 * width;
+        double top = 0.70 * height;
+        double bottom = 0.90 * height;
+
+        drawTimeAxis(canvas, from, to, left, right, top, bottom);
+
+        double logRange = Math.log10(RSAM_MAX / RSAM_MIN);
+        for (double value = RSAM_MIN; value <= RSAM_MAX; value *= 10) {
+            double y = bottom - Math.log10(value / RSAM_MIN) / logRange * (bottom - top);
+            canvas.line(left, y, left + 6, y, Color.BLACK, 1);
+            canvas.text(format(value), left - 4, y + FONT_SIZE / 3,
+                    Canvas.Anchor.END, FONT_SIZE, false);
+        }
+        canvas.text("RSAM", left - 60, (top + bottom) / 2, Canvas.Anchor.MIDDLE,
+                FONT_SIZE, true);
+
+        if (to != rsamTo) {
+            rsamPainted = 0;
+            rsamTo = to;
+        }
+        if (count > rsamXs.length) {
+            rsamXs = Arrays.copyOf(rsamXs, rsam.length);
+            rsamYs = Arrays.copyOf(rsamYs, rsam.length);
+        }
+        for (int i = rsamPainted; i < count; i++) {
+            if (!(rsam[i] > 0)) {
+                rsamXs[i] = Double.NaN;
+                continue;
+            }
+            rsamXs[i] = left + ((double) i * timestep) / (to - from) * (right - left);
+            rsamYs[i] = bottom - Math.log10(rsam[i] / RSAM_MIN) / logRange
+                    * (bottom - top);
+        }
+        rsamPainted = count;
+
+        canvas.clip(left, top, right - left, bottom - top);
+        int first = 0;
+        for (int i = 0; i < count; i++) {
+            if (Double.isNaN(rsamXs[i])) {
+                canvas.polyline(rsamXs, rsamYs, first, i, Color.BLACK, 1);
+                first = i + 1;
+            }
+        }
+        canvas.polyline(rsamXs, rsamYs, first, count, Color.BLACK, 1);
+        canvas.resetClip();
+
+        canvas.drawRect(left, top, right - left, bottom - top, Color.BLACK);
+    }
+
+    /**
+     * Draws the maximum frequencies graph, a circle for every result (the
+     * bigger the power, the bigger the circle).
+     */
+    private void drawMaxFreqs(Canvas canvas, Query query, int height,
+            double from, double to, long timestep) {
+
+        double left = 0.10 * width;
+        double right = 0.95 * width;
+        double top = 0.10 * height;
+        double bottom = 0.85 * height;
+
+        canvas.text(query.getGraphTitle(), width / 2d, 0.06 * height,
+                Canvas.Anchor.MIDDLE, TITLE_SIZE, false);
+
+        drawTimeAxis(canvas, from, to, left, right, top, bottom);
+
+        double cutoff = query.getCutoffFrequency();
+        double step = getStep(cutoff, 6);
+        for (double hz = 0; hz <= cutoff + step / 1000; hz += step) {
+            double y = bottom - hz / cutoff * (bottom - top);
+            canvas.line(left, y, left + 6, y, Color.BLACK, 1);
+            canvas.text(format(hz), left - 4, y + FONT_SIZE / 3,
+                    Canvas.Anchor.END, FONT_SIZE, false);
+        }
+        canvas.text("Frequency (Hz)", left - 40, (top + bottom) / 2,
+                Canvas.Anchor.MIDDLE, FONT_SIZE, true);
+
+        // radius in seconds, as in the gnuplot script
+        double pixelsPerMilli = (right - left) / (to - from);
+        double radiusFactor = 2 * query.getAveraging() * 1000 * pixelsPerMilli;
+
+        canvas.clip(left, top, right - left, bottom - top);
+        for (int i = 0; i < count; i++) {
+            if (maxFreqHz[i] == 0 || Float.isNaN(maxFreqHz[i])
+                    || Float.isNaN(maxFreqPower[i])) {
+                continue;
+            }
+            double x = left + i * timestep * pixelsPerMilli;
+            double y = bottom - maxFreqHz[i] / cutoff * (bottom - top);
+            canvas.fillCircle(x, y, Math.abs(maxFreqPower[i]) * radiusFactor,
+                    MAX_FREQS, 0.2f);
+        }
+        canvas.resetClip();
+
+        canvas.drawRect(left, top, right - left, bottom - top, Color.BLACK);
+    }
+
+    /**
+     * Draws the ticks, labels and grid of a time axis (UTC).
+     */
+    private void drawTimeAxis(Canvas canvas, double from, double to, double left,
+            double right, double top, double bottom) {
+
+        double span = (to - from) / 1000;
+        long step = TIME_STEPS[TIME_STEPS.length - 1];
+        for (long candidate : TIME_STEPS) {
+            if (span / candidate <= MAX_TIME_TICKS) {
+                step = candidate;
+                break;
+            }
+        }
+
+        DateTimeFormatter formatter = DateTimeFormatter
+                .ofPattern(step < 86400 ? "HH:mm" : "yy/MM/dd")
+                .withZone(ZoneOffset.UTC);
+
+        long stepMillis = step * 1000;
+        long first = (long) Math.ceil(from / stepMillis) * stepMillis;
+        for (long time = first; time <= to; time += stepMillis) {
+            double x = left + (time - from) / (to - from) * (right - left);
+            canvas.line(x, top, x, bottom, GRID, 0.5f);
+            canvas.line(x, bottom, x, bottom - 6, Color.BLACK, 1);
+            canvas.text(formatter.format(Instant.ofEpochMilli(time)), x,
+                    bottom + FONT_SIZE + 4, Canvas.Anchor.MIDDLE, FONT_SIZE, false);
+        }
+    }
+
+    /**
+     * Returns a round step (1, 2 or 5 times a power of ten) giving at most the
+     * given number of ticks.
+     */
+    private static double getStep(double range, int ticks) {
+        double raw = range / ticks;
+        double magnitude = Math.pow(10, Math.floor(Math.log10(raw)));
+        for (double factor : new double[]{1, 2, 5, 10}) {
+            if (factor * magnitude >= raw) {
+                return factor * magnitude;
+            }
+        }
+        return 10 * magnitude;
+    }
+
+    private static String format(double value) {
+        return value == Math.rint(value) ? Long.toString((long) value)
+                : String.format(Locale.US, "%.1f", value);
+    }
+
+}
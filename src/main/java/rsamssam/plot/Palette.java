@@ -0,0 +1,103 @@
+package rsamssam.plot;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.IndexColorModel;
+import java.util.Arrays;
+
+/**
+ * The ssam color palette, same as the gnuplot scripts:
+ * <p>
+ * set palette defined (0 "black", 1 "black", 2 "black", 3 "dark-blue", 4
+ * "blue", 5 "cyan", 6 "yellow", 7 "red")
+ * <p>
+ * Powers from 0 to maxPower are mapped to one of 256 levels, colors are
+ * linearly interpolated between the defined ones.
+ *
+ * @author Julian Peña.
+ */
+final class Palette {
+
+    /**
+     * Number of levels (colors).
+     */
+    static final int LEVELS = 256;
+
+    private static final int[] DEFINED = {0x000000, 0x000000, 0x000000, 0x00008b,
+        0x0000ff, 0x00ffff, 0xffff00, 0xff0000};
+
+    /**
+     * RGB color for every level.
+     */
+    private static final int[] RGB = new int[LEVELS];
+
+    /**
+     * Color model for palette (indexed) images.
+     */
+    private static final IndexColorModel COLOR_MODEL;
+
+    static {
+        int last = DEFINED.length - 1;
+        for (int level = 0; level < LEVELS; level++) {
+            double position = (double) level * last / (LEVELS - 1);
+            int i = Math.min((int) position, last - 1);
+            double t = position - i;
+            RGB[level] = mix(DEFINED[i], DEFINED[i + 1], t);
+        }
+        COLOR_MODEL = new IndexColorModel(8, LEVELS, RGB, 0, false, -1,
+                DataBuffer.TYPE_BYTE);
+    }
+
+    private Palette() {
+    }
+
+    /**
+     * Returns the level for the given power, NaN is level 0.
+     *
+     * @param power
+     * @param maxPower
+     * @return
+     */
+    static int level(double power, double maxPower) {
+        if (!(power > 0)) {
+            return 0;
+        }
+        if (power >= maxPower) {
+            return LEVELS - 1;
+        }
+        return (int) Math.round(power / maxPower * (LEVELS - 1));
+    }
+
+    /**
+     * Returns the RGB color of a level.
+     *
+     * @param level
+     * @return
+     */
+    static int rgb(int level) {
+        return RGB[level];
+    }
+
+    /**
+     * Returns the RGB colors of all the levels.
+     *
+     * @return
+     */
+    static int[] rgbs() {
+        return Arrays.copyOf(RGB, LEVELS);
+    }
+
+    static IndexColorModel colorModel() {
+        return COLOR_MODEL;
+    }
+
+    private static int mix(int from, int to, double t) {
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int a = (from >> shift) & 0xff;
+            int b = (to >> shift) & 0xff;
+            rgb |= (int) Math.round(a + (b - a) * t) << shift;
+        }
+        return rgb;
+    }
+
+}
@@ -0,0 +1,183 @@
+package rsamssam.plot;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Composite;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+
+import javax.imageio.ImageIO;
+
+import rsamssam.core.ChannelWriter;
+
+/**
+ * Canvas drawing on a BufferedImage with Java2D, encoded as png with ImageIO
+ * and written atomically.
+ *
+ * @author Julian Peña.
+ */
+class PngCanvas implements Canvas {
+
+    private final BufferedImage image;
+
+    private final Graphics2D graphics;
+
+    PngCanvas(int width, int height) {
+
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+        graphics = image.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL,
+                RenderingHints.VALUE_STROKE_PURE);
+
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(0, 0, width, height);
+    }
+
+    /**
+     * The image drawn so far.
+     *
+     * @return
+     */
+    BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height,
+            Color color) {
+        graphics.setColor(color);
+        graphics.fill(new Rectangle2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void drawRect(double x, double y, double width, double height,
+            Color color) {
+        graphics.setColor(color);
+        graphics.setStroke(new BasicStroke(1));
+        graphics.draw(new Rectangle2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void line(double x1, double y1, double x2, double y2, Color color,
+            float width) {
+        graphics.setColor(color);
+        graphics.setStroke(new BasicStroke(width));
+        graphics.draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void polyline(double[] xs, double[] ys, int from, int to, Color color,
+            float width) {
+
+        if (to <= from) {
+            return;
+        }
+
+        Path2D.Double path = new Path2D.Double(Path2D.WIND_NON_ZERO, to - from);
+        path.moveTo(xs[from], ys[from]);
+        for (int i = from + 1; i < to; i++) {
+            path.lineTo(xs[i], ys[i]);
+        }
+
+        graphics.setColor(color);
+        graphics.setStroke(new BasicStroke(width, BasicStroke.CAP_ROUND,
+                BasicStroke.JOIN_ROUND));
+        graphics.draw(path);
+    }
+
+    @Override
+    public void fillCircle(double x, double y, double radius, Color color,
+            float opacity) {
+        Composite composite = graphics.getComposite();
+        graphics.setComposite(AlphaComposite.getInstance(
+                AlphaComposite.SRC_OVER, opacity));
+        graphics.setColor(color);
+        graphics.fill(new Ellipse2D.Double(x - radius, y - radius,
+                2 * radius, 2 * radius));
+        graphics.setComposite(composite);
+    }
+
+    @Override
+    public void text(String text, double x, double y, Anchor anchor, float size,
+            boolean vertical) {
+
+        graphics.setFont(new Font(Font.SANS_SERIF, Font.PLAIN, 1).deriveFont(size));
+        graphics.setColor(Color.BLACK);
+
+        FontMetrics metrics = graphics.getFontMetrics();
+        double offset = switch (anchor) {
+            case START ->
+                0;
+            case MIDDLE ->
+                metrics.stringWidth(text) / 2d;
+            case END ->
+                metrics.stringWidth(text);
+        };
+
+        AffineTransform transform = graphics.getTransform();
+        graphics.translate(x, y);
+        if (vertical) {
+            graphics.rotate(-Math.PI / 2);
+        }
+        graphics.drawString(text, (float) -offset, 0f);
+        graphics.setTransform(transform);
+    }
+
+    @Override
+    public void image(BufferedImage image, double x, double y, double width,
+            double height) {
+        Object interpolation = graphics.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        graphics.drawImage(image, (int) Math.round(x), (int) Math.round(y),
+                (int) Math.round(width), (int) Math.round(height), null);
+        if (interpolation != null) {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+        }
+    }
+
+    @Override
+    public void indexedImage(byte[] pixels, int pixelsWidth, int pixelsHeight,
+            double x, double y, double width, double height) {
+        image(Heatmap.toImage(pixels, pixelsWidth, pixelsHeight), x, y, width,
+                height);
+    }
+
+    @Override
+    public void clip(double x, double y, double width, double height) {
+        graphics.setClip(new Rectangle2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void resetClip() {
+        graphics.setClip(null);
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        graphics.dispose();
+        var png = new ByteArrayOutputStream(64 * 1024);
+        if (!ImageIO.write(image, "png", png)) {
+            throw new IOException("No png writer available");
+        }
+        ChannelWriter.write(path, png.toByteArray());
+    }
+
+}
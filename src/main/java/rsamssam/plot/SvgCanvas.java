@@ -0,0 +1,223 @@
+package rsamssam.plot;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Locale;
+
+import javax.imageio.ImageIO;
+
+import rsamssam.core.ChannelWriter;
+
+/**
+ * Canvas writing svg elements directly. Images are embedded as png, palette
+ * images are encoded with IndexedPng.
+ *
+ * @author Julian Peña.
+ */
+class SvgCanvas implements Canvas {
+
+    private final StringBuilder svg = new StringBuilder(64 * 1024);
+
+    /**
+     * Number of clip paths defined so far.
+     */
+    private int clips = 0;
+
+    /**
+     * Is there an open clip group?.
+     */
+    private boolean clipping = false;
+
+    /**
+     * Deflate level for palette images.
+     */
+    private final int deflateLevel;
+
+    SvgCanvas(int width, int height, int deflateLevel) {
+        this.deflateLevel = deflateLevel;
+        svg
+                .append("<?xml version=\"1.0\" encoding=\"utf-8\" standalone=\"no\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\"")
+                .append(" xmlns:xlink=\"http://www.w3.org/1999/xlink\"")
+                .append(" width=\"").append(width)
+                .append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(width).append(' ').append(height)
+                .append("\" font-family=\"sans-serif\">\n")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+    }
+
+    @Override
+    public void fillRect(double x, double y, double width, double height,
+            Color color) {
+        rect(x, y, width, height).append(" fill=\"").append(rgb(color)).append("\"/>\n");
+    }
+
+    @Override
+    public void drawRect(double x, double y, double width, double height,
+            Color color) {
+        rect(x, y, width, height)
+                .append(" fill=\"none\" stroke=\"").append(rgb(color))
+                .append("\" stroke-width=\"1\"/>\n");
+    }
+
+    @Override
+    public void line(double x1, double y1, double x2, double y2, Color color,
+            float width) {
+        svg
+                .append("<line x1=\"").append(n(x1))
+                .append("\" y1=\"").append(n(y1))
+                .append("\" x2=\"").append(n(x2))
+                .append("\" y2=\"").append(n(y2))
+                .append("\" stroke=\"").append(rgb(color))
+                .append("\" stroke-width=\"").append(n(width)).append("\"/>\n");
+    }
+
+    @Override
+    public void polyline(double[] xs, double[] ys, int from, int to, Color color,
+            float width) {
+
+        if (to <= from) {
+            return;
+        }
+
+        svg.append("<polyline points=\"");
+        for (int i = from; i < to; i++) {
+            if (i > from) {
+                svg.append(' ');
+            }
+            svg.append(n(xs[i])).append(',').append(n(ys[i]));
+        }
+        svg
+                .append("\" fill=\"none\" stroke=\"").append(rgb(color))
+                .append("\" stroke-width=\"").append(n(width))
+                .append("\" stroke-linejoin=\"round\" stroke-linecap=\"round\"/>\n");
+    }
+
+    @Override
+    public void fillCircle(double x, double y, double radius, Color color,
+            float opacity) {
+        svg
+                .append("<circle cx=\"").append(n(x))
+                .append("\" cy=\"").append(n(y))
+                .append("\" r=\"").append(n(radius))
+                .append("\" fill=\"").append(rgb(color))
+                .append("\" fill-opacity=\"").append(n(opacity)).append("\"/>\n");
+    }
+
+    @Override
+    public void text(String text, double x, double y, Anchor anchor, float size,
+            boolean vertical) {
+
+        svg
+                .append("<text x=\"").append(n(x))
+                .append("\" y=\"").append(n(y))
+                .append("\" font-size=\"").append(n(size))
+                .append("\" text-anchor=\"").append(switch (anchor) {
+            case START ->
+                "start";
+            case MIDDLE ->
+                "middle";
+            case END ->
+                "end";
+        }).append('"');
+
+        if (vertical) {
+            svg
+                    .append(" transform=\"rotate(-90 ").append(n(x))
+                    .append(' ').append(n(y)).append(")\"");
+        }
+
+        svg.append('>').append(escape(text)).append("</text>\n");
+    }
+
+    @Override
+    public void image(BufferedImage image, double x, double y, double width,
+            double height) {
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, "png", png);
+        } catch (IOException ex) {
+            // writing to memory
+            throw new IllegalStateException(ex);
+        }
+
+        embed(png.toByteArray(), x, y, width, height);
+    }
+
+    @Override
+    public void indexedImage(byte[] pixels, int pixelsWidth, int pixelsHeight,
+            double x, double y, double width, double height) {
+        embed(Heatmap.toPng(pixels, pixelsWidth, pixelsHeight, deflateLevel),
+                x, y, width, height);
+    }
+
+    private void embed(byte[] png, double x, double y, double width,
+            double height) {
+        svg
+                .append("<image x=\"").append(n(x))
+                .append("\" y=\"").append(n(y))
+                .append("\" width=\"").append(n(width))
+                .append("\" height=\"").append(n(height))
+                .append("\" preserveAspectRatio=\"none\"")
+                .append(" style=\"image-rendering:pixelated\"")
+                .append(" xlink:href=\"data:image/png;base64,")
+                .append(Base64.getEncoder().encodeToString(png))
+                .append("\"/>\n");
+    }
+
+    @Override
+    public void clip(double x, double y, double width, double height) {
+        resetClip();
+        clips++;
+        svg.append("<clipPath id=\"clip").append(clips).append("\">");
+        rect(x, y, width, height).append("/></clipPath>\n");
+        svg.append("<g clip-path=\"url(#clip").append(clips).append(")\">\n");
+        clipping = true;
+    }
+
+    @Override
+    public void resetClip() {
+        if (clipping) {
+            svg.append("</g>\n");
+            clipping = false;
+        }
+    }
+
+    @Override
+    public void write(Path path) throws IOException {
+        resetClip();
+        svg.append("</svg>\n");
+        ChannelWriter.write(path, svg.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private StringBuilder rect(double x, double y, double width, double height) {
+        return svg
+                .append("<rect x=\"").append(n(x))
+                .append("\" y=\"").append(n(y))
+                .append("\" width=\"").append(n(width))
+                .append("\" height=\"").append(n(height)).append('"');
+    }
+
+    private static String n(double value) {
+        return String.format(Locale.US, "%.2f", value);
+    }
+
+    private static String rgb(Color color) {
+        return String.format("#%06x", color.getRGB() & 0xffffff);
+    }
+
+    private static String escape(String text) {
+        return text
+                .replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;");
+    }
+
+}
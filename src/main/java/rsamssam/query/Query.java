@@ -26,6 +26,12 @@ public class Query {
      */
     public static final int DEFAULT_WINDOW_SIZE = 4096;
 
+    /**
+     * Fraction of the graph width taken by the ssam heatmap (same for both
+     * plotters).
+     */
+    public static final double HEATMAP_WIDTH = 0.65;
+
     /**
      * Default window function;
      */
@@ -102,6 +108,16 @@ public class Query {
      */
     private String graphFormat = Names.GRAPH_FORMAT_PNG;
 
+    /**
+     * Format of the rsam, ssam and average ssam files (text or binary).
+     */
+    private String outputFormat = Names.OUTPUT_FORMAT_TEXT;
+
+    /**
+     * How the averaging factor is picked (days or width).
+     */
+    private String averagingMode = Names.AVERAGING_DAYS;
+
     /**
      * rsam-ssam graph width.
      */
@@ -181,6 +197,34 @@ public class Query {
         this.to = now.plusDays(1).toInstant(ZoneOffset.UTC).toEpochMilli();
     }
 
+    /**
+     * Returns a new query for the same NSCL with the same settings as this
+     * one. The copy gets its own id and no metadata.
+     *
+     * @return A new Query object.
+     */
+    public Query copy() {
+
+        Query copy = new Query(S, C, N, L);
+
+        copy.type = type;
+        copy.from = from;
+        copy.to = to;
+        copy.graphFormat = graphFormat;
+        copy.outputFormat = outputFormat;
+        copy.averagingMode = averagingMode;
+        copy.graphWidth = graphWidth;
+        copy.graphHeight = graphHeight;
+        copy.maxPower = maxPower;
+        copy.windowFunction = windowFunction;
+        copy.windowSize = windowSize;
+        copy.cutoffFrequency = cutoffFrequency;
+        copy.responseFactor = responseFactor;
+        copy.webQuery = webQuery;
+
+        return copy;
+    }
+
     /**
      * Returns this query's metadata, if present.
      *
@@ -318,10 +362,24 @@ public class Query {
      * Return the averaging factor for this query (how many bins should be
      * reduce to 1). By default, this is equal to the number of days between the
      * 'from' and 'to' values.
+     * <p>
+     * With the width averaging mode, the factor is the number of bins in the
+     * time range over the pixel width of the heatmap, so there are never more
+     * results than pixel columns. This factor can be fractional (never less
+     * than 1) and needs the query's metadata, without it the number of days is
+     * used. Queries of a day or less are padded to a whole day (see Averager),
+     * so the factor is for at least a day.
      *
      * @return
      */
-    public long getAveraging() {
+    public double getAveraging() {
+
+        if (Names.AVERAGING_WIDTH.equals(averagingMode) && metadata != null) {
+            long span = Math.max(to - from, 86400000L);
+            double bins = span / 1000d * metadata.sps() / windowSize;
+            double columns = Math.max(1, Math.floor(HEATMAP_WIDTH * graphWidth));
+            return Math.max(1, bins / columns);
+        }
 
         if (durationInDays() > 1) {
             return durationInDays();
@@ -458,6 +516,61 @@ public class Query {
         return graphFormat;
     }
 
+    /**
+     * Sets the format of the rsam, ssam and average ssam files: text (csv) or
+     * binary (float32, gnuplot binary layouts).
+     *
+     * @param outputFormat
+     * @return A reference to self.
+     */
+    public Query setOutputFormat(String outputFormat) {
+        if (null != outputFormat) {
+            this.outputFormat = outputFormat;
+        }
+        return this;
+    }
+
+    /**
+     * Sets how the averaging factor is picked: days (the number of days) or
+     * width (from the graph width).
+     *
+     * @param averagingMode
+     * @return A reference to self.
+     */
+    public Query setAveragingMode(String averagingMode) {
+        if (null != averagingMode) {
+            this.averagingMode = averagingMode;
+        }
+        return this;
+    }
+
+    /**
+     * Returns how the averaging factor is picked (days or width).
+     *
+     * @return
+     */
+    public String getAveragingMode() {
+        return averagingMode;
+    }
+
+    /**
+     * Returns the format of the rsam, ssam and average ssam files.
+     *
+     * @return
+     */
+    public String getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * Are the rsam, ssam and average ssam files written in binary?.
+     *
+     * @return
+     */
+    public boolean isBinaryOutput() {
+        return Names.OUTPUT_FORMAT_BINARY.equals(outputFormat);
+    }
+
     /**
      * Returns the desired output graph width in pixels.
      *
@@ -619,7 +732,8 @@ public class Query {
     public String getSSAMFileName() {
         return getNSCLPretty()
                 + " " + getDateAsString(from)
-                + " " + Names.SSAM_FILENAME_SUFIX;
+                + " " + (isBinaryOutput() ? Names.SSAM_BINARY_FILENAME_SUFIX
+                        : Names.SSAM_FILENAME_SUFIX);
     }
 
     /**
@@ -630,7 +744,8 @@ public class Query {
     public String getRSAMFileName() {
         return getNSCLPretty()
                 + " " + getDateAsString(from)
-                + " " + Names.RSAM_FILENAME_SUFIX;
+                + " " + (isBinaryOutput() ? Names.RSAM_BINARY_FILENAME_SUFIX
+                        : Names.RSAM_FILENAME_SUFIX);
     }
 
     /**
@@ -641,7 +756,8 @@ public class Query {
     public String getAverageSSAMFileName() {
         return getNSCLPretty()
                 + " " + getDateAsString(from)
-                + " " + Names.AVERAGE_SSAM_FILENAME_SUFIX;
+                + " " + (isBinaryOutput() ? Names.AVERAGE_SSAM_BINARY_FILENAME_SUFIX
+                        : Names.AVERAGE_SSAM_FILENAME_SUFIX);
     }
 
     /**
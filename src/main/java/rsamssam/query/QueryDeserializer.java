@@ -76,7 +76,24 @@ public class QueryDeserializer implements JsonDeserializer<Query> {
             query.setGraphFormat(json.get(Names.GRAPH_FORMAT).getAsString());
         }
 
-        if (json.has(Names.GRAPH_WIDTH) && json.has(Names.GRAPH_HEIGHT)) {
+        if (json.has(Names.OUTPUT_FORMAT)) {
+            query.setOutputFormat(json.get(Names.OUTPUT_FORMAT).getAsString());
+        } else {
+            query.setOutputFormat(Config.getOutputFormat());
+        }
+
+        if (json.has(Names.AVERAGING)) {
+            query.setAveragingMode(json.get(Names.AVERAGING).getAsString());
+        } else {
+            query.setAveragingMode(Config.getAveraging());
+        }
+
+        if (!query.isWebQuery()) {
+            // graphs for other queries have the configured size
+            query
+                    .setGraphWidth(Config.getGraphWidth())
+                    .setGraphHeight(Config.getGraphHeight());
+        } else if (json.has(Names.GRAPH_WIDTH) && json.has(Names.GRAPH_HEIGHT)) {
             query
                     .setGraphWidth(json.get(Names.GRAPH_WIDTH).getAsInt())
                     .setGraphHeight(json.get(Names.GRAPH_HEIGHT).getAsInt());
@@ -6,5 +6,5 @@ package rsamssam.query;
  * @author Julian Peña.
  */
 public enum QueryType {
-    fdsn, seedlink, winston;
+    fdsn, seedlink, winston, sds;
 }
@@ -0,0 +1,523 @@
+package rsamssam.realtime;
+
+import edu.iris.dmc.seedcodec.CodecException;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.core.Averager;
+import rsamssam.core.Packager;
+import rsamssam.core.Plotter;
+import rsamssam.core.Processor;
+import rsamssam.core.Result;
+import rsamssam.core.ResultsWriter;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Incremental rsam-ssam computation for a single channel.
+ * <p>
+ * DataRecords are added as they arrive from a real-time source, their samples
+ * go through a Packager, a Processor and an Averager right away, so every bin
+ * is computed only once. The results for the current day (UTC) are kept in
+ * memory and can be rendered at any time.
+ * <p>
+ * With an incremental plotter, the same plotter is used for every render of a
+ * day and it's handed only the results computed since the previous render.
+ * Plotters that don't read the result files get them rewritten only every few
+ * minutes and at the end of the day, since every write is a whole day.
+ * <p>
+ * Data gaps are filled with zeros, overlapping samples are discarded. Once
+ * data for the next day arrives, the graph for the finished day is rendered one
+ * last time (on the given executor) and a new day begins. After an outage of
+ * more than a day the days in between are skipped, the chain jumps right to
+ * the day of the new data.
+ *
+ * @author Julian Peña.
+ */
+public class ChannelChain {
+
+    /**
+     * Milliseconds in a day.
+     */
+    private static final long DAY = 86400000;
+
+    /**
+     * Minimum time (millis) between writes of the result files, when the
+     * plotter doesn't read them.
+     */
+    private static final long WRITE_INTERVAL = 600000;
+
+    /**
+     * Query with the settings (window size, cutoff, etc) for this channel.
+     */
+    private final Query template;
+
+    /**
+     * Where the final render of every day is made.
+     */
+    private final Executor renderer;
+
+    /**
+     * Query for the current day.
+     */
+    private Query query;
+
+    /**
+     * Sampling rate of the channel.
+     */
+    private float sps;
+
+    /**
+     * Current day samples packager.
+     */
+    private Packager packager;
+
+    /**
+     * Current day processor.
+     */
+    private Processor processor;
+
+    /**
+     * Current day averager.
+     */
+    private Averager averager;
+
+    /**
+     * Samples added to the packager since the last complete bin.
+     */
+    private int binSamples;
+
+    /**
+     * Averaged results for the current day.
+     */
+    private final List<Result> results = new ArrayList<>();
+
+    /**
+     * Expected time (millis) of the next sample.
+     */
+    private double nextSample;
+
+    /**
+     * Guards the output files and the plotter, renders are made one at a
+     * time.
+     */
+    private final Object renderLock = new Object();
+
+    /**
+     * Plotter from the previous render.
+     */
+    private Plotter plotter;
+
+    /**
+     * Query the plotter was made for.
+     */
+    private Query plotterQuery;
+
+    /**
+     * Results already handed to the plotter.
+     */
+    private int plotted;
+
+    /**
+     * Query of the last result files written.
+     */
+    private Query writtenQuery;
+
+    /**
+     * When (millis) the result files were last written.
+     */
+    private long written;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("ChannelChain");
+
+    /**
+     * Creates a chain for the channel of the given query.
+     *
+     * @param template A query with the channel NSCL and the rsam-ssam settings.
+     * @param renderer Where the final render of every day is made, it must
+     * not be an event loop.
+     */
+    public ChannelChain(Query template, Executor renderer) {
+        this.template = template;
+        this.renderer = renderer;
+    }
+
+    /**
+     * Adds a DataRecord to this chain, its samples are processed right away.
+     * DataRecords must be added in chronological order, older records are
+     * discarded.
+     *
+     * @param dataRecord
+     */
+    public synchronized void addDataRecord(DataRecord dataRecord) {
+
+        long start = dataRecord.getStartBtime().toInstant().toEpochMilli();
+
+        if (query == null) {
+            startDay(start - Math.floorMod(start, DAY), dataRecord.getSampleRate());
+        }
+
+        if (start < query.getFrom()) {
+            // late data for a day that is already finished
+            return;
+        }
+
+        double period = 1000d / sps;
+
+        long dayStart = start - Math.floorMod(start, DAY);
+        if (dayStart > query.getFrom()) {
+            // the rest of the day is a gap, days without data are skipped
+            pad((long) Math.ceil((query.getTo() - nextSample) / period));
+            finishDay();
+            if (dayStart > query.getTo()) {
+                LOG.info("{} No data since {}", query.getId(), query.getTo());
+            }
+            startDay(dayStart, sps);
+        }
+        double[] samples = decompress(dataRecord);
+
+        // how many samples are missing (or overlapping) before this record?
+        long offset = Math.round((start - nextSample) / period);
+
+        int first = 0;
+        if (offset > 0) {
+            pad(offset);
+        } else if (offset < 0) {
+            first = (int) Math.min(-offset, samples.length);
+        }
+
+        for (int i = first; i < samples.length; i++) {
+            if (nextSample >= query.getTo()) {
+                finishDay();
+                startDay(query.getTo(), sps);
+            }
+            add(samples[i]);
+        }
+    }
+
+    /**
+     * Renders the graph for the current day with the results computed so far.
+     * The rest of the day is padded as a gap.
+     * <p>
+     * IMPORTANT: This method blocks while the files are written and the graph
+     * is made, it must not be called from an event loop.
+     *
+     * @return True if the graph was made, false otherwise.
+     */
+    public Boolean render() {
+
+        Query dayQuery;
+        List<Result> snapshot;
+        double[] averageSsam;
+
+        synchronized (this) {
+            if (query == null || results.isEmpty()) {
+                LOG.info("{} No data yet", template.getNSCL());
+                return false;
+            }
+            dayQuery = query;
+            snapshot = new ArrayList<>(results);
+            averageSsam = averager.getAverageSsam();
+        }
+
+        return render(dayQuery, snapshot, averageSsam, false);
+    }
+
+    /**
+     * Formats, writes and plots the given results.
+     *
+     * @param dayQuery
+     * @param dayResults
+     * @param averageSsam
+     * @param last Is this the last render of the day?.
+     * @return True if the graph was made, false otherwise.
+     */
+    private Boolean render(Query dayQuery, List<Result> dayResults,
+            double[] averageSsam, boolean last) {
+        synchronized (renderLock) {
+            Plotter dayPlotter = getPlotter(dayQuery);
+            if (mustWrite(dayQuery, dayPlotter, last)) {
+                if (!write(dayQuery, dayResults, averageSsam)) {
+                    return false;
+                }
+                writtenQuery = dayQuery;
+                written = System.currentTimeMillis();
+            }
+            return plot(dayPlotter, dayQuery, dayResults, averageSsam);
+        }
+    }
+
+    /**
+     * Must the result files be written on this render?. They are always
+     * written if the plotter reads them, otherwise they are written on the
+     * first and last render of the day and every WRITE_INTERVAL.
+     *
+     * @param dayQuery
+     * @param dayPlotter
+     * @param last
+     * @return
+     */
+    private boolean mustWrite(Query dayQuery, Plotter dayPlotter, boolean last) {
+        return last || dayPlotter.readsResultFiles() || writtenQuery != dayQuery
+                || System.currentTimeMillis() - written >= WRITE_INTERVAL;
+    }
+
+    /**
+     * Writes the result files for the given results, the rest of the day is
+     * padded as a gap.
+     *
+     * @param dayQuery
+     * @param dayResults
+     * @param averageSsam
+     * @return True if the files were written, false otherwise.
+     */
+    private boolean write(Query dayQuery, List<Result> dayResults,
+            double[] averageSsam) {
+
+        int cutoffWindow = dayQuery.getCutoffWindowSize().get();
+        int resultsPerDay = getResultsPerDay(dayQuery);
+
+        ResultsWriter resultsWriter = null;
+        try {
+
+            resultsWriter = new ResultsWriter(dayQuery, dayQuery.getFrom(),
+                    dayQuery.getTimestep().get());
+
+            for (Result result : dayResults) {
+                resultsWriter.addResult(result);
+            }
+
+            // the rest of the day has no data yet
+            Result gap = new Result(Double.NaN, new double[cutoffWindow],
+                    new double[]{Double.NaN, Double.NaN});
+            for (int i = dayResults.size(); i < resultsPerDay; i++) {
+                resultsWriter.addResult(gap);
+            }
+
+            resultsWriter.addAverageSsam(averageSsam);
+            resultsWriter.finish();
+
+        } catch (IOException ex) {
+            LOG.error("{} Failed to write files", dayQuery.getId());
+            LOG.error(ex.getMessage());
+            if (resultsWriter != null) {
+                resultsWriter.close();
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the plotter for the given day, the plotter from the previous
+     * render of the same day is reused if it's incremental.
+     *
+     * @param dayQuery
+     * @return
+     */
+    private Plotter getPlotter(Query dayQuery) {
+
+        if (plotter == null || plotterQuery != dayQuery
+                || !plotter.isIncremental()) {
+            plotter = Plotter.forQuery(dayQuery);
+            plotter.setColumns(getResultsPerDay(dayQuery));
+            plotterQuery = dayQuery;
+            plotted = 0;
+        }
+
+        return plotter;
+    }
+
+    /**
+     * Plots the given results, an incremental plotter is handed only the
+     * results it doesn't have yet.
+     *
+     * @param dayPlotter
+     * @param dayQuery
+     * @param dayResults
+     * @param averageSsam
+     * @return True if the graph was made, false otherwise.
+     */
+    private Boolean plot(Plotter dayPlotter, Query dayQuery,
+            List<Result> dayResults, double[] averageSsam) {
+
+        for (int i = plotted; i < dayResults.size(); i++) {
+            dayPlotter.addResult(dayResults.get(i));
+        }
+        plotted = Math.max(plotted, dayResults.size());
+        dayPlotter.addAverageSsam(averageSsam);
+
+        return dayPlotter.plot(dayQuery);
+    }
+
+    /**
+     * Number of (averaged) results in a whole day.
+     *
+     * @param dayQuery
+     * @return
+     */
+    private static int getResultsPerDay(Query dayQuery) {
+        int sampleRate = dayQuery.getMetadata().get().sps();
+        // a tolerance for the rounding errors of fractional factors
+        return (int) Math.ceil(86400d * sampleRate / dayQuery.getWindowSize()
+                / dayQuery.getAveraging() - 1e-9);
+    }
+
+    /**
+     * Initializes the chain for a new day.
+     *
+     * @param dayStart Start of the day in millis.
+     * @param sampleRate Sampling rate of the channel.
+     */
+    private void startDay(long dayStart, float sampleRate) {
+
+        sps = sampleRate;
+
+        query = template.copy();
+        query.setFrom(dayStart).setTo(dayStart + DAY);
+        query.setMetadata(new Metadata((int) sps, dayStart));
+
+        LOG.info("{} Starting day {}", query.getId(), query);
+
+        packager = new Packager(query.getWindowSize());
+        processor = new Processor(query.getWindowSize(), query.getWindow(),
+                query.getCutoffWindowSize().get(), query.getResponseFactor());
+        averager = new Averager(query, (int) sps);
+
+        binSamples = 0;
+        results.clear();
+        nextSample = dayStart;
+    }
+
+    /**
+     * Completes the current day and hands its final render to the renderer.
+     */
+    private void finishDay() {
+
+        try {
+            // flushes the incomplete bin (if any)
+            packager.addSample(Double.NaN);
+        } catch (InterruptedException ex) {
+            LOG.error("{} Interrupted while finishing day", query.getId());
+        }
+        drain();
+
+        LOG.info("{} Day completed, {} results", query.getId(), results.size());
+
+        Query dayQuery = query;
+        List<Result> dayResults = new ArrayList<>(results);
+        double[] averageSsam = averager.getAverageSsam();
+
+        renderer.execute(() -> render(dayQuery, dayResults, averageSsam, true));
+    }
+
+    /**
+     * Adds a single sample to the packager, processing the bin once complete.
+     *
+     * @param sample
+     */
+    private void add(double sample) {
+
+        try {
+            packager.addSample(sample);
+        } catch (InterruptedException ex) {
+            LOG.error("{} Interrupted while packaging", query.getId());
+            return;
+        }
+
+        nextSample += 1000d / sps;
+        binSamples++;
+
+        if (binSamples == query.getWindowSize()) {
+            binSamples = 0;
+            drain();
+        }
+    }
+
+    /**
+     * Returns the query for the current day (null if no data was added yet).
+     *
+     * @return
+     */
+    synchronized Query getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the results computed so far for the current day.
+     *
+     * @return
+     */
+    synchronized List<Result> getResults() {
+        return new ArrayList<>(results);
+    }
+
+    /**
+     * Adds zeros to fill a gap, up to the end of the current day.
+     *
+     * @param count How many samples are missing.
+     */
+    private void pad(long count) {
+
+        if (count > 1) {
+            LOG.info("{} About to pad {} samples", query.getId(), count);
+        }
+
+        for (long i = 0; i < count; i++) {
+            if (nextSample >= query.getTo()) {
+                finishDay();
+                startDay(query.getTo(), sps);
+            }
+            add(0d);
+        }
+    }
+
+    /**
+     * Processes and averages all the bins ready in the packager.
+     */
+    private void drain() {
+
+        double[] bin = packager.pollBin();
+        while (bin != null && bin.length > 0) {
+            averager.addResult(processor.process(bin));
+            bin = packager.pollBin();
+        }
+
+        Result result = averager.pollResult();
+        while (result != null) {
+            results.add(result);
+            result = averager.pollResult();
+        }
+    }
+
+    /**
+     * Decompress the given DataRecord.
+     *
+     * @param dataRecord
+     * @return An array of doubles containing the raw samples in the DataRecord
+     * or zeros if the DataRecord couldn't be decompressed.
+     */
+    private double[] decompress(DataRecord dataRecord) {
+        try {
+            return dataRecord.decompress().getAsDouble();
+        } catch (SeedFormatException | CodecException ex) {
+            LOG.error("{} Decompression failure", template.getNSCL());
+            LOG.error(ex.getMessage());
+            return new double[dataRecord.getHeader().getNumSamples()];
+        }
+    }
+
+}
@@ -0,0 +1,400 @@
+package rsamssam.realtime;
+
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rsamssam.config.Config;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.impl.seedlink.SeedLinkClient;
+import rsamssam.datasources.impl.seedlink.SeedLinkPacket;
+import rsamssam.query.Query;
+
+/**
+ * Keeps a single, long lived, multi-station SeedLink session open and feeds
+ * the incoming DataRecords to a ChannelChain per subscribed channel.
+ * <p>
+ * The sequence number of the last packet received from each station is
+ * remembered, so when the connection is lost the session is resumed (DATA
+ * command) right where it stopped. Stations without a known sequence number
+ * start from the beginning of the current day (TIME command).
+ *
+ * @author Julian Peña.
+ */
+public class SeedLinkStreamer {
+
+    /**
+     * The streamer shared by all real-time queries.
+     */
+    private static SeedLinkStreamer instance;
+
+    /**
+     * Maximum delay between reconnection attempts, in milliseconds.
+     */
+    private static final long MAX_BACKOFF = 60000;
+
+    /**
+     * Vertx reference.
+     */
+    private final Vertx vertx;
+
+    /**
+     * Context where the SeedLink session is handled.
+     */
+    private final Context context;
+
+    /**
+     * Seconds without receiving packets before the session is considered
+     * dead.
+     */
+    private final int idleTimeout;
+
+    /**
+     * DataRecords waiting to be processed before pausing the socket.
+     */
+    private final int highWatermark;
+
+    /**
+     * DataRecords waiting to be processed before resuming the socket.
+     */
+    private final int lowWatermark;
+
+    /**
+     * Chains for every subscribed channel, by NSCL.
+     */
+    private final Map<String, ChannelChain> chains = new LinkedHashMap<>();
+
+    /**
+     * Channels subscribed for every station, by "S N" selector.
+     */
+    private final Map<String, Map<String, Query>> stations = new LinkedHashMap<>();
+
+    /**
+     * Last sequence number received for every station, by "S N" selector.
+     */
+    private final Map<String, String> sequences = new LinkedHashMap<>();
+
+    /**
+     * Single thread where all chains do their work, this keeps DataRecords in
+     * order and the event loop free.
+     */
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /**
+     * DataRecords handed to the executor and not processed yet.
+     */
+    private final AtomicInteger backlog = new AtomicInteger();
+
+    /**
+     * Current SeedLink client, null if no session is active.
+     */
+    private volatile SeedLinkClient client;
+
+    /**
+     * Is the current session paused because of backpressure?.
+     */
+    private boolean paused = false;
+
+    /**
+     * Current reconnection delay, in milliseconds.
+     */
+    private long backoff = 1000;
+
+    /**
+     * Is a (re)connection already scheduled?.
+     */
+    private boolean scheduled = false;
+
+    /**
+     * Our logger.
+     */
+    private final Logger LOG = LoggerFactory.getLogger("SeedLinkStreamer");
+
+    /**
+     * Returns the streamer, creating it if needed.
+     *
+     * @param vertx
+     * @return
+     */
+    public static synchronized SeedLinkStreamer getInstance(Vertx vertx) {
+        if (instance == null) {
+            instance = new SeedLinkStreamer(vertx);
+        }
+        return instance;
+    }
+
+    SeedLinkStreamer(Vertx vertx) {
+        this.vertx = vertx;
+        context = vertx.getOrCreateContext();
+        idleTimeout = Config.getSeedLinkRealtimeIdleTimeout();
+        highWatermark = Config.getSeedLinkRealtimeHighWatermark();
+        lowWatermark = Config.getSeedLinkRealtimeLowWatermark();
+    }
+
+    /**
+     * Subscribes the channel of the given query. If the channel belongs to a
+     * station not yet in the session, the session is restarted so the new
+     * station gets selected.
+     *
+     * @param query
+     */
+    public synchronized void subscribe(Query query) {
+
+        if (chains.containsKey(query.getNSCL())) {
+            return;
+        }
+
+        LOG.info("{} Subscribing {}", query.getId(), query.getNSCL());
+
+        chains.put(query.getNSCL(), new ChannelChain(query,
+                task -> vertx.executeBlocking(() -> {
+                    task.run();
+                    return true;
+                }, false)));
+
+        String station = query.getS() + " " + query.getN();
+
+        stations
+                .computeIfAbsent(station, s -> new LinkedHashMap<>())
+                .put(query.getNSCL(), query);
+
+        if (client == null) {
+            schedule(0);
+        } else {
+            // sequence numbers are kept, the session resumes where it was
+            restart();
+        }
+    }
+
+    /**
+     * Renders the graph of the given query with the results computed so far.
+     *
+     * @param query A previously subscribed query.
+     * @return A future that will succeed if the graph was made.
+     */
+    public Future<Boolean> render(Query query) {
+
+        ChannelChain chain;
+        synchronized (this) {
+            chain = chains.get(query.getNSCL());
+        }
+
+        if (chain == null) {
+            return Future.failedFuture("Channel not subscribed");
+        }
+
+        return vertx.executeBlocking(() -> chain.render(), false)
+                .compose(made -> made
+                ? Future.succeededFuture(made)
+                : Future.failedFuture("Graph not made"));
+    }
+
+    /**
+     * Closes the current session, a new one is started once the close is
+     * reported.
+     */
+    private void restart() {
+        context.runOnContext(v -> {
+            if (client != null) {
+                client.close();
+            }
+        });
+    }
+
+    /**
+     * Schedules a new session.
+     *
+     * @param delay in milliseconds.
+     */
+    private synchronized void schedule(long delay) {
+
+        if (scheduled) {
+            return;
+        }
+        scheduled = true;
+
+        if (delay == 0) {
+            context.runOnContext(v -> start());
+        } else {
+            LOG.info("Reconnecting in {} ms", delay);
+            context.runOnContext(v -> vertx.setTimer(delay, t -> start()));
+        }
+    }
+
+    /**
+     * Starts a new SeedLink session selecting all subscribed stations and
+     * channels.
+     */
+    private void start() {
+
+        synchronized (this) {
+            scheduled = false;
+            paused = false;
+        }
+
+        SeedLinkClient seedLinkClient = new SeedLinkClient(vertx,
+                Config.getSeedLinkServer(),
+                Config.getSeedLinkServerPort(),
+                idleTimeout);
+
+        client = seedLinkClient;
+
+        Future<?> chain = seedLinkClient
+                .connect()
+                .compose(c -> seedLinkClient.doHello());
+
+        for (var station : snapshot().entrySet()) {
+            chain = chain.compose(c -> select(seedLinkClient, station.getKey(),
+                    station.getValue()));
+        }
+
+        Future<?> session = chain
+                .compose(c -> seedLinkClient.doEnd())
+                .compose(c -> {
+                    backoff = 1000;
+                    return seedLinkClient.getPackets(idleTimeout, this::add);
+                });
+
+        session.onComplete(c -> {
+            LOG.info("Session ended");
+            seedLinkClient.close();
+            client = null;
+            long delay = c.succeeded() ? 1000 : backoff;
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+            schedule(delay);
+        });
+    }
+
+    /**
+     * Selects a station and its channels in the given session. A station that
+     * could not be selected does not abort the session.
+     *
+     * @param seedLinkClient
+     * @param station The "S N" station selector.
+     * @param channels The queries subscribed for the station.
+     * @return
+     */
+    private Future select(SeedLinkClient seedLinkClient, String station,
+            Map<String, Query> channels) {
+
+        List<String> selectors = new ArrayList<>();
+        for (Query query : channels.values()) {
+            selectors.add(query.getL() + query.getC() + ".D");
+        }
+
+        String sequence;
+        synchronized (this) {
+            sequence = sequences.get(station);
+        }
+
+        Future chain = seedLinkClient.doMultiStation(station, selectors, () -> {
+            if (sequence != null) {
+                return seedLinkClient.doData(sequence, null);
+            }
+            long now = Instant.now().toEpochMilli();
+            return seedLinkClient.doTime(now - Math.floorMod(now, 86400000L), null);
+        });
+
+        return chain.recover(f -> {
+            LOG.warn("Station {} could not be selected", station);
+            return Future.succeededFuture();
+        });
+    }
+
+    /**
+     * Hands the DataRecord in the given packet to its chain, pausing the
+     * session if the chains are falling behind.
+     *
+     * @param packet
+     */
+    private void add(SeedLinkPacket packet) {
+
+        packet.getMiniseed().ifPresent(dataRecord -> {
+
+            DataHeader header = dataRecord.getHeader();
+            String station = header.getStationIdentifier().trim() + " "
+                    + header.getNetworkCode().trim();
+
+            ChannelChain chain;
+            synchronized (this) {
+                sequences.put(station, packet.getSequenceNumber());
+                chain = chains.get(DataRecordProvider.getNSCL(dataRecord));
+            }
+
+            if (chain == null) {
+                return;
+            }
+
+            if (backlog.incrementAndGet() > highWatermark && !paused) {
+                paused = true;
+                client.pause();
+                watchdog();
+            }
+
+            executor.submit(() -> {
+                try {
+                    chain.addDataRecord(dataRecord);
+                } catch (RuntimeException ex) {
+                    LOG.error("Failed to process DataRecord");
+                    LOG.error(ex.getMessage());
+                } finally {
+                    backlog.decrementAndGet();
+                }
+            });
+        });
+    }
+
+    /**
+     * Resumes the session once the chains have caught up.
+     */
+    private void watchdog() {
+        vertx.setTimer(1000, t -> {
+            if (!paused || client == null) {
+                return;
+            }
+            if (backlog.get() < lowWatermark) {
+                paused = false;
+                client.resume();
+            } else {
+                watchdog();
+            }
+        });
+    }
+
+    /**
+     * Returns the chain of the given channel.
+     *
+     * @param NSCL
+     * @return The chain or null if the channel is not subscribed.
+     */
+    synchronized ChannelChain getChain(String NSCL) {
+        return chains.get(NSCL);
+    }
+
+    /**
+     * Returns a copy of the subscribed stations and channels.
+     *
+     * @return
+     */
+    private synchronized Map<String, Map<String, Query>> snapshot() {
+        Map<String, Map<String, Query>> copy = new LinkedHashMap<>();
+        stations.forEach((k, v) -> copy.put(k, new LinkedHashMap<>(v)));
+        return copy;
+    }
+
+}
@@ -31,6 +31,8 @@ import rsamssam.config.Config;
 import static rsamssam.config.Names.*;
 import rsamssam.core.RsamSsam;
 import rsamssam.history.GraphsHistory;
+import rsamssam.metrics.Metrics;
+import rsamssam.metrics.Traces;
 import rsamssam.query.Query;
 import rsamssam.query.QueryDeserializer;
 import rsamssam.query.QueryType;
@@ -101,6 +103,12 @@ public class WebServer extends AbstractVerticle {
         router.get("/latest").handler(this::getGraphsWithFilter);
         router.get("/latest/:filters").handler(this::getGraphsWithFilter);
 
+        // pipeline metrics (Prometheus)
+        router.get("/metrics").handler(this::onMetrics);
+
+        // execution traces of the most recent queries
+        router.get("/debug/traces").handler(this::onTraces);
+
         // these routes are for static assets
         router
                 .route("/" + OUTPUT_DIR + "/*")
@@ -134,6 +142,33 @@ public class WebServer extends AbstractVerticle {
                 });
     }
 
+    /**
+     * Returns the pipeline metrics in Prometheus text format.
+     *
+     * @param routingContext The vertx routing context.
+     */
+    private void onMetrics(RoutingContext routingContext) {
+        routingContext
+                .response()
+                .putHeader("Content-Type", Metrics.CONTENT_TYPE)
+                .end(Metrics.scrape());
+    }
+
+    /**
+     * Returns the execution traces of the most recent queries as JSON, most
+     * recent first. The id parameter (optional) selects the traces of a single
+     * query.
+     *
+     * @param routingContext The vertx routing context.
+     */
+    private void onTraces(RoutingContext routingContext) {
+        String id = routingContext.request().getParam("id");
+        routingContext
+                .response()
+                .putHeader("Content-Type", "application/json")
+                .end(Traces.getInstance().toJson(id).toString());
+    }
+
     /**
      * Retrieves the main page (index.jade) which contains the latest graphs.
      *
@@ -0,0 +1,251 @@
+package rsamssam.core;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Allocation budgets for the per bin and per sample hot paths. Every test
+ * measures the bytes allocated by the current thread per operation in steady
+ * state (after a warm up, so the JIT has already removed what it can) and
+ * fails when the budget is exceeded.
+ * <p>
+ * Budgets (bytes per operation) are configured in
+ * src/test/resources/allocation-budgets.properties and can be overridden with system properties
+ * of the same name (ex. -Dbudget.processor.process=20000).
+ * <p>
+ * Budgets were measured with the HotSpot C2 compiler, they depend on its
+ * escape analysis. The tests are skipped on other JVMs or compilers (C1 only,
+ * interpreter, JVMCI).
+ *
+ * @author Julian Peña.
+ */
+public class AllocationBudgetTest {
+
+    static final int sps = 100;
+
+    static final int windowSize = 1024;
+
+    static final int cutoffWindow = 512;
+
+    static final Path BUDGETS = Path.of("src/test/resources/allocation-budgets.properties");
+
+    static Properties budgets = new Properties();
+
+    @TempDir
+    Path folder;
+
+    static final com.sun.management.ThreadMXBean THREADS
+            = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public AllocationBudgetTest() {
+    }
+
+    @BeforeAll
+    public static void loadBudgets() throws Exception {
+        assumeTrue(isC2(), "allocation budgets need the HotSpot C2 compiler");
+        try (Reader reader = Files.newBufferedReader(BUDGETS)) {
+            budgets.load(reader);
+        }
+        assertTrue(THREADS.isThreadAllocatedMemorySupported(),
+                "thread allocation measurement not supported by this JVM");
+        THREADS.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @Test
+    public void processorProcess() throws Exception {
+
+        Processor processor = new Processor(windowSize, "HANN", cutoffWindow, 1);
+        double[][] bins = new double[16][windowSize];
+
+        int[] i = {0};
+        assertWithinBudget("budget.processor.process", 2000, 10000, () -> {
+            double[] bin = bins[i[0]++ & 15];
+            for (int j = 0; j < windowSize; j++) {
+                bin[j] = Math.sin(j / 10d) * 1000;
+            }
+            processor.process(bin);
+        });
+    }
+
+    @Test
+    public void packagerAddSample() throws Exception {
+
+        Packager packager = new Packager(windowSize);
+
+        long[] i = {0};
+        assertWithinBudget("budget.packager.addSample", 1000000, 5000000, () -> {
+            packager.addSample(i[0]++ % 1000);
+            if (i[0] % windowSize == 0) {
+                packager.pollBin();
+            }
+        });
+    }
+
+    @Test
+    public void decompressorGetSample() throws Exception {
+
+        int warmup = 500000;
+        int measured = 2000000;
+        int records = (warmup + measured) / SyntheticStream.SAMPLES_PER_RECORD + 1;
+
+        SyntheticStream stream = new SyntheticStream(sps);
+        long from = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+        long first = stream.getRecordIndex(from);
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(from);
+        query.setTo(from + 10L * 86400000);
+
+        // records are parsed before measuring, only decoding is measured
+        List<DataRecord> dataRecords = new ArrayList<>(records);
+        for (int r = 0; r < records; r++) {
+            byte[] bytes = stream.getRecord("CM", "JULI", "00", "HHZ", first + r);
+            dataRecords.add((DataRecord) SeedRecord.read(bytes));
+        }
+
+        Decompressor decompressor = new Decompressor(query);
+
+        int[] next = {0};
+        long[] count = {0};
+        assertWithinBudget("budget.decompressor.getSample", warmup, measured, () -> {
+            if (count[0]++ % SyntheticStream.SAMPLES_PER_RECORD == 0) {
+                decompressor.addDataRecord(dataRecords.get(next[0]++));
+            }
+            decompressor.getSample();
+        });
+    }
+
+    @Test
+    public void averagerAddResult() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query
+                .setWindowSize(windowSize)
+                .setCutoffFrequency(25)
+                .setFrom(0)
+                .setTo(30L * 86400000);
+        query.setMetadata(new Metadata(sps, 0));
+
+        Averager averager = new Averager(query, sps);
+        Result result = new Result(1, new double[windowSize / 2], null);
+
+        assertWithinBudget("budget.averager.addResult", 50000, 200000, () -> {
+            averager.addResult(result);
+            averager.pollResult();
+        });
+    }
+
+    @Test
+    public void resultsWriterAddResult() throws Exception {
+
+        double[] spectra = new double[cutoffWindow];
+        for (int i = 0; i < spectra.length; i++) {
+            spectra[i] = 100 + i / 7d;
+        }
+        Result result = new Result(1.5, spectra, new double[]{12.5, 130.25});
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+
+        // default decimals, as in production
+        try (ResultsWriter writer = new ResultsWriter(folder, query, 0, 10240,
+                new Precision(2, 2, 2, 2))) {
+            assertWithinBudget("budget.resultsWriter.addResult", 2000, 8000,
+                    () -> writer.addResult(result));
+        }
+    }
+
+    /**
+     * Runs the operation warmup times, then measures the bytes allocated by
+     * the current thread in the following rounds.
+     *
+     * @param budget Budget property name.
+     * @param warmup
+     * @param rounds
+     * @param operation
+     * @throws Exception
+     */
+    private static void assertWithinBudget(String budget, int warmup, int rounds,
+            Operation operation) throws Exception {
+
+        long limit = Long.parseLong(System.getProperty(budget,
+                budgets.getProperty(budget)).trim());
+
+        for (int i = 0; i < warmup; i++) {
+            operation.run();
+        }
+
+        long before = THREADS.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < rounds; i++) {
+            operation.run();
+        }
+        long after = THREADS.getCurrentThreadAllocatedBytes();
+
+        double perOperation = (after - before) / (double) rounds;
+
+        assertTrue(perOperation <= limit, String.format(
+                "%s exceeded: %.1f bytes per operation", budget, perOperation));
+    }
+
+    /**
+     * Is the JIT the HotSpot C2 compiler?.
+     *
+     * @return
+     */
+    private static boolean isC2() {
+
+        if (!System.getProperty("java.vm.name", "").contains("Server VM")
+                || System.getProperty("java.vm.info", "").contains("interpreted")) {
+            return false;
+        }
+
+        HotSpotDiagnosticMXBean hotspot = ManagementFactory
+                .getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        if (hotspot == null) {
+            return false;
+        }
+
+        try {
+            if (!hotspot.getVMOption("TieredStopAtLevel").getValue().equals("4")) {
+                return false;
+            }
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+
+        // only builds with JVMCI have this option
+        try {
+            return !hotspot.getVMOption("UseJVMCICompiler").getValue().equals("true");
+        } catch (IllegalArgumentException ex) {
+            return true;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operation {
+
+        void run() throws Exception;
+    }
+
+}
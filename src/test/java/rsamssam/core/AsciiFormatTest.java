@@ -0,0 +1,69 @@
+package rsamssam.core;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class AsciiFormatTest {
+
+    static DateTimeFormatter formatter = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    byte[] out = new byte[AsciiFormat.MAX_LENGTH];
+
+    public AsciiFormatTest() {
+    }
+
+    @Test
+    public void decimals() {
+        assertEquals("0", decimal(0, 0));
+        assertEquals("3.14", decimal(3.14159, 2));
+        assertEquals("-2.50", decimal(-2.5, 2));
+        assertEquals("0.00", decimal(-0.001, 2));
+        assertEquals("100.0", decimal(99.96, 1));
+        assertEquals("1234567.000000001", decimal(1234567.000000001, 9));
+        assertEquals("NaN", decimal(Double.NaN, 2));
+        assertEquals("-Infinity", decimal(Double.NEGATIVE_INFINITY, 2));
+        assertEquals(-1, AsciiFormat.formatDecimal(1, -1, out, 0));
+        assertEquals(-1, AsciiFormat.formatDecimal(1e20, 2, out, 0));
+    }
+
+    @Test
+    public void decimalsMatchBigDecimal() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            double value = (random.nextDouble() - 0.5) * 1e6;
+            int decimals = random.nextInt(5);
+            double parsed = Double.parseDouble(decimal(value, decimals));
+            assertEquals(value, parsed, 0.5 / Math.pow(10, decimals) + 1e-9,
+                    "wrong value " + value);
+        }
+    }
+
+    @Test
+    public void timestamps() {
+        Random random = new Random(1);
+        long[] fixed = {0, -1, 951782400000L, 1577836799999L, 4102444800000L};
+        for (int i = 0; i < 10000 + fixed.length; i++) {
+            long millis = i < fixed.length ? fixed[i]
+                    : (long) (random.nextDouble() * 8e12 - 2e12);
+            int end = AsciiFormat.formatTimestamp(millis, out, 0);
+            String expected = formatter.format(Instant.ofEpochMilli(millis)
+                    .atOffset(ZoneOffset.UTC));
+            assertEquals(expected, new String(out, 0, end), "wrong timestamp");
+        }
+    }
+
+    private String decimal(double value, int decimals) {
+        return new String(out, 0, AsciiFormat.formatDecimal(value, decimals, out, 0));
+    }
+
+}
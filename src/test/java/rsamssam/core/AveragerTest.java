@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.BeforeEach;
 
+import rsamssam.config.Names;
 import rsamssam.query.Metadata;
 import rsamssam.query.Query;
 
@@ -94,4 +95,60 @@ public class AveragerTest {
         assertArrayEquals(maxFreq, result.maxFreq(), "wrong max frequency");
     }
 
+    @Test
+    public void fractionalFactor() throws InterruptedException {
+
+        // a day (86400 bins) for 34560 pixel columns, 2.5 bins per result
+        query
+                .setAveragingMode(Names.AVERAGING_WIDTH)
+                .setGraphWidth(53170)
+                .setTo(650000);
+        assertEquals(2.5, query.getAveraging(), 1e-9, "wrong averaging factor");
+
+        averager = new Averager(query, sps);
+
+        double[] spectra = new double[windowSize];
+        for (int i = 0; i < 650; i++) {
+            averager.addResult(new Result(i, spectra, null));
+        }
+        averager.complete();
+
+        // bins 0, 1 and half of 2, then the other half of 2, 3 and 4
+        assertEquals(0.8, averager.getResult().rsam(), 1e-9, "wrong first rsam");
+        assertEquals(3.2, averager.getResult().rsam(), 1e-9, "wrong second rsam");
+
+        int results = 2;
+        while (averager.hasResults()) {
+            averager.getResult();
+            results++;
+        }
+        // padded to a whole day
+        assertEquals(34560, results, "wrong number of results");
+    }
+
+    @Test
+    public void partialDayIsPaddedWithFractionalFactor() throws InterruptedException {
+
+        // 86400 bins for 260 pixel columns
+        query
+                .setAveragingMode(Names.AVERAGING_WIDTH)
+                .setGraphWidth(400)
+                .setTo(86400000);
+
+        averager = new Averager(query, sps);
+
+        double[] spectra = new double[windowSize];
+        for (int i = 0; i < 1000; i++) {
+            averager.addResult(new Result(1, spectra, null));
+        }
+        averager.complete();
+
+        int results = 0;
+        while (averager.hasResults()) {
+            averager.getResult();
+            results++;
+        }
+        assertEquals(260, results, "the day was not padded");
+    }
+
 }
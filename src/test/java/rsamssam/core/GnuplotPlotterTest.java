@@ -0,0 +1,122 @@
+package rsamssam.core;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Runs the plotter jobs (cd, arguments and load of the real scripts) on a fake
+ * gnuplot, and on the real one when it's installed.
+ *
+ * @author Julian Peña.
+ */
+public class GnuplotPlotterTest {
+
+    static long start = 1577836800000L;
+
+    static Path scripts = Path.of("src/main/resources/gnuplot_scripts");
+
+    @TempDir
+    Path folder;
+
+    public GnuplotPlotterTest() {
+    }
+
+    @Test
+    public void graphsArePublished() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(List.of("bash",
+                "src/test/resources/fake-gnuplot.sh"), 1, 5000);
+        Query query = getQuery();
+
+        assertTrue(new GnuplotPlotter(folder, scripts, pool, query).plot(query),
+                "graph not made");
+        assertTrue(Files.exists(folder.resolve(query.getGraphFileName())),
+                "graph not published");
+        assertTrue(Files.exists(folder.resolve(query.getMaxFreqsGraphFileName())),
+                "max freqs graph not published");
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void failedGraphsAreNotPublished() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(List.of("bash",
+                "src/test/resources/fake-gnuplot.sh"), 1, 5000);
+        Query query = getQuery();
+
+        // the script can't be loaded
+        assertFalse(new GnuplotPlotter(folder, folder.resolve("missing"), pool,
+                query).plot(query), "missing script not reported");
+        assertFalse(Files.exists(folder.resolve(query.getGraphFileName())),
+                "failed graph published");
+        assertNoTemporaryFiles();
+    }
+
+    @Test
+    public void realGnuplot() throws Exception {
+
+        assumeTrue(isInstalled(), "gnuplot is not installed");
+
+        Query query = getQuery();
+        writeResults(query);
+
+        GnuplotPool pool = new GnuplotPool(List.of("gnuplot"), 1, 60000);
+        assertTrue(new GnuplotPlotter(folder, scripts, pool, query).plot(query),
+                "graph not made");
+        assertTrue(Files.size(folder.resolve(query.getGraphFileName())) > 0,
+                "empty graph");
+        assertTrue(Files.size(folder.resolve(query.getMaxFreqsGraphFileName())) > 0,
+                "empty max freqs graph");
+    }
+
+    private void writeResults(Query query) throws Exception {
+
+        int rows = query.getCutoffWindowSize().get();
+        ResultsWriter writer = new ResultsWriter(folder, query, start,
+                query.getTimestep().get(), Precision.fromConfig());
+        for (int i = 0; i < 100; i++) {
+            double[] spectra = new double[rows];
+            Arrays.fill(spectra, i % 120);
+            writer.addResult(new Result(100 + i, spectra, new double[]{5, 80}));
+        }
+        double[] averageSsam = new double[rows];
+        Arrays.fill(averageSsam, 10);
+        writer.addAverageSsam(averageSsam);
+        writer.finish();
+    }
+
+    private void assertNoTemporaryFiles() throws Exception {
+        try (var files = Files.list(folder)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith(".")),
+                    "temporary files left");
+        }
+    }
+
+    private static boolean isInstalled() {
+        try {
+            return new ProcessBuilder("gnuplot", "--version").start().waitFor() == 0;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    private static Query getQuery() {
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query
+                .setFrom(start)
+                .setTo(start + 86400000L);
+        query.setMetadata(new Metadata(100, start));
+        return query;
+    }
+
+}
@@ -0,0 +1,89 @@
+package rsamssam.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the pool against a fake gnuplot (src/test/resources/fake-gnuplot.sh).
+ *
+ * @author Julian Peña.
+ */
+public class GnuplotPoolTest {
+
+    static List<String> command = List.of("bash", "src/test/resources/fake-gnuplot.sh");
+
+    public GnuplotPoolTest() {
+    }
+
+    @Test
+    public void workersAreReused() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(command, 2, 5000);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> jobs = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            jobs.add(executor.submit(() -> pool.run("plot")));
+        }
+        for (Future<Boolean> job : jobs) {
+            assertTrue(job.get(), "job failed");
+        }
+        executor.shutdown();
+
+        assertTrue(pool.getStarted() <= 2, "workers not reused");
+    }
+
+    @Test
+    public void errorsAreReportedAndReset() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(command, 1, 5000);
+
+        assertFalse(pool.run("fail"), "error not reported");
+        assertTrue(pool.run("plot"), "error not reset");
+        assertEquals(1, pool.getStarted(), "worker replaced after an error");
+    }
+
+    @Test
+    public void crashedWorkersAreReplaced() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(command, 1, 5000);
+
+        assertTrue(pool.run("plot"));
+        assertFalse(pool.run("crash"), "crash not reported");
+        assertTrue(pool.run("plot"), "worker not replaced");
+        assertEquals(2, pool.getStarted());
+    }
+
+    @Test
+    public void hungWorkersAreReplaced() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(command, 1, 500);
+
+        assertFalse(pool.run("hang"), "timeout not reported");
+        assertTrue(pool.run("plot"), "worker not replaced");
+        assertEquals(2, pool.getStarted());
+    }
+
+    @Test
+    public void legacyGnuplotIsSupported() throws Exception {
+
+        GnuplotPool pool = new GnuplotPool(List.of("env", "FAKE_GNUPLOT_VERSION=5.0",
+                "bash", "src/test/resources/fake-gnuplot.sh"), 1, 5000);
+
+        assertTrue(pool.run("plot"), "job failed on an old gnuplot");
+        assertTrue(pool.run("plot"), "job failed on an old gnuplot");
+        assertEquals(1, pool.getStarted(), "worker not reused");
+
+        // errors can't be cleared, the worker must be replaced
+        assertFalse(pool.run("fail"), "error not reported");
+        assertTrue(pool.run("plot"), "error not cleared");
+        assertEquals(2, pool.getStarted(), "worker not replaced");
+    }
+
+}
@@ -0,0 +1,308 @@
+package rsamssam.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.config.Names;
+import rsamssam.query.Query;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class ResultsWriterTest {
+
+    static int results = 500;
+
+    static int frequencies = 64;
+
+    static long start = 1577836800000L;
+
+    static long timestep = 10240;
+
+    @TempDir
+    Path folder;
+
+    public ResultsWriterTest() {
+    }
+
+    @Test
+    public void textOutput() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+
+        double[] spectra = {0d, 1d, 2d, 3d, 4d, 5d, 6d, 7d};
+
+        ResultsWriter writer = new ResultsWriter(folder, query, 0, 2000,
+                Precision.FULL);
+        for (int i = 0; i < 8; i++) {
+            writer.addResult(new Result(1d, spectra, new double[]{1, 100}));
+        }
+        writer.addAverageSsam(spectra);
+        writer.finish();
+
+        String rsam = "";
+        String maxFreqs = "";
+        for (int i = 0; i < 8; i++) {
+            rsam += timestamp(i * 2000) + ",1.0\n";
+            maxFreqs += timestamp(i * 2000) + ",1.0,100.0\n";
+        }
+
+        String ssam = """
+                      0.0 0.0 0.0 0.0 0.0 0.0 0.0 0.0
+                      1.0 1.0 1.0 1.0 1.0 1.0 1.0 1.0
+                      2.0 2.0 2.0 2.0 2.0 2.0 2.0 2.0
+                      3.0 3.0 3.0 3.0 3.0 3.0 3.0 3.0
+                      4.0 4.0 4.0 4.0 4.0 4.0 4.0 4.0
+                      5.0 5.0 5.0 5.0 5.0 5.0 5.0 5.0
+                      6.0 6.0 6.0 6.0 6.0 6.0 6.0 6.0
+                      7.0 7.0 7.0 7.0 7.0 7.0 7.0 7.0
+                      """;
+
+        String averageSsam = """
+                             0.0
+                             1.0
+                             2.0
+                             3.0
+                             4.0
+                             5.0
+                             6.0
+                             7.0
+                             """;
+
+        assertEquals(rsam, read(query.getRSAMFileName()), "wrong rsam");
+        assertEquals(ssam, read(query.getSSAMFileName()), "wrong ssam");
+        assertEquals(averageSsam, read(query.getAverageSSAMFileName()),
+                "wrong average ssam");
+        assertEquals(maxFreqs, read(query.getMaxFreqsFileName()),
+                "wrong max freqs");
+    }
+
+    @Test
+    public void fixedPrecision() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+
+        ResultsWriter writer = new ResultsWriter(folder, query, 0, 1000,
+                new Precision(1, 2, 3, 0));
+        writer.addResult(new Result(12.345, new double[]{-0.004, 7.891},
+                new double[]{2.5, 99.9}));
+        writer.addAverageSsam(new double[]{1.23456});
+        writer.finish();
+
+        assertEquals("1970-01-01 00:00:00.000,12.3\n",
+                read(query.getRSAMFileName()), "wrong rsam");
+        assertEquals("0.00\n7.89\n", read(query.getSSAMFileName()), "wrong ssam");
+        assertEquals("1.235\n", read(query.getAverageSSAMFileName()),
+                "wrong average ssam");
+        assertEquals("1970-01-01 00:00:00.000,3,100\n",
+                read(query.getMaxFreqsFileName()), "wrong max freqs");
+    }
+
+    @Test
+    public void manyResults() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(start);
+
+        Precision precision = new Precision(2, 1, 3, -1);
+        ResultsWriter writer = new ResultsWriter(folder, query, start, timestep,
+                precision);
+
+        Random random = new Random(1);
+        List<Result> written = new ArrayList<>();
+        for (int i = 0; i < results; i++) {
+            double[] spectra = new double[frequencies];
+            for (int j = 0; j < frequencies; j++) {
+                spectra[j] = random.nextDouble() * 120;
+            }
+            double rsam = i % 50 == 0 ? Double.NaN : random.nextDouble() * 1000;
+            Result result = new Result(rsam, spectra,
+                    new double[]{random.nextDouble() * 50, random.nextDouble() * 120});
+
+            written.add(result);
+            writer.addResult(result);
+        }
+
+        double[] averageSsam = new double[frequencies];
+        for (int j = 0; j < frequencies; j++) {
+            averageSsam[j] = random.nextDouble();
+        }
+        writer.addAverageSsam(averageSsam);
+
+        writer.finish();
+
+        List<String> rsam = read(query.getRSAMFileName()).lines().toList();
+        List<String> maxFreqs = read(query.getMaxFreqsFileName()).lines().toList();
+        List<String> ssam = read(query.getSSAMFileName()).lines().toList();
+        List<String> average = read(query.getAverageSSAMFileName()).lines().toList();
+
+        assertEquals(results, rsam.size(), "wrong rsam lines");
+        assertEquals(results, maxFreqs.size(), "wrong max freqs lines");
+        assertEquals(frequencies, ssam.size(), "wrong ssam rows");
+        assertEquals(frequencies, average.size(), "wrong average ssam lines");
+
+        for (int i = 0; i < results; i++) {
+
+            Result result = written.get(i);
+            String time = timestamp(start + i * timestep);
+
+            String[] fields = rsam.get(i).split(",");
+            assertEquals(time, fields[0], "wrong rsam time");
+            if (Double.isNaN(result.rsam())) {
+                assertEquals("NaN", fields[1], "wrong rsam gap");
+            } else {
+                assertEquals(result.rsam(), Double.parseDouble(fields[1]),
+                        0.005 + 1e-9, "wrong rsam");
+            }
+
+            // full precision
+            assertEquals(time + "," + result.maxFreq()[0] + ","
+                    + result.maxFreq()[1], maxFreqs.get(i), "wrong max freqs");
+        }
+
+        for (int j = 0; j < frequencies; j++) {
+            String[] columns = ssam.get(j).split(" ");
+            assertEquals(results, columns.length, "wrong ssam columns");
+            for (int i = 0; i < results; i++) {
+                assertEquals(written.get(i).spectra()[j],
+                        Double.parseDouble(columns[i]), 0.05 + 1e-9, "wrong ssam");
+            }
+            assertEquals(averageSsam[j], Double.parseDouble(average.get(j)),
+                    0.0005 + 1e-9, "wrong average ssam");
+        }
+
+        try (var files = Files.list(folder)) {
+            assertEquals(4, files.count(), "spool not deleted");
+        }
+    }
+
+    @Test
+    public void noResultsFails() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(start);
+
+        ResultsWriter writer = new ResultsWriter(folder, query, start, timestep,
+                Precision.FULL);
+        assertThrows(IOException.class, writer::finish);
+    }
+
+    @Test
+    public void filesAreReplacedAtomically() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(start);
+
+        Path rsam = folder.resolve(query.getRSAMFileName());
+        Files.writeString(rsam, "previous\n");
+
+        // an aborted writer leaves the previous files untouched
+        ResultsWriter writer = new ResultsWriter(folder, query, start, timestep,
+                Precision.FULL);
+        writer.addResult(new Result(1, new double[frequencies], new double[]{1, 2}));
+        writer.close();
+        assertEquals("previous\n", Files.readString(rsam), "rsam replaced");
+
+        writer = new ResultsWriter(folder, query, start, timestep, Precision.FULL);
+        writer.addResult(new Result(1, new double[frequencies], new double[]{1, 2}));
+        writer.addAverageSsam(new double[frequencies]);
+        writer.finish();
+        assertNotEquals("previous\n", Files.readString(rsam), "rsam not replaced");
+
+        // no temporary files left behind
+        try (var files = Files.list(folder)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().startsWith(".")),
+                    "temporary files left");
+        }
+    }
+
+    @Test
+    public void binaryLayout() throws Exception {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(start);
+        query.setOutputFormat(Names.OUTPUT_FORMAT_BINARY);
+
+        ResultsWriter writer = new ResultsWriter(folder, query, start, timestep,
+                Precision.FULL);
+
+        for (int i = 0; i < results; i++) {
+            double[] spectra = new double[frequencies];
+            for (int j = 0; j < frequencies; j++) {
+                spectra[j] = i * 1000 + j;
+            }
+            writer.addResult(new Result(i, spectra, new double[]{1, 2}));
+        }
+        double[] averageSsam = new double[frequencies];
+        for (int j = 0; j < frequencies; j++) {
+            averageSsam[j] = j / 2d;
+        }
+        writer.addAverageSsam(averageSsam);
+        writer.finish();
+
+        // gnuplot binary matrix, N x0 .. xN-1 then y z0 .. zN-1 for every row
+        ByteBuffer ssam = readBinary(query.getSSAMFileName());
+        assertEquals((results + 1) * (frequencies + 1) * Float.BYTES, ssam.limit(),
+                "wrong ssam size");
+        assertEquals(results, ssam.getFloat(), "wrong ssam columns");
+        for (int i = 0; i < results; i++) {
+            assertEquals(i, ssam.getFloat(), "wrong ssam x");
+        }
+        for (int j = 0; j < frequencies; j++) {
+            assertEquals(j, ssam.getFloat(), "wrong ssam y");
+            for (int i = 0; i < results; i++) {
+                assertEquals(i * 1000 + j, ssam.getFloat(), "wrong ssam z");
+            }
+        }
+
+        ByteBuffer rsam = readBinary(query.getRSAMFileName());
+        assertEquals(results * (Double.BYTES + Float.BYTES), rsam.limit(),
+                "wrong rsam size");
+        for (int i = 0; i < results; i++) {
+            assertEquals((start + i * timestep) / 1000d, rsam.getDouble(), "wrong time");
+            assertEquals(i, rsam.getFloat(), "wrong rsam");
+        }
+
+        ByteBuffer average = readBinary(query.getAverageSSAMFileName());
+        for (int j = 0; j < frequencies; j++) {
+            assertEquals(j / 2d, average.getFloat(), "wrong average ssam");
+        }
+        assertFalse(average.hasRemaining(), "wrong average ssam size");
+
+        assertEquals(results, read(query.getMaxFreqsFileName()).lines().count(),
+                "max freqs must be text");
+    }
+
+    private ByteBuffer readBinary(String fileName) throws Exception {
+        return ByteBuffer
+                .wrap(Files.readAllBytes(folder.resolve(fileName)))
+                .order(ByteOrder.nativeOrder());
+    }
+
+    private String read(String fileName) throws Exception {
+        return Files.readString(folder.resolve(fileName));
+    }
+
+    private static String timestamp(long millis) {
+        return DateTimeFormatter
+                .ofPattern("yyyy-MM-dd HH:mm:ss.SSS")
+                .format(Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+    }
+
+}
@@ -0,0 +1,418 @@
+package rsamssam.datasources.cache;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.config.Names;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.fake.FakeFdsnServer;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.datasources.impl.Dataselect;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class CachingDataClientTest {
+
+    static int numSamples = 100;
+
+    @TempDir
+    Path folder;
+
+    public CachingDataClientTest() {
+    }
+
+    @Test
+    public void completeDaysAreServedFromCache() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        AtomicInteger downloads = new AtomicInteger();
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            // first query goes to the "network"
+            List<Long> first = run(vertx, cache, downloads);
+            assertEquals(1, downloads.get(), "day not downloaded");
+            assertTrue(cache.contains("CM_JULI_HHZ_00", LocalDate.of(1970, 1, 1)),
+                    "day not cached");
+
+            // second query is served from the cache
+            List<Long> second = run(vertx, cache, downloads);
+            assertEquals(1, downloads.get(), "cached day downloaded again");
+            assertEquals(first, second, "cached records differ");
+
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void onlyMissingIntervalIsDownloaded() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        AtomicInteger downloads = new AtomicInteger();
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            // the first half of the day is kept as a partial day
+            List<Long> first = run(vertx, cache, downloads, 0, 43200000);
+            assertEquals(List.of(0L, 1000L, 2000L), first, "wrong first half");
+            assertTrue(cache.containsPartial("CM_JULI_HHZ_00",
+                    LocalDate.of(1970, 1, 1)), "partial day not cached");
+
+            // the rest is fetched from the last sample on, without duplicates
+            List<Long> second = run(vertx, cache, downloads, 0, 86400000);
+            assertEquals(List.of(0L, 1000L, 2000L, 3000L, 4000L), second,
+                    "local and downloaded data not stitched");
+            assertEquals(2, downloads.get(), "wrong number of downloads");
+
+            // the day is over, so now it is complete
+            assertTrue(cache.contains("CM_JULI_HHZ_00", LocalDate.of(1970, 1, 1)),
+                    "day not promoted");
+
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void recentDaysAreKeptPartial() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        AtomicInteger downloads = new AtomicInteger();
+
+        // yesterday is over, but late data could still arrive
+        long now = System.currentTimeMillis();
+        long yesterday = now - Math.floorMod(now, 86400000L) - 86400000L;
+        LocalDate day = LocalDate.ofEpochDay(yesterday / 86400000L);
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            CachingDataClient client = new CachingDataClient(vertx,
+                    () -> new FakeClient(downloads, 3), cache, 2 * 86400000L);
+            read(client, yesterday, yesterday + 86400000L);
+
+            assertFalse(cache.contains("CM_JULI_HHZ_00", day),
+                    "day cached before its latency");
+            assertTrue(cache.containsPartial("CM_JULI_HHZ_00", day),
+                    "day not kept partial");
+
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void recordsArePulledOnDemand() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        AtomicInteger downloads = new AtomicInteger();
+        FakeClient fake = new FakeClient(downloads, 1000);
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            Query query = getQuery(0, 86400000);
+            CachingDataClient client = new CachingDataClient(vertx, () -> fake,
+                    cache);
+
+            client.download(query)
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS);
+            assertEquals(1, fake.pulled.get(), "records read ahead");
+
+            for (int i = 0; i < 10; i++) {
+                client.getDataRecord();
+            }
+            assertEquals(10, fake.pulled.get(), "records read ahead");
+
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void truncatedDownloadsAreNotCached() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 10 * 1024 * 1024);
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        long from = day.toEpochDay() * 86400000L;
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            // 100 seconds records, the first connection is dropped mid-day
+            // and never resumed
+            FakeFdsnServer server = new FakeFdsnServer(vertx, new SyntheticStream(1))
+                    .setDropAfter(100 * SyntheticStream.RECORD_SIZE + 100);
+            int port = server.start()
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS);
+            System.setProperty(Names.FDSN_SERVER, "localhost");
+            System.setProperty(Names.FDSN_PORT, Integer.toString(port));
+            System.setProperty(Names.FDSN_DATASELECT_URL, FakeFdsnServer.DATASELECT);
+            System.setProperty(Names.DOWNLOAD_RETRIES, "0");
+
+            CachingDataClient client = new CachingDataClient(vertx,
+                    () -> new Dataselect(vertx), cache);
+            List<Long> truncated = read(client, from, from + 86400000L);
+
+            assertFalse(client.isComplete(), "truncation not reported");
+            assertFalse(cache.contains("CM_JULI_HHZ_00", day),
+                    "truncated day cached");
+            assertFalse(cache.containsPartial("CM_JULI_HHZ_00", day),
+                    "truncated day cached as partial");
+
+            // the next query downloads (and caches) the whole day
+            client = new CachingDataClient(vertx, () -> new Dataselect(vertx),
+                    cache);
+            List<Long> complete = read(client, from, from + 86400000L);
+
+            assertTrue(complete.size() > truncated.size(), "data still missing");
+            assertTrue(client.isComplete(), "complete download truncated");
+            assertTrue(cache.contains("CM_JULI_HHZ_00", day), "day not cached");
+            assertEquals(2, server.getRequests(), "wrong number of requests");
+
+        } finally {
+            System.clearProperty(Names.DOWNLOAD_RETRIES);
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void partialDaysAreExtended() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        LocalDate day = LocalDate.of(1970, 1, 1);
+
+        for (int second = 0; second < 3; second++) {
+            var writer = cache.append("CM_JULI_HHZ_00", day);
+            writer.add(getDataRecordAtSecond(second));
+            writer.commit();
+        }
+
+        assertEquals(List.of(0L, 1000L, 2000L), readPartial(cache, day),
+                "appended data lost");
+        try (var files = Files.list(folder.resolve("CM_JULI_HHZ_00"))) {
+            assertEquals(1, files.count(), "temporary files left");
+        }
+    }
+
+    @Test
+    public void concurrentAppendsAreNotDuplicated() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1024 * 1024);
+        LocalDate day = LocalDate.of(1970, 1, 1);
+
+        var writer = cache.append("CM_JULI_HHZ_00", day);
+        writer.add(getDataRecordAtSecond(0));
+        writer.commit();
+
+        // two queries read the partial day and download from its end
+        var first = cache.append("CM_JULI_HHZ_00", day);
+        var second = cache.append("CM_JULI_HHZ_00", day);
+        for (int i = 1; i < 3; i++) {
+            first.add(getDataRecordAtSecond(i));
+        }
+        for (int i = 1; i < 4; i++) {
+            second.add(getDataRecordAtSecond(i));
+        }
+        first.commit();
+        second.commit();
+
+        assertEquals(List.of(0L, 1000L, 2000L, 3000L), readPartial(cache, day),
+                "appends duplicated or lost");
+
+        // appending to a day promoted meanwhile does nothing
+        var late = cache.append("CM_JULI_HHZ_00", day);
+        late.add(getDataRecordAtSecond(4));
+        cache.promote("CM_JULI_HHZ_00", day);
+        late.commit();
+
+        assertFalse(cache.containsPartial("CM_JULI_HHZ_00", day),
+                "partial day created after promotion");
+    }
+
+    @Test
+    public void leastRecentlyUsedDaysAreEvicted() throws Exception {
+
+        WaveformCache cache = new WaveformCache(folder, 1);
+
+        var writer = cache.write("CM_JULI_HHZ_00", LocalDate.of(1970, 1, 1));
+        writer.add(getDataRecordAtSecond(0));
+        writer.commit();
+
+        assertFalse(cache.contains("CM_JULI_HHZ_00", LocalDate.of(1970, 1, 1)),
+                "cache over budget");
+    }
+
+    /**
+     * Runs a single day query and returns the start times of the DataRecords
+     * received.
+     */
+    private List<Long> run(Vertx vertx, WaveformCache cache,
+            AtomicInteger downloads) throws Exception {
+        return run(vertx, cache, downloads, 0, 86400000);
+    }
+
+    /**
+     * Runs a query and returns the start times of the DataRecords received.
+     */
+    private List<Long> run(Vertx vertx, WaveformCache cache,
+            AtomicInteger downloads, long from, long to) throws Exception {
+
+        CachingDataClient client = new CachingDataClient(vertx,
+                () -> new FakeClient(downloads, 3), cache);
+
+        return read(client, from, to);
+    }
+
+    /**
+     * Runs a query on the given client and returns the start times of the
+     * DataRecords received.
+     */
+    private List<Long> read(CachingDataClient client, long from, long to)
+            throws Exception {
+
+        client.download(getQuery(from, to))
+                .toCompletionStage()
+                .toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+
+        List<Long> starts = new ArrayList<>();
+        DataRecord dataRecord = client.getDataRecord();
+        while (dataRecord.getHeader().getSequenceNum() != -1) {
+            starts.add(dataRecord.getStartBtime().toInstant().toEpochMilli());
+            dataRecord = client.getDataRecord();
+        }
+
+        return starts;
+    }
+
+    /**
+     * Returns the start times of the DataRecords in the given partial day.
+     */
+    private static List<Long> readPartial(WaveformCache cache, LocalDate day)
+            throws Exception {
+
+        List<Long> starts = new ArrayList<>();
+        try (var reader = cache.openPartial("CM_JULI_HHZ_00", day)) {
+            DataRecord dataRecord;
+            while ((dataRecord = reader.next()) != null) {
+                starts.add(dataRecord.getStartBtime().toInstant().toEpochMilli());
+            }
+        }
+
+        return starts;
+    }
+
+    private static Query getQuery(long from, long to) {
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(from);
+        query.setTo(to);
+        return query;
+    }
+
+    /**
+     * Returns a DataRecord object (miniseed packet) with samples starting the
+     * given second from epoch.
+     *
+     * @param secondFromEpoch
+     * @return
+     */
+    private static DataRecord getDataRecordAtSecond(int secondFromEpoch) throws Exception {
+
+        DataHeader header = new DataHeader(1, 'D', false);
+        header.setStartBtime(new Btime(secondFromEpoch));
+        header.setSampleRate(numSamples);
+        header.setNetworkCode("CM");
+        header.setStationIdentifier("JULI");
+        header.setChannelIdentifier("HHZ");
+        header.setLocationIdentifier("00");
+        header.setNumSamples((short) numSamples);
+
+        DataRecord dataRecord = new DataRecord(header);
+
+        Blockette1000 blockette = new Blockette1000();
+        blockette.setEncodingFormat((byte) B1000Types.STEIM2);
+        blockette.setWordOrder((byte) 1);
+        blockette.setDataRecordLength((byte) 9);
+
+        dataRecord.addBlockette(blockette);
+        dataRecord.setData(Steim2.encode(new int[numSamples], 7).getEncodedData());
+
+        return dataRecord;
+    }
+
+    /**
+     * A network client that returns records (one per second) from the start of
+     * the query.
+     */
+    private static class FakeClient implements DataClient, DataRecordProvider {
+
+        private final AtomicInteger downloads;
+
+        private final int records;
+
+        private final AtomicInteger pulled = new AtomicInteger();
+
+        private final LinkedBlockingQueue<DataRecord> queue = new LinkedBlockingQueue<>();
+
+        FakeClient(AtomicInteger downloads, int records) {
+            this.downloads = downloads;
+            this.records = records;
+        }
+
+        @Override
+        public Future<Metadata> download(Query query) {
+            downloads.incrementAndGet();
+            try {
+                int second = (int) (query.getFrom() / 1000);
+                for (int i = 0; i < records; i++) {
+                    queue.add(getDataRecordAtSecond(second + i));
+                }
+            } catch (Exception ex) {
+                return Future.failedFuture(ex);
+            }
+            queue.add(POISON);
+            return Future.succeededFuture(new Metadata(numSamples, query.getFrom()));
+        }
+
+        @Override
+        public DataRecord getDataRecord() {
+            pulled.incrementAndGet();
+            return queue.poll();
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package rsamssam.datasources.fake;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.http.HttpServerRequest;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a FDSN Dataselect service, serving synthetic miniseed
+ * data for any channel.
+ * <p>
+ * Only the parameters used by the Dataselect client are supported (net, sta,
+ * loc, cha, start and end).
+ *
+ * @author Julian Peña.
+ */
+public class FakeFdsnServer {
+
+    /**
+     * Path of the Dataselect service.
+     */
+    public static final String DATASELECT = "/fdsnws/dataselect/1/query";
+
+    private final Vertx vertx;
+
+    private final SyntheticStream stream;
+
+    private HttpServer server;
+
+    /**
+     * Throughput limit in bytes per second (0 means no limit).
+     */
+    private long throughput = 0;
+
+    /**
+     * Bytes sent before the connection of the first request is dropped, a
+     * negative value means never.
+     */
+    private long dropAfter = -1;
+
+    /**
+     * Is the connection of the first request closed instead of ending the
+     * response, once all the data has been sent?.
+     */
+    private boolean closeAtEnd = false;
+
+    /**
+     * Number of requests received.
+     */
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public FakeFdsnServer(Vertx vertx, SyntheticStream stream) {
+        this.vertx = vertx;
+        this.stream = stream;
+    }
+
+    public FakeFdsnServer setThroughput(long bytesPerSecond) {
+        this.throughput = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Makes the server drop the connection of the first request after sending
+     * the given number of bytes, following requests are served normally.
+     *
+     * @param bytes
+     * @return
+     */
+    public FakeFdsnServer setDropAfter(long bytes) {
+        this.dropAfter = bytes;
+        return this;
+    }
+
+    /**
+     * Makes the server close the connection of the first request once all the
+     * data has been sent, instead of ending the response.
+     *
+     * @param closeAtEnd
+     * @return
+     */
+    public FakeFdsnServer setCloseAtEnd(boolean closeAtEnd) {
+        this.closeAtEnd = closeAtEnd;
+        return this;
+    }
+
+    /**
+     * Starts listening on a random free port.
+     *
+     * @return A future with the port.
+     */
+    public Future<Integer> start() {
+        server = vertx.createHttpServer();
+        return server
+                .requestHandler(this::handle)
+                .listen(0)
+                .map(s -> s.actualPort());
+    }
+
+    public Future<Void> stop() {
+        return server.close();
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    private void handle(HttpServerRequest request) {
+
+        if (!request.path().equals(DATASELECT)) {
+            request.response().setStatusCode(404).end();
+            return;
+        }
+
+        int number = requests.incrementAndGet();
+
+        String L = request.getParam("loc", "--");
+        long from = parseTime(request.getParam("start"));
+        long to = parseTime(request.getParam("end"));
+
+        Buffer data = Buffer.buffer();
+        for (byte[] record : stream.getRecords(request.getParam("net"),
+                request.getParam("sta"), L.equals("--") ? "" : L,
+                request.getParam("cha"), from, to)) {
+            data.appendBytes(record);
+        }
+
+        if (data.length() == 0) {
+            request.response().setStatusCode(204).end();
+            return;
+        }
+
+        long limit = number == 1 ? dropAfter : -1;
+        boolean close = number == 1 && closeAtEnd;
+
+        request.response()
+                .setStatusCode(200)
+                .setChunked(true)
+                .putHeader("Content-Type", "application/vnd.fdsn.mseed");
+
+        Throttle
+                .write(vertx, request.response(), data, throughput, limit)
+                .onComplete(c -> {
+                    if (limit >= 0 && limit < data.length() || close) {
+                        request.connection().close();
+                    } else {
+                        request.response().end();
+                    }
+                });
+    }
+
+    /**
+     * Parses a FDSN time (yyyy-MM-ddTHH:mm:ss, UTC).
+     *
+     * @param time
+     * @return
+     */
+    private static long parseTime(String time) {
+        return LocalDateTime.parse(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+}
@@ -0,0 +1,364 @@
+package rsamssam.datasources.fake;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local stand-in for a SeedLink server, serving synthetic miniseed data for any
+ * channel.
+ * <p>
+ * Only the subset of the protocol used by SeedLinkClient is supported: HELLO,
+ * STATION, SELECT (without wildcards), TIME, FETCH, DATA, END and BYE. Time
+ * windows (TIME) and FETCH end with END once all the data has been sent, DATA
+ * keeps sending new records as time goes by.
+ * <p>
+ * Packet sequence numbers are the record indexes (from epoch) modulo 2^24.
+ * <p>
+ * Like some real servers, the fake can close the connection instead of sending
+ * END, drop the first connection in the middle of the data, or send garbage
+ * between packets.
+ *
+ * @author Julian Peña.
+ */
+public class FakeSeedLinkServer {
+
+    private static final String CRLF = "\r\n";
+
+    private static final int SEQUENCES = 0x1000000;
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy,MM,dd,HH,mm,ss");
+
+    private final Vertx vertx;
+
+    private final SyntheticStream stream;
+
+    private NetServer server;
+
+    /**
+     * Throughput limit in bytes per second (0 means no limit).
+     */
+    private long throughput = 0;
+
+    /**
+     * Bytes sent before the first connection is dropped, a negative value
+     * means never.
+     */
+    private long dropAfter = -1;
+
+    /**
+     * Is the connection closed instead of sending END?.
+     */
+    private boolean closeAtEnd = false;
+
+    /**
+     * Bytes sent after every packet (if any).
+     */
+    private String junk = "";
+
+    /**
+     * Number of connections received.
+     */
+    private final AtomicInteger connections = new AtomicInteger();
+
+    public FakeSeedLinkServer(Vertx vertx, SyntheticStream stream) {
+        this.vertx = vertx;
+        this.stream = stream;
+    }
+
+    public FakeSeedLinkServer setThroughput(long bytesPerSecond) {
+        this.throughput = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Makes the server drop the first connection after sending the given
+     * number of bytes of data, following connections are served normally.
+     *
+     * @param bytes
+     * @return
+     */
+    public FakeSeedLinkServer setDropAfter(long bytes) {
+        this.dropAfter = bytes;
+        return this;
+    }
+
+    /**
+     * Makes the server close the connection once all the data has been sent,
+     * instead of sending END.
+     *
+     * @param closeAtEnd
+     * @return
+     */
+    public FakeSeedLinkServer setCloseAtEnd(boolean closeAtEnd) {
+        this.closeAtEnd = closeAtEnd;
+        return this;
+    }
+
+    /**
+     * Makes the server send the given bytes after every packet.
+     *
+     * @param junk
+     * @return
+     */
+    public FakeSeedLinkServer setJunk(String junk) {
+        this.junk = junk;
+        return this;
+    }
+
+    public int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * Starts listening on a random free port.
+     *
+     * @return A future with the port.
+     */
+    public Future<Integer> start() {
+        server = vertx.createNetServer();
+        return server
+                .connectHandler(socket -> new Session(socket))
+                .listen(0)
+                .map(s -> s.actualPort());
+    }
+
+    public Future<Void> stop() {
+        return server.close();
+    }
+
+    /**
+     * Parses a SeedLink time (yyyy,MM,dd,HH,mm,ss UTC).
+     *
+     * @param time
+     * @return
+     */
+    private static long parseTime(String time) {
+        return LocalDateTime.parse(time, FORMATTER)
+                .toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * A station selected in a session.
+     */
+    private static class Selection {
+
+        private final String S;
+
+        private final String N;
+
+        /**
+         * {location, channel} pairs.
+         */
+        private final List<String[]> channels = new ArrayList<>();
+
+        /**
+         * Next record to send.
+         */
+        private long next = -1;
+
+        /**
+         * End of the time window (millis), negative for real-time.
+         */
+        private long to = -1;
+
+        private Selection(String S, String N) {
+            this.S = S;
+            this.N = N;
+        }
+    }
+
+    /**
+     * A client connection.
+     */
+    private class Session {
+
+        private final NetSocket socket;
+
+        private final List<Selection> selections = new ArrayList<>();
+
+        private Selection current;
+
+        private boolean streaming = false;
+
+        private Long timer;
+
+        private final int number;
+
+        private Session(NetSocket socket) {
+            this.socket = socket;
+            number = connections.incrementAndGet();
+            socket
+                    .handler(RecordParser.newDelimited("\r", this::command))
+                    .closeHandler(c -> {
+                        if (timer != null) {
+                            vertx.cancelTimer(timer);
+                        }
+                    });
+        }
+
+        private void command(Buffer buffer) {
+
+            if (streaming) {
+                return;
+            }
+
+            String[] tokens = buffer.toString().trim().split("\\s+");
+
+            try {
+                switch (tokens[0].toUpperCase()) {
+                    case "HELLO" ->
+                        reply("SeedLink v3.1 (fake) :: SLPROTO:3.1" + CRLF
+                                + "Fake SeedLink server");
+                    case "STATION" -> {
+                        current = new Selection(tokens[1], tokens[2]);
+                        selections.add(current);
+                        reply("OK");
+                    }
+                    case "SELECT" -> {
+                        String selector = tokens[1].replace(".D", "");
+                        int split = selector.length() - 3;
+                        current.channels.add(new String[]{
+                            selector.substring(0, split),
+                            selector.substring(split)});
+                        reply("OK");
+                    }
+                    case "TIME" -> {
+                        current.next = stream.getRecordIndex(parseTime(tokens[1]));
+                        current.to = tokens.length > 2 ? parseTime(tokens[2])
+                                : System.currentTimeMillis();
+                        reply("OK");
+                    }
+                    case "FETCH" -> {
+                        long from = tokens.length > 2 ? parseTime(tokens[2])
+                                : System.currentTimeMillis();
+                        current.next = stream.getRecordIndex(from);
+                        current.to = System.currentTimeMillis();
+                        reply("OK");
+                    }
+                    case "DATA" -> {
+                        current.next = getNext(tokens);
+                        current.to = -1;
+                        reply("OK");
+                    }
+                    case "END" ->
+                        stream();
+                    case "BYE" ->
+                        socket.close();
+                    default ->
+                        reply("ERROR");
+                }
+            } catch (RuntimeException ex) {
+                reply("ERROR");
+            }
+        }
+
+        /**
+         * Returns the first record for a DATA command, either after the given
+         * sequence number, from the given time or from now on.
+         *
+         * @param tokens
+         * @return
+         */
+        private long getNext(String[] tokens) {
+
+            long now = stream.getRecordIndex(System.currentTimeMillis());
+
+            if (tokens.length > 2) {
+                return stream.getRecordIndex(parseTime(tokens[2]));
+            }
+
+            if (tokens.length > 1) {
+                long sequence = Long.parseLong(tokens[1], 16) + 1;
+                return now - Math.floorMod(now - sequence, SEQUENCES);
+            }
+
+            return now;
+        }
+
+        private void reply(String line) {
+            socket.write(line + CRLF);
+        }
+
+        /**
+         * Sends the selected data, ends with END if there is no real-time
+         * selection.
+         */
+        private void stream() {
+
+            streaming = true;
+
+            Buffer data = packets();
+
+            boolean realtime = selections.stream().anyMatch(s -> s.to < 0);
+            if (!realtime && !closeAtEnd) {
+                data.appendString("END");
+            }
+
+            long limit = number == 1 ? dropAfter : -1;
+
+            Throttle
+                    .write(vertx, socket, data, throughput, limit)
+                    .onSuccess(s -> {
+                        if (limit >= 0 && limit < data.length()
+                                || !realtime && closeAtEnd) {
+                            socket.close();
+                        } else if (realtime) {
+                            timer = vertx.setPeriodic(1000,
+                                    t -> socket.write(packets()));
+                        }
+                    });
+        }
+
+        /**
+         * Returns the packets of the records not sent yet, records must be
+         * complete (in the past) and start inside the time window.
+         *
+         * @return
+         */
+        private Buffer packets() {
+
+            Buffer data = Buffer.buffer();
+            long now = System.currentTimeMillis();
+
+            for (Selection selection : selections) {
+
+                long to = selection.to < 0 ? now : selection.to;
+
+                for (; selection.next >= 0
+                        && stream.getRecordTime(selection.next) < to
+                        && stream.getRecordTime(selection.next + 1) <= now;
+                        selection.next++) {
+
+                    if (stream.isMissing(selection.next)) {
+                        continue;
+                    }
+
+                    for (String[] channel : selection.channels) {
+                        data
+                                .appendString(String.format("SL%06X",
+                                        selection.next % SEQUENCES))
+                                .appendBytes(stream.getRecord(selection.N,
+                                        selection.S, channel[0], channel[1],
+                                        selection.next))
+                                .appendString(junk);
+                    }
+                }
+            }
+
+            return data;
+        }
+    }
+
+}
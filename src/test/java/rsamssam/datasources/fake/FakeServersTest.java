@@ -0,0 +1,269 @@
+package rsamssam.datasources.fake;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.config.Names;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.impl.Dataselect;
+import rsamssam.datasources.impl.SeedLink;
+import rsamssam.datasources.impl.Winston;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ * Runs the real data source clients against the fake wave servers.
+ *
+ * @author Julian Peña.
+ */
+public class FakeServersTest {
+
+    static int sps = 100;
+
+    static long from = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    static long to = from + 600000;
+
+    Vertx vertx;
+
+    public FakeServersTest() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        System.clearProperty(Names.DOWNLOAD_RETRIES);
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void dataselectResumesAfterConnectionLoss() throws Exception {
+
+        FakeFdsnServer server = new FakeFdsnServer(vertx, new SyntheticStream(sps))
+                .setDropAfter(100 * SyntheticStream.RECORD_SIZE + 100);
+
+        int port = await(server.start());
+        System.setProperty(Names.FDSN_SERVER, "localhost");
+        System.setProperty(Names.FDSN_PORT, Integer.toString(port));
+        System.setProperty(Names.FDSN_DATASELECT_URL, FakeFdsnServer.DATASELECT);
+
+        Dataselect dataselect = new Dataselect(vertx);
+        Metadata metadata = await(dataselect.download(getQuery()));
+
+        assertEquals(sps, metadata.sps(), "wrong sampling rate");
+
+        List<Long> starts = drain(dataselect);
+
+        assertEquals(2, server.getRequests(), "download not resumed");
+        assertContiguous(starts);
+        assertTrue(dataselect.isComplete(), "resumed download truncated");
+    }
+
+    @Test
+    public void dataselectCloseAfterAllData() throws Exception {
+
+        FakeFdsnServer server = new FakeFdsnServer(vertx, new SyntheticStream(sps))
+                .setCloseAtEnd(true);
+
+        int port = await(server.start());
+        System.setProperty(Names.FDSN_SERVER, "localhost");
+        System.setProperty(Names.FDSN_PORT, Integer.toString(port));
+        System.setProperty(Names.FDSN_DATASELECT_URL, FakeFdsnServer.DATASELECT);
+
+        Dataselect dataselect = new Dataselect(vertx);
+        await(dataselect.download(getQuery()));
+
+        List<Long> starts = drain(dataselect);
+
+        // the second request gets no data (204), so nothing is missing
+        assertEquals(2, server.getRequests(), "wrong number of requests");
+        assertContiguous(starts);
+        assertTrue(dataselect.isComplete(), "complete download truncated");
+    }
+
+    @Test
+    public void dataselectTruncatedWithoutRetries() throws Exception {
+
+        FakeFdsnServer server = new FakeFdsnServer(vertx, new SyntheticStream(sps))
+                .setDropAfter(100 * SyntheticStream.RECORD_SIZE + 100);
+
+        int port = await(server.start());
+        System.setProperty(Names.FDSN_SERVER, "localhost");
+        System.setProperty(Names.FDSN_PORT, Integer.toString(port));
+        System.setProperty(Names.FDSN_DATASELECT_URL, FakeFdsnServer.DATASELECT);
+        System.setProperty(Names.DOWNLOAD_RETRIES, "0");
+
+        Dataselect dataselect = new Dataselect(vertx);
+        await(dataselect.download(getQuery()));
+
+        List<Long> starts = drain(dataselect);
+
+        assertEquals(1, server.getRequests(), "download resumed");
+        assertEquals(100, starts.size(), "wrong number of records");
+        assertFalse(dataselect.isComplete(), "truncated download reported complete");
+    }
+
+    @Test
+    public void seedLinkTimeWindowWithGaps() throws Exception {
+
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(sps).setGaps(10, 2));
+
+        int port = await(server.start());
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+
+        SeedLink seedLink = new SeedLink(vertx);
+        await(seedLink.download(getQuery()));
+
+        List<Long> starts = drain(seedLink);
+
+        // 10 minutes, 1 second records, 2 out of every 10 missing
+        assertEquals(480, starts.size(), "wrong number of records");
+        assertEquals(from, starts.get(0), "wrong first record");
+    }
+
+    @Test
+    public void seedLinkCloseAfterAllData() throws Exception {
+
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(sps)).setCloseAtEnd(true);
+
+        int port = await(server.start());
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+
+        SeedLink seedLink = new SeedLink(vertx);
+        await(seedLink.download(getQuery()));
+
+        List<Long> starts = drain(seedLink);
+
+        // all the data was there, nothing to resume
+        assertEquals(1, server.getConnections(), "complete download resumed");
+        assertContiguous(starts);
+        assertTrue(seedLink.isComplete(), "complete download truncated");
+    }
+
+    @Test
+    public void seedLinkResumesAfterConnectionLoss() throws Exception {
+
+        // SeedLink packets are an 8 bytes header plus the miniseed record
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(sps))
+                .setDropAfter(100 * (SyntheticStream.RECORD_SIZE + 8) + 100);
+
+        int port = await(server.start());
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+
+        SeedLink seedLink = new SeedLink(vertx);
+        await(seedLink.download(getQuery()));
+
+        List<Long> starts = drain(seedLink);
+
+        assertEquals(2, server.getConnections(), "download not resumed");
+        assertContiguous(starts);
+        assertTrue(seedLink.isComplete(), "resumed download truncated");
+    }
+
+    @Test
+    public void seedLinkSkipsGarbageBetweenPackets() throws Exception {
+
+        // a lone S and E, but no header or END
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(sps)).setJunk("xS\r\nEx");
+
+        int port = await(server.start());
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+
+        SeedLink seedLink = new SeedLink(vertx);
+        await(seedLink.download(getQuery()));
+
+        List<Long> starts = drain(seedLink);
+
+        assertEquals(1, server.getConnections(), "framing lost");
+        assertEquals(600, starts.size(), "wrong number of records");
+        assertContiguous(starts);
+    }
+
+    @Test
+    public void winstonSamples() throws Exception {
+
+        SyntheticStream stream = new SyntheticStream(sps);
+        FakeWinstonServer server = new FakeWinstonServer(vertx, stream);
+
+        int port = await(server.start());
+        System.setProperty(Names.WINSTON_SERVER, "localhost");
+        System.setProperty(Names.WINSTON_PORT, Integer.toString(port));
+
+        Winston winston = new Winston(vertx);
+        Metadata metadata = await(winston.download(getQuery()));
+
+        assertEquals(sps, metadata.sps(), "wrong sampling rate");
+
+        long index = stream.getIndex(from);
+        int count = 0;
+        for (double sample = winston.getSample(); !Double.isNaN(sample);
+                sample = winston.getSample()) {
+            assertEquals(SyntheticStream.getSample(index + count), sample,
+                    "wrong sample " + count);
+            count++;
+        }
+
+        assertEquals((to - from) * sps / 1000, count, "wrong number of samples");
+    }
+
+    private static Query getQuery() {
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(from);
+        query.setTo(to);
+        return query;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Returns the start times of all the DataRecords until the poison pill.
+     */
+    private static List<Long> drain(DataRecordProvider provider) {
+        List<Long> starts = new ArrayList<>();
+        DataRecord dataRecord = provider.getDataRecord();
+        while (dataRecord.getHeader().getSequenceNum() != -1) {
+            starts.add(dataRecord.getStartBtime().toInstant().toEpochMilli());
+            dataRecord = provider.getDataRecord();
+        }
+        return starts;
+    }
+
+    /**
+     * Checks that the records cover the query without gaps nor duplicates.
+     */
+    private static void assertContiguous(List<Long> starts) {
+        assertTrue(starts.get(0) <= from, "query start not covered");
+        assertTrue(starts.get(starts.size() - 1) >= to - 1000, "query end not covered");
+        for (int i = 1; i < starts.size(); i++) {
+            assertEquals(starts.get(i - 1) + 1000, starts.get(i),
+                    "gap or duplicate at record " + i);
+        }
+    }
+
+}
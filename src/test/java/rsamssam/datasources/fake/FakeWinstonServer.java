@@ -0,0 +1,126 @@
+package rsamssam.datasources.fake;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetServer;
+import io.vertx.core.net.NetSocket;
+import io.vertx.core.parsetools.RecordParser;
+
+import java.util.Locale;
+
+/**
+ * Local stand-in for a Winston wave server, serving synthetic ASCII samples
+ * for any channel.
+ * <p>
+ * Only GETSCNL and GETSCN are supported:
+ * <p>
+ * GETSCNL: id S C N L start end fill
+ * <p>
+ * The response is a single line, with the same header fields parsed by the
+ * Winston client followed by the samples (gaps filled with the given value):
+ * <p>
+ * id pin S C N L i4 start sps s1 s2 ...
+ * <p>
+ * When there is no data, the response is just the request id.
+ *
+ * @author Julian Peña.
+ */
+public class FakeWinstonServer {
+
+    private final Vertx vertx;
+
+    private final SyntheticStream stream;
+
+    private NetServer server;
+
+    /**
+     * Throughput limit in bytes per second (0 means no limit).
+     */
+    private long throughput = 0;
+
+    public FakeWinstonServer(Vertx vertx, SyntheticStream stream) {
+        this.vertx = vertx;
+        this.stream = stream;
+    }
+
+    public FakeWinstonServer setThroughput(long bytesPerSecond) {
+        this.throughput = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Starts listening on a random free port.
+     *
+     * @return A future with the port.
+     */
+    public Future<Integer> start() {
+        server = vertx.createNetServer();
+        return server
+                .connectHandler(this::connected)
+                .listen(0)
+                .map(s -> s.actualPort());
+    }
+
+    public Future<Void> stop() {
+        return server.close();
+    }
+
+    private void connected(NetSocket socket) {
+
+        // responses are sent in order, one at a time
+        Future<?>[] last = {Future.succeededFuture()};
+
+        socket.handler(RecordParser.newDelimited("\n", line -> {
+            Buffer response = respond(line.toString().trim());
+            last[0] = last[0].compose(c -> Throttle
+                    .write(vertx, socket, response, throughput, -1));
+        }));
+    }
+
+    /**
+     * Builds the response for a request line.
+     *
+     * @param line
+     * @return
+     */
+    private Buffer respond(String line) {
+
+        String[] tokens = line.split("[:\\s]+");
+        boolean withL = tokens[0].equals("GETSCNL");
+
+        String id = tokens[1];
+        String S = tokens[2];
+        String C = tokens[3];
+        String N = tokens[4];
+        String L = withL ? tokens[5] : "--";
+
+        int i = withL ? 6 : 5;
+        long from = (long) (Double.parseDouble(tokens[i]) * 1000);
+        long to = (long) (Double.parseDouble(tokens[i + 1]) * 1000);
+        int fill = Integer.parseInt(tokens[i + 2]);
+
+        int[] samples = stream.getSamples(from, to, fill);
+        if (samples.length == 0) {
+            return Buffer.buffer(id + "\n");
+        }
+
+        double start = stream.getTime(stream.getIndex(from)) / 1000.0;
+
+        StringBuilder response = new StringBuilder(samples.length * 4 + 128)
+                .append(id).append(" 0 ")
+                .append(S).append(' ')
+                .append(C).append(' ')
+                .append(N).append(' ')
+                .append(L).append(" i4 ")
+                .append(String.format(Locale.US, "%.6f", start)).append(' ')
+                .append(stream.getSps());
+
+        for (int sample : samples) {
+            response.append(' ').append(sample);
+        }
+
+        return Buffer.buffer(response.append('\n').toString());
+    }
+
+}
@@ -0,0 +1,241 @@
+package rsamssam.datasources.fake;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+import edu.iris.dmc.seedcodec.SteimException;
+
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedFormatException;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Deterministic synthetic waveform, used by the fake wave servers.
+ * <p>
+ * Samples are a sine wave indexed from epoch, so the same time range always
+ * gives the same samples (and the same 512 bytes miniseed records) no matter
+ * how or in how many requests it is asked for. Every record holds
+ * SAMPLES_PER_RECORD samples.
+ * <p>
+ * Gaps can be made by dropping records following a pattern: out of every
+ * "every" records the last "length" are missing.
+ *
+ * @author Julian Peña.
+ */
+public class SyntheticStream {
+
+    /**
+     * Samples in every miniseed record.
+     */
+    public static final int SAMPLES_PER_RECORD = 100;
+
+    /**
+     * miniseed record length.
+     */
+    public static final int RECORD_SIZE = 512;
+
+    /**
+     * Sampling rate.
+     */
+    private final int sps;
+
+    /**
+     * Gap pattern, records per cycle (0 means no gaps).
+     */
+    private int every = 0;
+
+    /**
+     * Gap pattern, missing records at the end of each cycle.
+     */
+    private int length = 0;
+
+    /**
+     * Creates a stream without gaps.
+     *
+     * @param sps Sampling rate, samples per second.
+     */
+    public SyntheticStream(int sps) {
+        this.sps = sps;
+    }
+
+    /**
+     * Sets the gap pattern.
+     *
+     * @param every Records per cycle.
+     * @param length Missing records at the end of each cycle.
+     * @return
+     */
+    public SyntheticStream setGaps(int every, int length) {
+        this.every = every;
+        this.length = length;
+        return this;
+    }
+
+    public int getSps() {
+        return sps;
+    }
+
+    /**
+     * Returns the value of the sample with the given index (from epoch).
+     *
+     * @param index
+     * @return
+     */
+    public static int getSample(long index) {
+        return (int) Math.round(100 * Math.sin(2 * Math.PI * (index % 100) / 100.0));
+    }
+
+    /**
+     * Returns the time (millis) of the sample with the given index.
+     *
+     * @param index
+     * @return
+     */
+    public long getTime(long index) {
+        return index * 1000 / sps;
+    }
+
+    /**
+     * Returns the index of the first sample at or after the given time.
+     *
+     * @param epochmillis
+     * @return
+     */
+    public long getIndex(long epochmillis) {
+        return Math.floorDiv(epochmillis * sps + 999, 1000);
+    }
+
+    /**
+     * Returns the index (from epoch) of the record holding the first sample at
+     * or after the given time.
+     *
+     * @param epochmillis
+     * @return
+     */
+    public long getRecordIndex(long epochmillis) {
+        return Math.floorDiv(getIndex(epochmillis), SAMPLES_PER_RECORD);
+    }
+
+    /**
+     * Returns the start time (millis) of the given record.
+     *
+     * @param record Index of the record from epoch.
+     * @return
+     */
+    public long getRecordTime(long record) {
+        return getTime(record * SAMPLES_PER_RECORD);
+    }
+
+    /**
+     * Is the given record (index from epoch) missing?.
+     *
+     * @param record
+     * @return
+     */
+    public boolean isMissing(long record) {
+        return every > 0 && Math.floorMod(record, every) >= every - length;
+    }
+
+    /**
+     * Returns the records overlapping the given time range, as 512 bytes
+     * miniseed records.
+     *
+     * @param N
+     * @param S
+     * @param L
+     * @param C
+     * @param from Start time (millis, inclusive).
+     * @param to End time (millis, exclusive).
+     * @return
+     */
+    public List<byte[]> getRecords(String N, String S, String L, String C,
+            long from, long to) {
+
+        List<byte[]> records = new ArrayList<>();
+
+        for (long record = getRecordIndex(from); getRecordTime(record) < to; record++) {
+            if (isMissing(record)) {
+                continue;
+            }
+            records.add(getRecord(N, S, L, C, record));
+        }
+
+        return records;
+    }
+
+    /**
+     * Returns the samples for the given time range, missing samples are filled
+     * with the given value.
+     *
+     * @param from Start time (millis, inclusive).
+     * @param to End time (millis, exclusive).
+     * @param fill
+     * @return
+     */
+    public int[] getSamples(long from, long to, int fill) {
+
+        long first = getIndex(from);
+        long last = getIndex(to);
+
+        int[] samples = new int[(int) Math.max(0, last - first)];
+        for (int i = 0; i < samples.length; i++) {
+            long index = first + i;
+            samples[i] = isMissing(Math.floorDiv(index, SAMPLES_PER_RECORD))
+                    ? fill : getSample(index);
+        }
+
+        return samples;
+    }
+
+    /**
+     * Builds a single record (missing or not).
+     *
+     * @param N
+     * @param S
+     * @param L
+     * @param C
+     * @param record Index of the record from epoch.
+     * @return
+     */
+    public byte[] getRecord(String N, String S, String L, String C, long record) {
+
+        long first = record * SAMPLES_PER_RECORD;
+
+        int[] samples = new int[SAMPLES_PER_RECORD];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = getSample(first + i);
+        }
+
+        DataHeader header = new DataHeader((int) (record % 1000000), 'D', false);
+        header.setStartBtime(new Btime(Instant.ofEpochMilli(getTime(first))));
+        header.setSampleRate(sps);
+        header.setNetworkCode(N);
+        header.setStationIdentifier(S);
+        header.setChannelIdentifier(C);
+        header.setLocationIdentifier(L == null ? "" : L);
+        header.setNumSamples((short) SAMPLES_PER_RECORD);
+
+        DataRecord dataRecord = new DataRecord(header);
+
+        Blockette1000 blockette = new Blockette1000();
+        blockette.setEncodingFormat((byte) B1000Types.STEIM2);
+        blockette.setWordOrder((byte) 1);
+        blockette.setDataRecordLength((byte) 9);
+
+        try {
+            dataRecord.addBlockette(blockette);
+            dataRecord.setData(Steim2.encode(samples, 7).getEncodedData());
+            return Arrays.copyOf(dataRecord.toByteArray(), RECORD_SIZE);
+        } catch (SeedFormatException | SteimException | IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package rsamssam.datasources.fake;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.streams.WriteStream;
+
+/**
+ * Writes data to a stream at a limited rate, the data is split in slices
+ * written every 100 ms.
+ *
+ * @author Julian Peña.
+ */
+public class Throttle {
+
+    /**
+     * Time between slices (millis).
+     */
+    private static final long TICK = 100;
+
+    private Throttle() {
+    }
+
+    /**
+     * Writes the given data.
+     *
+     * @param vertx
+     * @param stream
+     * @param data
+     * @param bytesPerSecond Rate limit, 0 or less means no limit.
+     * @param limit Maximum number of bytes written, the rest is dropped. A
+     * negative value means no limit.
+     * @return A future that succeeds once the data has been written (or
+     * dropped).
+     */
+    public static Future<Void> write(Vertx vertx, WriteStream<Buffer> stream,
+            Buffer data, long bytesPerSecond, long limit) {
+
+        int length = limit < 0 ? data.length()
+                : (int) Math.min(limit, data.length());
+
+        if (bytesPerSecond <= 0) {
+            return stream.write(data.slice(0, length));
+        }
+
+        Promise<Void> promise = Promise.promise();
+
+        int slice = (int) Math.max(1, bytesPerSecond * TICK / 1000);
+        int[] offset = {0};
+
+        vertx.setPeriodic(TICK, timer -> {
+            int end = Math.min(offset[0] + slice, length);
+            stream.write(data.slice(offset[0], end));
+            offset[0] = end;
+            if (end >= length) {
+                vertx.cancelTimer(timer);
+                promise.complete();
+            }
+        });
+
+        return promise.future();
+    }
+
+}
@@ -0,0 +1,132 @@
+package rsamssam.datasources.impl;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Vertx;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class SDSTest {
+
+    static int numSamples = 100;
+
+    @TempDir
+    Path archive;
+
+    public SDSTest() {
+    }
+
+    @Test
+    public void dayFilesAreRead() throws Exception {
+
+        // 1970-01-01 is day 001, records at seconds 0, 1 and 86400 (next day)
+        Path folder = archive.resolve("1970/CM/JULI/HHZ.D");
+        Files.createDirectories(folder);
+
+        ByteArrayOutputStream day = new ByteArrayOutputStream();
+        day.write(getDataRecordAtSecond(0).toByteArray());
+        day.write(getDataRecordAtSecond(1).toByteArray());
+        day.write(getDataRecordAtSecond(86400).toByteArray());
+        Files.write(folder.resolve("CM.JULI.00.HHZ.D.1970.001"), day.toByteArray());
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+        query.setTo(86400000);
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            SDS sds = new SDS(vertx, archive.toString());
+
+            Metadata metadata = sds
+                    .download(query)
+                    .toCompletionStage()
+                    .toCompletableFuture()
+                    .get(5, TimeUnit.SECONDS);
+
+            assertEquals(numSamples, metadata.sps(), "wrong sampling rate");
+            assertEquals(0, metadata.start(), "wrong start");
+
+            int records = 0;
+            DataRecord dataRecord = sds.getDataRecord();
+            while (dataRecord.getHeader().getSequenceNum() != -1) {
+                records++;
+                dataRecord = sds.getDataRecord();
+            }
+
+            assertEquals(2, records, "records outside the query were read");
+
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    public void missingFilesFail() {
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setFrom(0);
+        query.setTo(86400000);
+
+        Vertx vertx = Vertx.vertx();
+
+        try {
+            SDS sds = new SDS(vertx, archive.toString());
+            assertTrue(sds.download(query).failed(), "missing archive accepted");
+        } finally {
+            vertx.close();
+        }
+    }
+
+    /**
+     * Returns a DataRecord object (miniseed packet) with samples starting the
+     * given second from epoch.
+     *
+     * @param secondFromEpoch
+     * @return
+     */
+    private DataRecord getDataRecordAtSecond(int secondFromEpoch) throws Exception {
+
+        DataHeader header = new DataHeader(1, 'D', false);
+        header.setStartBtime(new Btime(secondFromEpoch));
+        header.setSampleRate(numSamples);
+        header.setNetworkCode("CM");
+        header.setStationIdentifier("JULI");
+        header.setChannelIdentifier("HHZ");
+        header.setLocationIdentifier("00");
+        header.setNumSamples((short) numSamples);
+
+        DataRecord dataRecord = new DataRecord(header);
+
+        Blockette1000 blockette = new Blockette1000();
+        blockette.setEncodingFormat((byte) B1000Types.STEIM2);
+        blockette.setWordOrder((byte) 1);
+        blockette.setDataRecordLength((byte) 9);
+
+        dataRecord.addBlockette(blockette);
+        dataRecord.setData(Steim2.encode(new int[numSamples], 7).getEncodedData());
+
+        return dataRecord;
+    }
+
+}
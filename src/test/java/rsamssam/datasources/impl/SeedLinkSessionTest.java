@@ -0,0 +1,112 @@
+package rsamssam.datasources.impl;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.config.Names;
+import rsamssam.datasources.DataClient;
+import rsamssam.datasources.DataRecordProvider;
+import rsamssam.datasources.fake.FakeSeedLinkServer;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Query;
+
+/**
+ * Runs a multi-station session against the fake SeedLink server, with
+ * watermarks small enough for the queues to fill up.
+ *
+ * @author Julian Peña.
+ */
+public class SeedLinkSessionTest {
+
+    static long from = Instant.parse("2020-01-01T00:00:00Z").toEpochMilli();
+
+    static long to = from + 600000;
+
+    Vertx vertx;
+
+    public SeedLinkSessionTest() {
+    }
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        vertx = Vertx.vertx();
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(100));
+        int port = await(server.start());
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+        System.setProperty(Names.SEEDLINK_SESSION_HIGH_WATERMARK, "50");
+        System.setProperty(Names.SEEDLINK_SESSION_LOW_WATERMARK, "10");
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        System.clearProperty(Names.SEEDLINK_SESSION_HIGH_WATERMARK);
+        System.clearProperty(Names.SEEDLINK_SESSION_LOW_WATERMARK);
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void recordsAreDemultiplexed() throws Exception {
+
+        SeedLinkSession session = new SeedLinkSession(vertx);
+
+        List<Query> queries = List.of(
+                getQuery("JULI", "HHZ"),
+                getQuery("JULI", "HHZ"),
+                getQuery("JULI", "HHN"),
+                getQuery("RUIZ", "HHZ"));
+
+        List<DataClient> clients = new ArrayList<>();
+        for (Query query : queries) {
+            clients.add(session.add(query));
+        }
+
+        // one query after the other, the others wait (or get detached)
+        for (int i = 0; i < queries.size(); i++) {
+
+            Query query = queries.get(i);
+            DataClient client = clients.get(i);
+            await(client.download(query));
+
+            List<Long> starts = new ArrayList<>();
+            DataRecord dataRecord = ((DataRecordProvider) client).getDataRecord();
+            while (dataRecord.getHeader().getSequenceNum() != -1) {
+                assertEquals(query.getNSCL(), DataRecordProvider.getNSCL(dataRecord),
+                        "record routed to the wrong query");
+                starts.add(dataRecord.getStartBtime().toInstant().toEpochMilli());
+                dataRecord = ((DataRecordProvider) client).getDataRecord();
+            }
+
+            assertEquals(600, starts.size(), "wrong number of records " + i);
+            for (int j = 1; j < starts.size(); j++) {
+                assertEquals(starts.get(j - 1) + 1000, starts.get(j),
+                        "gap or duplicate at record " + j + " of query " + i);
+            }
+        }
+    }
+
+    private static Query getQuery(String S, String C) {
+        Query query = new Query(S, C, "CM", "00");
+        query.setFrom(from);
+        query.setTo(to);
+        return query;
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        return future.toCompletionStage().toCompletableFuture().get(30, TimeUnit.SECONDS);
+    }
+
+}
@@ -0,0 +1,150 @@
+package rsamssam.datasources.impl.seedlink;
+
+import edu.iris.dmc.seedcodec.B1000Types;
+import edu.iris.dmc.seedcodec.Steim2;
+
+import edu.sc.seis.seisFile.mseed.Blockette1000;
+import edu.sc.seis.seisFile.mseed.Btime;
+import edu.sc.seis.seisFile.mseed.DataHeader;
+import edu.sc.seis.seisFile.mseed.DataRecord;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class SeedLinkPacketTest {
+
+    static int numSamples = 100;
+
+    public SeedLinkPacketTest() {
+    }
+
+    @Test
+    public void packetIsParsedInPlace() throws Exception {
+
+        // some garbage before and after the packet
+        ByteBuf bytebuf = Unpooled.buffer();
+        bytebuf.writeBytes("xyz".getBytes(StandardCharsets.US_ASCII));
+        bytebuf.writeBytes(getPacket("00001A"));
+        bytebuf.writeBytes("END".getBytes(StandardCharsets.US_ASCII));
+
+        var packet = SeedLinkPacket.of(bytebuf.slice(3, SeedLinkPacket.SIZE));
+
+        assertTrue(packet.isPresent(), "packet not parsed");
+        assertEquals("00001A", packet.get().getSequenceNumber(),
+                "wrong sequence number");
+        assertFalse(packet.get().expectMore(), "wrong INFO flag");
+
+        var dataRecord = packet.get().getMiniseed();
+
+        assertTrue(dataRecord.isPresent(), "miniseed not parsed");
+        assertEquals("JULI", dataRecord.get().getHeader()
+                .getStationIdentifier().trim(), "wrong station");
+        assertArrayEquals(getSamples(numSamples),
+                dataRecord.get().decompress().getAsInt(), "samples corrupted");
+
+        assertEquals(3 + SeedLinkPacket.SIZE + 3, bytebuf.writerIndex(),
+                "source buffer modified");
+    }
+
+    @Test
+    public void wrongPacketsAreRejected() throws Exception {
+
+        byte[] bytes = getPacket("00001A");
+
+        assertTrue(SeedLinkPacket.of(Unpooled.wrappedBuffer(bytes, 0, 519))
+                .isEmpty(), "short packet accepted");
+
+        bytes[0] = 'X';
+        assertTrue(SeedLinkPacket.of(bytes).isEmpty(), "bad header accepted");
+    }
+
+    @Test
+    public void garbageIsSkipped() throws Exception {
+
+        ByteBuf bytebuf = Unpooled.buffer();
+        bytebuf.writeBytes("xyzS".getBytes(StandardCharsets.US_ASCII));
+        bytebuf.writeBytes(getPacket("00001A"));
+
+        // a lone S is not a header
+        assertEquals(4, SeedLinkPacket.resync(bytebuf), "wrong bytes skipped");
+        assertEquals(0, SeedLinkPacket.resync(bytebuf), "header skipped");
+        assertTrue(SeedLinkPacket.of(bytebuf.readSlice(SeedLinkPacket.SIZE))
+                .isPresent(), "packet lost");
+
+        // the beginning of a header or END is kept for the next buffer
+        bytebuf.writeBytes("abS".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, SeedLinkPacket.resync(bytebuf), "wrong bytes skipped");
+        assertEquals(1, bytebuf.readableBytes(), "header beginning dropped");
+
+        bytebuf.writeBytes("xEN".getBytes(StandardCharsets.US_ASCII));
+        assertEquals(2, SeedLinkPacket.resync(bytebuf), "wrong bytes skipped");
+        assertEquals("EN", bytebuf.toString(StandardCharsets.US_ASCII),
+                "END beginning dropped");
+    }
+
+    /**
+     * Returns a SeedLink packet with the given sequence number.
+     *
+     * @param sequence
+     * @return
+     */
+    private byte[] getPacket(String sequence) throws Exception {
+
+        DataHeader header = new DataHeader(1, 'D', false);
+        header.setStartBtime(new Btime(0));
+        header.setSampleRate(numSamples);
+        header.setNetworkCode("CM");
+        header.setStationIdentifier("JULI");
+        header.setChannelIdentifier("HHZ");
+        header.setNumSamples((short) numSamples);
+
+        DataRecord dataRecord = new DataRecord(header);
+
+        Blockette1000 blockette = new Blockette1000();
+        blockette.setEncodingFormat((byte) B1000Types.STEIM2);
+        blockette.setWordOrder((byte) 1);
+        blockette.setDataRecordLength((byte) 9);
+
+        dataRecord.addBlockette(blockette);
+        dataRecord.setData(Steim2.encode(getSamples(numSamples), 7).getEncodedData());
+
+        byte[] miniseed = dataRecord.toByteArray();
+
+        byte[] packet = new byte[SeedLinkPacket.SIZE];
+        System.arraycopy(("SL" + sequence).getBytes(StandardCharsets.US_ASCII),
+                0, packet, 0, 8);
+        System.arraycopy(miniseed, 0, packet, 8,
+                Math.min(miniseed.length, 512));
+
+        return packet;
+    }
+
+    /**
+     * Return a array of samples resembling a sine wave.
+     *
+     * @param numSamples
+     * @return
+     */
+    private int[] getSamples(int numSamples) {
+
+        int[] samples = new int[numSamples];
+
+        double step = 2 * Math.PI / numSamples;
+
+        for (int i = 0; i < numSamples; i++) {
+            samples[i] = (int) (Math.sin(i * step) * 1000);
+        }
+
+        return samples;
+    }
+
+}
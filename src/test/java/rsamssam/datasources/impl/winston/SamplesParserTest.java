@@ -0,0 +1,81 @@
+package rsamssam.datasources.impl.winston;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class SamplesParserTest {
+
+    public SamplesParserTest() {
+    }
+
+    @Test
+    public void integersAndDecimalsAreParsed() {
+
+        List<double[]> chunks = new ArrayList<>();
+        SamplesParser parser = new SamplesParser(chunks::add, 4);
+
+        parser.parse(Buffer.buffer("12 -3 0.5 -1024.25 7 0.005 +8"));
+        parser.end();
+
+        assertEquals(2, chunks.size(), "wrong number of chunks");
+        assertArrayEquals(new double[]{12, -3, 0.5, -1024.25}, chunks.get(0),
+                "wrong samples in first chunk");
+        assertArrayEquals(new double[]{7, 0.005, 8}, chunks.get(1),
+                "wrong samples in last chunk");
+    }
+
+    @Test
+    public void tokensSplitAcrossBuffersAreParsed() {
+
+        List<double[]> chunks = new ArrayList<>();
+        SamplesParser parser = new SamplesParser(chunks::add, 8);
+
+        parser.parse(Buffer.buffer("10 -2"));
+        parser.parse(Buffer.buffer("34 5."));
+        parser.parse(Buffer.buffer("75 -"));
+        parser.parse(Buffer.buffer("6\n"));
+        parser.end();
+
+        assertEquals(1, chunks.size(), "wrong number of chunks");
+        assertArrayEquals(new double[]{10, -234, 5.75, -6}, chunks.get(0),
+                "split tokens were corrupted");
+    }
+
+    @Test
+    public void exponentsAreParsed() {
+
+        List<double[]> chunks = new ArrayList<>();
+        SamplesParser parser = new SamplesParser(chunks::add);
+
+        parser.parse(Buffer.buffer("1.5E3 1.5E-3 -2e2 3E+2 2.5e"));
+        parser.parse(Buffer.buffer("-1 7"));
+        parser.end();
+
+        assertArrayEquals(new double[]{1500, 0.0015, -200, 300, 0.25, 7},
+                chunks.get(0), "exponents were not parsed");
+    }
+
+    @Test
+    public void parsingStartsAtOffset() {
+
+        List<double[]> chunks = new ArrayList<>();
+        SamplesParser parser = new SamplesParser(chunks::add);
+
+        Buffer buffer = Buffer.buffer("header 1 2 3");
+        parser.parse(buffer, "header ".length());
+        parser.end();
+
+        assertArrayEquals(new double[]{1, 2, 3}, chunks.get(0),
+                "wrong samples after offset");
+    }
+
+}
@@ -0,0 +1,78 @@
+package rsamssam.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class MetricsTest {
+
+    public MetricsTest() {
+    }
+
+    @Test
+    public void testCounter() {
+
+        Counter counter = new Counter("test_bytes_total", "Test bytes", "source");
+        counter.labels("fdsn").add(512);
+        counter.labels("fdsn").add(512);
+        counter.labels("seed\"link").increment();
+
+        String text = write(counter);
+
+        assertTrue(text.contains("# HELP test_bytes_total Test bytes\n"), text);
+        assertTrue(text.contains("# TYPE test_bytes_total counter\n"), text);
+        assertTrue(text.contains("test_bytes_total{source=\"fdsn\"} 1024\n"), text);
+        assertTrue(text.contains("test_bytes_total{source=\"seed\\\"link\"} 1\n"), text);
+    }
+
+    @Test
+    public void testQueueDepth() {
+
+        QueueDepth depth = new QueueDepth("test_queue_depth", "Test queues", "stage");
+
+        LinkedBlockingQueue<Integer> a = new LinkedBlockingQueue<>(List.of(1, 2, 3));
+        List<Integer> b = new ArrayList<>(List.of(4, 5));
+        depth.track("packager", a);
+        depth.track("packager", b);
+
+        assertTrue(write(depth).contains("test_queue_depth{stage=\"packager\"} 5\n"));
+
+        a.poll();
+        assertTrue(write(depth).contains("test_queue_depth{stage=\"packager\"} 4\n"));
+    }
+
+    @Test
+    public void testTimer() {
+
+        Timer timer = new Timer("test_seconds", "Test time");
+        timer.observe(System.nanoTime() - 2_000_000_000L);
+
+        String text = write(timer);
+
+        assertTrue(text.contains("# TYPE test_seconds summary\n"), text);
+        assertTrue(text.contains("test_seconds_count 1\n"), text);
+        assertTrue(text.contains("# TYPE test_seconds_max gauge\n"), text);
+        assertTrue(text.contains("test_seconds_sum 2."), text);
+    }
+
+    @Test
+    public void testScrape() {
+        String text = Metrics.scrape();
+        assertTrue(text.contains("# TYPE rsamssam_pipelines_active gauge\n"), text);
+        assertTrue(text.contains("# TYPE rsamssam_bins_processed_total counter\n"), text);
+    }
+
+    private static String write(Metric<?> metric) {
+        StringBuilder text = new StringBuilder();
+        metric.write(text);
+        return text.toString();
+    }
+
+}
@@ -0,0 +1,86 @@
+package rsamssam.metrics;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.query.Query;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class TracesTest {
+
+    public TracesTest() {
+    }
+
+    @Test
+    public void oldestTracesAreOverwritten() {
+
+        Traces traces = new Traces(3);
+        for (int i = 0; i < 5; i++) {
+            traces.add(new Trace(new Query("JULI", "HHZ", "CM", "00")));
+        }
+
+        JsonArray json = traces.toJson(null);
+        assertEquals(3, json.size(), "wrong number of traces");
+    }
+
+    @Test
+    public void tracesAreMostRecentFirst() {
+
+        Traces traces = new Traces(2);
+        Trace first = new Trace(new Query("JULI", "HHZ", "CM", "00"));
+        Trace second = new Trace(new Query("JULI", "HHN", "CM", "00"));
+        traces.add(first);
+        traces.add(second);
+
+        JsonArray json = traces.toJson(null);
+        assertEquals(second.getId(), id(json, 0));
+        assertEquals(first.getId(), id(json, 1));
+
+        json = traces.toJson(first.getId());
+        assertEquals(1, json.size(), "id filter not applied");
+        assertEquals(first.getId(), id(json, 0));
+    }
+
+    @Test
+    public void stagesAndCounts() {
+
+        Trace trace = new Trace(new Query("JULI", "HHZ", "CM", "00"));
+        trace.start("download");
+        trace.end("download-first-byte");
+        trace.end("download");
+        trace.start("plot");
+        trace.setSamples(8640000);
+        trace.setBins(1055, 3);
+        trace.finish("Failed to make graph");
+
+        JsonObject json = trace.toJson();
+        assertEquals("failure", json.get("result").getAsString());
+
+        JsonArray stages = json.getAsJsonArray("stages");
+        assertEquals(3, stages.size(), "wrong number of stages");
+        assertEquals("download", name(stages, 0));
+        assertEquals("download-first-byte", name(stages, 1));
+        assertTrue(stages.get(1).getAsJsonObject().has("end"));
+        assertFalse(stages.get(2).getAsJsonObject().has("end"), "plot never ended");
+
+        JsonObject counts = json.getAsJsonObject("counts");
+        assertEquals(8640000, counts.get("samples").getAsLong());
+        assertEquals(1055, counts.get("bins").getAsLong());
+        assertEquals(3, counts.get("gapBins").getAsLong());
+    }
+
+    private static String id(JsonArray json, int index) {
+        return json.get(index).getAsJsonObject().get("id").getAsString();
+    }
+
+    private static String name(JsonArray json, int index) {
+        return json.get(index).getAsJsonObject().get("name").getAsString();
+    }
+
+}
@@ -0,0 +1,99 @@
+package rsamssam.metrics.events;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.core.Packager;
+import rsamssam.core.Processor;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class EventsTest {
+
+    public EventsTest() {
+    }
+
+    @Test
+    public void eventsAreDisabledByDefault() throws Exception {
+
+        try (Recording recording = new Recording()) {
+            recording.start();
+            process("disabled");
+            recording.stop();
+
+            assertTrue(read(recording).stream()
+                    .noneMatch(e -> e.getEventType().getName().startsWith("rsamssam.")),
+                    "events recorded without being enabled");
+        }
+    }
+
+    @Test
+    public void binEventsCarryQueryId() throws Exception {
+
+        try (Recording recording = new Recording()) {
+            recording.enable(BinPackagedEvent.class);
+            recording.enable(BinProcessedEvent.class);
+            recording.start();
+            process("traced");
+            recording.stop();
+
+            List<RecordedEvent> events = read(recording);
+
+            List<RecordedEvent> packaged = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("rsamssam.BinPackaged"))
+                    .toList();
+            List<RecordedEvent> processed = events.stream()
+                    .filter(e -> e.getEventType().getName().equals("rsamssam.BinProcessed"))
+                    .toList();
+
+            assertEquals(4, packaged.size(), "wrong number of packaged bins");
+            assertEquals(4, processed.size(), "wrong number of processed bins");
+
+            RecordedEvent event = processed.get(0);
+            assertEquals("traced", event.getString("queryId"));
+            assertEquals(256, event.getInt("binSize"));
+            assertEquals(64, event.getInt("spectraSize"));
+            assertFalse(event.getBoolean("gap"));
+            assertTrue(event.getDuration("fftDuration").toNanos() > 0, "no FFT duration");
+        }
+    }
+
+    /**
+     * Packages and processes 4 bins.
+     */
+    private static void process(String queryId) throws InterruptedException {
+
+        Packager packager = new Packager(256).setQueryId(queryId);
+        Processor processor = new Processor(256, "HANN", 64, 1).setQueryId(queryId);
+
+        for (int i = 0; i < 4 * 256; i++) {
+            packager.addSample(Math.sin(i / 10d) * 1000);
+        }
+        packager.addSample(Double.NaN);
+
+        for (double[] bin = packager.getBin(); bin.length > 0; bin = packager.getBin()) {
+            processor.process(bin);
+        }
+    }
+
+    private static List<RecordedEvent> read(Recording recording) throws Exception {
+        Path file = Files.createTempFile("rsamssam", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+}
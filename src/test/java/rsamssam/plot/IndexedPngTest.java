@@ -0,0 +1,68 @@
+package rsamssam.plot;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class IndexedPngTest {
+
+    public IndexedPngTest() {
+    }
+
+    @Test
+    public void decodesToPaletteColors() throws Exception {
+
+        int width = 300;
+        int height = 70;
+        byte[] pixels = new byte[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = (byte) (i * 7);
+        }
+
+        for (int level : new int[]{0, 1, 9}) {
+
+            byte[] png = Heatmap.toPng(pixels, width, height, level);
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+
+            assertEquals(width, image.getWidth(), "wrong width");
+            assertEquals(height, image.getHeight(), "wrong height");
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals(Palette.rgb(pixels[y * width + x] & 0xff),
+                            image.getRGB(x, y) & 0xffffff, "wrong pixel");
+                }
+            }
+        }
+    }
+
+    @Test
+    public void heatmapRaster() {
+
+        Heatmap heatmap = new Heatmap(100);
+        heatmap.add(new double[]{0, 100});
+        heatmap.add(new double[]{50, 50});
+
+        assertEquals(2, heatmap.getColumns());
+        assertEquals(2, heatmap.getRows());
+
+        // top row is the highest frequency
+        byte[] raster = heatmap.rasterize(4, 2);
+        int top = Palette.LEVELS - 1;
+        int middle = Palette.level(50, 100);
+        assertArrayEquals(new byte[]{(byte) top, (byte) top, (byte) middle,
+            (byte) middle, 0, 0, (byte) middle, (byte) middle}, raster);
+
+        BufferedImage image = Heatmap.toImage(raster, 4, 2);
+        assertEquals(Palette.rgb(top), image.getRGB(0, 0) & 0xffffff);
+        assertEquals(Palette.rgb(middle), image.getRGB(3, 1) & 0xffffff);
+    }
+
+}
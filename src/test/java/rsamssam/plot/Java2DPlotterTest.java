@@ -0,0 +1,168 @@
+package rsamssam.plot;
+
+import java.awt.image.BufferedImage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.config.Names;
+import rsamssam.core.Result;
+import rsamssam.query.Metadata;
+import rsamssam.query.Query;
+
+/**
+ *
+ * @author Julian Peña.
+ */
+public class Java2DPlotterTest {
+
+    static long start = 1577836800000L;
+
+    static int sps = 100;
+
+    static int width = 1200;
+
+    static int height = 600;
+
+    @TempDir
+    Path folder;
+
+    public Java2DPlotterTest() {
+    }
+
+    @Test
+    public void pngGraphs() throws Exception {
+
+        Query query = getQuery(Names.GRAPH_FORMAT_PNG);
+        Java2DPlotter plotter = fill(new Java2DPlotter(folder, query), query);
+
+        assertTrue(plotter.plot(query), "graph not made");
+
+        BufferedImage graph = ImageIO.read(folder.resolve(query.getGraphFileName()).toFile());
+        assertEquals(width, graph.getWidth(), "wrong width");
+        assertEquals(height, graph.getHeight(), "wrong height");
+
+        // every spectra is maxPower, the heatmap center must be the top color
+        int center = graph.getRGB(width / 2, (int) (0.375 * height)) & 0xffffff;
+        assertEquals(Palette.rgb(Palette.LEVELS - 1), center, "wrong heatmap color");
+
+        BufferedImage maxFreqs = ImageIO.read(folder
+                .resolve(query.getMaxFreqsGraphFileName()).toFile());
+        assertEquals(height / 2, maxFreqs.getHeight(), "wrong max freqs height");
+    }
+
+    @Test
+    public void svgGraphs() throws Exception {
+
+        Query query = getQuery(Names.GRAPH_FORMAT_SVG);
+        Java2DPlotter plotter = fill(new Java2DPlotter(folder, query), query);
+
+        assertTrue(plotter.plot(query), "graph not made");
+
+        for (String name : new String[]{query.getGraphFileName(),
+            query.getMaxFreqsGraphFileName()}) {
+            Path svg = folder.resolve(name);
+            assertTrue(Files.size(svg) > 0, "empty " + name);
+            // must be well formed
+            DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(svg.toFile());
+        }
+    }
+
+    @Test
+    public void incrementalMatchesFull() throws Exception {
+
+        Query query = getQuery(Names.GRAPH_FORMAT_PNG);
+        int results = (int) (86400000L / query.getTimestep().get());
+
+        Path incrementalFolder = folder.resolve("incremental");
+        Java2DPlotter incremental = new Java2DPlotter(incrementalFolder, query);
+        incremental.setColumns(results);
+        add(incremental, query, 0, results / 2);
+        assertTrue(incremental.plot(query), "graph not made");
+
+        // the rest of the day is a gap
+        BufferedImage half = ImageIO.read(incrementalFolder
+                .resolve(query.getGraphFileName()).toFile());
+        assertEquals(Palette.rgb(0), half.getRGB((int) (0.80 * width),
+                (int) (0.375 * height)) & 0xffffff, "wrong gap color");
+
+        add(incremental, query, results / 2, results);
+        assertTrue(incremental.plot(query), "graph not made");
+
+        Path fullFolder = folder.resolve("full");
+        Java2DPlotter full = new Java2DPlotter(fullFolder, query);
+        full.setColumns(results);
+        add(full, query, 0, results);
+        assertTrue(full.plot(query), "graph not made");
+
+        BufferedImage expected = ImageIO.read(fullFolder
+                .resolve(query.getGraphFileName()).toFile());
+        BufferedImage actual = ImageIO.read(incrementalFolder
+                .resolve(query.getGraphFileName()).toFile());
+        assertArrayEquals(
+                expected.getRGB(0, 0, width, height, null, 0, width),
+                actual.getRGB(0, 0, width, height, null, 0, width),
+                "incremental graph differs");
+    }
+
+    @Test
+    public void noResultsFails() {
+        Query query = getQuery(Names.GRAPH_FORMAT_PNG);
+        assertFalse(new Java2DPlotter(folder, query).plot(query));
+    }
+
+    @Test
+    public void paletteEnds() {
+        assertEquals(0x000000, Palette.rgb(Palette.level(Double.NaN, 120)));
+        assertEquals(0x000000, Palette.rgb(Palette.level(-5, 120)));
+        assertEquals(0xff0000, Palette.rgb(Palette.level(500, 120)));
+    }
+
+    private static Query getQuery(String format) {
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query
+                .setFrom(start)
+                .setTo(start + 86400000L);
+        query
+                .setWebQuery(true)
+                .setGraphFormat(format)
+                .setGraphWidth(width)
+                .setGraphHeight(height);
+        query.setMetadata(new Metadata(sps, start));
+        return query;
+    }
+
+    private static Java2DPlotter fill(Java2DPlotter plotter, Query query) {
+        return add(plotter, query, 0,
+                (int) (86400000L / query.getTimestep().get()));
+    }
+
+    private static Java2DPlotter add(Java2DPlotter plotter, Query query,
+            int from, int to) {
+
+        int rows = query.getCutoffWindowSize().get();
+
+        for (int i = from; i < to; i++) {
+            double[] spectra = new double[rows];
+            Arrays.fill(spectra, query.getMaxPower());
+            double rsam = i % 100 == 0 ? Double.NaN : 100 + i % 1000;
+            plotter.addResult(new Result(rsam, spectra, new double[]{5, 80}));
+        }
+
+        double[] averageSsam = new double[rows];
+        for (int j = 0; j < rows; j++) {
+            averageSsam[j] = 40 + j % 30;
+        }
+        plotter.addAverageSsam(averageSsam);
+
+        return plotter;
+    }
+
+}
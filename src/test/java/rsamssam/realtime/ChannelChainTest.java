@@ -0,0 +1,114 @@
+package rsamssam.realtime;
+
+import edu.sc.seis.seisFile.mseed.DataRecord;
+import edu.sc.seis.seisFile.mseed.SeedRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import rsamssam.core.Result;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Query;
+
+/**
+ * Feeds synthetic DataRecords (one second, 100 samples each) to a chain, the
+ * final renders of the days are only collected.
+ *
+ * @author Julian Peña.
+ */
+public class ChannelChainTest {
+
+    static long DAY = 86400000;
+
+    static SyntheticStream stream = new SyntheticStream(100);
+
+    List<Runnable> renders = new ArrayList<>();
+
+    public ChannelChainTest() {
+    }
+
+    @Test
+    public void gapsArePadded() throws Exception {
+
+        ChannelChain chain = getChain();
+        add(chain, 0, 500);
+        add(chain, 600, 1000);
+
+        List<Result> results = chain.getResults();
+
+        // as many bins as without the gap, the ones inside the gap are gaps
+        assertEquals(100000 / 1024, results.size(), "wrong number of results");
+        assertTrue(results.get(10).rsam() > 0, "data taken as gap");
+        assertEquals(0, results.get(50).rsam(), "gap not padded");
+    }
+
+    @Test
+    public void overlapsAreDiscarded() throws Exception {
+
+        ChannelChain chain = getChain();
+        add(chain, 0, 100);
+        add(chain, 50, 200);
+
+        ChannelChain expected = getChain();
+        add(expected, 0, 200);
+
+        assertEquals(getRsams(expected), getRsams(chain),
+                "overlapping samples not discarded");
+    }
+
+    @Test
+    public void daysRollOver() throws Exception {
+
+        ChannelChain chain = getChain();
+        add(chain, 86390, 86410);
+
+        assertEquals(DAY, chain.getQuery().getFrom(), "new day not started");
+        assertEquals(1, renders.size(), "finished day not rendered");
+        assertEquals(10 * 100 / 1024, chain.getResults().size(),
+                "wrong number of results for the new day");
+    }
+
+    @Test
+    public void daysWithoutDataAreSkipped() throws Exception {
+
+        ChannelChain chain = getChain();
+        add(chain, 0, 10);
+        add(chain, 5 * 86400, 5 * 86400 + 20);
+
+        assertEquals(5 * DAY, chain.getQuery().getFrom(), "wrong day");
+        assertEquals(1, renders.size(), "days without data rendered");
+        assertEquals(20 * 100 / 1024, chain.getResults().size(),
+                "wrong number of results for the new day");
+    }
+
+    private ChannelChain getChain() {
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setWindowSize(1024);
+        return new ChannelChain(query, renders::add);
+    }
+
+    /**
+     * Adds the records (indexes from epoch) in the given range.
+     */
+    private static void add(ChannelChain chain, long from, long to) throws Exception {
+        for (long record = from; record < to; record++) {
+            byte[] bytes = stream.getRecord("CM", "JULI", "00", "HHZ", record);
+            chain.addDataRecord((DataRecord) SeedRecord.read(
+                    new DataInputStream(new ByteArrayInputStream(bytes))));
+        }
+    }
+
+    private static List<Double> getRsams(ChannelChain chain) {
+        List<Double> rsams = new ArrayList<>();
+        for (Result result : chain.getResults()) {
+            rsams.add(result.rsam());
+        }
+        return rsams;
+    }
+
+}
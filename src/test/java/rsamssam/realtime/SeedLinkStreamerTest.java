@@ -0,0 +1,93 @@
+package rsamssam.realtime;
+
+import io.vertx.core.Vertx;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import rsamssam.config.Names;
+import rsamssam.core.Result;
+import rsamssam.datasources.fake.FakeSeedLinkServer;
+import rsamssam.datasources.fake.SyntheticStream;
+import rsamssam.query.Query;
+
+/**
+ * Streams the current day from the fake SeedLink server, with a connection
+ * loss and watermarks small enough for the session to be paused.
+ *
+ * @author Julian Peña.
+ */
+public class SeedLinkStreamerTest {
+
+    static int sps = 10;
+
+    static int windowSize = 64;
+
+    Vertx vertx;
+
+    public SeedLinkStreamerTest() {
+    }
+
+    @BeforeEach
+    public void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        System.clearProperty(Names.SEEDLINK_REALTIME_HIGH_WATERMARK);
+        System.clearProperty(Names.SEEDLINK_REALTIME_LOW_WATERMARK);
+        vertx.close().toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void dayIsStreamed() throws Exception {
+
+        long now = System.currentTimeMillis();
+        long elapsed = Math.floorMod(now, 86400000L);
+
+        // the day must have some complete records already
+        assumeTrue(elapsed > 120000, "too close to midnight");
+
+        // SeedLink packets are an 8 bytes header plus the miniseed record
+        FakeSeedLinkServer server = new FakeSeedLinkServer(vertx,
+                new SyntheticStream(sps))
+                .setDropAfter(100 * (SyntheticStream.RECORD_SIZE + 8) + 100);
+
+        int port = server.start().toCompletionStage().toCompletableFuture()
+                .get(5, TimeUnit.SECONDS);
+        System.setProperty(Names.SEEDLINK_SERVER, "localhost");
+        System.setProperty(Names.SEEDLINK_PORT, Integer.toString(port));
+        System.setProperty(Names.SEEDLINK_REALTIME_HIGH_WATERMARK, "50");
+        System.setProperty(Names.SEEDLINK_REALTIME_LOW_WATERMARK, "10");
+
+        Query query = new Query("JULI", "HHZ", "CM", "00");
+        query.setWindowSize(windowSize);
+
+        SeedLinkStreamer streamer = new SeedLinkStreamer(vertx);
+        streamer.subscribe(query);
+
+        // everything up to a minute ago
+        long expected = (elapsed - 60000) * sps / 1000 / windowSize;
+
+        ChannelChain chain = streamer.getChain(query.getNSCL());
+        List<Result> results = chain.getResults();
+        for (int i = 0; i < 600 && results.size() < expected; i++) {
+            Thread.sleep(100);
+            results = chain.getResults();
+        }
+
+        assertTrue(results.size() >= expected, "day not streamed");
+        assertTrue(server.getConnections() >= 2, "session not resumed");
+        for (int i = 0; i < expected; i++) {
+            assertTrue(results.get(i).rsam() > 0, "gap at result " + i);
+        }
+    }
+
+}
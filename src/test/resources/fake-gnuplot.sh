@@ -0,0 +1,33 @@
+#!/bin/bash
+# Stand-in for gnuplot reading commands from stdin, used by GnuplotPoolTest.
+# Understands the sentinel and version prints, cd and load (the folder and the
+# script must exist) plus a few fake commands: fail (sets GPVAL_ERRNO), crash
+# (exits) and hang (never answers). FAKE_GNUPLOT_VERSION sets the version,
+# versions older than 5.2 don't know reset session nor reset errors.
+version=${FAKE_GNUPLOT_VERSION:-5.4}
+legacy=0
+if [ "$(printf '%s\n' "$version" 5.2 | sort -V | head -n1)" != "5.2" ]; then
+    legacy=1
+fi
+errno=0
+while IFS= read -r line; do
+    case "$line" in
+        "reset session"|"reset errors")
+            if [ $legacy -eq 1 ]; then errno=1; elif [ "$line" = "reset errors" ]; then errno=0; fi ;;
+        cd\ *)
+            folder=${line#cd \'}
+            cd "${folder%\'}" || errno=1 ;;
+        load\ *)
+            script=${line#load \'}
+            [ -f "${script%\'}" ] || errno=1 ;;
+        fail) errno=1 ;;
+        crash) exit 1 ;;
+        hang) sleep 60 ;;
+        print*GPVAL_VERSION)
+            echo "#rsamssam-version  $version" ;;
+        print*GPVAL_ERRNO)
+            sentinel=${line#print \"}
+            sentinel=${sentinel%\", GPVAL_ERRNO}
+            echo "$sentinel $errno" ;;
+    esac
+done